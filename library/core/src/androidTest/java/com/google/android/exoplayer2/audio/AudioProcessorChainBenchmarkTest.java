@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import com.google.android.exoplayer2.util.Log;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks the {@link DefaultAudioSink} audio processor chain for 48 kHz 5.1 audio, with the
+ * conversion to 16-bit PCM, channel mapping and trimming either fused into a {@link
+ * FusedPcmAudioProcessor} or applied by separate processors.
+ *
+ * <p>Results are written to logcat with the tag {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class AudioProcessorChainBenchmarkTest {
+
+  private static final String TAG = "AudioProcessorBenchmark";
+
+  private static final int SAMPLE_RATE = 48_000;
+  private static final int CHANNEL_COUNT = 6;
+  // Decoders commonly output 5.1 as L, R, C, LFE, Ls, Rs or L, R, Ls, Rs, C, LFE.
+  private static final int[] CHANNEL_MAP = new int[] {0, 1, 4, 5, 2, 3};
+  private static final int TRIM_START_FRAMES = 2112;
+  private static final int TRIM_END_FRAMES = 960;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  private static final int BUFFER_COUNT = 1_000;
+  private static final int WARM_UP_RUN_COUNT = 3;
+  private static final int MEASURED_RUN_COUNT = 10;
+
+  @Test
+  public void benchmark_floatInput() throws Exception {
+    runBenchmark(C.ENCODING_PCM_FLOAT, /* speed= */ 1f);
+  }
+
+  @Test
+  public void benchmark_floatInputWithSpeedChange() throws Exception {
+    runBenchmark(C.ENCODING_PCM_FLOAT, /* speed= */ 1.5f);
+  }
+
+  @Test
+  public void benchmark_16BitInput() throws Exception {
+    runBenchmark(C.ENCODING_PCM_16BIT, /* speed= */ 1f);
+  }
+
+  private static void runBenchmark(@C.PcmEncoding int encoding, float speed)
+      throws UnhandledAudioFormatException {
+    AudioFormat inputFormat = new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, encoding);
+    ByteBuffer[] input = createInput(inputFormat);
+
+    FusedPcmAudioProcessor fusedPcmAudioProcessor = new FusedPcmAudioProcessor();
+    fusedPcmAudioProcessor.setChannelMap(CHANNEL_MAP);
+    fusedPcmAudioProcessor.setTrimFrameCount(TRIM_START_FRAMES, TRIM_END_FRAMES);
+    AudioProcessor[] fusedChain =
+        createChain(inputFormat, speed, new AudioProcessor[] {fusedPcmAudioProcessor});
+
+    ChannelMappingAudioProcessor channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+    channelMappingAudioProcessor.setChannelMap(CHANNEL_MAP);
+    TrimmingAudioProcessor trimmingAudioProcessor = new TrimmingAudioProcessor();
+    trimmingAudioProcessor.setTrimFrameCount(TRIM_START_FRAMES, TRIM_END_FRAMES);
+    AudioProcessor[] separateChain =
+        createChain(
+            inputFormat,
+            speed,
+            new AudioProcessor[] {
+              new ResamplingAudioProcessor(), channelMappingAudioProcessor, trimmingAudioProcessor
+            });
+
+    assertThat(run(fusedChain, input, /* computeChecksum= */ true))
+        .isEqualTo(run(separateChain, input, /* computeChecksum= */ true));
+
+    for (int i = 0; i < WARM_UP_RUN_COUNT; i++) {
+      run(fusedChain, input, /* computeChecksum= */ false);
+      run(separateChain, input, /* computeChecksum= */ false);
+    }
+    long fusedDurationNs = 0;
+    long separateDurationNs = 0;
+    for (int i = 0; i < MEASURED_RUN_COUNT; i++) {
+      long startTimeNs = System.nanoTime();
+      run(fusedChain, input, /* computeChecksum= */ false);
+      fusedDurationNs += System.nanoTime() - startTimeNs;
+      startTimeNs = System.nanoTime();
+      run(separateChain, input, /* computeChecksum= */ false);
+      separateDurationNs += System.nanoTime() - startTimeNs;
+    }
+
+    long frameCount = (long) MEASURED_RUN_COUNT * BUFFER_COUNT * FRAMES_PER_BUFFER;
+    Log.i(
+        TAG,
+        "encoding="
+            + encoding
+            + ", speed="
+            + speed
+            + ": fused "
+            + (float) fusedDurationNs / frameCount
+            + " ns/frame, separate "
+            + (float) separateDurationNs / frameCount
+            + " ns/frame");
+  }
+
+  private static ByteBuffer[] createInput(AudioFormat format) {
+    Random random = new Random(/* seed= */ 0);
+    ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      ByteBuffer buffer =
+          ByteBuffer.allocateDirect(FRAMES_PER_BUFFER * format.bytesPerFrame)
+              .order(ByteOrder.nativeOrder());
+      while (buffer.hasRemaining()) {
+        if (format.encoding == C.ENCODING_PCM_FLOAT) {
+          buffer.putFloat(random.nextFloat() * 2 - 1);
+        } else {
+          buffer.putShort((short) random.nextInt());
+        }
+      }
+      buffer.flip();
+      buffers[i] = buffer;
+    }
+    return buffers;
+  }
+
+  /**
+   * Returns the active processors of a chain made of {@code pcmProcessors} followed by the
+   * processors of a {@link DefaultAudioSink.DefaultAudioProcessorChain}, configured for {@code
+   * inputFormat}.
+   */
+  private static AudioProcessor[] createChain(
+      AudioFormat inputFormat, float speed, AudioProcessor[] pcmProcessors)
+      throws UnhandledAudioFormatException {
+    DefaultAudioSink.DefaultAudioProcessorChain audioProcessorChain =
+        new DefaultAudioSink.DefaultAudioProcessorChain();
+    audioProcessorChain.applySkipSilenceEnabled(true);
+    audioProcessorChain.applyPlaybackParameters(new PlaybackParameters(speed));
+    AudioProcessor[] chainProcessors = audioProcessorChain.getAudioProcessors();
+    AudioProcessor[] processors = new AudioProcessor[pcmProcessors.length + chainProcessors.length];
+    System.arraycopy(pcmProcessors, 0, processors, 0, pcmProcessors.length);
+    System.arraycopy(
+        chainProcessors, 0, processors, pcmProcessors.length, chainProcessors.length);
+
+    AudioFormat format = inputFormat;
+    int activeCount = 0;
+    for (AudioProcessor processor : processors) {
+      AudioFormat outputFormat = processor.configure(format);
+      if (processor.isActive()) {
+        format = outputFormat;
+        processors[activeCount++] = processor;
+      }
+    }
+    AudioProcessor[] activeProcessors = new AudioProcessor[activeCount];
+    System.arraycopy(processors, 0, activeProcessors, 0, activeCount);
+    return activeProcessors;
+  }
+
+  /**
+   * Flushes the processors and passes the input through them in the same way as {@link
+   * DefaultAudioSink}, returning a checksum of the output if {@code computeChecksum} is true.
+   */
+  private static long run(
+      AudioProcessor[] processors, ByteBuffer[] input, boolean computeChecksum) {
+    for (AudioProcessor processor : processors) {
+      processor.flush();
+    }
+    @Nullable CRC32 checksum = computeChecksum ? new CRC32() : null;
+    ByteBuffer[] outputBuffers = new ByteBuffer[processors.length];
+    Arrays.fill(outputBuffers, AudioProcessor.EMPTY_BUFFER);
+    for (ByteBuffer inputBuffer : input) {
+      inputBuffer.rewind();
+      processBuffer(processors, outputBuffers, inputBuffer, checksum);
+    }
+    return checksum != null ? checksum.getValue() : 0;
+  }
+
+  private static void processBuffer(
+      AudioProcessor[] processors,
+      ByteBuffer[] outputBuffers,
+      ByteBuffer inputBuffer,
+      @Nullable CRC32 checksum) {
+    int count = processors.length;
+    int index = count;
+    while (index >= 0) {
+      ByteBuffer input = index > 0 ? outputBuffers[index - 1] : inputBuffer;
+      if (index == count) {
+        // Consume the output, as the AudioTrack would.
+        if (checksum != null) {
+          while (input.hasRemaining()) {
+            checksum.update(input.get());
+          }
+        }
+        input.position(input.limit());
+      } else {
+        AudioProcessor processor = processors[index];
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput();
+        outputBuffers[index] = output;
+        if (output.hasRemaining()) {
+          index++;
+          continue;
+        }
+      }
+      if (input.hasRemaining()) {
+        return;
+      }
+      index--;
+    }
+  }
+}
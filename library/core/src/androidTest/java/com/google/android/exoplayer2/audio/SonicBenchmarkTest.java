@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Log;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks {@link FloatSonic} against {@link Sonic} for speed and pitch changes of multichannel
+ * audio.
+ *
+ * <p>Results are written to logcat with the tag {@value #TAG}, as the time taken to process one
+ * second of audio and as a multiple of real time.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SonicBenchmarkTest {
+
+  private static final String TAG = "SonicBenchmark";
+
+  private static final int SAMPLE_RATE = 48_000;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  private static final int DURATION_SECONDS = 10;
+  private static final int WARM_UP_RUN_COUNT = 3;
+  private static final int MEASURED_RUN_COUNT = 10;
+
+  @Test
+  public void benchmark_eightChannels_doubleSpeed() {
+    runBenchmark(/* channelCount= */ 8, /* speed= */ 2f, /* pitch= */ 1f);
+  }
+
+  @Test
+  public void benchmark_sixChannels_oneAndAHalfSpeed() {
+    runBenchmark(/* channelCount= */ 6, /* speed= */ 1.5f, /* pitch= */ 1f);
+  }
+
+  @Test
+  public void benchmark_stereo_halfSpeed() {
+    runBenchmark(/* channelCount= */ 2, /* speed= */ 0.5f, /* pitch= */ 1f);
+  }
+
+  @Test
+  public void benchmark_stereo_pitchChange() {
+    runBenchmark(/* channelCount= */ 2, /* speed= */ 1f, /* pitch= */ 1.2f);
+  }
+
+  private static void runBenchmark(int channelCount, float speed, float pitch) {
+    int frameCount = DURATION_SECONDS * SAMPLE_RATE;
+    float[] floatInput = new float[frameCount * channelCount];
+    short[] shortInput = new short[frameCount * channelCount];
+    for (int i = 0; i < frameCount; i++) {
+      for (int j = 0; j < channelCount; j++) {
+        double frequencyHz = 110 * (j + 1);
+        float value = (float) (0.5 * Math.sin(2 * Math.PI * frequencyHz * i / SAMPLE_RATE));
+        floatInput[i * channelCount + j] = value;
+        shortInput[i * channelCount + j] = (short) (value * Short.MAX_VALUE);
+      }
+    }
+    FloatBuffer floatOutput = FloatBuffer.allocate(floatInput.length * 4);
+    ShortBuffer shortOutput = ShortBuffer.allocate(shortInput.length * 4);
+    FloatSonic floatSonic = new FloatSonic(SAMPLE_RATE, channelCount, speed, pitch, SAMPLE_RATE);
+    Sonic sonic = new Sonic(SAMPLE_RATE, channelCount, speed, pitch, SAMPLE_RATE);
+
+    for (int i = 0; i < WARM_UP_RUN_COUNT; i++) {
+      run(floatSonic, floatInput, floatOutput, channelCount);
+      run(sonic, shortInput, shortOutput, channelCount);
+    }
+    long floatDurationNs = 0;
+    long shortDurationNs = 0;
+    for (int i = 0; i < MEASURED_RUN_COUNT; i++) {
+      long startTimeNs = System.nanoTime();
+      run(floatSonic, floatInput, floatOutput, channelCount);
+      floatDurationNs += System.nanoTime() - startTimeNs;
+      startTimeNs = System.nanoTime();
+      run(sonic, shortInput, shortOutput, channelCount);
+      shortDurationNs += System.nanoTime() - startTimeNs;
+    }
+
+    // Both implementations use the same algorithm, so should output a similar amount of audio.
+    double expectedFrameCount = frameCount / speed;
+    assertThat((double) floatOutput.position() / channelCount)
+        .isWithin(expectedFrameCount / 100)
+        .of(expectedFrameCount);
+    assertThat((double) shortOutput.position() / channelCount)
+        .isWithin(expectedFrameCount / 100)
+        .of(expectedFrameCount);
+
+    double floatNsPerSecond = (double) floatDurationNs / MEASURED_RUN_COUNT / DURATION_SECONDS;
+    double shortNsPerSecond = (double) shortDurationNs / MEASURED_RUN_COUNT / DURATION_SECONDS;
+    Log.i(
+        TAG,
+        "channelCount="
+            + channelCount
+            + ", speed="
+            + speed
+            + ", pitch="
+            + pitch
+            + ": float "
+            + (long) (floatNsPerSecond / 1000)
+            + " us/s ("
+            + (long) (1e9 / floatNsPerSecond)
+            + "x real time), short "
+            + (long) (shortNsPerSecond / 1000)
+            + " us/s ("
+            + (long) (1e9 / shortNsPerSecond)
+            + "x real time)");
+  }
+
+  private static void run(
+      FloatSonic floatSonic, float[] input, FloatBuffer output, int channelCount) {
+    floatSonic.flush();
+    output.clear();
+    FloatBuffer inputBuffer = FloatBuffer.wrap(input);
+    while (inputBuffer.hasRemaining()) {
+      inputBuffer.limit(
+          Math.min(inputBuffer.position() + FRAMES_PER_BUFFER * channelCount, input.length));
+      floatSonic.queueInput(inputBuffer);
+      floatSonic.getOutput(output);
+      inputBuffer.limit(input.length);
+    }
+    floatSonic.queueEndOfStream();
+    floatSonic.getOutput(output);
+  }
+
+  private static void run(Sonic sonic, short[] input, ShortBuffer output, int channelCount) {
+    sonic.flush();
+    output.clear();
+    ShortBuffer inputBuffer = ShortBuffer.wrap(input);
+    while (inputBuffer.hasRemaining()) {
+      inputBuffer.limit(
+          Math.min(inputBuffer.position() + FRAMES_PER_BUFFER * channelCount, input.length));
+      sonic.queueInput(inputBuffer);
+      sonic.getOutput(output);
+      inputBuffer.limit(input.length);
+    }
+    sonic.queueEndOfStream();
+    sonic.getOutput(output);
+  }
+}
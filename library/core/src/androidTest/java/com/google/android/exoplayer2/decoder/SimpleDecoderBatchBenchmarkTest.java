@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.MuLawDecoder;
+import com.google.android.exoplayer2.util.Log;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks batch decoding in {@link SimpleDecoder}, using the Java-only {@link MuLawDecoder} to
+ * decode 20 ms packets of 8 kHz audio.
+ *
+ * <p>Results are written to logcat with the tag {@value #TAG}, as the average time taken per
+ * packet for each batch size.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleDecoderBatchBenchmarkTest {
+
+  private static final String TAG = "SimpleDecoderBatchBench";
+
+  private static final int PACKET_SIZE = 160;
+  private static final long PACKET_DURATION_US = 20_000;
+  private static final int PACKET_COUNT = 20_000;
+  private static final int BUFFER_COUNT = 16;
+  private static final int WARM_UP_RUN_COUNT = 2;
+  private static final int MEASURED_RUN_COUNT = 5;
+
+  @Test
+  public void benchmark_withDecodeThread() throws Exception {
+    runBenchmark(/* maxDecodeBatchSize= */ 1, /* useSharedExecutor= */ false);
+    runBenchmark(/* maxDecodeBatchSize= */ 4, /* useSharedExecutor= */ false);
+    runBenchmark(/* maxDecodeBatchSize= */ 16, /* useSharedExecutor= */ false);
+  }
+
+  @Test
+  public void benchmark_withSharedExecutor() throws Exception {
+    runBenchmark(/* maxDecodeBatchSize= */ 1, /* useSharedExecutor= */ true);
+    runBenchmark(/* maxDecodeBatchSize= */ 4, /* useSharedExecutor= */ true);
+    runBenchmark(/* maxDecodeBatchSize= */ 16, /* useSharedExecutor= */ true);
+  }
+
+  private static void runBenchmark(int maxDecodeBatchSize, boolean useSharedExecutor)
+      throws Exception {
+    byte[] packet = new byte[PACKET_SIZE];
+    for (int i = 0; i < PACKET_SIZE; i++) {
+      packet[i] = (byte) i;
+    }
+    for (int i = 0; i < WARM_UP_RUN_COUNT; i++) {
+      run(packet, maxDecodeBatchSize, useSharedExecutor);
+    }
+    long durationNs = 0;
+    int decodeCallCount = 0;
+    for (int i = 0; i < MEASURED_RUN_COUNT; i++) {
+      long startTimeNs = System.nanoTime();
+      decodeCallCount = run(packet, maxDecodeBatchSize, useSharedExecutor);
+      durationNs += System.nanoTime() - startTimeNs;
+    }
+
+    assertThat(decodeCallCount).isAtMost(PACKET_COUNT);
+    Log.i(
+        TAG,
+        "maxDecodeBatchSize="
+            + maxDecodeBatchSize
+            + ", useSharedExecutor="
+            + useSharedExecutor
+            + ": "
+            + durationNs / MEASURED_RUN_COUNT / PACKET_COUNT
+            + " ns/packet, "
+            + decodeCallCount
+            + " decode calls");
+  }
+
+  /** Decodes {@link #PACKET_COUNT} packets, and returns the number of decode calls. */
+  private static int run(byte[] packet, int maxDecodeBatchSize, boolean useSharedExecutor)
+      throws Exception {
+    MuLawDecoder decoder =
+        new MuLawDecoder(
+            BUFFER_COUNT,
+            BUFFER_COUNT,
+            maxDecodeBatchSize,
+            useSharedExecutor ? SimpleDecoder.getSharedDecodeExecutor() : null);
+    int queuedPacketCount = 0;
+    int outputPacketCount = 0;
+    while (outputPacketCount < PACKET_COUNT) {
+      @Nullable DecoderInputBuffer inputBuffer;
+      while (queuedPacketCount < PACKET_COUNT
+          && (inputBuffer = decoder.dequeueInputBuffer()) != null) {
+        inputBuffer.ensureSpaceForWrite(PACKET_SIZE);
+        inputBuffer.data.put(packet);
+        inputBuffer.flip();
+        inputBuffer.timeUs = queuedPacketCount * PACKET_DURATION_US;
+        decoder.queueInputBuffer(inputBuffer);
+        queuedPacketCount++;
+      }
+      @Nullable SimpleDecoderOutputBuffer outputBuffer;
+      while ((outputBuffer = decoder.dequeueOutputBuffer()) != null) {
+        checkState(outputBuffer.timeUs == outputPacketCount * PACKET_DURATION_US);
+        outputBuffer.release();
+        outputPacketCount++;
+      }
+      Thread.yield();
+    }
+    int decodeCallCount = decoder.getDecodeCallCount();
+    decoder.release();
+    return decodeCallCount;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks the per-frame overhead of queueing input buffers through {@link MediaCodecAdapter}
+ * implementations, using the platform's raw audio decoder so that decoding itself is negligible.
+ *
+ * <p>Buffers are queued at the rate of 120 fps content. Results are written to logcat with the tag
+ * {@value #TAG}, as the average time spent in {@link MediaCodecAdapter#queueInputBuffer} and the
+ * average wall time per frame.
+ */
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 23)
+public final class MediaCodecAdapterQueueBenchmarkTest {
+
+  private static final String TAG = "MediaCodecAdapterQueue";
+
+  private static final int SAMPLE_RATE = 48_000;
+  private static final int CHANNEL_COUNT = 2;
+  private static final int FRAME_RATE = 120;
+  private static final int FRAME_SIZE = SAMPLE_RATE / FRAME_RATE * CHANNEL_COUNT * 2;
+  private static final int FRAME_COUNT = 10 * FRAME_RATE;
+  private static final int WARM_UP_RUN_COUNT = 2;
+  private static final int MEASURED_RUN_COUNT = 5;
+
+  @Test
+  public void benchmark_synchronousAdapter() throws Exception {
+    runBenchmark(new DefaultMediaCodecAdapterFactory().forceDisableAsynchronous(), "synchronous");
+  }
+
+  @Test
+  public void benchmark_asynchronousAdapter() throws Exception {
+    runBenchmark(new DefaultMediaCodecAdapterFactory().forceEnableAsynchronous(), "asynchronous");
+  }
+
+  private static void runBenchmark(MediaCodecAdapter.Factory factory, String name)
+      throws Exception {
+    MediaCodecInfo codecInfo =
+        checkNotNull(
+            MediaCodecUtil.getDecoderInfo(
+                MimeTypes.AUDIO_RAW, /* secure= */ false, /* tunneling= */ false));
+    Format format =
+        new Format.Builder()
+            .setSampleMimeType(MimeTypes.AUDIO_RAW)
+            .setSampleRate(SAMPLE_RATE)
+            .setChannelCount(CHANNEL_COUNT)
+            .build();
+    MediaFormat mediaFormat =
+        MediaFormat.createAudioFormat(MimeTypes.AUDIO_RAW, SAMPLE_RATE, CHANNEL_COUNT);
+    MediaCodecAdapter.Configuration configuration =
+        MediaCodecAdapter.Configuration.createForAudioDecoding(
+            codecInfo, mediaFormat, format, /* crypto= */ null);
+
+    for (int i = 0; i < WARM_UP_RUN_COUNT; i++) {
+      run(factory, configuration);
+    }
+    long queueDurationNs = 0;
+    long totalDurationNs = 0;
+    for (int i = 0; i < MEASURED_RUN_COUNT; i++) {
+      long startTimeNs = System.nanoTime();
+      queueDurationNs += run(factory, configuration);
+      totalDurationNs += System.nanoTime() - startTimeNs;
+    }
+
+    long frameCount = (long) MEASURED_RUN_COUNT * FRAME_COUNT;
+    assertThat(queueDurationNs).isGreaterThan(0);
+    Log.i(
+        TAG,
+        name
+            + ": "
+            + queueDurationNs / frameCount
+            + " ns/frame in queueInputBuffer, "
+            + totalDurationNs / frameCount
+            + " ns/frame in total");
+  }
+
+  /**
+   * Queues {@link #FRAME_COUNT} frames followed by the end of stream, waits for the end of stream
+   * to be output, and returns the time spent queueing input buffers.
+   */
+  private static long run(
+      MediaCodecAdapter.Factory factory, MediaCodecAdapter.Configuration configuration)
+      throws Exception {
+    MediaCodecAdapter adapter = factory.createAdapter(configuration);
+    byte[] frame = new byte[FRAME_SIZE];
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    long queueDurationNs = 0;
+    int queuedFrameCount = 0;
+    boolean queuedEndOfStream = false;
+    boolean outputEndOfStream = false;
+    try {
+      while (!outputEndOfStream) {
+        if (!queuedEndOfStream) {
+          int inputIndex = adapter.dequeueInputBufferIndex();
+          if (inputIndex >= 0) {
+            ByteBuffer inputBuffer = checkNotNull(adapter.getInputBuffer(inputIndex));
+            inputBuffer.clear();
+            long startTimeNs = System.nanoTime();
+            if (queuedFrameCount < FRAME_COUNT) {
+              inputBuffer.put(frame);
+              adapter.queueInputBuffer(
+                  inputIndex,
+                  /* offset= */ 0,
+                  FRAME_SIZE,
+                  /* presentationTimeUs= */ queuedFrameCount * 1_000_000L / FRAME_RATE,
+                  /* flags= */ 0);
+              queuedFrameCount++;
+            } else {
+              adapter.queueInputBuffer(
+                  inputIndex,
+                  /* offset= */ 0,
+                  /* size= */ 0,
+                  /* presentationTimeUs= */ 0,
+                  MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+              queuedEndOfStream = true;
+            }
+            queueDurationNs += System.nanoTime() - startTimeNs;
+          }
+        }
+        int outputIndex = adapter.dequeueOutputBufferIndex(bufferInfo);
+        if (outputIndex >= 0) {
+          outputEndOfStream = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+          adapter.releaseOutputBuffer(outputIndex, /* render= */ false);
+        }
+      }
+    } finally {
+      adapter.release();
+    }
+    return queueDurationNs;
+  }
+}
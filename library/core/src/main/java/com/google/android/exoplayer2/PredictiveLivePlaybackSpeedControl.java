@@ -0,0 +1,757 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.MediaItem.LiveConfiguration;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+/**
+ * A {@link LivePlaybackSpeedControl} for low-latency live streams that adjusts the playback speed
+ * using a proportional-integral-derivative (PID) controller, and that predicts the risk of
+ * rebuffering from the arrival of media and the slope of the buffer.
+ *
+ * <p>The adjusted speed is calculated as {@code 1.0 + proportionalControlFactor x error +
+ * integralControlFactor x integral(error) + derivativeControlFactor x d(error)/dt}, where {@code
+ * error} is the difference between the current and the target live offset in seconds. The
+ * integral term removes the steady-state error that a purely proportional controller has while the
+ * target live offset is moving, and the derivative term damps the oscillation around the target.
+ * Unit speed (1.0f) is used if the current live offset is closer to the target than the value set
+ * with {@link Builder#setMaxLiveOffsetErrorMsForUnitSpeed(long)}.
+ *
+ * <p>The buffered duration grows sample by sample while media is loading. Consecutive increases
+ * of the buffered duration are combined into the arrival of a chunk or, for low-latency HLS and
+ * DASH streams, of a part or partially available segment, once they add up to at least the value
+ * set with {@link Builder#setMinArrivalDurationMs(long)}. For each arrival, the distance between
+ * the live edge and the end of the buffer once the buffer stops growing is recorded, along with
+ * the time since the previous arrival. The target live offset is kept at a safe distance from the
+ * smoothed arrival latency, so that the buffer lasts until the next arrival, and is decreased
+ * towards the target requested by the media as soon as the arrival statistics allow it. The
+ * playback speed is never increased beyond what the buffer can sustain until the next expected
+ * arrival.
+ *
+ * <p>A {@link Listener} can be set to receive the live offset, target live offset, playback speed
+ * and rebuffer risk every time the playback speed is updated.
+ */
+public final class PredictiveLivePlaybackSpeedControl implements LivePlaybackSpeedControl {
+
+  /** A listener for updates of the playback speed. */
+  public interface Listener {
+
+    /**
+     * Called each time the playback speed is updated.
+     *
+     * <p>This method is called on the playback thread.
+     *
+     * @param liveOffsetUs The current live offset, in microseconds.
+     * @param targetLiveOffsetUs The current target live offset, in microseconds.
+     * @param playbackSpeed The adjusted playback speed.
+     * @param rebufferRisk The predicted risk of rebuffering before more media arrives, between 0
+     *     and 1. See {@link #getRebufferRisk()}.
+     */
+    void onPlaybackSpeedUpdated(
+        long liveOffsetUs, long targetLiveOffsetUs, float playbackSpeed, float rebufferRisk);
+  }
+
+  /**
+   * The default minimum factor by which playback can be sped up that should be used if no minimum
+   * playback speed is defined by the media.
+   */
+  public static final float DEFAULT_FALLBACK_MIN_PLAYBACK_SPEED = 0.97f;
+
+  /**
+   * The default maximum factor by which playback can be sped up that should be used if no maximum
+   * playback speed is defined by the media.
+   */
+  public static final float DEFAULT_FALLBACK_MAX_PLAYBACK_SPEED = 1.03f;
+
+  /**
+   * The default {@link Builder#setMinUpdateIntervalMs(long) minimum interval} between playback
+   * speed changes, in milliseconds.
+   */
+  public static final long DEFAULT_MIN_UPDATE_INTERVAL_MS = 200;
+
+  /**
+   * The default {@link Builder#setProportionalControlFactor(float) proportional control factor}
+   * used to adjust the playback speed.
+   */
+  public static final float DEFAULT_PROPORTIONAL_CONTROL_FACTOR = 0.1f;
+
+  /**
+   * The default {@link Builder#setIntegralControlFactor(float) integral control factor} used to
+   * adjust the playback speed.
+   */
+  public static final float DEFAULT_INTEGRAL_CONTROL_FACTOR = 0.002f;
+
+  /**
+   * The default {@link Builder#setDerivativeControlFactor(float) derivative control factor} used
+   * to adjust the playback speed.
+   */
+  public static final float DEFAULT_DERIVATIVE_CONTROL_FACTOR = 0.1f;
+
+  /**
+   * The default maximum difference between the current live offset and the target live offset, in
+   * milliseconds, for which unit speed (1.0f) is used.
+   */
+  public static final long DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED = 20;
+
+  /**
+   * The default increment applied to the target live offset each time the player is rebuffering, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS = 500;
+
+  /**
+   * The default smoothing factor when smoothing the latency and interval of media arrivals. See
+   * {@link Builder#setArrivalSmoothingFactor(float)}.
+   */
+  public static final float DEFAULT_ARRIVAL_SMOOTHING_FACTOR = 0.8f;
+
+  /**
+   * The default minimum duration of media that needs to be added to the buffer to count as the
+   * arrival of media, in milliseconds. See {@link Builder#setMinArrivalDurationMs(long)}.
+   */
+  public static final long DEFAULT_MIN_ARRIVAL_DURATION_MS = 100;
+
+  /** The minimum time constant used when smoothing the slope of the buffer, in microseconds. */
+  private static final long MIN_BUFFER_SLOPE_TIME_CONSTANT_US = 2_000_000;
+
+  /** Builder for a {@link PredictiveLivePlaybackSpeedControl}. */
+  public static final class Builder {
+
+    private float fallbackMinPlaybackSpeed;
+    private float fallbackMaxPlaybackSpeed;
+    private long minUpdateIntervalMs;
+    private float proportionalControlFactorUs;
+    private float integralControlFactorUs;
+    private float derivativeControlFactor;
+    private long maxLiveOffsetErrorUsForUnitSpeed;
+    private long targetLiveOffsetIncrementOnRebufferUs;
+    private float arrivalSmoothingFactor;
+    private long minArrivalDurationUs;
+    @Nullable private Listener listener;
+    private Clock clock;
+
+    /** Creates a builder. */
+    public Builder() {
+      fallbackMinPlaybackSpeed = DEFAULT_FALLBACK_MIN_PLAYBACK_SPEED;
+      fallbackMaxPlaybackSpeed = DEFAULT_FALLBACK_MAX_PLAYBACK_SPEED;
+      minUpdateIntervalMs = DEFAULT_MIN_UPDATE_INTERVAL_MS;
+      proportionalControlFactorUs = DEFAULT_PROPORTIONAL_CONTROL_FACTOR / C.MICROS_PER_SECOND;
+      integralControlFactorUs = DEFAULT_INTEGRAL_CONTROL_FACTOR / C.MICROS_PER_SECOND;
+      derivativeControlFactor = DEFAULT_DERIVATIVE_CONTROL_FACTOR;
+      maxLiveOffsetErrorUsForUnitSpeed =
+          Util.msToUs(DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED);
+      targetLiveOffsetIncrementOnRebufferUs =
+          Util.msToUs(DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS);
+      arrivalSmoothingFactor = DEFAULT_ARRIVAL_SMOOTHING_FACTOR;
+      minArrivalDurationUs = Util.msToUs(DEFAULT_MIN_ARRIVAL_DURATION_MS);
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the minimum playback speed that should be used if no minimum playback speed is defined
+     * by the media.
+     *
+     * <p>The default is {@link #DEFAULT_FALLBACK_MIN_PLAYBACK_SPEED}.
+     *
+     * @param fallbackMinPlaybackSpeed The fallback minimum factor by which playback can be sped up.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setFallbackMinPlaybackSpeed(float fallbackMinPlaybackSpeed) {
+      Assertions.checkArgument(0 < fallbackMinPlaybackSpeed && fallbackMinPlaybackSpeed <= 1f);
+      this.fallbackMinPlaybackSpeed = fallbackMinPlaybackSpeed;
+      return this;
+    }
+
+    /**
+     * Sets the maximum playback speed that should be used if no maximum playback speed is defined
+     * by the media.
+     *
+     * <p>The default is {@link #DEFAULT_FALLBACK_MAX_PLAYBACK_SPEED}.
+     *
+     * @param fallbackMaxPlaybackSpeed The fallback maximum factor by which playback can be sped up.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setFallbackMaxPlaybackSpeed(float fallbackMaxPlaybackSpeed) {
+      Assertions.checkArgument(fallbackMaxPlaybackSpeed >= 1f);
+      this.fallbackMaxPlaybackSpeed = fallbackMaxPlaybackSpeed;
+      return this;
+    }
+
+    /**
+     * Sets the minimum interval between playback speed changes, in milliseconds.
+     *
+     * <p>The default is {@link #DEFAULT_MIN_UPDATE_INTERVAL_MS}.
+     *
+     * @param minUpdateIntervalMs The minimum interval between playback speed changes, in
+     *     milliseconds.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMinUpdateIntervalMs(long minUpdateIntervalMs) {
+      Assertions.checkArgument(minUpdateIntervalMs > 0);
+      this.minUpdateIntervalMs = minUpdateIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets the proportional control factor, by which the playback speed changes per second of
+     * difference between the current and the target live offset.
+     *
+     * <p>The default is {@link #DEFAULT_PROPORTIONAL_CONTROL_FACTOR}.
+     *
+     * @param proportionalControlFactor The proportional control factor.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setProportionalControlFactor(float proportionalControlFactor) {
+      Assertions.checkArgument(proportionalControlFactor > 0);
+      this.proportionalControlFactorUs = proportionalControlFactor / C.MICROS_PER_SECOND;
+      return this;
+    }
+
+    /**
+     * Sets the integral control factor, by which the playback speed changes per second of
+     * difference between the current and the target live offset that persists for one second.
+     *
+     * <p>The default is {@link #DEFAULT_INTEGRAL_CONTROL_FACTOR}.
+     *
+     * @param integralControlFactor The integral control factor, or 0 to disable the integral term.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setIntegralControlFactor(float integralControlFactor) {
+      Assertions.checkArgument(integralControlFactor >= 0);
+      this.integralControlFactorUs = integralControlFactor / C.MICROS_PER_SECOND;
+      return this;
+    }
+
+    /**
+     * Sets the derivative control factor, by which the playback speed changes per second per
+     * second of change of the difference between the current and the target live offset.
+     *
+     * <p>The default is {@link #DEFAULT_DERIVATIVE_CONTROL_FACTOR}.
+     *
+     * @param derivativeControlFactor The derivative control factor, or 0 to disable the derivative
+     *     term.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setDerivativeControlFactor(float derivativeControlFactor) {
+      Assertions.checkArgument(derivativeControlFactor >= 0);
+      this.derivativeControlFactor = derivativeControlFactor;
+      return this;
+    }
+
+    /**
+     * Sets the maximum difference between the current live offset and the target live offset, in
+     * milliseconds, for which unit speed (1.0f) is used.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED}.
+     *
+     * @param maxLiveOffsetErrorMsForUnitSpeed The maximum live offset error for which unit speed is
+     *     used, in milliseconds.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxLiveOffsetErrorMsForUnitSpeed(long maxLiveOffsetErrorMsForUnitSpeed) {
+      Assertions.checkArgument(maxLiveOffsetErrorMsForUnitSpeed > 0);
+      this.maxLiveOffsetErrorUsForUnitSpeed = Util.msToUs(maxLiveOffsetErrorMsForUnitSpeed);
+      return this;
+    }
+
+    /**
+     * Sets the increment applied to the target live offset each time the player is rebuffering, in
+     * milliseconds.
+     *
+     * <p>The default is {@link #DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS}.
+     *
+     * @param targetLiveOffsetIncrementOnRebufferMs The increment applied to the target live offset
+     *     when the player is rebuffering, in milliseconds.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setTargetLiveOffsetIncrementOnRebufferMs(
+        long targetLiveOffsetIncrementOnRebufferMs) {
+      Assertions.checkArgument(targetLiveOffsetIncrementOnRebufferMs >= 0);
+      this.targetLiveOffsetIncrementOnRebufferUs =
+          Util.msToUs(targetLiveOffsetIncrementOnRebufferMs);
+      return this;
+    }
+
+    /**
+     * Sets the smoothing factor when smoothing the latency and interval of media arrivals.
+     *
+     * <p>The smoothed values are updated on each arrival as {@code smoothedValue = smoothingFactor
+     * x smoothedValue + (1-smoothingFactor) x newValue}. The smoothed latency never drops below
+     * the latency of the most recent arrival, so that the target live offset reacts immediately
+     * when media starts arriving later.
+     *
+     * <p>The default is {@link #DEFAULT_ARRIVAL_SMOOTHING_FACTOR}.
+     *
+     * @param arrivalSmoothingFactor The smoothing factor. Must be &ge; 0 and &lt; 1.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setArrivalSmoothingFactor(float arrivalSmoothingFactor) {
+      Assertions.checkArgument(arrivalSmoothingFactor >= 0 && arrivalSmoothingFactor < 1f);
+      this.arrivalSmoothingFactor = arrivalSmoothingFactor;
+      return this;
+    }
+
+    /**
+     * Sets the minimum duration of media that needs to be added to the buffer to count as the
+     * arrival of media, in milliseconds.
+     *
+     * <p>Increases of the buffered duration are added up until they reach this duration, so that
+     * media trickling in sample by sample isn't treated as many separate arrivals. Once an arrival
+     * is counted, further increases are attributed to the same arrival until the buffered duration
+     * stops growing. The value should not exceed the shortest chunk or part duration of the
+     * stream.
+     *
+     * <p>The default is {@link #DEFAULT_MIN_ARRIVAL_DURATION_MS}.
+     *
+     * @param minArrivalDurationMs The minimum duration of an arrival, in milliseconds.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMinArrivalDurationMs(long minArrivalDurationMs) {
+      Assertions.checkArgument(minArrivalDurationMs > 0);
+      this.minArrivalDurationUs = Util.msToUs(minArrivalDurationMs);
+      return this;
+    }
+
+    /**
+     * Sets a {@link Listener} to be notified each time the playback speed is updated.
+     *
+     * @param listener The {@link Listener}, or {@code null} to not report updates.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Builder setListener(@Nullable Listener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to measure the time between updates and media arrivals. Should
+     * only be set for testing purposes.
+     *
+     * @param clock A {@link Clock}.
+     * @return This builder, for convenience.
+     */
+    @CanIgnoreReturnValue
+    @VisibleForTesting
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds an instance. */
+    public PredictiveLivePlaybackSpeedControl build() {
+      return new PredictiveLivePlaybackSpeedControl(this);
+    }
+  }
+
+  private final float fallbackMinPlaybackSpeed;
+  private final float fallbackMaxPlaybackSpeed;
+  private final long minUpdateIntervalMs;
+  private final float proportionalControlFactor;
+  private final float integralControlFactor;
+  private final float derivativeControlFactor;
+  private final long maxLiveOffsetErrorUsForUnitSpeed;
+  private final long targetLiveOffsetRebufferDeltaUs;
+  private final float arrivalSmoothingFactor;
+  private final long minArrivalDurationUs;
+  @Nullable private final Listener listener;
+  private final Clock clock;
+
+  private long mediaConfigurationTargetLiveOffsetUs;
+  private long targetLiveOffsetOverrideUs;
+  private long idealTargetLiveOffsetUs;
+  private long minTargetLiveOffsetUs;
+  private long maxTargetLiveOffsetUs;
+  private long currentTargetLiveOffsetUs;
+
+  private float maxPlaybackSpeed;
+  private float minPlaybackSpeed;
+  private float adjustedPlaybackSpeed;
+  private float rebufferRisk;
+  private long lastPlaybackSpeedUpdateMs;
+  private long lastLiveOffsetErrorUs;
+  private double integratedLiveOffsetErrorUs;
+
+  private long lastBufferedDurationUs;
+  private long pendingArrivalDurationUs;
+  private boolean isArrivalInProgress;
+  private long arrivalLatencyInProgressUs;
+  private long bufferedDurationAtLastUpdateUs;
+  private float smoothedBufferSlope;
+  private long lastArrivalMs;
+  private long smoothedArrivalLatencyUs;
+  private long smoothedArrivalLatencyDeviationUs;
+  private long smoothedArrivalIntervalUs;
+  private long smoothedArrivalIntervalDeviationUs;
+
+  private PredictiveLivePlaybackSpeedControl(Builder builder) {
+    fallbackMinPlaybackSpeed = builder.fallbackMinPlaybackSpeed;
+    fallbackMaxPlaybackSpeed = builder.fallbackMaxPlaybackSpeed;
+    minUpdateIntervalMs = builder.minUpdateIntervalMs;
+    proportionalControlFactor = builder.proportionalControlFactorUs;
+    integralControlFactor = builder.integralControlFactorUs;
+    derivativeControlFactor = builder.derivativeControlFactor;
+    maxLiveOffsetErrorUsForUnitSpeed = builder.maxLiveOffsetErrorUsForUnitSpeed;
+    targetLiveOffsetRebufferDeltaUs = builder.targetLiveOffsetIncrementOnRebufferUs;
+    arrivalSmoothingFactor = builder.arrivalSmoothingFactor;
+    minArrivalDurationUs = builder.minArrivalDurationUs;
+    listener = builder.listener;
+    clock = builder.clock;
+    mediaConfigurationTargetLiveOffsetUs = C.TIME_UNSET;
+    targetLiveOffsetOverrideUs = C.TIME_UNSET;
+    minTargetLiveOffsetUs = C.TIME_UNSET;
+    maxTargetLiveOffsetUs = C.TIME_UNSET;
+    minPlaybackSpeed = fallbackMinPlaybackSpeed;
+    maxPlaybackSpeed = fallbackMaxPlaybackSpeed;
+    adjustedPlaybackSpeed = 1.0f;
+    idealTargetLiveOffsetUs = C.TIME_UNSET;
+    currentTargetLiveOffsetUs = C.TIME_UNSET;
+    resetControllerState();
+    resetArrivalStatistics();
+  }
+
+  @Override
+  public void setLiveConfiguration(LiveConfiguration liveConfiguration) {
+    mediaConfigurationTargetLiveOffsetUs = Util.msToUs(liveConfiguration.targetOffsetMs);
+    minTargetLiveOffsetUs = Util.msToUs(liveConfiguration.minOffsetMs);
+    maxTargetLiveOffsetUs = Util.msToUs(liveConfiguration.maxOffsetMs);
+    minPlaybackSpeed =
+        liveConfiguration.minPlaybackSpeed != C.RATE_UNSET
+            ? liveConfiguration.minPlaybackSpeed
+            : fallbackMinPlaybackSpeed;
+    maxPlaybackSpeed =
+        liveConfiguration.maxPlaybackSpeed != C.RATE_UNSET
+            ? liveConfiguration.maxPlaybackSpeed
+            : fallbackMaxPlaybackSpeed;
+    if (minPlaybackSpeed == 1f && maxPlaybackSpeed == 1f) {
+      // Don't bother calculating adjustments if it's not possible to change the speed.
+      mediaConfigurationTargetLiveOffsetUs = C.TIME_UNSET;
+    }
+    maybeResetTargetLiveOffsetUs();
+  }
+
+  @Override
+  public void setTargetLiveOffsetOverrideUs(long liveOffsetUs) {
+    targetLiveOffsetOverrideUs = liveOffsetUs;
+    maybeResetTargetLiveOffsetUs();
+  }
+
+  @Override
+  public void notifyRebuffer() {
+    if (currentTargetLiveOffsetUs == C.TIME_UNSET) {
+      return;
+    }
+    currentTargetLiveOffsetUs += targetLiveOffsetRebufferDeltaUs;
+    if (maxTargetLiveOffsetUs != C.TIME_UNSET
+        && currentTargetLiveOffsetUs > maxTargetLiveOffsetUs) {
+      currentTargetLiveOffsetUs = maxTargetLiveOffsetUs;
+    }
+    resetControllerState();
+  }
+
+  @Override
+  public float getAdjustedPlaybackSpeed(long liveOffsetUs, long bufferedDurationUs) {
+    if (mediaConfigurationTargetLiveOffsetUs == C.TIME_UNSET) {
+      return 1f;
+    }
+
+    long nowMs = clock.elapsedRealtime();
+    updateArrivalStatistics(nowMs, liveOffsetUs, bufferedDurationUs);
+
+    if (lastPlaybackSpeedUpdateMs != C.TIME_UNSET
+        && nowMs - lastPlaybackSpeedUpdateMs < minUpdateIntervalMs) {
+      return adjustedPlaybackSpeed;
+    }
+    long elapsedUs =
+        lastPlaybackSpeedUpdateMs != C.TIME_UNSET
+            ? Util.msToUs(nowMs - lastPlaybackSpeedUpdateMs)
+            : 0;
+    lastPlaybackSpeedUpdateMs = nowMs;
+
+    updateSmoothedBufferSlope(elapsedUs, bufferedDurationUs);
+    adjustTargetLiveOffsetUs(elapsedUs);
+    long liveOffsetErrorUs = liveOffsetUs - currentTargetLiveOffsetUs;
+    if (abs(liveOffsetErrorUs) < maxLiveOffsetErrorUsForUnitSpeed) {
+      adjustedPlaybackSpeed = 1f;
+      integratedLiveOffsetErrorUs = 0;
+    } else {
+      adjustedPlaybackSpeed = calculatePlaybackSpeed(liveOffsetErrorUs, elapsedUs);
+    }
+    adjustedPlaybackSpeed =
+        limitPlaybackSpeedToBufferedDuration(nowMs, adjustedPlaybackSpeed, bufferedDurationUs);
+    lastLiveOffsetErrorUs = liveOffsetErrorUs;
+
+    rebufferRisk = calculateRebufferRisk(nowMs, adjustedPlaybackSpeed, bufferedDurationUs);
+    if (listener != null) {
+      listener.onPlaybackSpeedUpdated(
+          liveOffsetUs, currentTargetLiveOffsetUs, adjustedPlaybackSpeed, rebufferRisk);
+    }
+    return adjustedPlaybackSpeed;
+  }
+
+  @Override
+  public long getTargetLiveOffsetUs() {
+    return currentTargetLiveOffsetUs;
+  }
+
+  /**
+   * Returns the predicted risk of rebuffering at the last playback speed update, between 0 and 1.
+   *
+   * <p>The risk is the fraction of the buffered duration that is predicted to be played out before
+   * more media arrives, based on the expected time of the next arrival and the slope of the buffer.
+   * A value of 1 means that the buffer is predicted to run out before more media arrives.
+   */
+  public float getRebufferRisk() {
+    return rebufferRisk;
+  }
+
+  private void maybeResetTargetLiveOffsetUs() {
+    long idealOffsetUs = C.TIME_UNSET;
+    if (mediaConfigurationTargetLiveOffsetUs != C.TIME_UNSET) {
+      idealOffsetUs =
+          targetLiveOffsetOverrideUs != C.TIME_UNSET
+              ? targetLiveOffsetOverrideUs
+              : mediaConfigurationTargetLiveOffsetUs;
+      if (minTargetLiveOffsetUs != C.TIME_UNSET && idealOffsetUs < minTargetLiveOffsetUs) {
+        idealOffsetUs = minTargetLiveOffsetUs;
+      }
+      if (maxTargetLiveOffsetUs != C.TIME_UNSET && idealOffsetUs > maxTargetLiveOffsetUs) {
+        idealOffsetUs = maxTargetLiveOffsetUs;
+      }
+    }
+    if (idealTargetLiveOffsetUs == idealOffsetUs) {
+      return;
+    }
+    idealTargetLiveOffsetUs = idealOffsetUs;
+    currentTargetLiveOffsetUs = idealOffsetUs;
+    resetControllerState();
+    resetArrivalStatistics();
+  }
+
+  private void resetControllerState() {
+    lastPlaybackSpeedUpdateMs = C.TIME_UNSET;
+    lastLiveOffsetErrorUs = C.TIME_UNSET;
+    integratedLiveOffsetErrorUs = 0;
+    rebufferRisk = 0f;
+  }
+
+  private void resetArrivalStatistics() {
+    lastBufferedDurationUs = C.TIME_UNSET;
+    pendingArrivalDurationUs = 0;
+    isArrivalInProgress = false;
+    arrivalLatencyInProgressUs = C.TIME_UNSET;
+    bufferedDurationAtLastUpdateUs = C.TIME_UNSET;
+    smoothedBufferSlope = 0f;
+    lastArrivalMs = C.TIME_UNSET;
+    smoothedArrivalLatencyUs = C.TIME_UNSET;
+    smoothedArrivalLatencyDeviationUs = C.TIME_UNSET;
+    smoothedArrivalIntervalUs = C.TIME_UNSET;
+    smoothedArrivalIntervalDeviationUs = C.TIME_UNSET;
+  }
+
+  private void updateArrivalStatistics(long nowMs, long liveOffsetUs, long bufferedDurationUs) {
+    boolean isBufferGrowing =
+        lastBufferedDurationUs != C.TIME_UNSET && bufferedDurationUs > lastBufferedDurationUs;
+    long addedDurationUs = isBufferGrowing ? bufferedDurationUs - lastBufferedDurationUs : 0;
+    lastBufferedDurationUs = bufferedDurationUs;
+    if (!isBufferGrowing) {
+      if (isArrivalInProgress) {
+        // The arrival is complete, so the end of the buffer is now as close to the live edge as it
+        // gets until the next arrival.
+        isArrivalInProgress = false;
+        updateArrivalLatency(arrivalLatencyInProgressUs);
+      }
+      return;
+    }
+    // The distance between the live edge and the end of the buffer.
+    long arrivalLatencyUs = liveOffsetUs - bufferedDurationUs;
+    if (isArrivalInProgress) {
+      // More samples of the same chunk or part.
+      arrivalLatencyInProgressUs = arrivalLatencyUs;
+      return;
+    }
+    pendingArrivalDurationUs += addedDurationUs;
+    if (pendingArrivalDurationUs < minArrivalDurationUs) {
+      return;
+    }
+    pendingArrivalDurationUs = 0;
+    isArrivalInProgress = true;
+    arrivalLatencyInProgressUs = arrivalLatencyUs;
+    updateArrivalInterval(nowMs);
+  }
+
+  private void updateArrivalLatency(long arrivalLatencyUs) {
+    if (smoothedArrivalLatencyUs == C.TIME_UNSET) {
+      smoothedArrivalLatencyUs = arrivalLatencyUs;
+      smoothedArrivalLatencyDeviationUs = 0;
+    } else {
+      // Use the maximum here to react immediately when media starts arriving later.
+      smoothedArrivalLatencyUs =
+          max(
+              arrivalLatencyUs,
+              smooth(smoothedArrivalLatencyUs, arrivalLatencyUs, arrivalSmoothingFactor));
+      smoothedArrivalLatencyDeviationUs =
+          smooth(
+              smoothedArrivalLatencyDeviationUs,
+              abs(arrivalLatencyUs - smoothedArrivalLatencyUs),
+              arrivalSmoothingFactor);
+    }
+  }
+
+  private void updateArrivalInterval(long nowMs) {
+    if (lastArrivalMs != C.TIME_UNSET && nowMs > lastArrivalMs) {
+      long arrivalIntervalUs = Util.msToUs(nowMs - lastArrivalMs);
+      if (smoothedArrivalIntervalUs == C.TIME_UNSET) {
+        smoothedArrivalIntervalUs = arrivalIntervalUs;
+        smoothedArrivalIntervalDeviationUs = 0;
+      } else {
+        smoothedArrivalIntervalUs =
+            smooth(smoothedArrivalIntervalUs, arrivalIntervalUs, arrivalSmoothingFactor);
+        smoothedArrivalIntervalDeviationUs =
+            smooth(
+                smoothedArrivalIntervalDeviationUs,
+                abs(arrivalIntervalUs - smoothedArrivalIntervalUs),
+                arrivalSmoothingFactor);
+      }
+    }
+    lastArrivalMs = nowMs;
+  }
+
+  private void updateSmoothedBufferSlope(long elapsedUs, long bufferedDurationUs) {
+    if (bufferedDurationAtLastUpdateUs != C.TIME_UNSET && elapsedUs > 0) {
+      float bufferSlope = (float) (bufferedDurationUs - bufferedDurationAtLastUpdateUs) / elapsedUs;
+      // Smooth over several arrivals, so that the slope reflects whether media arrives as fast as
+      // it's played out rather than the saw-tooth of individual arrivals.
+      long timeConstantUs =
+          smoothedArrivalIntervalUs != C.TIME_UNSET
+              ? max(MIN_BUFFER_SLOPE_TIME_CONSTANT_US, 4 * smoothedArrivalIntervalUs)
+              : MIN_BUFFER_SLOPE_TIME_CONSTANT_US;
+      float smoothingFactor = (float) timeConstantUs / (timeConstantUs + elapsedUs);
+      smoothedBufferSlope =
+          smoothingFactor * smoothedBufferSlope + (1f - smoothingFactor) * bufferSlope;
+    }
+    bufferedDurationAtLastUpdateUs = bufferedDurationUs;
+  }
+
+  private void adjustTargetLiveOffsetUs(long elapsedUs) {
+    if (smoothedArrivalLatencyUs == C.TIME_UNSET || smoothedArrivalIntervalUs == C.TIME_UNSET) {
+      return;
+    }
+    // Stay in a safe distance (3 standard deviations = >99%) to the latency of media arrivals, plus
+    // the media played out until the next arrival.
+    long expectedArrivalIntervalUs =
+        smoothedArrivalIntervalUs + 3 * smoothedArrivalIntervalDeviationUs;
+    long safeOffsetUs =
+        smoothedArrivalLatencyUs
+            + 3 * smoothedArrivalLatencyDeviationUs
+            + (long) (maxPlaybackSpeed * expectedArrivalIntervalUs);
+    long desiredOffsetUs = max(idealTargetLiveOffsetUs, safeOffsetUs);
+    if (maxTargetLiveOffsetUs != C.TIME_UNSET) {
+      desiredOffsetUs = min(desiredOffsetUs, maxTargetLiveOffsetUs);
+    }
+    if (currentTargetLiveOffsetUs > desiredOffsetUs) {
+      // Decrease the target no faster than playback can catch up with it, so that the live offset
+      // follows the target without overshooting.
+      long maxDecrementUs = (long) ((maxPlaybackSpeed - 1f) * elapsedUs);
+      currentTargetLiveOffsetUs =
+          max(desiredOffsetUs, currentTargetLiveOffsetUs - maxDecrementUs);
+    } else {
+      currentTargetLiveOffsetUs = desiredOffsetUs;
+    }
+  }
+
+  private float calculatePlaybackSpeed(long liveOffsetErrorUs, long elapsedUs) {
+    double previousIntegratedLiveOffsetErrorUs = integratedLiveOffsetErrorUs;
+    integratedLiveOffsetErrorUs += (double) liveOffsetErrorUs * elapsedUs / C.MICROS_PER_SECOND;
+    float derivative =
+        lastLiveOffsetErrorUs != C.TIME_UNSET && elapsedUs > 0
+            ? (float) (liveOffsetErrorUs - lastLiveOffsetErrorUs) / elapsedUs
+            : 0f;
+    float calculatedSpeed =
+        1f
+            + proportionalControlFactor * liveOffsetErrorUs
+            + (float) (integralControlFactor * integratedLiveOffsetErrorUs)
+            + derivativeControlFactor * derivative;
+    if (calculatedSpeed > maxPlaybackSpeed || calculatedSpeed < minPlaybackSpeed) {
+      // Don't accumulate the error while the speed is saturated to avoid integral windup.
+      integratedLiveOffsetErrorUs = previousIntegratedLiveOffsetErrorUs;
+    }
+    return Util.constrainValue(calculatedSpeed, minPlaybackSpeed, maxPlaybackSpeed);
+  }
+
+  private float limitPlaybackSpeedToBufferedDuration(
+      long nowMs, float playbackSpeed, long bufferedDurationUs) {
+    long timeUntilNextArrivalUs = getExpectedTimeUntilNextArrivalUs(nowMs);
+    if (timeUntilNextArrivalUs <= 0
+        || playbackSpeed * timeUntilNextArrivalUs <= bufferedDurationUs) {
+      return playbackSpeed;
+    }
+    // The buffer is predicted to run out before the next arrival. Play out the buffered media no
+    // faster than needed to bridge the gap.
+    float sustainableSpeed = (float) bufferedDurationUs / timeUntilNextArrivalUs;
+    return max(minPlaybackSpeed, min(playbackSpeed, sustainableSpeed));
+  }
+
+  private float calculateRebufferRisk(long nowMs, float playbackSpeed, long bufferedDurationUs) {
+    if (bufferedDurationUs <= 0) {
+      return 1f;
+    }
+    long timeUntilNextArrivalUs = getExpectedTimeUntilNextArrivalUs(nowMs);
+    float playedOutUntilNextArrivalUs = max(0, timeUntilNextArrivalUs) * playbackSpeed;
+    float drainedOverHorizonUs = 0f;
+    if (smoothedBufferSlope < 0) {
+      long horizonUs =
+          smoothedArrivalIntervalUs != C.TIME_UNSET
+              ? max(smoothedArrivalIntervalUs, Util.msToUs(minUpdateIntervalMs))
+              : Util.msToUs(minUpdateIntervalMs);
+      drainedOverHorizonUs = -smoothedBufferSlope * horizonUs;
+    }
+    return min(1f, max(playedOutUntilNextArrivalUs, drainedOverHorizonUs) / bufferedDurationUs);
+  }
+
+  private long getExpectedTimeUntilNextArrivalUs(long nowMs) {
+    if (lastArrivalMs == C.TIME_UNSET || smoothedArrivalIntervalUs == C.TIME_UNSET) {
+      return C.TIME_UNSET;
+    }
+    long expectedArrivalIntervalUs =
+        smoothedArrivalIntervalUs + 2 * smoothedArrivalIntervalDeviationUs;
+    return expectedArrivalIntervalUs - Util.msToUs(nowMs - lastArrivalMs);
+  }
+
+  private static long smooth(long smoothedValue, long newValue, float smoothingFactor) {
+    return (long) (smoothingFactor * smoothedValue + (1f - smoothingFactor) * newValue);
+  }
+}
@@ -276,8 +276,10 @@ public final class DefaultAudioSink implements AudioSink {
     /**
      * Sets whether to enable 32-bit float output or integer output. Where possible, 32-bit float
      * output will be used if the input is 32-bit float, and also if the input is high resolution
-     * (24-bit or 32-bit) integer PCM. Float output is supported from API level 21. Audio processing
-     * (for example, speed adjustment) will not be available when float output is in use.
+     * (24-bit or 32-bit) integer PCM. Float output is supported from API level 21. When float
+     * output is in use, speed and pitch adjustment are applied by a float {@link
+     * SonicAudioProcessor}, but the {@link AudioProcessorChain} (including silence skipping) is
+     * not applied. Gapless trimming and channel mapping are also not applied to float output.
      *
      * <p>The default value is {@code false}.
      */
@@ -459,10 +461,10 @@ public final class DefaultAudioSink implements AudioSink {
   private final AudioCapabilities audioCapabilities;
   private final com.google.android.exoplayer2.audio.AudioProcessorChain audioProcessorChain;
   private final boolean enableFloatOutput;
-  private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
-  private final TrimmingAudioProcessor trimmingAudioProcessor;
+  private final FusedPcmAudioProcessor fusedPcmAudioProcessor;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
   private final AudioProcessor[] toFloatPcmAvailableAudioProcessors;
+  private final SonicAudioProcessor floatPcmSonicAudioProcessor;
   private final ConditionVariable releasingConditionVariable;
   private final AudioTrackPositionTracker audioTrackPositionTracker;
   private final ArrayDeque<MediaPositionParameters> mediaPositionParametersCheckpoints;
@@ -605,17 +607,18 @@ public final class DefaultAudioSink implements AudioSink {
     releasingConditionVariable = new ConditionVariable(Clock.DEFAULT);
     releasingConditionVariable.open();
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
-    channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
-    trimmingAudioProcessor = new TrimmingAudioProcessor();
+    // Converting to 16-bit PCM, channel mapping and trimming are fused into a single processor,
+    // so that each sample is copied once rather than once per step.
+    fusedPcmAudioProcessor = new FusedPcmAudioProcessor();
     ArrayList<AudioProcessor> toIntPcmAudioProcessors = new ArrayList<>();
-    Collections.addAll(
-        toIntPcmAudioProcessors,
-        new ResamplingAudioProcessor(),
-        channelMappingAudioProcessor,
-        trimmingAudioProcessor);
+    toIntPcmAudioProcessors.add(fusedPcmAudioProcessor);
     Collections.addAll(toIntPcmAudioProcessors, audioProcessorChain.getAudioProcessors());
     toIntPcmAvailableAudioProcessors = toIntPcmAudioProcessors.toArray(new AudioProcessor[0]);
-    toFloatPcmAvailableAudioProcessors = new AudioProcessor[] {new FloatResamplingAudioProcessor()};
+    // Float PCM bypasses the audio processor chain, since custom chains may only handle 16-bit PCM,
+    // so speed and pitch adjustment are applied by a dedicated Sonic that keeps samples as floats.
+    floatPcmSonicAudioProcessor = new SonicAudioProcessor(/* floatPcmEnabled= */ true);
+    toFloatPcmAvailableAudioProcessors =
+        new AudioProcessor[] {new FloatResamplingAudioProcessor(), floatPcmSonicAudioProcessor};
     volume = 1f;
     audioAttributes = AudioAttributes.DEFAULT;
     audioSessionId = C.AUDIO_SESSION_ID_UNSET;
@@ -710,7 +713,7 @@ public final class DefaultAudioSink implements AudioSink {
               ? toFloatPcmAvailableAudioProcessors
               : toIntPcmAvailableAudioProcessors;
 
-      trimmingAudioProcessor.setTrimFrameCount(
+      fusedPcmAudioProcessor.setTrimFrameCount(
           inputFormat.encoderDelay, inputFormat.encoderPadding);
 
       if (Util.SDK_INT < 21 && inputFormat.channelCount == 8 && outputChannels == null) {
@@ -721,7 +724,7 @@ public final class DefaultAudioSink implements AudioSink {
           outputChannels[i] = i;
         }
       }
-      channelMappingAudioProcessor.setChannelMap(outputChannels);
+      fusedPcmAudioProcessor.setChannelMap(outputChannels);
 
       AudioProcessor.AudioFormat outputFormat =
           new AudioProcessor.AudioFormat(
@@ -992,7 +995,7 @@ public final class DefaultAudioSink implements AudioSink {
       long expectedPresentationTimeUs =
           startMediaTimeUs
               + configuration.inputFramesToDurationUs(
-                  getSubmittedFrames() - trimmingAudioProcessor.getTrimmedFrameCount());
+                  getSubmittedFrames() - fusedPcmAudioProcessor.getTrimmedFrameCount());
       if (!startMediaTimeUsNeedsSync
           && Math.abs(expectedPresentationTimeUs - presentationTimeUs) > 200000) {
         if (listener != null) {
@@ -1526,7 +1529,7 @@ public final class DefaultAudioSink implements AudioSink {
     drainingAudioProcessorIndex = C.INDEX_UNSET;
     avSyncHeader = null;
     bytesUntilNextAvSync = 0;
-    trimmingAudioProcessor.resetTrimmedFrameCount();
+    fusedPcmAudioProcessor.resetTrimmedFrameCount();
     flushAudioProcessors();
   }
 
@@ -1590,14 +1593,21 @@ public final class DefaultAudioSink implements AudioSink {
   }
 
   private void applyAudioProcessorPlaybackParametersAndSkipSilence(long presentationTimeUs) {
-    PlaybackParameters playbackParameters =
-        shouldApplyAudioProcessorPlaybackParameters()
-            ? audioProcessorChain.applyPlaybackParameters(getAudioProcessorPlaybackParameters())
-            : PlaybackParameters.DEFAULT;
-    boolean skipSilenceEnabled =
-        shouldApplyAudioProcessorPlaybackParameters()
-            ? audioProcessorChain.applySkipSilenceEnabled(getSkipSilenceEnabled())
-            : DEFAULT_SKIP_SILENCE;
+    PlaybackParameters playbackParameters;
+    boolean skipSilenceEnabled;
+    if (shouldApplyAudioProcessorPlaybackParameters()) {
+      playbackParameters =
+          audioProcessorChain.applyPlaybackParameters(getAudioProcessorPlaybackParameters());
+      skipSilenceEnabled = audioProcessorChain.applySkipSilenceEnabled(getSkipSilenceEnabled());
+    } else if (shouldApplyFloatPcmPlaybackParameters()) {
+      playbackParameters = getAudioProcessorPlaybackParameters();
+      floatPcmSonicAudioProcessor.setSpeed(playbackParameters.speed);
+      floatPcmSonicAudioProcessor.setPitch(playbackParameters.pitch);
+      skipSilenceEnabled = DEFAULT_SKIP_SILENCE;
+    } else {
+      playbackParameters = PlaybackParameters.DEFAULT;
+      skipSilenceEnabled = DEFAULT_SKIP_SILENCE;
+    }
     mediaPositionParametersCheckpoints.add(
         new MediaPositionParameters(
             playbackParameters,
@@ -1621,12 +1631,23 @@ public final class DefaultAudioSink implements AudioSink {
     //   https://github.com/google/ExoPlayer/issues/4803);
     // - when playing encoded audio via passthrough/offload, because modifying the audio stream
     //   would require decoding/re-encoding; and
-    // - when outputting float PCM audio, because SonicAudioProcessor outputs 16-bit integer PCM.
+    // - when outputting float PCM audio, because the audio processor chain is only applied to
+    //   16-bit integer PCM. Speed and pitch are adjusted by floatPcmSonicAudioProcessor instead.
     return !tunneling
         && MimeTypes.AUDIO_RAW.equals(configuration.inputFormat.sampleMimeType)
         && !shouldUseFloatOutput(configuration.inputFormat.pcmEncoding);
   }
 
+  /**
+   * Returns whether playback parameters should be applied by {@link #floatPcmSonicAudioProcessor}
+   * in the current configuration.
+   */
+  private boolean shouldApplyFloatPcmPlaybackParameters() {
+    return !tunneling
+        && MimeTypes.AUDIO_RAW.equals(configuration.inputFormat.sampleMimeType)
+        && shouldUseFloatOutput(configuration.inputFormat.pcmEncoding);
+  }
+
   /**
    * Returns whether audio in the specified PCM encoding should be written to the audio track as
    * float PCM.
@@ -1654,7 +1675,9 @@ public final class DefaultAudioSink implements AudioSink {
       return mediaPositionParameters.mediaTimeUs + playoutDurationSinceLastCheckpointUs;
     } else if (mediaPositionParametersCheckpoints.isEmpty()) {
       long mediaDurationSinceLastCheckpointUs =
-          audioProcessorChain.getMediaDuration(playoutDurationSinceLastCheckpointUs);
+          shouldApplyFloatPcmPlaybackParameters()
+              ? floatPcmSonicAudioProcessor.getMediaDuration(playoutDurationSinceLastCheckpointUs)
+              : audioProcessorChain.getMediaDuration(playoutDurationSinceLastCheckpointUs);
       return mediaPositionParameters.mediaTimeUs + mediaDurationSinceLastCheckpointUs;
     } else {
       // The processor chain has been configured with new parameters, but we're still playing audio
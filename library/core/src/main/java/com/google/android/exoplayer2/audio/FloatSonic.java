@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ * Copyright (C) 2010 Bill Cox, Sonic Library
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.util.Assertions;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Sonic audio stream processor for time/pitch stretching of 32-bit floating point audio.
+ *
+ * <p>This is a variant of {@link Sonic} that keeps samples as floats, so float input doesn't lose
+ * precision. It's also optimized for multichannel audio:
+ *
+ * <ul>
+ *   <li>The pitch period search mixes the channels down once per search, and then searches a
+ *       decimated copy of the mix before refining the result at the full sample rate. The cost of
+ *       the search is therefore almost independent of the channel count.
+ *   <li>Overlap-add and interpolation process whole frames at a time.
+ *   <li>Consumed input and output is tracked with read positions rather than being removed from the
+ *       buffers after each call, and the buffers are only compacted when they run out of space. The
+ *       buffers stop growing once they can hold the largest input, so processing a stream doesn't
+ *       allocate.
+ * </ul>
+ *
+ * <p>Based on https://github.com/waywardgeek/sonic.
+ */
+/* package */ final class FloatSonic {
+
+  private static final int MINIMUM_PITCH = 65;
+  private static final int MAXIMUM_PITCH = 400;
+  private static final int AMDF_FREQUENCY = 4000;
+  private static final int BYTES_PER_SAMPLE = 4;
+
+  private final int inputSampleRateHz;
+  private final int channelCount;
+  private final float speed;
+  private final float pitch;
+  private final float rate;
+  private final int minPeriod;
+  private final int maxPeriod;
+  private final int maxRequiredFrameCount;
+  private final int skip;
+  private final float[] mixBuffer;
+  private final float[] downSampleBuffer;
+
+  private float[] inputBuffer;
+  private int inputStartFrame;
+  private int inputEndFrame;
+  private float[] outputBuffer;
+  private int outputStartFrame;
+  private int outputEndFrame;
+  private float[] pitchBuffer;
+  private int pitchFrameCount;
+  private int oldRatePosition;
+  private int newRatePosition;
+  private int remainingInputToCopyFrameCount;
+  private int prevPeriod;
+  private float prevMinDiff;
+  private float minDiff;
+  private float maxDiff;
+
+  /**
+   * Creates a new float Sonic audio stream processor.
+   *
+   * @param inputSampleRateHz The sample rate of input audio, in hertz.
+   * @param channelCount The number of channels in the input audio.
+   * @param speed The speedup factor for output audio.
+   * @param pitch The pitch factor for output audio.
+   * @param outputSampleRateHz The sample rate for output audio, in hertz.
+   */
+  public FloatSonic(
+      int inputSampleRateHz, int channelCount, float speed, float pitch, int outputSampleRateHz) {
+    this.inputSampleRateHz = inputSampleRateHz;
+    this.channelCount = channelCount;
+    this.speed = speed;
+    this.pitch = pitch;
+    rate = (float) inputSampleRateHz / outputSampleRateHz;
+    minPeriod = inputSampleRateHz / MAXIMUM_PITCH;
+    maxPeriod = inputSampleRateHz / MINIMUM_PITCH;
+    maxRequiredFrameCount = 2 * maxPeriod;
+    skip = inputSampleRateHz > AMDF_FREQUENCY ? inputSampleRateHz / AMDF_FREQUENCY : 1;
+    mixBuffer = new float[maxRequiredFrameCount];
+    downSampleBuffer = new float[maxRequiredFrameCount / skip];
+    inputBuffer = new float[2 * maxRequiredFrameCount * channelCount];
+    outputBuffer = new float[2 * maxRequiredFrameCount * channelCount];
+    pitchBuffer = new float[maxRequiredFrameCount * channelCount];
+  }
+
+  /**
+   * Returns the number of bytes that have been input, but will not be processed until more input
+   * data is provided.
+   */
+  public int getPendingInputBytes() {
+    return (inputEndFrame - inputStartFrame) * channelCount * BYTES_PER_SAMPLE;
+  }
+
+  /**
+   * Queues remaining data from {@code buffer}, and advances its position by the number of samples
+   * consumed.
+   *
+   * @param buffer A {@link FloatBuffer} containing input data between its position and limit.
+   */
+  public void queueInput(FloatBuffer buffer) {
+    int framesToWrite = buffer.remaining() / channelCount;
+    ensureInputSpaceForAdditionalFrames(framesToWrite);
+    buffer.get(inputBuffer, inputEndFrame * channelCount, framesToWrite * channelCount);
+    inputEndFrame += framesToWrite;
+    processStreamInput();
+  }
+
+  /**
+   * Gets available output, outputting to the start of {@code buffer}. The buffer's position will be
+   * advanced by the number of samples written.
+   *
+   * @param buffer A {@link FloatBuffer} into which output will be written.
+   */
+  public void getOutput(FloatBuffer buffer) {
+    int framesToRead = min(buffer.remaining() / channelCount, outputEndFrame - outputStartFrame);
+    buffer.put(outputBuffer, outputStartFrame * channelCount, framesToRead * channelCount);
+    outputStartFrame += framesToRead;
+    if (outputStartFrame == outputEndFrame) {
+      outputStartFrame = 0;
+      outputEndFrame = 0;
+    }
+  }
+
+  /**
+   * Forces generating output using whatever data has been queued already. No extra delay will be
+   * added to the output, but flushing in the middle of words could introduce distortion.
+   */
+  public void queueEndOfStream() {
+    int remainingFrameCount = inputEndFrame - inputStartFrame;
+    float s = speed / pitch;
+    float r = rate * pitch;
+    int expectedOutputFrames =
+        outputEndFrame
+            - outputStartFrame
+            + (int) ((remainingFrameCount / s + pitchFrameCount) / r + 0.5f);
+
+    // Add enough silence to flush both input and pitch buffers.
+    int silenceFrameCount = 2 * maxRequiredFrameCount;
+    ensureInputSpaceForAdditionalFrames(silenceFrameCount);
+    Arrays.fill(
+        inputBuffer,
+        inputEndFrame * channelCount,
+        (inputEndFrame + silenceFrameCount) * channelCount,
+        0f);
+    inputEndFrame += silenceFrameCount;
+    processStreamInput();
+    // Throw away any extra frames we generated due to the silence we added.
+    if (outputEndFrame - outputStartFrame > expectedOutputFrames) {
+      outputEndFrame = outputStartFrame + expectedOutputFrames;
+    }
+    // Empty input and pitch buffers.
+    inputStartFrame = 0;
+    inputEndFrame = 0;
+    remainingInputToCopyFrameCount = 0;
+    pitchFrameCount = 0;
+  }
+
+  /** Clears state in preparation for receiving a new stream of input buffers. */
+  public void flush() {
+    inputStartFrame = 0;
+    inputEndFrame = 0;
+    outputStartFrame = 0;
+    outputEndFrame = 0;
+    pitchFrameCount = 0;
+    oldRatePosition = 0;
+    newRatePosition = 0;
+    remainingInputToCopyFrameCount = 0;
+    prevPeriod = 0;
+    prevMinDiff = 0;
+    minDiff = 0;
+    maxDiff = 0;
+  }
+
+  /** Returns the size of output that can be read with {@link #getOutput(FloatBuffer)}, in bytes. */
+  public int getOutputSize() {
+    return (outputEndFrame - outputStartFrame) * channelCount * BYTES_PER_SAMPLE;
+  }
+
+  // Internal methods.
+
+  private void ensureInputSpaceForAdditionalFrames(int additionalFrameCount) {
+    if ((inputEndFrame + additionalFrameCount) * channelCount <= inputBuffer.length) {
+      return;
+    }
+    int frameCount = inputEndFrame - inputStartFrame;
+    inputBuffer = compact(inputBuffer, inputStartFrame, frameCount, additionalFrameCount);
+    inputStartFrame = 0;
+    inputEndFrame = frameCount;
+  }
+
+  private void ensureOutputSpaceForAdditionalFrames(int additionalFrameCount) {
+    if ((outputEndFrame + additionalFrameCount) * channelCount <= outputBuffer.length) {
+      return;
+    }
+    int frameCount = outputEndFrame - outputStartFrame;
+    outputBuffer = compact(outputBuffer, outputStartFrame, frameCount, additionalFrameCount);
+    outputStartFrame = 0;
+    outputEndFrame = frameCount;
+  }
+
+  /**
+   * Moves {@code frameCount} frames starting at {@code startFrame} to the start of {@code buffer},
+   * or to a larger copy of it if needed to store {@code additionalFrameCount} more frames, and
+   * returns the buffer holding the frames.
+   */
+  private float[] compact(
+      float[] buffer, int startFrame, int frameCount, int additionalFrameCount) {
+    int capacityFrames = buffer.length / channelCount;
+    float[] newBuffer =
+        frameCount + additionalFrameCount <= capacityFrames
+            ? buffer
+            : new float[(3 * capacityFrames / 2 + additionalFrameCount) * channelCount];
+    System.arraycopy(
+        buffer, startFrame * channelCount, newBuffer, /* destPos= */ 0, frameCount * channelCount);
+    return newBuffer;
+  }
+
+  private void copyToOutput(float[] samples, int positionFrames, int frameCount) {
+    ensureOutputSpaceForAdditionalFrames(frameCount);
+    System.arraycopy(
+        samples,
+        positionFrames * channelCount,
+        outputBuffer,
+        outputEndFrame * channelCount,
+        frameCount * channelCount);
+    outputEndFrame += frameCount;
+  }
+
+  private int copyInputToOutput(int positionFrames) {
+    int frameCount = min(maxRequiredFrameCount, remainingInputToCopyFrameCount);
+    copyToOutput(inputBuffer, positionFrames, frameCount);
+    remainingInputToCopyFrameCount -= frameCount;
+    return frameCount;
+  }
+
+  /**
+   * Mixes the channels of the {@code maxRequiredFrameCount} input frames from {@code
+   * positionFrames} into {@link #mixBuffer}, and averages each {@link #skip} mixed samples into
+   * {@link #downSampleBuffer}.
+   */
+  private void mixAndDownSampleInput(int positionFrames) {
+    float[] inputBuffer = this.inputBuffer;
+    int channelCount = this.channelCount;
+    int position = positionFrames * channelCount;
+    if (channelCount == 1) {
+      System.arraycopy(inputBuffer, position, mixBuffer, /* destPos= */ 0, maxRequiredFrameCount);
+    } else {
+      float scale = 1f / channelCount;
+      for (int i = 0; i < maxRequiredFrameCount; i++) {
+        float value = 0;
+        for (int j = 0; j < channelCount; j++) {
+          value += inputBuffer[position++];
+        }
+        mixBuffer[i] = value * scale;
+      }
+    }
+    if (skip > 1) {
+      float scale = 1f / skip;
+      int mixPosition = 0;
+      for (int i = 0; i < downSampleBuffer.length; i++) {
+        float value = 0;
+        for (int j = 0; j < skip; j++) {
+          value += mixBuffer[mixPosition++];
+        }
+        downSampleBuffer[i] = value * scale;
+      }
+    }
+  }
+
+  /**
+   * Returns the period in the range that minimizes the average magnitude difference between {@code
+   * samples} and the samples one period later, and records the minimum and maximum differences.
+   */
+  private int findPitchPeriodInRange(float[] samples, int minPeriod, int maxPeriod) {
+    int bestPeriod = 0;
+    int worstPeriod = 255;
+    float minDiff = 1;
+    float maxDiff = 0;
+    for (int period = minPeriod; period <= maxPeriod; period++) {
+      float diff = 0;
+      for (int i = 0; i < period; i++) {
+        diff += Math.abs(samples[i] - samples[period + i]);
+      }
+      if (diff * bestPeriod < minDiff * period) {
+        minDiff = diff;
+        bestPeriod = period;
+      }
+      if (diff * worstPeriod > maxDiff * period) {
+        maxDiff = diff;
+        worstPeriod = period;
+      }
+    }
+    this.minDiff = minDiff / bestPeriod;
+    this.maxDiff = maxDiff / worstPeriod;
+    return bestPeriod;
+  }
+
+  /**
+   * Returns whether the previous pitch period estimate is a better approximation, which can occur
+   * at the abrupt end of voiced words.
+   */
+  private boolean previousPeriodBetter(float minDiff, float maxDiff) {
+    if (minDiff == 0 || prevPeriod == 0) {
+      return false;
+    }
+    if (maxDiff > minDiff * 3) {
+      // Got a reasonable match this period.
+      return false;
+    }
+    if (minDiff * 2 <= prevMinDiff * 3) {
+      // Mismatch is not that much greater this period.
+      return false;
+    }
+    return true;
+  }
+
+  private int findPitchPeriod(int positionFrames) {
+    // Find a coarse estimate of the period in the decimated mix, and then refine it at the full
+    // sample rate in a narrow range around the estimate.
+    mixAndDownSampleInput(positionFrames);
+    int period;
+    if (skip == 1) {
+      period = findPitchPeriodInRange(mixBuffer, minPeriod, maxPeriod);
+    } else {
+      period = skip * findPitchPeriodInRange(downSampleBuffer, minPeriod / skip, maxPeriod / skip);
+      period =
+          findPitchPeriodInRange(
+              mixBuffer, max(minPeriod, period - 4 * skip), min(maxPeriod, period + 4 * skip));
+    }
+    int retPeriod = previousPeriodBetter(minDiff, maxDiff) ? prevPeriod : period;
+    prevMinDiff = minDiff;
+    prevPeriod = period;
+    return retPeriod;
+  }
+
+  private void moveNewSamplesToPitchBuffer(int originalOutputFrameCount) {
+    int originalOutputEndFrame = outputStartFrame + originalOutputFrameCount;
+    int frameCount = outputEndFrame - originalOutputEndFrame;
+    if ((pitchFrameCount + frameCount) * channelCount > pitchBuffer.length) {
+      pitchBuffer =
+          Arrays.copyOf(
+              pitchBuffer, (3 * pitchBuffer.length / channelCount / 2 + frameCount) * channelCount);
+    }
+    System.arraycopy(
+        outputBuffer,
+        originalOutputEndFrame * channelCount,
+        pitchBuffer,
+        pitchFrameCount * channelCount,
+        frameCount * channelCount);
+    outputEndFrame = originalOutputEndFrame;
+    pitchFrameCount += frameCount;
+  }
+
+  private void removePitchFrames(int frameCount) {
+    if (frameCount == 0) {
+      return;
+    }
+    System.arraycopy(
+        pitchBuffer,
+        frameCount * channelCount,
+        pitchBuffer,
+        0,
+        (pitchFrameCount - frameCount) * channelCount);
+    pitchFrameCount -= frameCount;
+  }
+
+  private void adjustRate(float rate, int originalOutputFrameCount) {
+    if (outputEndFrame - outputStartFrame == originalOutputFrameCount) {
+      return;
+    }
+    int newSampleRate = (int) (inputSampleRateHz / rate);
+    int oldSampleRate = inputSampleRateHz;
+    // Set these values to help with the integer math.
+    while (newSampleRate > (1 << 14) || oldSampleRate > (1 << 14)) {
+      newSampleRate /= 2;
+      oldSampleRate /= 2;
+    }
+    moveNewSamplesToPitchBuffer(originalOutputFrameCount);
+    // Leave at least one pitch sample in the buffer.
+    for (int position = 0; position < pitchFrameCount - 1; position++) {
+      while ((oldRatePosition + 1) * newSampleRate > newRatePosition * oldSampleRate) {
+        ensureOutputSpaceForAdditionalFrames(/* additionalFrameCount= */ 1);
+        int rightPosition = (oldRatePosition + 1) * newSampleRate;
+        int ratio = rightPosition - newRatePosition * oldSampleRate;
+        int width = rightPosition - oldRatePosition * newSampleRate;
+        float leftWeight = (float) ratio / width;
+        float rightWeight = 1 - leftWeight;
+        int left = position * channelCount;
+        int right = left + channelCount;
+        int out = outputEndFrame * channelCount;
+        for (int i = 0; i < channelCount; i++) {
+          outputBuffer[out + i] =
+              leftWeight * pitchBuffer[left + i] + rightWeight * pitchBuffer[right + i];
+        }
+        newRatePosition++;
+        outputEndFrame++;
+      }
+      oldRatePosition++;
+      if (oldRatePosition == oldSampleRate) {
+        oldRatePosition = 0;
+        Assertions.checkState(newRatePosition == newSampleRate);
+        newRatePosition = 0;
+      }
+    }
+    removePitchFrames(pitchFrameCount - 1);
+  }
+
+  private int skipPitchPeriod(int positionFrames, float speed, int period) {
+    // Skip over a pitch period, and copy period/speed samples to the output.
+    int newFrameCount;
+    if (speed >= 2.0f) {
+      newFrameCount = (int) (period / (speed - 1.0f));
+    } else {
+      newFrameCount = period;
+      remainingInputToCopyFrameCount = (int) (period * (2.0f - speed) / (speed - 1.0f));
+    }
+    ensureOutputSpaceForAdditionalFrames(newFrameCount);
+    overlapAdd(newFrameCount, outputEndFrame, positionFrames, positionFrames + period);
+    outputEndFrame += newFrameCount;
+    return newFrameCount;
+  }
+
+  private int insertPitchPeriod(int positionFrames, float speed, int period) {
+    // Insert a pitch period, and determine how much input to copy directly.
+    int newFrameCount;
+    if (speed < 0.5f) {
+      newFrameCount = (int) (period * speed / (1.0f - speed));
+    } else {
+      newFrameCount = period;
+      remainingInputToCopyFrameCount = (int) (period * (2.0f * speed - 1.0f) / (1.0f - speed));
+    }
+    ensureOutputSpaceForAdditionalFrames(period + newFrameCount);
+    System.arraycopy(
+        inputBuffer,
+        positionFrames * channelCount,
+        outputBuffer,
+        outputEndFrame * channelCount,
+        period * channelCount);
+    overlapAdd(newFrameCount, outputEndFrame + period, positionFrames + period, positionFrames);
+    outputEndFrame += period + newFrameCount;
+    return newFrameCount;
+  }
+
+  private void changeSpeed(float speed) {
+    if (inputEndFrame - inputStartFrame < maxRequiredFrameCount) {
+      return;
+    }
+    int positionFrames = inputStartFrame;
+    do {
+      if (remainingInputToCopyFrameCount > 0) {
+        positionFrames += copyInputToOutput(positionFrames);
+      } else {
+        int period = findPitchPeriod(positionFrames);
+        if (speed > 1.0) {
+          positionFrames += period + skipPitchPeriod(positionFrames, speed, period);
+        } else {
+          positionFrames += insertPitchPeriod(positionFrames, speed, period);
+        }
+      }
+    } while (positionFrames + maxRequiredFrameCount <= inputEndFrame);
+    inputStartFrame = positionFrames;
+    if (inputStartFrame == inputEndFrame) {
+      inputStartFrame = 0;
+      inputEndFrame = 0;
+    }
+  }
+
+  private void processStreamInput() {
+    // Resample as many pitch periods as we have buffered on the input.
+    int originalOutputFrameCount = outputEndFrame - outputStartFrame;
+    float s = speed / pitch;
+    float r = rate * pitch;
+    if (s > 1.00001 || s < 0.99999) {
+      changeSpeed(s);
+    } else {
+      copyToOutput(inputBuffer, inputStartFrame, inputEndFrame - inputStartFrame);
+      inputStartFrame = 0;
+      inputEndFrame = 0;
+    }
+    if (r != 1.0f) {
+      adjustRate(r, originalOutputFrameCount);
+    }
+  }
+
+  /**
+   * Writes {@code frameCount} frames to the output from {@code outputFrame}, fading out the input
+   * from {@code rampDownFrame} while fading in the input from {@code rampUpFrame}.
+   */
+  private void overlapAdd(int frameCount, int outputFrame, int rampDownFrame, int rampUpFrame) {
+    float[] inputBuffer = this.inputBuffer;
+    float[] outputBuffer = this.outputBuffer;
+    int channelCount = this.channelCount;
+    int o = outputFrame * channelCount;
+    int d = rampDownFrame * channelCount;
+    int u = rampUpFrame * channelCount;
+    float step = 1f / frameCount;
+    for (int t = 0; t < frameCount; t++) {
+      float rampUpWeight = t * step;
+      float rampDownWeight = 1 - rampUpWeight;
+      for (int i = 0; i < channelCount; i++) {
+        outputBuffer[o + i] =
+            inputBuffer[d + i] * rampDownWeight + inputBuffer[u + i] * rampUpWeight;
+      }
+      o += channelCount;
+      d += channelCount;
+      u += channelCount;
+    }
+  }
+}
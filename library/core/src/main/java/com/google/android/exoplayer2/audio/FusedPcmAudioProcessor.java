@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An {@link AudioProcessor} that converts PCM audio to 16-bit integer PCM, applies a channel
+ * mapping and trims frames from the start and end of the audio, in a single pass over the input.
+ *
+ * <p>The output is the same as that of a {@link ResamplingAudioProcessor} followed by a {@link
+ * ChannelMappingAudioProcessor} and a {@link TrimmingAudioProcessor}, but each sample is copied
+ * once instead of once per processor. Frames that are trimmed from the start are skipped without
+ * being read. If the input is already 16-bit PCM and no channel mapping is needed, frames are
+ * copied in bulk.
+ *
+ * <p>The following encodings are supported as input:
+ *
+ * <ul>
+ *   <li>{@link C#ENCODING_PCM_8BIT}
+ *   <li>{@link C#ENCODING_PCM_16BIT}
+ *   <li>{@link C#ENCODING_PCM_16BIT_BIG_ENDIAN}
+ *   <li>{@link C#ENCODING_PCM_24BIT}
+ *   <li>{@link C#ENCODING_PCM_32BIT}
+ *   <li>{@link C#ENCODING_PCM_FLOAT}
+ * </ul>
+ */
+/* package */ final class FusedPcmAudioProcessor extends BaseAudioProcessor {
+
+  private static final @C.PcmEncoding int OUTPUT_ENCODING = C.ENCODING_PCM_16BIT;
+
+  @Nullable private int[] pendingOutputChannels;
+  private int trimStartFrames;
+  private int trimEndFrames;
+
+  private boolean reconfigurationPending;
+  private int[] pendingChannelMap;
+  private int[] sampleOffsets;
+  private boolean copyFrames;
+
+  private int pendingTrimStartFrames;
+  private ByteBuffer endBuffer;
+  private long trimmedFrameCount;
+
+  /** Creates a new instance. */
+  public FusedPcmAudioProcessor() {
+    pendingChannelMap = new int[0];
+    sampleOffsets = new int[0];
+    endBuffer = ByteBuffer.allocate(0);
+  }
+
+  /**
+   * Resets the channel mapping. After calling this method, call {@link #configure(AudioFormat)} to
+   * start using the new channel map.
+   *
+   * <p>See {@link AudioSink#configure(Format, int, int[])}.
+   *
+   * @param outputChannels The mapping from input to output channel indices, or {@code null} to
+   *     leave the input unchanged.
+   */
+  public void setChannelMap(@Nullable int[] outputChannels) {
+    pendingOutputChannels = outputChannels;
+  }
+
+  /**
+   * Sets the number of audio frames to trim from the start and end of audio passed to this
+   * processor. After calling this method, call {@link #configure(AudioFormat)} to apply the new
+   * trimming frame counts.
+   *
+   * <p>See {@link AudioSink#configure(Format, int, int[])}.
+   *
+   * @param trimStartFrames The number of audio frames to trim from the start of audio.
+   * @param trimEndFrames The number of audio frames to trim from the end of audio.
+   */
+  public void setTrimFrameCount(int trimStartFrames, int trimEndFrames) {
+    this.trimStartFrames = trimStartFrames;
+    this.trimEndFrames = trimEndFrames;
+  }
+
+  /** Sets the trimmed frame count returned by {@link #getTrimmedFrameCount()} to zero. */
+  public void resetTrimmedFrameCount() {
+    trimmedFrameCount = 0;
+  }
+
+  /**
+   * Returns the number of audio frames trimmed since the last call to {@link
+   * #resetTrimmedFrameCount()}.
+   */
+  public long getTrimmedFrameCount() {
+    return trimmedFrameCount;
+  }
+
+  @Override
+  @CanIgnoreReturnValue
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    @C.PcmEncoding int encoding = inputAudioFormat.encoding;
+    if (encoding != C.ENCODING_PCM_8BIT
+        && encoding != C.ENCODING_PCM_16BIT
+        && encoding != C.ENCODING_PCM_16BIT_BIG_ENDIAN
+        && encoding != C.ENCODING_PCM_24BIT
+        && encoding != C.ENCODING_PCM_32BIT
+        && encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+
+    @Nullable int[] outputChannels = pendingOutputChannels;
+    int channelCount = inputAudioFormat.channelCount;
+    int[] channelMap;
+    boolean mapChannels;
+    if (outputChannels == null) {
+      channelMap = new int[channelCount];
+      for (int i = 0; i < channelCount; i++) {
+        channelMap[i] = i;
+      }
+      mapChannels = false;
+    } else {
+      channelMap = outputChannels.clone();
+      mapChannels = channelCount != outputChannels.length;
+      for (int i = 0; i < outputChannels.length; i++) {
+        int channelIndex = outputChannels[i];
+        if (channelIndex >= channelCount) {
+          throw new UnhandledAudioFormatException(inputAudioFormat);
+        }
+        mapChannels |= (channelIndex != i);
+      }
+    }
+    pendingChannelMap = channelMap;
+    reconfigurationPending = true;
+
+    boolean active =
+        encoding != OUTPUT_ENCODING || mapChannels || trimStartFrames != 0 || trimEndFrames != 0;
+    return active
+        ? new AudioFormat(inputAudioFormat.sampleRate, channelMap.length, OUTPUT_ENCODING)
+        : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int frameCount = inputBuffer.remaining() / inputAudioFormat.bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+
+    // Skip any pending start frames in the input buffer.
+    int trimFrames = min(frameCount, pendingTrimStartFrames);
+    trimmedFrameCount += trimFrames;
+    pendingTrimStartFrames -= trimFrames;
+    inputBuffer.position(inputBuffer.position() + trimFrames * inputAudioFormat.bytesPerFrame);
+    if (pendingTrimStartFrames > 0) {
+      // Nothing to output yet.
+      return;
+    }
+    frameCount -= trimFrames;
+
+    // endBuffer must be kept as full as possible, so that we trim the right amount of media if we
+    // don't receive any more input. The output is any surplus frames in endBuffer followed by any
+    // surplus frames in the new input.
+    int bytesPerFrame = outputAudioFormat.bytesPerFrame;
+    int endBufferFrameCount = endBuffer.position() / bytesPerFrame;
+    int outputFrameCount = endBufferFrameCount + frameCount - endBuffer.capacity() / bytesPerFrame;
+    ByteBuffer buffer = replaceOutputBuffer(max(0, outputFrameCount) * bytesPerFrame);
+
+    // Output from endBuffer, then compact it.
+    int endBufferFramesToOutput = Util.constrainValue(outputFrameCount, 0, endBufferFrameCount);
+    if (endBufferFramesToOutput > 0) {
+      int endBufferSize = endBuffer.position();
+      endBuffer.position(0).limit(endBufferFramesToOutput * bytesPerFrame);
+      buffer.put(endBuffer);
+      endBuffer.limit(endBufferSize);
+      endBuffer.compact();
+    }
+
+    // Output from inputBuffer, then repopulate endBuffer using the rest of the input.
+    int inputFramesToOutput =
+        Util.constrainValue(outputFrameCount - endBufferFramesToOutput, 0, frameCount);
+    convertFrames(inputBuffer, inputFramesToOutput, buffer);
+    convertFrames(inputBuffer, frameCount - inputFramesToOutput, endBuffer);
+
+    buffer.flip();
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    if (super.isEnded() && endBuffer.position() > 0) {
+      // Because audio processors may be drained in the middle of the stream we assume that the
+      // contents of the end buffer need to be output. For gapless transitions, configure will
+      // always be called, so the end buffer is cleared in onQueueEndOfStream.
+      endBuffer.flip();
+      replaceOutputBuffer(endBuffer.remaining()).put(endBuffer).flip();
+      endBuffer.clear();
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && endBuffer.position() == 0;
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    if (reconfigurationPending) {
+      // Trim audio in the end buffer.
+      trimmedFrameCount += endBuffer.position() / outputAudioFormat.bytesPerFrame;
+      endBuffer.clear();
+    }
+  }
+
+  @Override
+  protected void onFlush() {
+    if (reconfigurationPending) {
+      // Flushing activates the new configuration.
+      reconfigurationPending = false;
+      int[] channelMap = pendingChannelMap;
+      int bytesPerSample = inputAudioFormat.bytesPerFrame / inputAudioFormat.channelCount;
+      sampleOffsets = new int[channelMap.length];
+      boolean identityChannelMap = channelMap.length == inputAudioFormat.channelCount;
+      for (int i = 0; i < channelMap.length; i++) {
+        sampleOffsets[i] = channelMap[i] * bytesPerSample;
+        identityChannelMap &= channelMap[i] == i;
+      }
+      copyFrames = inputAudioFormat.encoding == OUTPUT_ENCODING && identityChannelMap;
+      endBuffer =
+          ByteBuffer.allocate(max(0, trimEndFrames * outputAudioFormat.bytesPerFrame))
+              .order(ByteOrder.nativeOrder());
+      pendingTrimStartFrames = trimStartFrames;
+    }
+
+    // Any data in the end buffer should no longer be output if we are playing from a different
+    // position, so discard it and refill the buffer using new input.
+    endBuffer.clear();
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputChannels = null;
+    pendingChannelMap = new int[0];
+    sampleOffsets = new int[0];
+    endBuffer = ByteBuffer.allocate(0);
+  }
+
+  /**
+   * Converts {@code frameCount} frames from the position of {@code input} to 16-bit PCM with the
+   * output channel layout, writing them to {@code output} and advancing the position of {@code
+   * input} past them.
+   */
+  private void convertFrames(ByteBuffer input, int frameCount, ByteBuffer output) {
+    if (frameCount == 0) {
+      return;
+    }
+    int bytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int position = input.position();
+    int limit = position + frameCount * bytesPerFrame;
+    if (copyFrames) {
+      int inputLimit = input.limit();
+      input.limit(limit);
+      output.put(input);
+      input.limit(inputLimit);
+      return;
+    }
+    int[] sampleOffsets = this.sampleOffsets;
+    switch (inputAudioFormat.encoding) {
+      case C.ENCODING_PCM_8BIT:
+        // Shift each byte from [0, 256) to [-128, 128) and scale up.
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            output.putShort((short) (((input.get(frame + offset) & 0xFF) - 128) << 8));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_16BIT:
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            output.putShort(readLittleEndianShort(input, frame + offset));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            int index = frame + offset;
+            output.putShort((short) ((input.get(index) << 8) | (input.get(index + 1) & 0xFF)));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_24BIT:
+        // Drop the least significant byte.
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            output.putShort(readLittleEndianShort(input, frame + offset + 1));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_32BIT:
+        // Drop the two least significant bytes.
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            output.putShort(readLittleEndianShort(input, frame + offset + 2));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_FLOAT:
+        // Floating point values are in the range [-1.0, 1.0], so need to be scaled by
+        // Short.MAX_VALUE. Clamp to avoid integer overflow if they exceed their nominal range.
+        for (int frame = position; frame < limit; frame += bytesPerFrame) {
+          for (int offset : sampleOffsets) {
+            float floatValue =
+                Util.constrainValue(input.getFloat(frame + offset), /* min= */ -1, /* max= */ 1);
+            output.putShort((short) (floatValue * Short.MAX_VALUE));
+          }
+        }
+        break;
+      case C.ENCODING_INVALID:
+      case Format.NO_VALUE:
+      default:
+        // Never happens.
+        throw new IllegalStateException();
+    }
+    input.position(limit);
+  }
+
+  private static short readLittleEndianShort(ByteBuffer buffer, int index) {
+    return (short) ((buffer.get(index) & 0xFF) | (buffer.get(index + 1) << 8));
+  }
+}
@@ -24,10 +24,15 @@ import com.google.android.exoplayer2.util.Util;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 /**
  * An {@link AudioProcessor} that uses the Sonic library to modify audio speed/pitch/sample rate.
+ *
+ * <p>The processor accepts 16-bit integer PCM. If {@linkplain #SonicAudioProcessor(boolean) float
+ * PCM is enabled}, it also accepts 32-bit floating point PCM. The output has the same encoding as
+ * the input.
  */
 public final class SonicAudioProcessor implements AudioProcessor {
 
@@ -43,6 +48,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
    */
   private static final int MIN_BYTES_FOR_DURATION_SCALING_CALCULATION = 1024;
 
+  private final boolean floatPcmEnabled;
+
   private int pendingOutputSampleRate;
   private float speed;
   private float pitch;
@@ -54,15 +61,28 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   private boolean pendingSonicRecreation;
   @Nullable private Sonic sonic;
+  @Nullable private FloatSonic floatSonic;
   private ByteBuffer buffer;
   private ShortBuffer shortBuffer;
+  private FloatBuffer floatBuffer;
   private ByteBuffer outputBuffer;
   private long inputBytes;
   private long outputBytes;
   private boolean inputEnded;
 
-  /** Creates a new Sonic audio processor. */
+  /** Creates a new Sonic audio processor that accepts 16-bit integer PCM. */
   public SonicAudioProcessor() {
+    this(/* floatPcmEnabled= */ false);
+  }
+
+  /**
+   * Creates a new Sonic audio processor.
+   *
+   * @param floatPcmEnabled Whether to also accept {@link C#ENCODING_PCM_FLOAT} input, which is
+   *     output without conversion. Callers enabling this must be able to handle float output.
+   */
+  public SonicAudioProcessor(boolean floatPcmEnabled) {
+    this.floatPcmEnabled = floatPcmEnabled;
     speed = 1f;
     pitch = 1f;
     pendingInputAudioFormat = AudioFormat.NOT_SET;
@@ -71,6 +91,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
   }
@@ -128,7 +149,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
    */
   public long getMediaDuration(long playoutDuration) {
     if (outputBytes >= MIN_BYTES_FOR_DURATION_SCALING_CALCULATION) {
-      long processedInputBytes = inputBytes - checkNotNull(sonic).getPendingInputBytes();
+      long processedInputBytes = inputBytes - getPendingInputBytes();
       return outputAudioFormat.sampleRate == inputAudioFormat.sampleRate
           ? Util.scaleLargeTimestamp(playoutDuration, processedInputBytes, outputBytes)
           : Util.scaleLargeTimestamp(
@@ -143,7 +164,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
   @Override
   @CanIgnoreReturnValue
   public AudioFormat configure(AudioFormat inputAudioFormat) throws UnhandledAudioFormatException {
-    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && (!floatPcmEnabled || inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT)) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
     int outputSampleRateHz =
@@ -152,7 +174,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
             : pendingOutputSampleRate;
     pendingInputAudioFormat = inputAudioFormat;
     pendingOutputAudioFormat =
-        new AudioFormat(outputSampleRateHz, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT);
+        new AudioFormat(
+            outputSampleRateHz, inputAudioFormat.channelCount, inputAudioFormat.encoding);
     pendingSonicRecreation = true;
     return pendingOutputAudioFormat;
   }
@@ -170,11 +193,13 @@ public final class SonicAudioProcessor implements AudioProcessor {
     if (!inputBuffer.hasRemaining()) {
       return;
     }
-    Sonic sonic = checkNotNull(this.sonic);
-    ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
     int inputSize = inputBuffer.remaining();
     inputBytes += inputSize;
-    sonic.queueInput(shortBuffer);
+    if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+      checkNotNull(floatSonic).queueInput(inputBuffer.asFloatBuffer());
+    } else {
+      checkNotNull(sonic).queueInput(inputBuffer.asShortBuffer());
+    }
     inputBuffer.position(inputBuffer.position() + inputSize);
   }
 
@@ -184,27 +209,33 @@ public final class SonicAudioProcessor implements AudioProcessor {
     if (sonic != null) {
       sonic.queueEndOfStream();
     }
+    if (floatSonic != null) {
+      floatSonic.queueEndOfStream();
+    }
     inputEnded = true;
   }
 
   @Override
   public ByteBuffer getOutput() {
-    @Nullable Sonic sonic = this.sonic;
-    if (sonic != null) {
-      int outputSize = sonic.getOutputSize();
-      if (outputSize > 0) {
-        if (buffer.capacity() < outputSize) {
-          buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
-          shortBuffer = buffer.asShortBuffer();
-        } else {
-          buffer.clear();
-          shortBuffer.clear();
-        }
-        sonic.getOutput(shortBuffer);
-        outputBytes += outputSize;
-        buffer.limit(outputSize);
-        outputBuffer = buffer;
+    int outputSize = getOutputSize();
+    if (outputSize > 0) {
+      if (buffer.capacity() < outputSize) {
+        buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
+        shortBuffer = buffer.asShortBuffer();
+        floatBuffer = buffer.asFloatBuffer();
+      } else {
+        buffer.clear();
+        shortBuffer.clear();
+        floatBuffer.clear();
+      }
+      if (floatSonic != null) {
+        floatSonic.getOutput(floatBuffer);
+      } else {
+        checkNotNull(sonic).getOutput(shortBuffer);
       }
+      outputBytes += outputSize;
+      buffer.limit(outputSize);
+      outputBuffer = buffer;
     }
     ByteBuffer outputBuffer = this.outputBuffer;
     this.outputBuffer = EMPTY_BUFFER;
@@ -213,7 +244,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public boolean isEnded() {
-    return inputEnded && (sonic == null || sonic.getOutputSize() == 0);
+    return inputEnded && getOutputSize() == 0;
   }
 
   @Override
@@ -222,15 +253,29 @@ public final class SonicAudioProcessor implements AudioProcessor {
       inputAudioFormat = pendingInputAudioFormat;
       outputAudioFormat = pendingOutputAudioFormat;
       if (pendingSonicRecreation) {
-        sonic =
-            new Sonic(
-                inputAudioFormat.sampleRate,
-                inputAudioFormat.channelCount,
-                speed,
-                pitch,
-                outputAudioFormat.sampleRate);
+        if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+          sonic = null;
+          floatSonic =
+              new FloatSonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        } else {
+          floatSonic = null;
+          sonic =
+              new Sonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        }
       } else if (sonic != null) {
         sonic.flush();
+      } else if (floatSonic != null) {
+        floatSonic.flush();
       }
     }
     outputBuffer = EMPTY_BUFFER;
@@ -249,12 +294,27 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
     pendingSonicRecreation = false;
     sonic = null;
+    floatSonic = null;
     inputBytes = 0;
     outputBytes = 0;
     inputEnded = false;
   }
+
+  private int getPendingInputBytes() {
+    return floatSonic != null
+        ? floatSonic.getPendingInputBytes()
+        : checkNotNull(sonic).getPendingInputBytes();
+  }
+
+  private int getOutputSize() {
+    if (floatSonic != null) {
+      return floatSonic.getOutputSize();
+    }
+    return sonic != null ? sonic.getOutputSize() : 0;
+  }
 }
@@ -37,6 +37,7 @@ import com.google.android.exoplayer2.analytics.PlayerId;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.drm.DrmSession.DrmSessionException;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.OnEventListener;
+import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.util.Log;
@@ -44,15 +45,16 @@ import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -84,6 +86,9 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     private boolean playClearSamplesWithoutKeys;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long sessionKeepaliveMs;
+    private int maxKeepaliveSessionCount;
+    private int maxPreacquiredSessionCount;
+    private boolean shareSessionsByKeyIds;
 
     /**
      * Creates a builder with default values. The default values are:
@@ -98,6 +103,11 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
      *   <li>{@link #setPlayClearSamplesWithoutKeys playClearSamplesWithoutKeys}: {@code false}.
      *   <li>{@link #setLoadErrorHandlingPolicy LoadErrorHandlingPolicy}: {@link
      *       DefaultLoadErrorHandlingPolicy}.
+     *   <li>{@link #setSessionKeepaliveMs sessionKeepaliveMs}: {@link
+     *       #DEFAULT_SESSION_KEEPALIVE_MS}.
+     *   <li>{@link #setMaxKeepaliveSessionCount maxKeepaliveSessionCount}: No limit.
+     *   <li>{@link #setMaxPreacquiredSessionCount maxPreacquiredSessionCount}: No limit.
+     *   <li>{@link #setShareSessionsByKeyIds shareSessionsByKeyIds}: {@code false}.
      * </ul>
      */
     public Builder() {
@@ -107,6 +117,8 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       useDrmSessionsForClearContentTrackTypes = new int[0];
       sessionKeepaliveMs = DEFAULT_SESSION_KEEPALIVE_MS;
+      maxKeepaliveSessionCount = Integer.MAX_VALUE;
+      maxPreacquiredSessionCount = Integer.MAX_VALUE;
     }
 
     /**
@@ -232,6 +244,74 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
       return this;
     }
 
+    /**
+     * Sets the maximum number of {@link DrmSession DrmSessions} to keep alive when they're not in
+     * use.
+     *
+     * <p>When the limit is exceeded, the session that was least recently used is released without
+     * waiting for its {@link #setSessionKeepaliveMs keep-alive time} to elapse. Bounding the
+     * number of warm sessions allows a long keep-alive time to be used when playing a playlist of
+     * protected items, without holding on to the sessions of every item played.
+     *
+     * <p>Defaults to no limit. Has no effect if keep-alive is disabled.
+     *
+     * @param maxKeepaliveSessionCount The maximum number of sessions to keep alive. Must be &gt; 0.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxKeepaliveSessionCount(int maxKeepaliveSessionCount) {
+      checkArgument(maxKeepaliveSessionCount > 0);
+      this.maxKeepaliveSessionCount = maxKeepaliveSessionCount;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of sessions that can be held by {@link DrmSessionReference
+     * DrmSessionReferences} returned from {@link #preacquireSession}.
+     *
+     * <p>Pre-acquiring sessions for upcoming items, for example by passing formats with their known
+     * {@link DrmInitData} to {@link #preacquireSession}, moves license requests off the startup
+     * path of each item. This limit bounds the number of sessions, and therefore license requests,
+     * that pre-acquisition can cause. When it's exceeded, the reference that was pre-acquired
+     * first is released, in the same way as pre-acquired references are released when the device
+     * runs out of sessions.
+     *
+     * <p>Defaults to no limit.
+     *
+     * @param maxPreacquiredSessionCount The maximum number of pre-acquired references holding
+     *     sessions. Must be &gt; 0.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxPreacquiredSessionCount(int maxPreacquiredSessionCount) {
+      checkArgument(maxPreacquiredSessionCount > 0);
+      this.maxPreacquiredSessionCount = maxPreacquiredSessionCount;
+      return this;
+    }
+
+    /**
+     * Sets whether content may use an existing session that was opened for different {@link
+     * SchemeData}, if the session was opened for all of the key ids that the content requires.
+     *
+     * <p>Key ids are only known for content whose {@link SchemeData} are all version 1 PSSH atoms,
+     * which list the key ids they apply to. Other content only uses sessions opened for equal
+     * {@link SchemeData}. Sharing sessions avoids a license request for each item of a playlist
+     * whose items are encrypted with the same keys, but assumes that the license server grants the
+     * same keys and policy for all of them.
+     *
+     * <p>Only applies if {@link #setMultiSession multiSession} is enabled, since otherwise the
+     * manager uses a single session for all content.
+     *
+     * @param shareSessionsByKeyIds Whether content may use an existing session that was opened for
+     *     all of the key ids it requires.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setShareSessionsByKeyIds(boolean shareSessionsByKeyIds) {
+      this.shareSessionsByKeyIds = shareSessionsByKeyIds;
+      return this;
+    }
+
     /** Builds a {@link DefaultDrmSessionManager} instance. */
     public DefaultDrmSessionManager build(MediaDrmCallback mediaDrmCallback) {
       return new DefaultDrmSessionManager(
@@ -243,7 +323,10 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
           useDrmSessionsForClearContentTrackTypes,
           playClearSamplesWithoutKeys,
           loadErrorHandlingPolicy,
-          sessionKeepaliveMs);
+          sessionKeepaliveMs,
+          maxKeepaliveSessionCount,
+          maxPreacquiredSessionCount,
+          shareSessionsByKeyIds);
     }
   }
 
@@ -302,9 +385,14 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final ReferenceCountListenerImpl referenceCountListener;
   private final long sessionKeepaliveMs;
+  private final int maxKeepaliveSessionCount;
+  private final int maxPreacquiredSessionCount;
+  private final boolean shareSessionsByKeyIds;
 
   private final List<DefaultDrmSession> sessions;
+  // Ordered by the time the references acquired their sessions.
   private final Set<PreacquiredSessionReference> preacquiredSessionReferences;
+  // Ordered by the time the sessions were last used.
   private final Set<DefaultDrmSession> keepaliveSessions;
 
   private int prepareCallsCount;
@@ -399,7 +487,10 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
         /* useDrmSessionsForClearContentTrackTypes= */ new int[0],
         /* playClearSamplesWithoutKeys= */ false,
         new DefaultLoadErrorHandlingPolicy(initialDrmRequestRetryCount),
-        DEFAULT_SESSION_KEEPALIVE_MS);
+        DEFAULT_SESSION_KEEPALIVE_MS,
+        /* maxKeepaliveSessionCount= */ Integer.MAX_VALUE,
+        /* maxPreacquiredSessionCount= */ Integer.MAX_VALUE,
+        /* shareSessionsByKeyIds= */ false);
   }
 
   private DefaultDrmSessionManager(
@@ -411,7 +502,10 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
       @C.TrackType int[] useDrmSessionsForClearContentTrackTypes,
       boolean playClearSamplesWithoutKeys,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
-      long sessionKeepaliveMs) {
+      long sessionKeepaliveMs,
+      int maxKeepaliveSessionCount,
+      int maxPreacquiredSessionCount,
+      boolean shareSessionsByKeyIds) {
     checkNotNull(uuid);
     checkArgument(!C.COMMON_PSSH_UUID.equals(uuid), "Use C.CLEARKEY_UUID instead");
     this.uuid = uuid;
@@ -426,9 +520,13 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     referenceCountListener = new ReferenceCountListenerImpl();
     mode = MODE_PLAYBACK;
     sessions = new ArrayList<>();
-    preacquiredSessionReferences = Sets.newIdentityHashSet();
-    keepaliveSessions = Sets.newIdentityHashSet();
+    // Neither class overrides equals, so these sets compare elements by identity.
+    preacquiredSessionReferences = new LinkedHashSet<>();
+    keepaliveSessions = new LinkedHashSet<>();
     this.sessionKeepaliveMs = sessionKeepaliveMs;
+    this.maxKeepaliveSessionCount = maxKeepaliveSessionCount;
+    this.maxPreacquiredSessionCount = maxPreacquiredSessionCount;
+    this.shareSessionsByKeyIds = shareSessionsByKeyIds;
   }
 
   /**
@@ -464,6 +562,11 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     this.offlineLicenseKeySetId = offlineLicenseKeySetId;
   }
 
+  /** Returns whether this manager can acquire multiple simultaneous sessions. */
+  /* package */ boolean isMultiSession() {
+    return multiSession;
+  }
+
   // DrmSessionManager implementation.
 
   @Override
@@ -573,6 +676,9 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
           break;
         }
       }
+      if (session == null && shareSessionsByKeyIds && schemeDatas != null) {
+        session = findSessionWithKeyIds(schemeDatas);
+      }
     }
 
     if (session == null) {
@@ -672,6 +778,29 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     return true;
   }
 
+  /**
+   * Returns a session that was opened for all of the key ids listed by {@code schemeDatas}, or null
+   * if the key ids aren't known or there's no such session.
+   */
+  @Nullable
+  private DefaultDrmSession findSessionWithKeyIds(List<SchemeData> schemeDatas) {
+    @Nullable Set<UUID> keyIds = getKeyIds(schemeDatas);
+    if (keyIds == null || keyIds.isEmpty()) {
+      return null;
+    }
+    for (DefaultDrmSession existingSession : sessions) {
+      if (existingSession.schemeDatas == null
+          || existingSession.getState() == DrmSession.STATE_ERROR) {
+        continue;
+      }
+      @Nullable Set<UUID> existingKeyIds = getKeyIds(existingSession.schemeDatas);
+      if (existingKeyIds != null && existingKeyIds.containsAll(keyIds)) {
+        return existingSession;
+      }
+    }
+    return null;
+  }
+
   @EnsuresNonNull({"this.playbackLooper", "this.playbackHandler"})
   private synchronized void initPlaybackLooper(Looper playbackLooper) {
     if (this.playbackLooper == null) {
@@ -751,6 +880,20 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     }
   }
 
+  private void maybeReleaseLeastRecentlyUsedKeepaliveSession() {
+    if (keepaliveSessions.size() > maxKeepaliveSessionCount) {
+      // Releasing the internal reference removes the session from keepaliveSessions (via callback).
+      keepaliveSessions.iterator().next().release(/* eventDispatcher= */ null);
+    }
+  }
+
+  private void maybeReleaseFirstPreacquiredSession() {
+    if (preacquiredSessionReferences.size() > maxPreacquiredSessionCount) {
+      // Releasing the reference removes it from preacquiredSessionReferences.
+      preacquiredSessionReferences.iterator().next().release();
+    }
+  }
+
   private void releaseAllPreacquiredSessions() {
     // Make a local copy, because sessions are removed from this.preacquiredSessionReferences
     // during release (via callback).
@@ -840,6 +983,24 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
     return matchingSchemeDatas;
   }
 
+  /**
+   * Returns the key ids listed by {@code schemeDatas}, or null if any of them isn't a version 1
+   * PSSH atom.
+   */
+  @Nullable
+  private static Set<UUID> getKeyIds(List<SchemeData> schemeDatas) {
+    Set<UUID> keyIds = new HashSet<>();
+    for (int i = 0; i < schemeDatas.size(); i++) {
+      @Nullable byte[] data = schemeDatas.get(i).data;
+      @Nullable UUID[] schemeDataKeyIds = data != null ? PsshAtomUtil.parseKeyIds(data) : null;
+      if (schemeDataKeyIds == null) {
+        return null;
+      }
+      Collections.addAll(keyIds, schemeDataKeyIds);
+    }
+    return keyIds;
+  }
+
   @SuppressLint("HandlerLeak")
   private class MediaDrmHandler extends Handler {
 
@@ -944,6 +1105,7 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
                 () -> session.release(/* eventDispatcher= */ null),
                 session,
                 /* uptimeMillis= */ SystemClock.uptimeMillis() + sessionKeepaliveMs);
+        maybeReleaseLeastRecentlyUsedKeepaliveSession();
       } else if (newReferenceCount == 0) {
         // This session is fully released.
         sessions.remove(session);
@@ -1021,6 +1183,7 @@ public class DefaultDrmSessionManager implements DrmSessionManager {
                         format,
                         /* shouldReleasePreacquiredSessionsBeforeRetrying= */ false);
                 preacquiredSessionReferences.add(this);
+                maybeReleaseFirstPreacquiredSession();
               });
     }
 
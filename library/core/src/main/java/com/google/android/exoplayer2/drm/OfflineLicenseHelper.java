@@ -23,25 +23,71 @@ import android.util.Pair;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.PlaybackException;
 import com.google.android.exoplayer2.analytics.PlayerId;
 import com.google.android.exoplayer2.drm.DefaultDrmSessionManager.Mode;
 import com.google.android.exoplayer2.drm.DrmSession.DrmSessionException;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /** Helper class to download, renew and release offline licenses. */
 @RequiresApi(18)
 public final class OfflineLicenseHelper {
 
+  /** Listener for the per-format results of {@link #downloadLicenses}. */
+  public interface LicenseDownloadListener {
+
+    /**
+     * Called when a license has been downloaded.
+     *
+     * @param index The index of the {@link Format} in the list passed to {@link
+     *     #downloadLicenses}.
+     * @param keySetId The key set id for the downloaded license.
+     */
+    void onLicenseDownloaded(int index, byte[] keySetId);
+
+    /**
+     * Called when downloading a license has failed.
+     *
+     * @param index The index of the {@link Format} in the list passed to {@link
+     *     #downloadLicenses}.
+     * @param error The error.
+     */
+    void onLicenseDownloadError(int index, DrmSessionException error);
+  }
+
+  /** The result of downloading one of the licenses requested by {@link #downloadLicenses}. */
+  public static final class LicenseDownloadResult {
+
+    /** The {@link Format} whose license was requested. */
+    public final Format format;
+    /** The key set id for the downloaded license, or null if the download failed. */
+    @Nullable public final byte[] keySetId;
+    /** The error that caused the download to fail, or null if the download succeeded. */
+    @Nullable public final DrmSessionException error;
+
+    private LicenseDownloadResult(
+        Format format, @Nullable byte[] keySetId, @Nullable DrmSessionException error) {
+      this.format = format;
+      this.keySetId = keySetId;
+      this.error = error;
+    }
+  }
+
   private static final Format FORMAT_WITH_EMPTY_DRM_INIT_DATA =
       new Format.Builder().setDrmInitData(new DrmInitData()).build();
 
   private final ConditionVariable conditionVariable;
   private final DefaultDrmSessionManager drmSessionManager;
   private final HandlerThread handlerThread;
+  private final Handler handler;
   private final DrmSessionEventListener.EventDispatcher eventDispatcher;
 
   /**
@@ -119,6 +165,40 @@ public final class OfflineLicenseHelper {
         eventDispatcher);
   }
 
+  /**
+   * Instantiates a new instance which uses Widevine CDM in {@link
+   * DefaultDrmSessionManager.Builder#setMultiSession multi-session mode}, so that {@link
+   * #downloadLicenses} can run license requests in parallel. Call {@link #release()} when the
+   * instance is no longer required.
+   *
+   * @param defaultLicenseUrl The default license URL. Used for key requests that do not specify
+   *     their own license URL.
+   * @param forceDefaultLicenseUrl Whether to use {@code defaultLicenseUrl} for key requests that
+   *     include their own license URL.
+   * @param dataSourceFactory A factory from which to obtain {@link DataSource} instances.
+   * @param optionalKeyRequestParameters An optional map of parameters to pass as the last argument
+   *     to {@link MediaDrm#getKeyRequest}. May be null.
+   * @param eventDispatcher A {@link DrmSessionEventListener.EventDispatcher} used to distribute
+   *     DRM-related events.
+   * @return A new instance which uses Widevine CDM in multi-session mode.
+   * @see DefaultDrmSessionManager.Builder
+   */
+  public static OfflineLicenseHelper newMultiSessionWidevineInstance(
+      String defaultLicenseUrl,
+      boolean forceDefaultLicenseUrl,
+      DataSource.Factory dataSourceFactory,
+      @Nullable Map<String, String> optionalKeyRequestParameters,
+      DrmSessionEventListener.EventDispatcher eventDispatcher) {
+    return new OfflineLicenseHelper(
+        new DefaultDrmSessionManager.Builder()
+            .setKeyRequestParameters(optionalKeyRequestParameters)
+            .setMultiSession(true)
+            .build(
+                new HttpMediaDrmCallback(
+                    defaultLicenseUrl, forceDefaultLicenseUrl, dataSourceFactory)),
+        eventDispatcher);
+  }
+
   /**
    * @deprecated Use {@link #OfflineLicenseHelper(DefaultDrmSessionManager,
    *     DrmSessionEventListener.EventDispatcher)} instead.
@@ -152,6 +232,7 @@ public final class OfflineLicenseHelper {
     this.eventDispatcher = eventDispatcher;
     handlerThread = new HandlerThread("ExoPlayer:OfflineLicenseHelper");
     handlerThread.start();
+    handler = new Handler(handlerThread.getLooper());
     conditionVariable = new ConditionVariable();
     DrmSessionEventListener eventListener =
         new DrmSessionEventListener() {
@@ -176,7 +257,7 @@ public final class OfflineLicenseHelper {
             conditionVariable.open();
           }
         };
-    eventDispatcher.addEventListener(new Handler(handlerThread.getLooper()), eventListener);
+    eventDispatcher.addEventListener(handler, eventListener);
   }
 
   /**
@@ -192,6 +273,56 @@ public final class OfflineLicenseHelper {
     return blockingKeyRequest(DefaultDrmSessionManager.MODE_DOWNLOAD, null, format);
   }
 
+  /**
+   * Downloads offline licenses for multiple formats, sharing a single {@link ExoMediaDrm} instance
+   * between the requests and running up to {@code maxParallelRequests} of them at the same time.
+   *
+   * <p>Requests are only run in parallel if the {@link DefaultDrmSessionManager} passed to the
+   * constructor supports {@link DefaultDrmSessionManager.Builder#setMultiSession multiple
+   * sessions}, which is the case for instances created with {@link
+   * #newMultiSessionWidevineInstance}.
+   * Otherwise they're run one at a time. Formats with the same DRM init data share a license.
+   *
+   * <p>DRM events for the format at index {@code i} are reported with a {@code windowIndex} of
+   * {@code i}. If a {@link LicenseDownloadListener} is passed, it's called on an internal thread as
+   * soon as each license has been downloaded. This can be used to add each {@link
+   * com.google.android.exoplayer2.offline.DownloadRequest} to the {@link
+   * com.google.android.exoplayer2.offline.DownloadManager} as soon as its license is available,
+   * using {@link com.google.android.exoplayer2.offline.DownloadRequest#copyWithKeySetId}, so that
+   * segment downloads overlap with the remaining license requests.
+   *
+   * <p>This method blocks until all of the requests have completed.
+   *
+   * @param formats The {@link Format Formats} of the content whose licenses are to be downloaded.
+   *     Each must contain a non-null {@link Format#drmInitData}.
+   * @param maxParallelRequests The maximum number of license requests to run at the same time.
+   * @param listener An optional {@link LicenseDownloadListener} to receive the results as they
+   *     become available.
+   * @return The results, in the same order as {@code formats}.
+   */
+  public synchronized ImmutableList<LicenseDownloadResult> downloadLicenses(
+      List<Format> formats, int maxParallelRequests, @Nullable LicenseDownloadListener listener) {
+    Assertions.checkArgument(maxParallelRequests > 0);
+    for (int i = 0; i < formats.size(); i++) {
+      Assertions.checkArgument(formats.get(i).drmInitData != null);
+    }
+    if (formats.isEmpty()) {
+      return ImmutableList.of();
+    }
+    drmSessionManager.setMode(DefaultDrmSessionManager.MODE_DOWNLOAD, null);
+    drmSessionManager.setPlayer(handlerThread.getLooper(), PlayerId.UNSET);
+    drmSessionManager.prepare();
+    LicenseBatch batch =
+        new LicenseBatch(
+            formats, drmSessionManager.isMultiSession() ? maxParallelRequests : 1, listener);
+    eventDispatcher.addEventListener(handler, batch);
+    handler.post(batch::update);
+    batch.blockUntilFinished();
+    eventDispatcher.removeEventListener(batch);
+    drmSessionManager.release();
+    return batch.getResults();
+  }
+
   /**
    * Renews an offline license.
    *
@@ -285,4 +416,145 @@ public final class OfflineLicenseHelper {
     conditionVariable.block();
     return Assertions.checkNotNull(drmSession);
   }
+
+  /**
+   * Downloads the licenses for a list of formats. All methods other than {@link
+   * #blockUntilFinished()} and {@link #getResults()} are called on the internal handler thread.
+   */
+  private final class LicenseBatch implements DrmSessionEventListener {
+
+    private final List<Format> formats;
+    private final int maxParallelRequests;
+    @Nullable private final LicenseDownloadListener listener;
+    private final ConditionVariable finishedCondition;
+    private final ArrayList<ActiveRequest> activeRequests;
+    private final @NullableType LicenseDownloadResult[] results;
+
+    private int nextIndex;
+
+    public LicenseBatch(
+        List<Format> formats,
+        int maxParallelRequests,
+        @Nullable LicenseDownloadListener listener) {
+      this.formats = formats;
+      this.maxParallelRequests = maxParallelRequests;
+      this.listener = listener;
+      finishedCondition = new ConditionVariable();
+      activeRequests = new ArrayList<>(maxParallelRequests);
+      results = new LicenseDownloadResult[formats.size()];
+    }
+
+    public void blockUntilFinished() {
+      finishedCondition.block();
+    }
+
+    public ImmutableList<LicenseDownloadResult> getResults() {
+      ImmutableList.Builder<LicenseDownloadResult> resultsBuilder = ImmutableList.builder();
+      for (LicenseDownloadResult result : results) {
+        resultsBuilder.add(Assertions.checkNotNull(result));
+      }
+      return resultsBuilder.build();
+    }
+
+    /** Completes any requests that have finished, and starts new requests into the free slots. */
+    public void update() {
+      while (true) {
+        for (int i = activeRequests.size() - 1; i >= 0; i--) {
+          if (maybeComplete(activeRequests.get(i))) {
+            activeRequests.remove(i);
+          }
+        }
+        if (activeRequests.size() == maxParallelRequests || nextIndex == formats.size()) {
+          break;
+        }
+        while (activeRequests.size() < maxParallelRequests && nextIndex < formats.size()) {
+          int index = nextIndex++;
+          DrmSessionEventListener.EventDispatcher requestEventDispatcher =
+              eventDispatcher.withParameters(index, /* mediaPeriodId= */ null);
+          DrmSession drmSession;
+          try {
+            drmSession =
+                Assertions.checkNotNull(
+                    drmSessionManager.acquireSession(requestEventDispatcher, formats.get(index)));
+          } catch (RuntimeException e) {
+            // Record the failure rather than letting it escape, which would leave the calling
+            // thread blocked forever.
+            setResult(
+                index,
+                /* keySetId= */ null,
+                new DrmSessionException(e, PlaybackException.ERROR_CODE_DRM_UNSPECIFIED));
+            continue;
+          }
+          activeRequests.add(new ActiveRequest(index, drmSession, requestEventDispatcher));
+        }
+        // Loop to complete any sessions that finished synchronously, for example because they
+        // share an already opened session.
+      }
+      if (activeRequests.isEmpty() && nextIndex == formats.size()) {
+        finishedCondition.open();
+      }
+    }
+
+    private boolean maybeComplete(ActiveRequest request) {
+      DrmSession drmSession = request.drmSession;
+      @Nullable byte[] keySetId = null;
+      @Nullable DrmSessionException error = null;
+      @DrmSession.State int state = drmSession.getState();
+      if (state == DrmSession.STATE_OPENED_WITH_KEYS) {
+        keySetId = drmSession.getOfflineLicenseKeySetId();
+        if (keySetId == null) {
+          error =
+              new DrmSessionException(
+                  new IllegalStateException("No offline license key set id"),
+                  PlaybackException.ERROR_CODE_DRM_LICENSE_ACQUISITION_FAILED);
+        }
+      } else if (state == DrmSession.STATE_ERROR) {
+        error = Assertions.checkNotNull(drmSession.getError());
+      } else {
+        return false;
+      }
+      drmSession.release(request.eventDispatcher);
+      setResult(request.index, keySetId, error);
+      return true;
+    }
+
+    private void setResult(
+        int index, @Nullable byte[] keySetId, @Nullable DrmSessionException error) {
+      results[index] = new LicenseDownloadResult(formats.get(index), keySetId, error);
+      if (listener != null) {
+        if (error != null) {
+          listener.onLicenseDownloadError(index, error);
+        } else {
+          listener.onLicenseDownloaded(index, Assertions.checkNotNull(keySetId));
+        }
+      }
+    }
+
+    // DrmSessionEventListener implementation.
+
+    @Override
+    public void onDrmKeysLoaded(int windowIndex, @Nullable MediaPeriodId mediaPeriodId) {
+      update();
+    }
+
+    @Override
+    public void onDrmSessionManagerError(
+        int windowIndex, @Nullable MediaPeriodId mediaPeriodId, Exception e) {
+      update();
+    }
+  }
+
+  private static final class ActiveRequest {
+
+    public final int index;
+    public final DrmSession drmSession;
+    public final DrmSessionEventListener.EventDispatcher eventDispatcher;
+
+    public ActiveRequest(
+        int index, DrmSession drmSession, DrmSessionEventListener.EventDispatcher eventDispatcher) {
+      this.index = index;
+      this.drmSession = drmSession;
+      this.eventDispatcher = eventDispatcher;
+    }
+  }
 }
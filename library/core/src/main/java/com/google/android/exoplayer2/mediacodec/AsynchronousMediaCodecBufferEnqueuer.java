@@ -40,15 +40,18 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /**
  * Performs {@link MediaCodec} input buffer queueing on a background thread.
  *
+ * <p>Input buffers that are submitted while the background thread is busy are queued on the codec
+ * together, when the thread next handles a message. This means that a single message is sent for
+ * a run of input buffers, for example when the renderer feeds several buffers in one iteration.
+ *
  * <p>The implementation of this class assumes that its public methods will be called from the same
  * thread.
  */
 @RequiresApi(23)
 class AsynchronousMediaCodecBufferEnqueuer {
 
-  private static final int MSG_QUEUE_INPUT_BUFFER = 0;
-  private static final int MSG_QUEUE_SECURE_INPUT_BUFFER = 1;
-  private static final int MSG_OPEN_CV = 2;
+  private static final int MSG_QUEUE_PENDING_INPUT_BUFFERS = 0;
+  private static final int MSG_OPEN_CV = 1;
 
   @GuardedBy("MESSAGE_PARAMS_INSTANCE_POOL")
   private static final ArrayDeque<MessageParams> MESSAGE_PARAMS_INSTANCE_POOL = new ArrayDeque<>();
@@ -60,6 +63,13 @@ class AsynchronousMediaCodecBufferEnqueuer {
   private @MonotonicNonNull Handler handler;
   private final AtomicReference<@NullableType RuntimeException> pendingRuntimeException;
   private final ConditionVariable conditionVariable;
+
+  @GuardedBy("pendingMessageParams")
+  private final ArrayDeque<MessageParams> pendingMessageParams;
+
+  @GuardedBy("pendingMessageParams")
+  private boolean queuePendingMessageSent;
+
   private boolean started;
 
   /**
@@ -79,6 +89,7 @@ class AsynchronousMediaCodecBufferEnqueuer {
     this.handlerThread = handlerThread;
     this.conditionVariable = conditionVariable;
     pendingRuntimeException = new AtomicReference<>();
+    pendingMessageParams = new ArrayDeque<>();
   }
 
   /**
@@ -109,9 +120,9 @@ class AsynchronousMediaCodecBufferEnqueuer {
       int index, int offset, int size, long presentationTimeUs, int flags) {
     maybeThrowException();
     MessageParams messageParams = getMessageParams();
-    messageParams.setQueueParams(index, offset, size, presentationTimeUs, flags);
-    Message message = castNonNull(handler).obtainMessage(MSG_QUEUE_INPUT_BUFFER, messageParams);
-    message.sendToTarget();
+    messageParams.setQueueParams(
+        index, offset, size, presentationTimeUs, flags, /* secure= */ false);
+    addPendingMessageParams(messageParams);
   }
 
   /**
@@ -127,11 +138,10 @@ class AsynchronousMediaCodecBufferEnqueuer {
       int index, int offset, CryptoInfo info, long presentationTimeUs, int flags) {
     maybeThrowException();
     MessageParams messageParams = getMessageParams();
-    messageParams.setQueueParams(index, offset, /* size= */ 0, presentationTimeUs, flags);
+    messageParams.setQueueParams(
+        index, offset, /* size= */ 0, presentationTimeUs, flags, /* secure= */ true);
     copy(info, messageParams.cryptoInfo);
-    Message message =
-        castNonNull(handler).obtainMessage(MSG_QUEUE_SECURE_INPUT_BUFFER, messageParams);
-    message.sendToTarget();
+    addPendingMessageParams(messageParams);
   }
 
   /** Flushes the instance. */
@@ -175,9 +185,30 @@ class AsynchronousMediaCodecBufferEnqueuer {
    */
   private void flushHandlerThread() throws InterruptedException {
     checkNotNull(this.handler).removeCallbacksAndMessages(null);
+    synchronized (pendingMessageParams) {
+      while (!pendingMessageParams.isEmpty()) {
+        recycleMessageParams(pendingMessageParams.removeFirst());
+      }
+      queuePendingMessageSent = false;
+    }
     blockUntilHandlerThreadIsIdle();
   }
 
+  /**
+   * Adds parameters for an input buffer to be queued, and sends a message to the {@link
+   * #handlerThread} to queue pending input buffers if one isn't already pending.
+   */
+  private void addPendingMessageParams(MessageParams messageParams) {
+    synchronized (pendingMessageParams) {
+      pendingMessageParams.addLast(messageParams);
+      if (queuePendingMessageSent) {
+        return;
+      }
+      queuePendingMessageSent = true;
+    }
+    castNonNull(handler).sendEmptyMessage(MSG_QUEUE_PENDING_INPUT_BUFFERS);
+  }
+
   private void blockUntilHandlerThreadIsIdle() throws InterruptedException {
     conditionVariable.close();
     checkNotNull(handler).obtainMessage(MSG_OPEN_CV).sendToTarget();
@@ -192,21 +223,9 @@ class AsynchronousMediaCodecBufferEnqueuer {
   // Called from the handler thread
 
   private void doHandleMessage(Message msg) {
-    @Nullable MessageParams params = null;
     switch (msg.what) {
-      case MSG_QUEUE_INPUT_BUFFER:
-        params = (MessageParams) msg.obj;
-        doQueueInputBuffer(
-            params.index, params.offset, params.size, params.presentationTimeUs, params.flags);
-        break;
-      case MSG_QUEUE_SECURE_INPUT_BUFFER:
-        params = (MessageParams) msg.obj;
-        doQueueSecureInputBuffer(
-            params.index,
-            params.offset,
-            params.cryptoInfo,
-            params.presentationTimeUs,
-            params.flags);
+      case MSG_QUEUE_PENDING_INPUT_BUFFERS:
+        doQueuePendingInputBuffers();
         break;
       case MSG_OPEN_CV:
         conditionVariable.open();
@@ -215,7 +234,29 @@ class AsynchronousMediaCodecBufferEnqueuer {
         pendingRuntimeException.compareAndSet(
             null, new IllegalStateException(String.valueOf(msg.what)));
     }
-    if (params != null) {
+  }
+
+  private void doQueuePendingInputBuffers() {
+    while (true) {
+      MessageParams params;
+      synchronized (pendingMessageParams) {
+        if (pendingMessageParams.isEmpty()) {
+          queuePendingMessageSent = false;
+          return;
+        }
+        params = pendingMessageParams.removeFirst();
+      }
+      if (params.secure) {
+        doQueueSecureInputBuffer(
+            params.index,
+            params.offset,
+            params.cryptoInfo,
+            params.presentationTimeUs,
+            params.flags);
+      } else {
+        doQueueInputBuffer(
+            params.index, params.offset, params.size, params.presentationTimeUs, params.flags);
+      }
       recycleMessageParams(params);
     }
   }
@@ -267,6 +308,7 @@ class AsynchronousMediaCodecBufferEnqueuer {
     public final MediaCodec.CryptoInfo cryptoInfo;
     public long presentationTimeUs;
     public int flags;
+    public boolean secure;
 
     MessageParams() {
       cryptoInfo = new MediaCodec.CryptoInfo();
@@ -274,12 +316,13 @@ class AsynchronousMediaCodecBufferEnqueuer {
 
     /** Convenience method for setting the queueing parameters. */
     public void setQueueParams(
-        int index, int offset, int size, long presentationTimeUs, int flags) {
+        int index, int offset, int size, long presentationTimeUs, int flags, boolean secure) {
       this.index = index;
       this.offset = offset;
       this.size = size;
       this.presentationTimeUs = presentationTimeUs;
       this.flags = flags;
+      this.secure = secure;
     }
   }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+
+/**
+ * Persists the {@link CodecKey codec keys} for which decoders have been queried, so that the
+ * decoder info cache can be warmed for the same keys when the app next starts.
+ *
+ * <p>Stored keys are discarded if they were written on a build with a different fingerprint, since
+ * the set of available codecs may have changed.
+ */
+/* package */ final class CodecKeyStore {
+
+  private static final String TAG = "CodecKeyStore";
+
+  private static final int VERSION = 1;
+
+  private final AtomicFile atomicFile;
+  private final String buildFingerprint;
+
+  @GuardedBy("this")
+  private final LinkedHashSet<CodecKey> keys;
+
+  @GuardedBy("this")
+  private boolean changed;
+
+  /**
+   * Creates an instance.
+   *
+   * @param file The file in which the keys are stored.
+   * @param buildFingerprint The fingerprint of the current build.
+   */
+  public CodecKeyStore(File file, String buildFingerprint) {
+    atomicFile = new AtomicFile(file);
+    this.buildFingerprint = buildFingerprint;
+    keys = new LinkedHashSet<>();
+  }
+
+  /**
+   * Reads the keys stored for the current build fingerprint, and adds them to the keys held by this
+   * instance.
+   *
+   * @return The keys held by this instance after reading the file.
+   */
+  public synchronized ImmutableList<CodecKey> load() {
+    if (atomicFile.exists()) {
+      @Nullable DataInputStream input = null;
+      try {
+        input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+        int version = input.readInt();
+        String fingerprint = input.readUTF();
+        if (version == VERSION && fingerprint.equals(buildFingerprint)) {
+          int count = input.readInt();
+          for (int i = 0; i < count; i++) {
+            String mimeType = input.readUTF();
+            boolean secure = input.readBoolean();
+            boolean tunneling = input.readBoolean();
+            keys.add(new CodecKey(mimeType, secure, tunneling));
+          }
+        } else {
+          // Rewrite the file for the current build.
+          changed = true;
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to read stored codec keys", e);
+        changed = true;
+      } finally {
+        Util.closeQuietly(input);
+      }
+    }
+    return ImmutableList.copyOf(keys);
+  }
+
+  /**
+   * Adds a key to the keys held by this instance.
+   *
+   * @param key The key.
+   * @return Whether the key was added, meaning that it wasn't already held.
+   */
+  public synchronized boolean add(CodecKey key) {
+    if (!keys.add(key)) {
+      return false;
+    }
+    changed = true;
+    return true;
+  }
+
+  /** Writes the keys held by this instance to the file, if they've changed since the last write. */
+  public synchronized void store() {
+    if (!changed) {
+      return;
+    }
+    @Nullable DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(buildFingerprint);
+      output.writeInt(keys.size());
+      for (CodecKey key : keys) {
+        output.writeUTF(key.mimeType);
+        output.writeBoolean(key.secure);
+        output.writeBoolean(key.tunneling);
+      }
+      atomicFile.endWrite(output);
+      output = null;
+      changed = false;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to store codec keys", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+}
@@ -18,9 +18,11 @@ package com.google.android.exoplayer2.mediacodec;
 import static java.lang.Math.max;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaCodecInfo.CodecProfileLevel;
 import android.media.MediaCodecList;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Pair;
 import androidx.annotation.CheckResult;
@@ -36,10 +38,15 @@ import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.ColorInfo;
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
@@ -64,8 +71,21 @@ public final class MediaCodecUtil {
   private static final String TAG = "MediaCodecUtil";
   private static final Pattern PROFILE_PATTERN = Pattern.compile("^\\D?(\\d+)$");
 
+  private static final String CODEC_KEY_STORE_FILE_NAME = "exoplayer_codec_keys";
+  /** The time for which the idle codec warming thread is kept alive. */
+  private static final long CODEC_WARMER_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  // Written while holding the class lock, but read without it so that cache hits don't block.
+  private static final ConcurrentHashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache =
+      new ConcurrentHashMap<>();
+
+  @GuardedBy("MediaCodecUtil.class")
+  @Nullable
+  private static CodecKeyStore codecKeyStore;
+
   @GuardedBy("MediaCodecUtil.class")
-  private static final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache = new HashMap<>();
+  @Nullable
+  private static Executor codecKeyStoreExecutor;
 
   // Codecs to constant mappings.
   // AVC.
@@ -107,6 +127,50 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Starts warming the codec cache on a background thread, for the MIME types and requirements that
+   * were queried when the app previously ran on the same build of the device.
+   *
+   * <p>After this method is called, the queried MIME types and requirements are stored in the app's
+   * cache directory. They're discarded if the device's {@link Build#FINGERPRINT build fingerprint}
+   * changes. Only the queries are stored, not their results, because codec capabilities can only be
+   * obtained from the platform.
+   *
+   * <p>Calling this method early, for example in {@code Application.onCreate}, allows codec
+   * enumeration to happen in parallel with app startup, rather than when a player first checks
+   * whether formats are supported. Calling this method more than once has no effect.
+   *
+   * @param context A {@link Context}.
+   */
+  public static synchronized void warmDecoderInfoCacheInBackground(Context context) {
+    if (codecKeyStore != null) {
+      return;
+    }
+    CodecKeyStore codecKeyStore =
+        new CodecKeyStore(
+            new File(context.getCacheDir(), CODEC_KEY_STORE_FILE_NAME), Build.FINGERPRINT);
+    // The thread is only needed while warming and storing queries, so it stops when idle rather
+    // than living for the rest of the process.
+    ThreadPoolExecutor codecKeyStoreExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ 1,
+            /* maximumPoolSize= */ 1,
+            CODEC_WARMER_THREAD_KEEP_ALIVE_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, "ExoPlayer:CodecWarmer"));
+    codecKeyStoreExecutor.allowCoreThreadTimeOut(true);
+    MediaCodecUtil.codecKeyStore = codecKeyStore;
+    MediaCodecUtil.codecKeyStoreExecutor = codecKeyStoreExecutor;
+    codecKeyStoreExecutor.execute(
+        () -> {
+          for (CodecKey key : codecKeyStore.load()) {
+            warmDecoderInfoCache(key.mimeType, key.secure, key.tunneling);
+          }
+          codecKeyStore.store();
+        });
+  }
+
   /* Clears the codec cache.*/
   @VisibleForTesting
   public static synchronized void clearDecoderInfoCache() {
@@ -155,13 +219,26 @@ public final class MediaCodecUtil {
    *     order given by {@link MediaCodecList}.
    * @throws DecoderQueryException If there was an error querying the available decoders.
    */
-  public static synchronized List<MediaCodecInfo> getDecoderInfos(
+  public static List<MediaCodecInfo> getDecoderInfos(
       String mimeType, boolean secure, boolean tunneling) throws DecoderQueryException {
     CodecKey key = new CodecKey(mimeType, secure, tunneling);
     @Nullable List<MediaCodecInfo> cachedDecoderInfos = decoderInfosCache.get(key);
     if (cachedDecoderInfos != null) {
       return cachedDecoderInfos;
     }
+    return getDecoderInfosSynchronized(key);
+  }
+
+  private static synchronized List<MediaCodecInfo> getDecoderInfosSynchronized(CodecKey key)
+      throws DecoderQueryException {
+    @Nullable List<MediaCodecInfo> cachedDecoderInfos = decoderInfosCache.get(key);
+    if (cachedDecoderInfos != null) {
+      // Another thread queried the decoders while this thread was waiting for the lock.
+      return cachedDecoderInfos;
+    }
+    String mimeType = key.mimeType;
+    boolean secure = key.secure;
+    boolean tunneling = key.tunneling;
     MediaCodecListCompat mediaCodecList =
         Util.SDK_INT >= 21
             ? new MediaCodecListCompatV21(secure, tunneling)
@@ -184,6 +261,11 @@ public final class MediaCodecUtil {
     applyWorkarounds(mimeType, decoderInfos);
     ImmutableList<MediaCodecInfo> immutableDecoderInfos = ImmutableList.copyOf(decoderInfos);
     decoderInfosCache.put(key, immutableDecoderInfos);
+    @Nullable CodecKeyStore codecKeyStore = MediaCodecUtil.codecKeyStore;
+    @Nullable Executor codecKeyStoreExecutor = MediaCodecUtil.codecKeyStoreExecutor;
+    if (codecKeyStore != null && codecKeyStoreExecutor != null && codecKeyStore.add(key)) {
+      codecKeyStoreExecutor.execute(codecKeyStore::store);
+    }
     return immutableDecoderInfos;
   }
 
@@ -1063,7 +1145,7 @@ public final class MediaCodecUtil {
     }
   }
 
-  private static final class CodecKey {
+  /* package */ static final class CodecKey {
 
     public final String mimeType;
     public final boolean secure;
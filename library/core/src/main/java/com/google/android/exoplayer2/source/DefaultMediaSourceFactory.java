@@ -38,6 +38,7 @@ import com.google.android.exoplayer2.source.ads.AdsLoader;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
 import com.google.android.exoplayer2.text.SubtitleDecoderFactory;
 import com.google.android.exoplayer2.text.SubtitleExtractor;
+import com.google.android.exoplayer2.text.webvtt.WebvttStreamingParser;
 import com.google.android.exoplayer2.ui.AdViewProvider;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
@@ -119,6 +120,7 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
   private float liveMinSpeed;
   private float liveMaxSpeed;
   private boolean useProgressiveMediaSourceForSubtitles;
+  private boolean useStreamingSubtitleParsing;
 
   /**
    * Creates a new instance.
@@ -198,6 +200,29 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
     return this;
   }
 
+  /**
+   * Sets whether subtitles loaded by a {@link ProgressiveMediaSource} are parsed incrementally as
+   * they're loaded, where supported, rather than once the whole file has been loaded. Defaults to
+   * false.
+   *
+   * <p>Streaming parsing is currently supported for WebVTT. It allows the first cues to be output
+   * before the end of the file has been loaded, and bounds the memory used by the extractor.
+   *
+   * <p>This only has an effect if {@link
+   * #experimentalUseProgressiveMediaSourceForSubtitles(boolean)} is enabled.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param useStreamingSubtitleParsing Whether subtitles should be parsed incrementally.
+   * @return This factory, for convenience.
+   */
+  @CanIgnoreReturnValue
+  public DefaultMediaSourceFactory experimentalUseStreamingSubtitleParsing(
+      boolean useStreamingSubtitleParsing) {
+    this.useStreamingSubtitleParsing = useStreamingSubtitleParsing;
+    return this;
+  }
+
   /**
    * Sets the {@link AdsLoader.Provider} that provides {@link AdsLoader} instances for media items
    * that have {@link MediaItem.LocalConfiguration#adsConfiguration ads configurations}.
@@ -456,14 +481,10 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
                   .setLabel(subtitleConfigurations.get(i).label)
                   .setId(subtitleConfigurations.get(i).id)
                   .build();
+          boolean useStreamingSubtitleParsing = this.useStreamingSubtitleParsing;
           ExtractorsFactory extractorsFactory =
               () ->
-                  new Extractor[] {
-                    SubtitleDecoderFactory.DEFAULT.supportsFormat(format)
-                        ? new SubtitleExtractor(
-                            SubtitleDecoderFactory.DEFAULT.createDecoder(format), format)
-                        : new UnknownSubtitlesExtractor(format)
-                  };
+                  new Extractor[] {createSubtitleExtractor(format, useStreamingSubtitleParsing)};
           ProgressiveMediaSource.Factory progressiveMediaSourceFactory =
               new ProgressiveMediaSource.Factory(dataSourceFactory, extractorsFactory);
           if (loadErrorHandlingPolicy != null) {
@@ -491,6 +512,16 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
 
   // internal methods
 
+  private static Extractor createSubtitleExtractor(
+      Format format, boolean useStreamingSubtitleParsing) {
+    if (useStreamingSubtitleParsing && MimeTypes.TEXT_VTT.equals(format.sampleMimeType)) {
+      return new SubtitleExtractor(new WebvttStreamingParser(), format);
+    }
+    return SubtitleDecoderFactory.DEFAULT.supportsFormat(format)
+        ? new SubtitleExtractor(SubtitleDecoderFactory.DEFAULT.createDecoder(format), format)
+        : new UnknownSubtitlesExtractor(format);
+  }
+
   private static MediaSource maybeClipMediaSource(MediaItem mediaItem, MediaSource mediaSource) {
     if (mediaItem.clippingConfiguration.startPositionMs == 0
         && mediaItem.clippingConfiguration.endPositionMs == C.TIME_END_OF_SOURCE
@@ -58,6 +58,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     private final int maxHeightToDiscard;
     private final float bandwidthFraction;
     private final float bufferedFractionToLiveEdgeForQualityIncrease;
+    private final int chunkSizeLookaheadCount;
     private final Clock clock;
 
     /** Creates an adaptive track selection factory with default parameters. */
@@ -216,6 +217,59 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
         float bandwidthFraction,
         float bufferedFractionToLiveEdgeForQualityIncrease,
         Clock clock) {
+      this(
+          minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs,
+          minDurationToRetainAfterDiscardMs,
+          maxWidthToDiscard,
+          maxHeightToDiscard,
+          bandwidthFraction,
+          bufferedFractionToLiveEdgeForQualityIncrease,
+          DEFAULT_CHUNK_SIZE_LOOKAHEAD_COUNT,
+          clock);
+    }
+
+    /**
+     * Creates an adaptive track selection factory.
+     *
+     * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+     *     selected track to switch to one of higher quality.
+     * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+     *     selected track to switch to one of lower quality.
+     * @param minDurationToRetainAfterDiscardMs When switching to a video track of higher quality,
+     *     the selection may indicate that media already buffered at the lower quality can be
+     *     discarded to speed up the switch. This is the minimum duration of media that must be
+     *     retained at the lower quality. It must be at least {@code
+     *     minDurationForQualityIncreaseMs}.
+     * @param maxWidthToDiscard The maximum video width that the selector may discard from the
+     *     buffer to speed up switching to a higher quality.
+     * @param maxHeightToDiscard The maximum video height that the selector may discard from the
+     *     buffer to speed up switching to a higher quality.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+     *     duration from current playback position to the live edge that has to be buffered before
+     *     the selected track can be switched to one of higher quality. This parameter is only
+     *     applied when the playback position is closer to the live edge than {@code
+     *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+     *     quality from happening.
+     * @param chunkSizeLookaheadCount The number of upcoming chunks whose actual sizes are used to
+     *     estimate the bitrate of each track, or 0 to always use {@link Format#bitrate}. Chunk
+     *     sizes are only known for some streams, for example DASH streams with a segment index or
+     *     HLS streams using byte ranges.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int minDurationForQualityIncreaseMs,
+        int maxDurationForQualityDecreaseMs,
+        int minDurationToRetainAfterDiscardMs,
+        int maxWidthToDiscard,
+        int maxHeightToDiscard,
+        float bandwidthFraction,
+        float bufferedFractionToLiveEdgeForQualityIncrease,
+        int chunkSizeLookaheadCount,
+        Clock clock) {
       this.minDurationForQualityIncreaseMs = minDurationForQualityIncreaseMs;
       this.maxDurationForQualityDecreaseMs = maxDurationForQualityDecreaseMs;
       this.minDurationToRetainAfterDiscardMs = minDurationToRetainAfterDiscardMs;
@@ -224,6 +278,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       this.bandwidthFraction = bandwidthFraction;
       this.bufferedFractionToLiveEdgeForQualityIncrease =
           bufferedFractionToLiveEdgeForQualityIncrease;
+      this.chunkSizeLookaheadCount = chunkSizeLookaheadCount;
       this.clock = clock;
     }
 
@@ -286,6 +341,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
           maxHeightToDiscard,
           bandwidthFraction,
           bufferedFractionToLiveEdgeForQualityIncrease,
+          chunkSizeLookaheadCount,
           adaptationCheckpoints,
           clock);
     }
@@ -298,6 +354,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   public static final int DEFAULT_MAX_HEIGHT_TO_DISCARD = 719;
   public static final float DEFAULT_BANDWIDTH_FRACTION = 0.7f;
   public static final float DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE = 0.75f;
+  public static final int DEFAULT_CHUNK_SIZE_LOOKAHEAD_COUNT = 0;
 
   private static final long MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS = 1000;
 
@@ -309,8 +366,13 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   private final int maxHeightToDiscard;
   private final float bandwidthFraction;
   private final float bufferedFractionToLiveEdgeForQualityIncrease;
+  private final int chunkSizeLookaheadCount;
   private final ImmutableList<AdaptationCheckpoint> adaptationCheckpoints;
   private final Clock clock;
+  private final int[] chunkBasedTrackBitrates;
+  private final int[] lookaheadChunkCounts;
+  private final long[][] lookaheadChunkLengths;
+  private final long[][] lookaheadChunkDurationsUs;
 
   private float playbackSpeed;
   private int selectedIndex;
@@ -386,6 +448,74 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       float bufferedFractionToLiveEdgeForQualityIncrease,
       List<AdaptationCheckpoint> adaptationCheckpoints,
       Clock clock) {
+    this(
+        group,
+        tracks,
+        type,
+        bandwidthMeter,
+        minDurationForQualityIncreaseMs,
+        maxDurationForQualityDecreaseMs,
+        minDurationToRetainAfterDiscardMs,
+        maxWidthToDiscard,
+        maxHeightToDiscard,
+        bandwidthFraction,
+        bufferedFractionToLiveEdgeForQualityIncrease,
+        DEFAULT_CHUNK_SIZE_LOOKAHEAD_COUNT,
+        adaptationCheckpoints,
+        clock);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param type The type that will be returned from {@link TrackSelection#getType()}.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+   *     selected track to switch to one of higher quality.
+   * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+   *     selected track to switch to one of lower quality.
+   * @param minDurationToRetainAfterDiscardMs When switching to a video track of higher quality, the
+   *     selection may indicate that media already buffered at the lower quality can be discarded to
+   *     speed up the switch. This is the minimum duration of media that must be retained at the
+   *     lower quality. It must be at least {@code minDurationForQualityIncreaseMs}.
+   * @param maxWidthToDiscard The maximum video width that the selector may discard from the buffer
+   *     to speed up switching to a higher quality.
+   * @param maxHeightToDiscard The maximum video height that the selector may discard from the
+   *     buffer to speed up switching to a higher quality.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account for
+   *     inaccuracies in the bandwidth estimator.
+   * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+   *     duration from current playback position to the live edge that has to be buffered before the
+   *     selected track can be switched to one of higher quality. This parameter is only applied
+   *     when the playback position is closer to the live edge than {@code
+   *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+   *     quality from happening.
+   * @param chunkSizeLookaheadCount The number of upcoming chunks whose actual sizes are used to
+   *     estimate the bitrate of each track, or 0 to always use {@link Format#bitrate}. A track is
+   *     only selected if the bandwidth allows loading all of these chunks at least as fast as they
+   *     are played out, and if loading them one after the other doesn't drain the buffer below the
+   *     smaller of the current buffered duration and {@code maxDurationForQualityDecreaseMs}.
+   * @param adaptationCheckpoints The {@link AdaptationCheckpoint checkpoints} that can be used to
+   *     calculate available bandwidth for this selection.
+   * @param clock The {@link Clock}.
+   */
+  protected AdaptiveTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      @Type int type,
+      BandwidthMeter bandwidthMeter,
+      long minDurationForQualityIncreaseMs,
+      long maxDurationForQualityDecreaseMs,
+      long minDurationToRetainAfterDiscardMs,
+      int maxWidthToDiscard,
+      int maxHeightToDiscard,
+      float bandwidthFraction,
+      float bufferedFractionToLiveEdgeForQualityIncrease,
+      int chunkSizeLookaheadCount,
+      List<AdaptationCheckpoint> adaptationCheckpoints,
+      Clock clock) {
     super(group, tracks, type);
     if (minDurationToRetainAfterDiscardMs < minDurationForQualityIncreaseMs) {
       Log.w(
@@ -403,8 +533,14 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     this.bandwidthFraction = bandwidthFraction;
     this.bufferedFractionToLiveEdgeForQualityIncrease =
         bufferedFractionToLiveEdgeForQualityIncrease;
+    this.chunkSizeLookaheadCount = chunkSizeLookaheadCount;
     this.adaptationCheckpoints = ImmutableList.copyOf(adaptationCheckpoints);
     this.clock = clock;
+    chunkBasedTrackBitrates = new int[length];
+    Arrays.fill(chunkBasedTrackBitrates, Format.NO_VALUE);
+    lookaheadChunkCounts = new int[length];
+    lookaheadChunkLengths = new long[length][chunkSizeLookaheadCount];
+    lookaheadChunkDurationsUs = new long[length][chunkSizeLookaheadCount];
     playbackSpeed = 1f;
     reason = C.SELECTION_REASON_UNKNOWN;
     lastBufferEvaluationMs = C.TIME_UNSET;
@@ -437,12 +573,15 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       List<? extends MediaChunk> queue,
       MediaChunkIterator[] mediaChunkIterators) {
     long nowMs = clock.elapsedRealtime();
-    long chunkDurationUs = getNextChunkDurationUs(mediaChunkIterators, queue);
+    long chunkDurationUs =
+        chunkSizeLookaheadCount > 0
+            ? updateChunkBasedTrackBitrates(mediaChunkIterators, queue)
+            : getNextChunkDurationUs(mediaChunkIterators, queue);
 
     // Make initial selection
     if (reason == C.SELECTION_REASON_UNKNOWN) {
       reason = C.SELECTION_REASON_INITIAL;
-      selectedIndex = determineIdealSelectedIndex(nowMs, chunkDurationUs);
+      selectedIndex = determineIdealSelectedIndex(nowMs, chunkDurationUs, bufferedDurationUs);
       return;
     }
 
@@ -454,7 +593,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       previousSelectedIndex = formatIndexOfPreviousChunk;
       previousReason = Iterables.getLast(queue).trackSelectionReason;
     }
-    int newSelectedIndex = determineIdealSelectedIndex(nowMs, chunkDurationUs);
+    int newSelectedIndex = determineIdealSelectedIndex(nowMs, chunkDurationUs, bufferedDurationUs);
     if (!isBlacklisted(previousSelectedIndex, nowMs)) {
       // Revert back to the previous selection if conditions are not suitable for switching.
       Format currentFormat = getFormat(previousSelectedIndex);
@@ -516,7 +655,11 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     if (playoutBufferedDurationBeforeLastChunkUs < minDurationToRetainAfterDiscardUs) {
       return queueSize;
     }
-    int idealSelectedIndex = determineIdealSelectedIndex(nowMs, getLastChunkDurationUs(queue));
+    int idealSelectedIndex =
+        determineIdealSelectedIndex(
+            nowMs,
+            getLastChunkDurationUs(queue),
+            /* bufferedDurationUs= */ lastChunk.endTimeUs - playbackPositionUs);
     Format idealFormat = getFormat(idealSelectedIndex);
     // If chunks contain video, discard from the first chunk after minDurationToRetainAfterDiscardUs
     // whose resolution and bitrate are both lower than the ideal track, and whose width and height
@@ -579,20 +722,28 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   }
 
   /**
-   * Computes the ideal selected index ignoring buffer health.
+   * Computes the ideal selected index ignoring the buffer thresholds for switching quality.
    *
    * @param nowMs The current time in the timebase of {@link Clock#elapsedRealtime()}, or {@link
    *     Long#MIN_VALUE} to ignore track exclusion.
    * @param chunkDurationUs The duration of a media chunk in microseconds, or {@link C#TIME_UNSET}
    *     if unknown.
+   * @param bufferedDurationUs The duration of media currently buffered, in microseconds. Only used
+   *     to check whether the sizes of the upcoming chunks of a track can be loaded without
+   *     draining the buffer.
    */
-  private int determineIdealSelectedIndex(long nowMs, long chunkDurationUs) {
+  private int determineIdealSelectedIndex(
+      long nowMs, long chunkDurationUs, long bufferedDurationUs) {
     long effectiveBitrate = getAllocatedBandwidth(chunkDurationUs);
     int lowestBitrateAllowedIndex = 0;
     for (int i = 0; i < length; i++) {
       if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
         Format format = getFormat(i);
-        if (canSelectFormat(format, format.bitrate, effectiveBitrate)) {
+        int chunkBasedTrackBitrate = chunkBasedTrackBitrates[i];
+        int trackBitrate =
+            chunkBasedTrackBitrate != Format.NO_VALUE ? chunkBasedTrackBitrate : format.bitrate;
+        if (canSelectFormat(format, trackBitrate, effectiveBitrate)
+            && canLoadLookaheadChunks(i, effectiveBitrate, bufferedDurationUs)) {
           return i;
         } else {
           lowestBitrateAllowedIndex = i;
@@ -602,6 +753,41 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     return lowestBitrateAllowedIndex;
   }
 
+  /**
+   * Returns whether the known upcoming chunks of a track can be loaded one after the other at the
+   * given bitrate without draining the buffer below the smaller of {@code bufferedDurationUs} and
+   * {@link #maxDurationForQualityDecreaseUs}.
+   *
+   * <p>Playback consumes the buffer while each chunk is loading, and the chunk is added to the
+   * buffer once it's loaded. Simulating this per chunk ensures a single oversized chunk can't stall
+   * playback even if the average bitrate of the chunks is sustainable.
+   */
+  private boolean canLoadLookaheadChunks(
+      int trackIndex, long effectiveBitrate, long bufferedDurationUs) {
+    int chunkCount = lookaheadChunkCounts[trackIndex];
+    if (chunkCount == 0) {
+      return true;
+    }
+    if (effectiveBitrate <= 0) {
+      return false;
+    }
+    long[] chunkLengths = lookaheadChunkLengths[trackIndex];
+    long[] chunkDurationsUs = lookaheadChunkDurationsUs[trackIndex];
+    long simulatedBufferedDurationUs = max(0, bufferedDurationUs);
+    long minBufferedDurationUs = min(simulatedBufferedDurationUs, maxDurationForQualityDecreaseUs);
+    for (int i = 0; i < chunkCount; i++) {
+      // The effective bitrate already accounts for the playback speed, so this is the duration of
+      // media played out while the chunk is loading.
+      simulatedBufferedDurationUs -=
+          chunkLengths[i] * C.BITS_PER_BYTE * C.MICROS_PER_SECOND / effectiveBitrate;
+      simulatedBufferedDurationUs += chunkDurationsUs[i];
+      if (simulatedBufferedDurationUs < minBufferedDurationUs) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private long minDurationForQualityIncreaseUs(long availableDurationUs, long chunkDurationUs) {
     if (availableDurationUs == C.TIME_UNSET) {
       // We are not in a live stream. Use the configured value.
@@ -643,6 +829,56 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     return getLastChunkDurationUs(queue);
   }
 
+  /**
+   * Updates {@link #chunkBasedTrackBitrates} with the average bitrate of the next {@link
+   * #chunkSizeLookaheadCount} chunks of each track, and records the sizes and durations of these
+   * chunks, as far as their sizes are known.
+   *
+   * @return A best estimate of the duration of the next chunk, in microseconds, or {@link
+   *     C#TIME_UNSET} if an estimate could not be determined.
+   */
+  private long updateChunkBasedTrackBitrates(
+      MediaChunkIterator[] mediaChunkIterators, List<? extends MediaChunk> queue) {
+    long nextChunkDurationUs = C.TIME_UNSET;
+    for (int i = 0; i < length; i++) {
+      chunkBasedTrackBitrates[i] = Format.NO_VALUE;
+      lookaheadChunkCounts[i] = 0;
+      if (i >= mediaChunkIterators.length) {
+        continue;
+      }
+      MediaChunkIterator iterator = mediaChunkIterators[i];
+      long totalBytes = 0;
+      long totalDurationUs = 0;
+      int chunkCount = 0;
+      for (int j = 0; j < chunkSizeLookaheadCount && iterator.next(); j++) {
+        long chunkDurationUs = iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+        if (j == 0 && (nextChunkDurationUs == C.TIME_UNSET || i == selectedIndex)) {
+          nextChunkDurationUs = chunkDurationUs;
+        }
+        long chunkLength = iterator.getDataSpec().length;
+        if (chunkLength == C.LENGTH_UNSET) {
+          // The sizes of the chunks of this track aren't known.
+          totalDurationUs = 0;
+          break;
+        }
+        lookaheadChunkLengths[i][chunkCount] = chunkLength;
+        lookaheadChunkDurationsUs[i][chunkCount] = chunkDurationUs;
+        chunkCount++;
+        totalBytes += chunkLength;
+        totalDurationUs += chunkDurationUs;
+      }
+      if (totalDurationUs > 0) {
+        long bitrate = totalBytes * C.BITS_PER_BYTE * C.MICROS_PER_SECOND / totalDurationUs;
+        chunkBasedTrackBitrates[i] = (int) min(bitrate, Integer.MAX_VALUE);
+        lookaheadChunkCounts[i] = chunkCount;
+      }
+    }
+    // Fall back to the duration of the last chunk in the queue.
+    return nextChunkDurationUs != C.TIME_UNSET
+        ? nextChunkDurationUs
+        : getLastChunkDurationUs(queue);
+  }
+
   /**
    * Returns the duration of the last chunk in the queue, in microseconds, or {@link C#TIME_UNSET}
    * if the queue is empty or if the last chunk has an undefined start or end time.
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.Iterables;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A buffer based adaptive {@link ExoTrackSelection} using the BOLA algorithm, whose selected track
+ * is the one that maximizes a utility function of the track quality and the buffered duration.
+ *
+ * <p>BOLA (Spiteri et al., "BOLA: Near-Optimal Bitrate Adaptation for Online Videos") selects the
+ * lowest quality track when the buffered duration is at {@code minBufferMs}, the highest quality
+ * track when it reaches {@code bufferTargetMs}, and interpolates logarithmically in between. The
+ * cost of each track is derived from the actual size of its next chunk where the {@link
+ * MediaChunkIterator} provides it, and from {@link Format#bitrate} otherwise.
+ *
+ * <p>The selection is a hybrid with a throughput based rule: while the buffered duration is below
+ * {@code minBufferMs}, which includes the start of playback and recovery from seeks and rebuffers,
+ * the track of highest quality whose next chunk can be loaded with the estimated bandwidth is
+ * selected. Above {@code minBufferMs}, switches to a higher quality are additionally capped at the
+ * higher of the current track and the throughput based track, which avoids oscillation when the
+ * bandwidth is between two track bitrates.
+ */
+public class BolaTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link BolaTrackSelection} instances. */
+  public static class Factory implements ExoTrackSelection.Factory {
+
+    private final int minBufferMs;
+    private final int bufferTargetMs;
+    private final float bandwidthFraction;
+    private final Clock clock;
+
+    /** Creates a factory with default parameters. */
+    public Factory() {
+      this(DEFAULT_MIN_BUFFER_MS, DEFAULT_BUFFER_TARGET_MS, DEFAULT_BANDWIDTH_FRACTION);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param minBufferMs The buffered duration at or below which the lowest quality track is
+     *     selected by the buffer based rule, and below which the throughput based rule is used.
+     * @param bufferTargetMs The buffered duration at or above which the highest quality track is
+     *     selected by the buffer based rule. Must be greater than {@code minBufferMs} and should be
+     *     less than the maximum buffer duration of the {@link
+     *     com.google.android.exoplayer2.LoadControl}.
+     * @param bandwidthFraction The fraction of the available bandwidth that the throughput based
+     *     rule should consider available for use.
+     */
+    public Factory(int minBufferMs, int bufferTargetMs, float bandwidthFraction) {
+      this(minBufferMs, bufferTargetMs, bandwidthFraction, Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param minBufferMs The buffered duration at or below which the lowest quality track is
+     *     selected by the buffer based rule, and below which the throughput based rule is used.
+     * @param bufferTargetMs The buffered duration at or above which the highest quality track is
+     *     selected by the buffer based rule. Must be greater than {@code minBufferMs} and should be
+     *     less than the maximum buffer duration of the {@link
+     *     com.google.android.exoplayer2.LoadControl}.
+     * @param bandwidthFraction The fraction of the available bandwidth that the throughput based
+     *     rule should consider available for use.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(int minBufferMs, int bufferTargetMs, float bandwidthFraction, Clock clock) {
+      Assertions.checkArgument(minBufferMs > 0 && bufferTargetMs > minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.bufferTargetMs = bufferTargetMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.clock = clock;
+    }
+
+    @Override
+    public @NullableType ExoTrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions,
+        BandwidthMeter bandwidthMeter,
+        MediaPeriodId mediaPeriodId,
+        Timeline timeline) {
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              new BolaTrackSelection(
+                  definition.group,
+                  definition.tracks,
+                  definition.type,
+                  bandwidthMeter,
+                  minBufferMs,
+                  bufferTargetMs,
+                  bandwidthFraction,
+                  clock));
+    }
+  }
+
+  public static final int DEFAULT_MIN_BUFFER_MS = 10_000;
+  public static final int DEFAULT_BUFFER_TARGET_MS = 30_000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION =
+      AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long minBufferUs;
+  private final long bufferTargetUs;
+  private final float bandwidthFraction;
+  private final Clock clock;
+  private final double[] utilities;
+  private final long[] nextChunkBitrates;
+
+  private float playbackSpeed;
+  private int selectedIndex;
+  private @C.SelectionReason int reason;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public BolaTrackSelection(TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter) {
+    this(
+        group,
+        tracks,
+        TrackSelection.TYPE_UNSET,
+        bandwidthMeter,
+        DEFAULT_MIN_BUFFER_MS,
+        DEFAULT_BUFFER_TARGET_MS,
+        DEFAULT_BANDWIDTH_FRACTION,
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param type The type that will be returned from {@link TrackSelection#getType()}.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minBufferMs The buffered duration at or below which the lowest quality track is
+   *     selected by the buffer based rule, and below which the throughput based rule is used.
+   * @param bufferTargetMs The buffered duration at or above which the highest quality track is
+   *     selected by the buffer based rule. Must be greater than {@code minBufferMs}.
+   * @param bandwidthFraction The fraction of the available bandwidth that the throughput based
+   *     rule should consider available for use.
+   * @param clock The {@link Clock}.
+   */
+  protected BolaTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      @Type int type,
+      BandwidthMeter bandwidthMeter,
+      long minBufferMs,
+      long bufferTargetMs,
+      float bandwidthFraction,
+      Clock clock) {
+    super(group, tracks, type);
+    Assertions.checkArgument(minBufferMs > 0 && bufferTargetMs > minBufferMs);
+    this.bandwidthMeter = bandwidthMeter;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.bufferTargetUs = bufferTargetMs * 1000L;
+    this.bandwidthFraction = bandwidthFraction;
+    this.clock = clock;
+    utilities = getUtilities(group, tracks);
+    nextChunkBitrates = new long[length];
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    long chunkDurationUs = updateNextChunkBitrates(mediaChunkIterators, queue);
+    int throughputIndex = determineThroughputIndex(nowMs, chunkDurationUs);
+
+    // Make initial selection
+    if (reason == C.SELECTION_REASON_UNKNOWN) {
+      reason = C.SELECTION_REASON_INITIAL;
+      selectedIndex = throughputIndex;
+      return;
+    }
+
+    int previousSelectedIndex = selectedIndex;
+    @C.SelectionReason int previousReason = reason;
+    int formatIndexOfPreviousChunk =
+        queue.isEmpty() ? C.INDEX_UNSET : indexOf(Iterables.getLast(queue).trackFormat);
+    if (formatIndexOfPreviousChunk != C.INDEX_UNSET) {
+      previousSelectedIndex = formatIndexOfPreviousChunk;
+      previousReason = Iterables.getLast(queue).trackSelectionReason;
+    }
+
+    long playoutBufferedDurationUs =
+        Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    int newSelectedIndex;
+    if (playoutBufferedDurationUs < minBufferUs) {
+      // Not enough buffer for the buffer based rule to be meaningful.
+      newSelectedIndex = throughputIndex;
+    } else {
+      newSelectedIndex = determineBolaIndex(nowMs, playoutBufferedDurationUs, availableDurationUs);
+      if (newSelectedIndex < previousSelectedIndex
+          && !isBlacklisted(previousSelectedIndex, nowMs)) {
+        // The buffer based rule switches up. Don't go above what the bandwidth supports, unless
+        // the current track is already above it.
+        newSelectedIndex = max(newSelectedIndex, min(throughputIndex, previousSelectedIndex));
+      }
+    }
+    // If we adapted, update the trigger.
+    reason =
+        newSelectedIndex == previousSelectedIndex ? previousReason : C.SELECTION_REASON_ADAPTIVE;
+    selectedIndex = newSelectedIndex;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public @C.SelectionReason int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Updates {@link #nextChunkBitrates} with the effective bitrate of the next chunk of each track,
+   * using the chunk sizes provided by {@code mediaChunkIterators} where available.
+   *
+   * @return The duration of the next chunk, in microseconds, or {@link C#TIME_UNSET} if unknown.
+   */
+  private long updateNextChunkBitrates(
+      MediaChunkIterator[] mediaChunkIterators, List<? extends MediaChunk> queue) {
+    long[] chunkLengths = new long[length];
+    long[] chunkDurationsUs = new long[length];
+    long chunkDurationUs = C.TIME_UNSET;
+    for (int i = 0; i < length; i++) {
+      chunkLengths[i] = C.LENGTH_UNSET;
+      chunkDurationsUs[i] = C.TIME_UNSET;
+      if (i < mediaChunkIterators.length && mediaChunkIterators[i].next()) {
+        MediaChunkIterator iterator = mediaChunkIterators[i];
+        DataSpec dataSpec = iterator.getDataSpec();
+        chunkLengths[i] = dataSpec.length;
+        chunkDurationsUs[i] = iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+        if (chunkDurationUs == C.TIME_UNSET || i == selectedIndex) {
+          chunkDurationUs = chunkDurationsUs[i];
+        }
+      }
+    }
+    if (chunkDurationUs == C.TIME_UNSET && !queue.isEmpty()) {
+      MediaChunk lastChunk = Iterables.getLast(queue);
+      if (lastChunk.startTimeUs != C.TIME_UNSET && lastChunk.endTimeUs != C.TIME_UNSET) {
+        chunkDurationUs = lastChunk.endTimeUs - lastChunk.startTimeUs;
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      int formatBitrate = getFormat(i).bitrate;
+      nextChunkBitrates[i] =
+          chunkLengths[i] != C.LENGTH_UNSET && chunkDurationsUs[i] > 0
+              ? chunkLengths[i] * 8 * C.MICROS_PER_SECOND / chunkDurationsUs[i]
+              : max(formatBitrate, 0);
+    }
+    return chunkDurationUs;
+  }
+
+  /** Returns the index of the highest quality track whose next chunk fits the bandwidth. */
+  private int determineThroughputIndex(long nowMs, long chunkDurationUs) {
+    long cautiousBandwidthEstimate =
+        (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction);
+    long timeToFirstByteEstimateUs = bandwidthMeter.getTimeToFirstByteEstimateUs();
+    long effectiveBitrate;
+    if (timeToFirstByteEstimateUs == C.TIME_UNSET || chunkDurationUs == C.TIME_UNSET) {
+      effectiveBitrate = (long) (cautiousBandwidthEstimate / playbackSpeed);
+    } else {
+      float availableTimeToLoadUs =
+          max(chunkDurationUs / playbackSpeed - timeToFirstByteEstimateUs, 0);
+      effectiveBitrate =
+          (long) (cautiousBandwidthEstimate * availableTimeToLoadUs / chunkDurationUs);
+    }
+    int lowestBitrateAllowedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        if (nextChunkBitrates[i] <= effectiveBitrate) {
+          return i;
+        } else {
+          lowestBitrateAllowedIndex = i;
+        }
+      }
+    }
+    return lowestBitrateAllowedIndex;
+  }
+
+  /** Returns the index of the track that maximizes the BOLA objective. */
+  private int determineBolaIndex(
+      long nowMs, long playoutBufferedDurationUs, long availableDurationUs) {
+    long bufferTargetUs = this.bufferTargetUs;
+    if (availableDurationUs != C.TIME_UNSET) {
+      // In live streams, the buffer can't grow beyond the available duration.
+      bufferTargetUs =
+          max(min(bufferTargetUs, availableDurationUs), minBufferUs + C.MICROS_PER_SECOND);
+    }
+    // Choose the control parameters such that the lowest quality is selected at minBufferUs and
+    // the highest quality is selected at bufferTargetUs.
+    double highestUtility = utilities[0];
+    double gammaP = (highestUtility - 1) / ((double) bufferTargetUs / minBufferUs - 1);
+    // If all tracks have the same nominal bitrate, the utilities don't distinguish between them and
+    // any positive value avoids a division by zero.
+    double v = gammaP > 0 ? minBufferUs / gammaP : 1;
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = 0;
+    for (int i = length - 1; i >= 0; i--) {
+      if (isBlacklisted(i, nowMs)) {
+        continue;
+      }
+      double score =
+          (v * (utilities[i] + gammaP) - playoutBufferedDurationUs) / max(nextChunkBitrates[i], 1);
+      if (bestIndex == C.INDEX_UNSET || score > bestScore) {
+        bestIndex = i;
+        bestScore = score;
+      }
+    }
+    return bestIndex == C.INDEX_UNSET ? length - 1 : bestIndex;
+  }
+
+  /**
+   * Returns the utility of each track in order of decreasing bitrate, which is the natural
+   * logarithm of its bitrate relative to the lowest bitrate, plus one.
+   */
+  private static double[] getUtilities(TrackGroup group, int[] tracks) {
+    double[] logBitrates = new double[tracks.length];
+    for (int i = 0; i < tracks.length; i++) {
+      logBitrates[i] = Math.log(max(group.getFormat(tracks[i]).bitrate, 1));
+    }
+    Arrays.sort(logBitrates);
+    double lowestLogBitrate = logBitrates[0];
+    double[] utilities = new double[tracks.length];
+    for (int i = 0; i < tracks.length; i++) {
+      utilities[i] = logBitrates[tracks.length - 1 - i] - lowestLogBitrate + 1;
+    }
+    return utilities;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.C;
+
+/**
+ * Persists bandwidth and time to first byte estimates of network paths across sessions.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface BandwidthEstimateStore {
+
+  /** A persisted estimate for a network path. */
+  final class Estimate {
+
+    /** The estimated bitrate in bits per second, or {@link C#RATE_UNSET_INT} if unknown. */
+    public final long bitrateEstimate;
+    /**
+     * The estimated time to first byte in microseconds, or {@link C#TIME_UNSET} if unknown.
+     */
+    public final long timeToFirstByteEstimateUs;
+    /** The wall clock time at which the estimate was stored, in milliseconds since the epoch. */
+    public final long timestampMs;
+
+    /**
+     * Creates an instance.
+     *
+     * @param bitrateEstimate The estimated bitrate in bits per second, or {@link
+     *     C#RATE_UNSET_INT} if unknown.
+     * @param timeToFirstByteEstimateUs The estimated time to first byte in microseconds, or {@link
+     *     C#TIME_UNSET} if unknown.
+     * @param timestampMs The wall clock time at which the estimate was stored, in milliseconds
+     *     since the epoch.
+     */
+    public Estimate(long bitrateEstimate, long timeToFirstByteEstimateUs, long timestampMs) {
+      this.bitrateEstimate = bitrateEstimate;
+      this.timeToFirstByteEstimateUs = timeToFirstByteEstimateUs;
+      this.timestampMs = timestampMs;
+    }
+  }
+
+  /**
+   * Returns the stored estimate for the network path with the given key, or null if none is
+   * stored.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param pathKey The key identifying the network path.
+   * @return The stored {@link Estimate}, or null.
+   */
+  @WorkerThread
+  @Nullable
+  Estimate get(String pathKey);
+
+  /**
+   * Stores an estimate for the network path with the given key, replacing any existing estimate.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param pathKey The key identifying the network path.
+   * @param estimate The {@link Estimate} to store.
+   */
+  @WorkerThread
+  void put(String pathKey, Estimate estimate);
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
+import com.google.android.exoplayer2.util.Log;
+
+/**
+ * A {@link BandwidthEstimateStore} that persists estimates in an SQLite database provided by a
+ * {@link DatabaseProvider}.
+ *
+ * <p>Failures to read or write the database are logged and otherwise ignored, since persisted
+ * estimates are only used to improve the initial estimates of a {@link BandwidthMeter}.
+ */
+public final class DefaultBandwidthEstimateStore implements BandwidthEstimateStore {
+
+  private static final String TAG = "BandwidthEstimateStore";
+
+  private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "BandwidthEstimates";
+  private static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_PATH_KEY = "path_key";
+  private static final String COLUMN_BITRATE_ESTIMATE = "bitrate_estimate";
+  private static final String COLUMN_TIME_TO_FIRST_BYTE_ESTIMATE_US = "ttfb_estimate_us";
+  private static final String COLUMN_TIMESTAMP_MS = "timestamp_ms";
+
+  private static final int COLUMN_INDEX_BITRATE_ESTIMATE = 0;
+  private static final int COLUMN_INDEX_TIME_TO_FIRST_BYTE_ESTIMATE_US = 1;
+  private static final int COLUMN_INDEX_TIMESTAMP_MS = 2;
+
+  private static final String WHERE_PATH_KEY_EQUALS = COLUMN_PATH_KEY + " = ?";
+
+  private static final String[] COLUMNS =
+      new String[] {
+        COLUMN_BITRATE_ESTIMATE, COLUMN_TIME_TO_FIRST_BYTE_ESTIMATE_US, COLUMN_TIMESTAMP_MS,
+      };
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_PATH_KEY
+          + " TEXT PRIMARY KEY NOT NULL,"
+          + COLUMN_BITRATE_ESTIMATE
+          + " INTEGER NOT NULL,"
+          + COLUMN_TIME_TO_FIRST_BYTE_ESTIMATE_US
+          + " INTEGER NOT NULL,"
+          + COLUMN_TIMESTAMP_MS
+          + " INTEGER NOT NULL)";
+
+  private final String name;
+  private final String tableName;
+  private final DatabaseProvider databaseProvider;
+  private final Object initializationLock;
+
+  @GuardedBy("initializationLock")
+  private boolean initialized;
+
+  /**
+   * Equivalent to calling {@link #DefaultBandwidthEstimateStore(DatabaseProvider, String)} with
+   * {@code name=""}.
+   *
+   * @param databaseProvider Provides the SQLite database in which estimates are persisted.
+   */
+  public DefaultBandwidthEstimateStore(DatabaseProvider databaseProvider) {
+    this(databaseProvider, "");
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param databaseProvider Provides the SQLite database in which estimates are persisted.
+   * @param name The name of the store. This name is incorporated into the name of the SQLite table
+   *     in which estimates are persisted.
+   */
+  public DefaultBandwidthEstimateStore(DatabaseProvider databaseProvider, String name) {
+    this.name = name;
+    this.databaseProvider = databaseProvider;
+    tableName = TABLE_PREFIX + name;
+    initializationLock = new Object();
+  }
+
+  @Override
+  @Nullable
+  public Estimate get(String pathKey) {
+    try {
+      ensureInitialized();
+      try (Cursor cursor =
+          databaseProvider
+              .getReadableDatabase()
+              .query(
+                  tableName,
+                  COLUMNS,
+                  WHERE_PATH_KEY_EQUALS,
+                  new String[] {pathKey},
+                  /* groupBy= */ null,
+                  /* having= */ null,
+                  /* orderBy= */ null)) {
+        if (!cursor.moveToNext()) {
+          return null;
+        }
+        return new Estimate(
+            cursor.getLong(COLUMN_INDEX_BITRATE_ESTIMATE),
+            cursor.getLong(COLUMN_INDEX_TIME_TO_FIRST_BYTE_ESTIMATE_US),
+            cursor.getLong(COLUMN_INDEX_TIMESTAMP_MS));
+      }
+    } catch (DatabaseIOException | SQLException e) {
+      Log.w(TAG, "Failed to load estimate", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void put(String pathKey, Estimate estimate) {
+    try {
+      ensureInitialized();
+      ContentValues values = new ContentValues();
+      values.put(COLUMN_PATH_KEY, pathKey);
+      values.put(COLUMN_BITRATE_ESTIMATE, estimate.bitrateEstimate);
+      values.put(COLUMN_TIME_TO_FIRST_BYTE_ESTIMATE_US, estimate.timeToFirstByteEstimateUs);
+      values.put(COLUMN_TIMESTAMP_MS, estimate.timestampMs);
+      databaseProvider
+          .getWritableDatabase()
+          .replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+    } catch (DatabaseIOException | SQLException e) {
+      Log.w(TAG, "Failed to store estimate", e);
+    }
+  }
+
+  private void ensureInitialized() throws DatabaseIOException {
+    synchronized (initializationLock) {
+      if (initialized) {
+        return;
+      }
+      try {
+        SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+        int version =
+            VersionTable.getVersion(
+                readableDatabase, VersionTable.FEATURE_BANDWIDTH_ESTIMATES, name);
+        if (version != TABLE_VERSION) {
+          SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+          writableDatabase.beginTransactionNonExclusive();
+          try {
+            VersionTable.setVersion(
+                writableDatabase, VersionTable.FEATURE_BANDWIDTH_ESTIMATES, name, TABLE_VERSION);
+            writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+            writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+            writableDatabase.setTransactionSuccessful();
+          } finally {
+            writableDatabase.endTransaction();
+          }
+        }
+        initialized = true;
+      } catch (SQLException e) {
+        throw new DatabaseIOException(e);
+      }
+    }
+  }
+}
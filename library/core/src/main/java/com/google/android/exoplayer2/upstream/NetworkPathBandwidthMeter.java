@@ -0,0 +1,814 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static java.lang.Math.max;
+
+import android.content.Context;
+import android.os.Handler;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthEstimateStore.Estimate;
+import com.google.android.exoplayer2.upstream.BandwidthMeter.EventListener.EventDispatcher;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates bandwidth and time to first byte separately for each network path, where a path is the
+ * combination of the current network type and the host serving the data.
+ *
+ * <p>Unlike {@link DefaultBandwidthMeter}, which adds one sample per transfer, throughput is
+ * sampled in fixed windows of {@link Builder#setSampleWindowMs(int) sub-second} duration while
+ * transfers are in progress. The time between a transfer being initialized and it starting is
+ * tracked as the time to first byte, so that throughput samples aren't diluted by request latency
+ * and {@link com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection} can account for
+ * both.
+ *
+ * <p>If a {@link BandwidthEstimateStore} is {@link Builder#setEstimateStore set}, estimates are
+ * persisted whenever a path becomes idle, and are loaded as initial estimates the first time a path
+ * is used in a later session. The store is accessed on a background {@link Executor}, so that
+ * loader threads don't block on its I/O, and estimates that become pending while a write is queued
+ * are written together. The initial estimates of {@link DefaultBandwidthMeter} are only used
+ * for network types for which nothing has been measured or persisted.
+ */
+public final class NetworkPathBandwidthMeter implements BandwidthMeter, TransferListener {
+
+  /** Default duration of each throughput sampling window, in milliseconds. */
+  public static final int DEFAULT_SAMPLE_WINDOW_MS = 250;
+
+  /** Default maximum total duration of the throughput samples kept per path, in milliseconds. */
+  public static final int DEFAULT_SLIDING_WINDOW_MAX_DURATION_MS = 8000;
+
+  /** Default number of time to first byte samples kept per path. */
+  public static final int DEFAULT_TIME_TO_FIRST_BYTE_SAMPLE_COUNT = 10;
+
+  /** Default maximum number of hosts for which estimates are kept in memory. */
+  public static final int DEFAULT_MAX_TRACKED_HOSTS = 16;
+
+  /** Default maximum age of persisted estimates that are used as initial estimates. */
+  public static final long DEFAULT_MAX_PERSISTED_ESTIMATE_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+  /** Builder for a network path bandwidth meter. */
+  public static final class Builder {
+
+    private final Context context;
+
+    private Map<Integer, Long> initialBitrateEstimates;
+    @Nullable private BandwidthEstimateStore estimateStore;
+    @Nullable private Executor estimateStoreExecutor;
+    private int sampleWindowMs;
+    private int slidingWindowMaxDurationMs;
+    private int timeToFirstByteSampleCount;
+    private int maxTrackedHosts;
+    private long maxPersistedEstimateAgeMs;
+    private Clock clock;
+
+    /**
+     * Creates a builder with default parameters.
+     *
+     * @param context A context.
+     */
+    public Builder(Context context) {
+      this.context = context.getApplicationContext();
+      initialBitrateEstimates =
+          DefaultBandwidthMeter.Builder.getInitialBitrateEstimatesForCountry(
+              Util.getCountryCode(context));
+      sampleWindowMs = DEFAULT_SAMPLE_WINDOW_MS;
+      slidingWindowMaxDurationMs = DEFAULT_SLIDING_WINDOW_MAX_DURATION_MS;
+      timeToFirstByteSampleCount = DEFAULT_TIME_TO_FIRST_BYTE_SAMPLE_COUNT;
+      maxTrackedHosts = DEFAULT_MAX_TRACKED_HOSTS;
+      maxPersistedEstimateAgeMs = DEFAULT_MAX_PERSISTED_ESTIMATE_AGE_MS;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the {@link BandwidthEstimateStore} in which estimates are persisted across sessions. The
+     * default value is {@code null}, meaning estimates are not persisted.
+     *
+     * <p>The store is accessed on the {@link #setEstimateStoreExecutor estimate store executor}.
+     *
+     * @param estimateStore The {@link BandwidthEstimateStore}, or {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setEstimateStore(@Nullable BandwidthEstimateStore estimateStore) {
+      this.estimateStore = estimateStore;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which estimates are loaded from and written to the {@link
+     * #setEstimateStore estimate store}. Tasks must be run in the order they're submitted.
+     *
+     * <p>The default value is a shared executor that uses a single thread, which is stopped when
+     * idle.
+     *
+     * @param estimateStoreExecutor The {@link Executor}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setEstimateStoreExecutor(Executor estimateStoreExecutor) {
+      this.estimateStoreExecutor = estimateStoreExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the duration of each throughput sampling window. The default value is {@link
+     * #DEFAULT_SAMPLE_WINDOW_MS}.
+     *
+     * @param sampleWindowMs The duration of each sampling window, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setSampleWindowMs(int sampleWindowMs) {
+      Assertions.checkArgument(sampleWindowMs > 0);
+      this.sampleWindowMs = sampleWindowMs;
+      return this;
+    }
+
+    /**
+     * Sets the maximum total duration of the throughput samples used for the estimate of each path.
+     * The default value is {@link #DEFAULT_SLIDING_WINDOW_MAX_DURATION_MS}.
+     *
+     * @param slidingWindowMaxDurationMs The maximum duration of the sliding window, in
+     *     milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setSlidingWindowMaxDurationMs(int slidingWindowMaxDurationMs) {
+      Assertions.checkArgument(slidingWindowMaxDurationMs > 0);
+      this.slidingWindowMaxDurationMs = slidingWindowMaxDurationMs;
+      return this;
+    }
+
+    /**
+     * Sets the number of time to first byte samples used for the estimate of each path. The
+     * default value is {@link #DEFAULT_TIME_TO_FIRST_BYTE_SAMPLE_COUNT}.
+     *
+     * @param timeToFirstByteSampleCount The number of time to first byte samples.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setTimeToFirstByteSampleCount(int timeToFirstByteSampleCount) {
+      Assertions.checkArgument(timeToFirstByteSampleCount > 0);
+      this.timeToFirstByteSampleCount = timeToFirstByteSampleCount;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of hosts for which estimates are kept in memory. The least recently
+     * used host is evicted when the limit is exceeded. The default value is {@link
+     * #DEFAULT_MAX_TRACKED_HOSTS}.
+     *
+     * @param maxTrackedHosts The maximum number of tracked hosts.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxTrackedHosts(int maxTrackedHosts) {
+      Assertions.checkArgument(maxTrackedHosts > 0);
+      this.maxTrackedHosts = maxTrackedHosts;
+      return this;
+    }
+
+    /**
+     * Sets the maximum age of persisted estimates for them to be used as initial estimates. The
+     * default value is {@link #DEFAULT_MAX_PERSISTED_ESTIMATE_AGE_MS}.
+     *
+     * @param maxPersistedEstimateAgeMs The maximum age of persisted estimates, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxPersistedEstimateAgeMs(long maxPersistedEstimateAgeMs) {
+      this.maxPersistedEstimateAgeMs = maxPersistedEstimateAgeMs;
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimate in bits per second that should be assumed when no estimate
+     * has been measured or persisted.
+     *
+     * @param initialBitrateEstimate The initial bitrate estimate in bits per second.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(long initialBitrateEstimate) {
+      for (Integer networkType : initialBitrateEstimates.keySet()) {
+        setInitialBitrateEstimate(networkType, initialBitrateEstimate);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimate in bits per second that should be assumed when no estimate
+     * has been measured or persisted and the current network connection is of the specified type.
+     *
+     * @param networkType The {@link C.NetworkType} this initial estimate is for.
+     * @param initialBitrateEstimate The initial bitrate estimate in bits per second.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(
+        @C.NetworkType int networkType, long initialBitrateEstimate) {
+      initialBitrateEstimates.put(networkType, initialBitrateEstimate);
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimates to the default values of the specified country. The
+     * initial estimates are used when no estimate has been measured or persisted.
+     *
+     * @param countryCode The ISO 3166-1 alpha-2 country code of the country whose default bitrate
+     *     estimates should be used.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(String countryCode) {
+      initialBitrateEstimates =
+          DefaultBandwidthMeter.Builder.getInitialBitrateEstimatesForCountry(
+              Ascii.toUpperCase(countryCode));
+      return this;
+    }
+
+    /**
+     * Sets the clock used to estimate bandwidth from data transfers. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The clock used to estimate bandwidth from data transfers.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds the bandwidth meter. */
+    public NetworkPathBandwidthMeter build() {
+      return new NetworkPathBandwidthMeter(this);
+    }
+  }
+
+  /** The number of throughput samples a path needs before its measured estimate is used. */
+  private static final int MIN_BITRATE_SAMPLES_FOR_ESTIMATE = 4;
+  /** The number of time to first byte samples a path needs before its measured estimate is used. */
+  private static final int MIN_TIME_TO_FIRST_BYTE_SAMPLES_FOR_ESTIMATE = 2;
+  /** The maximum number of initializing transfers for which the start time is kept. */
+  private static final int MAX_INITIALIZING_TRANSFERS = 10;
+  /** The time for which the idle thread of the shared estimate store executor is kept alive. */
+  private static final long SHARED_ESTIMATE_STORE_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private static Executor sharedEstimateStoreExecutor;
+
+  private final ImmutableMap<Integer, Long> initialBitrateEstimates;
+  @Nullable private final BandwidthEstimateStore estimateStore;
+  private final Executor estimateStoreExecutor;
+  private final int sampleWindowMs;
+  private final int slidingWindowMaxDurationMs;
+  private final int timeToFirstByteSampleCount;
+  private final long maxPersistedEstimateAgeMs;
+  private final Clock clock;
+  private final EventDispatcher eventDispatcher;
+  private final LinkedHashMap<DataSpec, Long> initializingTransferStartTimesMs;
+  private final LinkedHashMap<String, PathEstimator> hostPathEstimators;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Estimate> pendingEstimates;
+
+  private @C.NetworkType int networkType;
+  private PathEstimator networkPathEstimator;
+  @Nullable private String currentHost;
+  private long lastReportedBitrateEstimate;
+
+  private boolean networkTypeOverrideSet;
+  private @C.NetworkType int networkTypeOverride;
+
+  @GuardedBy("this")
+  private boolean writeScheduled;
+
+  private NetworkPathBandwidthMeter(Builder builder) {
+    initialBitrateEstimates = ImmutableMap.copyOf(builder.initialBitrateEstimates);
+    estimateStore = builder.estimateStore;
+    estimateStoreExecutor =
+        builder.estimateStoreExecutor != null
+            ? builder.estimateStoreExecutor
+            : getSharedEstimateStoreExecutor();
+    sampleWindowMs = builder.sampleWindowMs;
+    slidingWindowMaxDurationMs = builder.slidingWindowMaxDurationMs;
+    timeToFirstByteSampleCount = builder.timeToFirstByteSampleCount;
+    maxPersistedEstimateAgeMs = builder.maxPersistedEstimateAgeMs;
+    clock = builder.clock;
+    eventDispatcher = new EventDispatcher();
+    initializingTransferStartTimesMs =
+        new BoundedLinkedHashMap<>(MAX_INITIALIZING_TRANSFERS, /* accessOrder= */ false);
+    hostPathEstimators =
+        new BoundedLinkedHashMap<>(builder.maxTrackedHosts, /* accessOrder= */ true);
+    pendingEstimates = new LinkedHashMap<>();
+    NetworkTypeObserver networkTypeObserver = NetworkTypeObserver.getInstance(builder.context);
+    networkType = networkTypeObserver.getNetworkType();
+    networkPathEstimator = createPathEstimator(getPathKey(networkType, /* host= */ null));
+    lastReportedBitrateEstimate = getBitrateEstimate();
+    networkTypeObserver.register(/* listener= */ this::onNetworkTypeChanged);
+  }
+
+  /**
+   * Overrides the network type. Handled in the same way as if the meter had detected a change from
+   * the current network type to the specified network type internally.
+   *
+   * <p>Applications should not normally call this method. It is intended for testing purposes.
+   *
+   * @param networkType The overriding network type.
+   */
+  public synchronized void setNetworkTypeOverride(@C.NetworkType int networkType) {
+    networkTypeOverride = networkType;
+    networkTypeOverrideSet = true;
+    onNetworkTypeChanged(networkType);
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate() {
+    @Nullable PathEstimator hostPathEstimator = getCurrentHostPathEstimator();
+    if (hostPathEstimator != null && hostPathEstimator.hasMeasuredBitrateEstimate()) {
+      return hostPathEstimator.getMeasuredBitrateEstimate();
+    } else if (networkPathEstimator.hasMeasuredBitrateEstimate()) {
+      return networkPathEstimator.getMeasuredBitrateEstimate();
+    } else if (hostPathEstimator != null
+        && hostPathEstimator.persistedBitrateEstimate != C.RATE_UNSET_INT) {
+      return hostPathEstimator.persistedBitrateEstimate;
+    } else if (networkPathEstimator.persistedBitrateEstimate != C.RATE_UNSET_INT) {
+      return networkPathEstimator.persistedBitrateEstimate;
+    }
+    return getInitialBitrateEstimateForNetworkType(networkType);
+  }
+
+  @Override
+  public synchronized long getTimeToFirstByteEstimateUs() {
+    @Nullable PathEstimator hostPathEstimator = getCurrentHostPathEstimator();
+    if (hostPathEstimator != null && hostPathEstimator.hasMeasuredTimeToFirstByteEstimate()) {
+      return hostPathEstimator.getMeasuredTimeToFirstByteEstimateUs();
+    } else if (networkPathEstimator.hasMeasuredTimeToFirstByteEstimate()) {
+      return networkPathEstimator.getMeasuredTimeToFirstByteEstimateUs();
+    } else if (hostPathEstimator != null
+        && hostPathEstimator.persistedTimeToFirstByteEstimateUs != C.TIME_UNSET) {
+      return hostPathEstimator.persistedTimeToFirstByteEstimateUs;
+    }
+    return networkPathEstimator.persistedTimeToFirstByteEstimateUs;
+  }
+
+  @Override
+  public TransferListener getTransferListener() {
+    return this;
+  }
+
+  @Override
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    Assertions.checkNotNull(eventHandler);
+    Assertions.checkNotNull(eventListener);
+    eventDispatcher.addListener(eventHandler, eventListener);
+  }
+
+  @Override
+  public void removeEventListener(EventListener eventListener) {
+    eventDispatcher.removeListener(eventListener);
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    @Nullable PathEstimator networkPathEstimatorToLoad;
+    @Nullable PathEstimator hostPathEstimatorToLoad;
+    synchronized (this) {
+      initializingTransferStartTimesMs.put(dataSpec, clock.elapsedRealtime());
+      @Nullable PathEstimator hostPathEstimator = getOrCreateHostPathEstimator(dataSpec);
+      networkPathEstimatorToLoad =
+          networkPathEstimator.claimPersistedEstimateLoad() ? networkPathEstimator : null;
+      hostPathEstimatorToLoad =
+          hostPathEstimator != null && hostPathEstimator.claimPersistedEstimateLoad()
+              ? hostPathEstimator
+              : null;
+    }
+    if (networkPathEstimatorToLoad != null || hostPathEstimatorToLoad != null) {
+      // Access the store off the loader thread, and without holding the lock.
+      estimateStoreExecutor.execute(
+          () -> {
+            loadPersistedEstimate(networkPathEstimatorToLoad);
+            loadPersistedEstimate(hostPathEstimatorToLoad);
+          });
+    }
+  }
+
+  @Override
+  public synchronized void onTransferStart(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    long nowMs = clock.elapsedRealtime();
+    @Nullable PathEstimator hostPathEstimator = getOrCreateHostPathEstimator(dataSpec);
+    @Nullable Long initializingTimeMs = initializingTransferStartTimesMs.remove(dataSpec);
+    if (initializingTimeMs != null) {
+      long timeToFirstByteUs = Util.msToUs(nowMs - initializingTimeMs);
+      networkPathEstimator.addTimeToFirstByteSample(timeToFirstByteUs);
+      if (hostPathEstimator != null) {
+        hostPathEstimator.addTimeToFirstByteSample(timeToFirstByteUs);
+      }
+    }
+    networkPathEstimator.onTransferStart(nowMs);
+    if (hostPathEstimator != null) {
+      hostPathEstimator.onTransferStart(nowMs);
+      currentHost = getHost(dataSpec);
+    }
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    long nowMs = clock.elapsedRealtime();
+    @Nullable PathEstimator hostPathEstimator = getHostPathEstimator(dataSpec);
+    if (hostPathEstimator != null) {
+      hostPathEstimator.onBytesTransferred(nowMs, bytesTransferred);
+    }
+    if (networkPathEstimator.onBytesTransferred(nowMs, bytesTransferred)) {
+      maybeNotifyBandwidthSample(
+          networkPathEstimator.lastSampleElapsedMs,
+          networkPathEstimator.lastSampleBytesTransferred,
+          getBitrateEstimate());
+    }
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    boolean scheduleWrite = false;
+    synchronized (this) {
+      long nowMs = clock.elapsedRealtime();
+      long nowWallClockMs = clock.currentTimeMillis();
+      @Nullable PathEstimator hostPathEstimator = getHostPathEstimator(dataSpec);
+      if (hostPathEstimator != null && hostPathEstimator.onTransferEnd(nowMs)) {
+        maybeAddPendingEstimate(hostPathEstimator, nowWallClockMs);
+      }
+      int previousSampleCount = networkPathEstimator.bitrateSampleCount;
+      if (networkPathEstimator.onTransferEnd(nowMs)) {
+        maybeAddPendingEstimate(networkPathEstimator, nowWallClockMs);
+      }
+      if (networkPathEstimator.bitrateSampleCount != previousSampleCount) {
+        maybeNotifyBandwidthSample(
+            networkPathEstimator.lastSampleElapsedMs,
+            networkPathEstimator.lastSampleBytesTransferred,
+            getBitrateEstimate());
+      }
+      if (!writeScheduled && !pendingEstimates.isEmpty()) {
+        writeScheduled = true;
+        scheduleWrite = true;
+      }
+    }
+    if (scheduleWrite) {
+      estimateStoreExecutor.execute(this::writePendingEstimates);
+    }
+  }
+
+  /**
+   * Returns a shared {@link Executor} on which {@link NetworkPathBandwidthMeter} instances can
+   * access their {@link BandwidthEstimateStore}. The executor uses a single thread, which is
+   * stopped when idle.
+   */
+  private static synchronized Executor getSharedEstimateStoreExecutor() {
+    if (sharedEstimateStoreExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              SHARED_ESTIMATE_STORE_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "ExoPlayer:BandwidthEstimateStore"));
+      executor.allowCoreThreadTimeOut(true);
+      sharedEstimateStoreExecutor = executor;
+    }
+    return sharedEstimateStoreExecutor;
+  }
+
+  @GuardedBy("this")
+  private void maybeAddPendingEstimate(PathEstimator pathEstimator, long nowWallClockMs) {
+    if (estimateStore == null) {
+      return;
+    }
+    @Nullable Estimate estimate = pathEstimator.getEstimateToPersist(nowWallClockMs);
+    if (estimate != null) {
+      // Replaces any estimate for the path that hasn't been written yet.
+      pendingEstimates.put(pathEstimator.key, estimate);
+    }
+  }
+
+  private void writePendingEstimates() {
+    ImmutableMap<String, Estimate> estimates;
+    synchronized (this) {
+      estimates = ImmutableMap.copyOf(pendingEstimates);
+      pendingEstimates.clear();
+      writeScheduled = false;
+    }
+    BandwidthEstimateStore estimateStore = Assertions.checkNotNull(this.estimateStore);
+    for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+      estimateStore.put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private synchronized void onNetworkTypeChanged(@C.NetworkType int networkType) {
+    if (networkTypeOverrideSet) {
+      networkType = networkTypeOverride;
+    }
+    if (this.networkType == networkType) {
+      return;
+    }
+
+    this.networkType = networkType;
+    if (networkType == C.NETWORK_TYPE_OFFLINE
+        || networkType == C.NETWORK_TYPE_UNKNOWN
+        || networkType == C.NETWORK_TYPE_OTHER) {
+      // It's better not to reset the estimates for these network types.
+      return;
+    }
+
+    // Estimates are only valid for the network type they were measured on. Start again with the
+    // paths of the new network type, which will load their persisted estimates when first used.
+    long nowMs = clock.elapsedRealtime();
+    int sampleElapsedTimeMs = networkPathEstimator.getPendingSampleElapsedMs(nowMs);
+    long sampleBytesTransferred = networkPathEstimator.getPendingSampleBytesTransferred();
+    networkPathEstimator = createPathEstimator(getPathKey(networkType, /* host= */ null));
+    hostPathEstimators.clear();
+    currentHost = null;
+    maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, getBitrateEstimate());
+  }
+
+  private void loadPersistedEstimate(@Nullable PathEstimator pathEstimator) {
+    if (pathEstimator == null || estimateStore == null) {
+      return;
+    }
+    @Nullable Estimate estimate = estimateStore.get(pathEstimator.key);
+    if (estimate == null
+        || clock.currentTimeMillis() - estimate.timestampMs > maxPersistedEstimateAgeMs) {
+      return;
+    }
+    synchronized (this) {
+      pathEstimator.setPersistedEstimate(estimate);
+      maybeNotifyBandwidthSample(
+          /* elapsedMs= */ 0, /* bytesTransferred= */ 0, getBitrateEstimate());
+    }
+  }
+
+  @Nullable
+  private PathEstimator getCurrentHostPathEstimator() {
+    return currentHost != null ? hostPathEstimators.get(currentHost) : null;
+  }
+
+  @Nullable
+  private PathEstimator getHostPathEstimator(DataSpec dataSpec) {
+    @Nullable String host = getHost(dataSpec);
+    return host != null ? hostPathEstimators.get(host) : null;
+  }
+
+  @Nullable
+  private PathEstimator getOrCreateHostPathEstimator(DataSpec dataSpec) {
+    @Nullable String host = getHost(dataSpec);
+    if (host == null) {
+      return null;
+    }
+    @Nullable PathEstimator hostPathEstimator = hostPathEstimators.get(host);
+    if (hostPathEstimator == null) {
+      hostPathEstimator = createPathEstimator(getPathKey(networkType, host));
+      hostPathEstimators.put(host, hostPathEstimator);
+    }
+    return hostPathEstimator;
+  }
+
+  private PathEstimator createPathEstimator(String key) {
+    return new PathEstimator(
+        key,
+        sampleWindowMs,
+        slidingWindowMaxDurationMs,
+        timeToFirstByteSampleCount,
+        /* needsPersistedEstimateLoad= */ estimateStore != null);
+  }
+
+  private void maybeNotifyBandwidthSample(
+      int elapsedMs, long bytesTransferred, long bitrateEstimate) {
+    if (elapsedMs == 0 && bytesTransferred == 0 && bitrateEstimate == lastReportedBitrateEstimate) {
+      return;
+    }
+    lastReportedBitrateEstimate = bitrateEstimate;
+    eventDispatcher.bandwidthSample(elapsedMs, bytesTransferred, bitrateEstimate);
+  }
+
+  private long getInitialBitrateEstimateForNetworkType(@C.NetworkType int networkType) {
+    @Nullable Long initialBitrateEstimate = initialBitrateEstimates.get(networkType);
+    if (initialBitrateEstimate == null) {
+      initialBitrateEstimate = initialBitrateEstimates.get(C.NETWORK_TYPE_UNKNOWN);
+    }
+    if (initialBitrateEstimate == null) {
+      initialBitrateEstimate = DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE;
+    }
+    return initialBitrateEstimate;
+  }
+
+  @Nullable
+  private static String getHost(DataSpec dataSpec) {
+    @Nullable String host = dataSpec.uri.getHost();
+    return host != null ? Ascii.toLowerCase(host) : null;
+  }
+
+  private static String getPathKey(@C.NetworkType int networkType, @Nullable String host) {
+    return host == null ? String.valueOf(networkType) : networkType + "/" + host;
+  }
+
+  private static boolean isTransferAtFullNetworkSpeed(DataSpec dataSpec, boolean isNetwork) {
+    return isNetwork && !dataSpec.isFlagSet(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED);
+  }
+
+  /** Throughput and time to first byte estimates for a single network path. */
+  private static final class PathEstimator {
+
+    public final String key;
+
+    private final int sampleWindowMs;
+    private final SlidingPercentile bitrateSamples;
+    private final SlidingPercentile timeToFirstByteSamples;
+
+    private boolean needsPersistedEstimateLoad;
+    private long persistedBitrateEstimate;
+    private long persistedTimeToFirstByteEstimateUs;
+
+    private int bitrateSampleCount;
+    private int timeToFirstByteSampleCount;
+    private int lastSampleElapsedMs;
+    private long lastSampleBytesTransferred;
+
+    private int streamCount;
+    private long windowStartTimeMs;
+    private long windowBytesTransferred;
+
+    public PathEstimator(
+        String key,
+        int sampleWindowMs,
+        int slidingWindowMaxDurationMs,
+        int timeToFirstByteSampleCount,
+        boolean needsPersistedEstimateLoad) {
+      this.key = key;
+      this.sampleWindowMs = sampleWindowMs;
+      this.needsPersistedEstimateLoad = needsPersistedEstimateLoad;
+      bitrateSamples = new SlidingPercentile(slidingWindowMaxDurationMs);
+      timeToFirstByteSamples = new SlidingPercentile(timeToFirstByteSampleCount);
+      persistedBitrateEstimate = C.RATE_UNSET_INT;
+      persistedTimeToFirstByteEstimateUs = C.TIME_UNSET;
+    }
+
+    /** Returns whether the caller should load the persisted estimate for this path. */
+    public boolean claimPersistedEstimateLoad() {
+      boolean needsLoad = needsPersistedEstimateLoad;
+      needsPersistedEstimateLoad = false;
+      return needsLoad;
+    }
+
+    public void setPersistedEstimate(Estimate estimate) {
+      persistedBitrateEstimate = estimate.bitrateEstimate;
+      persistedTimeToFirstByteEstimateUs = estimate.timeToFirstByteEstimateUs;
+    }
+
+    public boolean hasMeasuredBitrateEstimate() {
+      return bitrateSampleCount >= MIN_BITRATE_SAMPLES_FOR_ESTIMATE;
+    }
+
+    public long getMeasuredBitrateEstimate() {
+      return (long) bitrateSamples.getPercentile(0.5f);
+    }
+
+    public boolean hasMeasuredTimeToFirstByteEstimate() {
+      return timeToFirstByteSampleCount >= MIN_TIME_TO_FIRST_BYTE_SAMPLES_FOR_ESTIMATE;
+    }
+
+    public long getMeasuredTimeToFirstByteEstimateUs() {
+      return (long) timeToFirstByteSamples.getPercentile(0.5f);
+    }
+
+    public void addTimeToFirstByteSample(long timeToFirstByteUs) {
+      timeToFirstByteSamples.addSample(/* weight= */ 1, timeToFirstByteUs);
+      timeToFirstByteSampleCount++;
+    }
+
+    public void onTransferStart(long nowMs) {
+      if (streamCount == 0) {
+        windowStartTimeMs = nowMs;
+      }
+      streamCount++;
+    }
+
+    /** Returns whether a throughput sample was added. */
+    public boolean onBytesTransferred(long nowMs, int bytesTransferred) {
+      if (streamCount == 0) {
+        // The transfer started before this path was created.
+        return false;
+      }
+      windowBytesTransferred += bytesTransferred;
+      if (nowMs - windowStartTimeMs < sampleWindowMs) {
+        return false;
+      }
+      addBitrateSample(nowMs);
+      return true;
+    }
+
+    /** Returns whether the path became idle. */
+    public boolean onTransferEnd(long nowMs) {
+      if (streamCount == 0) {
+        // The transfer started before this path was created.
+        return false;
+      }
+      streamCount--;
+      if (streamCount > 0) {
+        return false;
+      }
+      if (nowMs > windowStartTimeMs) {
+        addBitrateSample(nowMs);
+      } // Else any window bytes transferred will be carried forward into the next window.
+      return true;
+    }
+
+    public int getPendingSampleElapsedMs(long nowMs) {
+      return streamCount > 0 ? (int) (nowMs - windowStartTimeMs) : 0;
+    }
+
+    public long getPendingSampleBytesTransferred() {
+      return windowBytesTransferred;
+    }
+
+    /** Returns the estimate to persist, or null if nothing has been measured on this path. */
+    @Nullable
+    public Estimate getEstimateToPersist(long nowWallClockMs) {
+      if (!hasMeasuredBitrateEstimate() && !hasMeasuredTimeToFirstByteEstimate()) {
+        return null;
+      }
+      return new Estimate(
+          hasMeasuredBitrateEstimate() ? getMeasuredBitrateEstimate() : persistedBitrateEstimate,
+          hasMeasuredTimeToFirstByteEstimate()
+              ? getMeasuredTimeToFirstByteEstimateUs()
+              : persistedTimeToFirstByteEstimateUs,
+          nowWallClockMs);
+    }
+
+    private void addBitrateSample(long nowMs) {
+      int elapsedMs = (int) (nowMs - windowStartTimeMs);
+      float bitsPerSecond = (windowBytesTransferred * 8000f) / elapsedMs;
+      bitrateSamples.addSample(/* weight= */ max(elapsedMs, 1), bitsPerSecond);
+      bitrateSampleCount++;
+      lastSampleElapsedMs = elapsedMs;
+      lastSampleBytesTransferred = windowBytesTransferred;
+      windowStartTimeMs = nowMs;
+      windowBytesTransferred = 0;
+    }
+  }
+
+  /** A {@link LinkedHashMap} that evicts its eldest entry when exceeding a maximum size. */
+  private static final class BoundedLinkedHashMap<K, V> extends LinkedHashMap<K, V> {
+
+    private final int maxSize;
+
+    public BoundedLinkedHashMap(int maxSize, boolean accessOrder) {
+      super(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, accessOrder);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxSize;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.NetworkTrace;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.BolaTrackSelection;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Regression tests replaying network traces against the adaptive streaming components of the
+ * player: {@link AdaptiveTrackSelection}, {@link DefaultLoadControl}, {@link
+ * DefaultLivePlaybackSpeedControl} and {@link PredictiveLivePlaybackSpeedControl}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class AdaptiveStreamingSimulationTest {
+
+  private static final String CELLULAR_FLUCTUATING_TRACE =
+      "network_traces/cellular_fluctuating.csv";
+  private static final String WIFI_WITH_OUTAGE_TRACE = "network_traces/wifi_with_outage.csv";
+  private static final String STEP_DOWN_TRACE = "network_traces/step_down.csv";
+
+  private static final Format[] FORMATS =
+      new Format[] {
+        videoFormat(/* bitrate= */ 500_000, /* height= */ 360),
+        videoFormat(/* bitrate= */ 1_000_000, /* height= */ 480),
+        videoFormat(/* bitrate= */ 2_000_000, /* height= */ 720),
+        videoFormat(/* bitrate= */ 4_000_000, /* height= */ 1080),
+      };
+
+  @Test
+  public void vod_eachTrace_producesRepeatableResults() throws Exception {
+    for (String trace :
+        new String[] {CELLULAR_FLUCTUATING_TRACE, WIFI_WITH_OUTAGE_TRACE, STEP_DOWN_TRACE}) {
+      AbrSimulator simulator =
+          new AbrSimulator.Builder(getContext(), loadTrace(trace), FORMATS)
+              .setBitratePercentStdDev(20)
+              .build();
+
+      AbrSimulator.Result result = simulator.run(new AdaptiveTrackSelection.Factory());
+
+      assertThat(simulator.run(new AdaptiveTrackSelection.Factory())).isEqualTo(result);
+      assertThat(result.startupTimeMs).isGreaterThan(0);
+      assertThat(result.averageBitrate).isAtLeast(FORMATS[0].bitrate);
+      assertThat(result.averageBitrate).isAtMost(FORMATS[FORMATS.length - 1].bitrate);
+    }
+  }
+
+  @Test
+  public void vod_wifiWithOutage_doesNotRebuffer() throws Exception {
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(getContext(), loadTrace(WIFI_WITH_OUTAGE_TRACE), FORMATS).build();
+
+    AbrSimulator.Result adaptiveResult = simulator.run(new AdaptiveTrackSelection.Factory());
+    AbrSimulator.Result bolaResult = simulator.run(new BolaTrackSelection.Factory());
+
+    assertThat(adaptiveResult.rebufferCount).isEqualTo(0);
+    assertThat(bolaResult.rebufferCount).isEqualTo(0);
+  }
+
+  @Test
+  public void vod_wifiWithOutage_withSmallBuffer_rebuffers() throws Exception {
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(getContext(), loadTrace(WIFI_WITH_OUTAGE_TRACE), FORMATS)
+            .setChunkDurationMs(2_000)
+            .setLoadControlSupplier(
+                () ->
+                    new DefaultLoadControl.Builder()
+                        .setBufferDurationsMs(
+                            /* minBufferMs= */ 3_000,
+                            /* maxBufferMs= */ 3_000,
+                            /* bufferForPlaybackMs= */ 1_000,
+                            /* bufferForPlaybackAfterRebufferMs= */ 2_000)
+                        .build())
+            .build();
+
+    AbrSimulator.Result result = simulator.run(new AdaptiveTrackSelection.Factory());
+
+    assertThat(result.rebufferCount).isAtLeast(1);
+    assertThat(result.rebufferDurationMs).isGreaterThan(0);
+  }
+
+  @Test
+  public void vod_fluctuatingTrace_selectsLowerQualityThanStableTrace() throws Exception {
+    AbrSimulator fluctuatingSimulator =
+        new AbrSimulator.Builder(getContext(), loadTrace(CELLULAR_FLUCTUATING_TRACE), FORMATS)
+            .build();
+    AbrSimulator stableSimulator =
+        new AbrSimulator.Builder(getContext(), NetworkTrace.constant(16_000_000), FORMATS).build();
+
+    AbrSimulator.Result fluctuatingResult =
+        fluctuatingSimulator.run(new AdaptiveTrackSelection.Factory());
+    AbrSimulator.Result stableResult = stableSimulator.run(new AdaptiveTrackSelection.Factory());
+
+    assertThat(fluctuatingResult.averageBitrate).isLessThan(stableResult.averageBitrate);
+  }
+
+  @Test
+  public void live_constantTrace_keepsLiveOffsetCloseToTarget() throws Exception {
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(getContext(), NetworkTrace.constant(10_000_000), FORMATS)
+            .setChunkDurationMs(2_000)
+            .setMediaDurationMs(60_000)
+            .setLive(/* targetLiveOffsetMs= */ 6_000)
+            .build();
+
+    AbrSimulator.Result result = simulator.run(new AdaptiveTrackSelection.Factory());
+
+    assertThat(result.rebufferCount).isEqualTo(0);
+    assertThat(result.averageLiveOffsetMs).isAtLeast(5_000);
+    assertThat(result.averageLiveOffsetMs).isAtMost(8_000);
+  }
+
+  @Test
+  public void live_withPredictiveSpeedControl_keepsLiveOffsetCloseToTarget() throws Exception {
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(getContext(), NetworkTrace.constant(10_000_000), FORMATS)
+            .setChunkDurationMs(1_000)
+            .setMediaDurationMs(60_000)
+            .setLive(
+                /* targetLiveOffsetMs= */ 4_000,
+                () -> new PredictiveLivePlaybackSpeedControl.Builder().build())
+            .build();
+
+    AbrSimulator.Result result = simulator.run(new AdaptiveTrackSelection.Factory());
+
+    assertThat(result.rebufferCount).isEqualTo(0);
+    assertThat(result.averageLiveOffsetMs).isAtLeast(3_000);
+    assertThat(result.averageLiveOffsetMs).isAtMost(6_000);
+  }
+
+  private static Context getContext() {
+    return ApplicationProvider.getApplicationContext();
+  }
+
+  private static NetworkTrace loadTrace(String fileName) throws IOException {
+    return NetworkTrace.parseCsv(TestUtil.getString(getContext(), fileName));
+  }
+
+  private static Format videoFormat(int bitrate, int height) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(height * 16 / 9)
+        .setHeight(height)
+        .build();
+  }
+}
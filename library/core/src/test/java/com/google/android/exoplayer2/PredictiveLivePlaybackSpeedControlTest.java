@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.MediaItem.LiveConfiguration;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link PredictiveLivePlaybackSpeedControl}. */
+@RunWith(AndroidJUnit4.class)
+public class PredictiveLivePlaybackSpeedControlTest {
+
+  private FakeClock clock;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_returnsUnset() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder().setClock(clock).build();
+
+    assertThat(speedControl.getTargetLiveOffsetUs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_afterSetLiveConfiguration_returnsMediaLiveOffset() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder().setClock(clock).build();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder()
+            .setTargetOffsetMs(42)
+            .setMinOffsetMs(5)
+            .setMaxOffsetMs(400)
+            .build());
+
+    assertThat(speedControl.getTargetLiveOffsetUs()).isEqualTo(42_000);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_withoutLiveConfiguration_returnsUnitSpeed() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder().setClock(clock).build();
+
+    float adjustedSpeed =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 5_000_000, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(adjustedSpeed).isEqualTo(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_liveOffsetFarFromTarget_returnsConstrainedSpeed() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    float speedBehindTarget =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_500_000, /* bufferedDurationUs= */ 1_000_000);
+    clock.advanceTime(PredictiveLivePlaybackSpeedControl.DEFAULT_MIN_UPDATE_INTERVAL_MS);
+    speedControl.setTargetLiveOffsetOverrideUs(3_000_000);
+    float speedAheadOfTarget =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_500_000, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(speedBehindTarget)
+        .isEqualTo(PredictiveLivePlaybackSpeedControl.DEFAULT_FALLBACK_MAX_PLAYBACK_SPEED);
+    assertThat(speedAheadOfTarget)
+        .isEqualTo(PredictiveLivePlaybackSpeedControl.DEFAULT_FALLBACK_MIN_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_liveOffsetCloseToTarget_returnsUnitSpeed() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    float adjustedSpeed =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_010_000, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(adjustedSpeed).isEqualTo(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_beforeMinUpdateInterval_returnsPreviousSpeed() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder()
+            .setMinUpdateIntervalMs(200)
+            .setClock(clock)
+            .build();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    float adjustedSpeed1 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_500_000, /* bufferedDurationUs= */ 1_000_000);
+    clock.advanceTime(100);
+    float adjustedSpeed2 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 1_500_000, /* bufferedDurationUs= */ 1_000_000);
+    clock.advanceTime(100);
+    float adjustedSpeed3 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 1_500_000, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(adjustedSpeed1).isGreaterThan(1f);
+    assertThat(adjustedSpeed2).isEqualTo(adjustedSpeed1);
+    assertThat(adjustedSpeed3).isLessThan(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_withPersistentError_increasesSpeedOverTime() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder()
+            .setDerivativeControlFactor(0)
+            .setClock(clock)
+            .build();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    float adjustedSpeed1 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_100_000, /* bufferedDurationUs= */ 5_000_000);
+    clock.advanceTime(1_000);
+    float adjustedSpeed2 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_100_000, /* bufferedDurationUs= */ 5_000_000);
+
+    assertThat(adjustedSpeed1).isWithin(0.0001f).of(1.01f);
+    assertThat(adjustedSpeed2).isGreaterThan(adjustedSpeed1);
+    assertThat(adjustedSpeed2)
+        .isAtMost(PredictiveLivePlaybackSpeedControl.DEFAULT_FALLBACK_MAX_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_withLateArrivals_increasesTargetToSafeOffset() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    // Media arrives every second, 2.5 seconds behind the live edge.
+    simulateArrivals(
+        speedControl,
+        /* liveOffsetUs= */ 4_000_000,
+        /* bufferedDurationBeforeArrivalUs= */ 500_000,
+        /* bufferedDurationAfterArrivalUs= */ 1_500_000,
+        /* arrivalCount= */ 2);
+
+    // The target must allow to play for another second after each arrival.
+    assertThat(speedControl.getTargetLiveOffsetUs()).isAtLeast(3_500_000);
+    assertThat(speedControl.getTargetLiveOffsetUs()).isAtMost(3_600_000);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_withPartsLoadedSampleBySample_usesPartArrivalInterval() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    // A one second part arrives every second, 2.5 seconds behind the live edge. Each part is
+    // loaded as 30 samples over 300ms, with a speed update after each sample.
+    for (int i = 0; i < 3; i++) {
+      long bufferedDurationUs = 500_000;
+      for (int j = 0; j < 30; j++) {
+        bufferedDurationUs += 33_334;
+        speedControl.getAdjustedPlaybackSpeed(/* liveOffsetUs= */ 4_000_000, bufferedDurationUs);
+        clock.advanceTime(10);
+      }
+      speedControl.getAdjustedPlaybackSpeed(
+          /* liveOffsetUs= */ 4_000_000, /* bufferedDurationUs= */ 500_000);
+      clock.advanceTime(700);
+    }
+
+    // The samples of a part must not count as separate arrivals, which would shrink the arrival
+    // interval to the time between samples.
+    assertThat(speedControl.getTargetLiveOffsetUs()).isAtLeast(3_500_000);
+    assertThat(speedControl.getTargetLiveOffsetUs()).isAtMost(3_600_000);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_withLateArrivals_doesNotExceedMaxLiveOffset() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).setMaxOffsetMs(3_000).build());
+
+    simulateArrivals(
+        speedControl,
+        /* liveOffsetUs= */ 4_000_000,
+        /* bufferedDurationBeforeArrivalUs= */ 500_000,
+        /* bufferedDurationAfterArrivalUs= */ 1_500_000,
+        /* arrivalCount= */ 2);
+
+    assertThat(speedControl.getTargetLiveOffsetUs()).isEqualTo(3_000_000);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_afterRebuffer_increasesTarget() {
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder()
+            .setTargetLiveOffsetIncrementOnRebufferMs(300)
+            .setClock(clock)
+            .build();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    speedControl.notifyRebuffer();
+
+    assertThat(speedControl.getTargetLiveOffsetUs()).isEqualTo(2_300_000);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_bufferRunsOutBeforeNextArrival_doesNotSpeedUp() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).setMaxOffsetMs(2_000).build());
+
+    // The live offset is a second above the target, but only 200ms are buffered after each
+    // arrival while the next arrival is a second away.
+    float adjustedSpeed =
+        simulateArrivals(
+            speedControl,
+            /* liveOffsetUs= */ 3_000_000,
+            /* bufferedDurationBeforeArrivalUs= */ 50_000,
+            /* bufferedDurationAfterArrivalUs= */ 200_000,
+            /* arrivalCount= */ 2);
+
+    assertThat(adjustedSpeed)
+        .isEqualTo(PredictiveLivePlaybackSpeedControl.DEFAULT_FALLBACK_MIN_PLAYBACK_SPEED);
+    assertThat(speedControl.getRebufferRisk()).isEqualTo(1f);
+  }
+
+  @Test
+  public void getRebufferRisk_withLargeBuffer_returnsLowRisk() {
+    PredictiveLivePlaybackSpeedControl speedControl = createSpeedControl();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(10_000).build());
+
+    simulateArrivals(
+        speedControl,
+        /* liveOffsetUs= */ 10_000_000,
+        /* bufferedDurationBeforeArrivalUs= */ 8_500_000,
+        /* bufferedDurationAfterArrivalUs= */ 9_500_000,
+        /* arrivalCount= */ 3);
+
+    assertThat(speedControl.getRebufferRisk()).isAtMost(0.2f);
+  }
+
+  @Test
+  public void listener_isNotifiedForEachSpeedUpdate() {
+    List<Long> reportedLiveOffsetsUs = new ArrayList<>();
+    List<Long> reportedTargetLiveOffsetsUs = new ArrayList<>();
+    List<Float> reportedSpeeds = new ArrayList<>();
+    List<Float> reportedRebufferRisks = new ArrayList<>();
+    PredictiveLivePlaybackSpeedControl speedControl =
+        new PredictiveLivePlaybackSpeedControl.Builder()
+            .setMinUpdateIntervalMs(200)
+            .setListener(
+                (liveOffsetUs, targetLiveOffsetUs, playbackSpeed, rebufferRisk) -> {
+                  reportedLiveOffsetsUs.add(liveOffsetUs);
+                  reportedTargetLiveOffsetsUs.add(targetLiveOffsetUs);
+                  reportedSpeeds.add(playbackSpeed);
+                  reportedRebufferRisks.add(rebufferRisk);
+                })
+            .setClock(clock)
+            .build();
+    speedControl.setLiveConfiguration(
+        new LiveConfiguration.Builder().setTargetOffsetMs(2_000).build());
+
+    float adjustedSpeed1 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 2_500_000, /* bufferedDurationUs= */ 1_000_000);
+    clock.advanceTime(100);
+    speedControl.getAdjustedPlaybackSpeed(
+        /* liveOffsetUs= */ 2_400_000, /* bufferedDurationUs= */ 900_000);
+    clock.advanceTime(100);
+    float adjustedSpeed2 =
+        speedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 1_900_000, /* bufferedDurationUs= */ 0);
+
+    assertThat(reportedLiveOffsetsUs).containsExactly(2_500_000L, 1_900_000L).inOrder();
+    assertThat(reportedTargetLiveOffsetsUs).containsExactly(2_000_000L, 2_000_000L).inOrder();
+    assertThat(reportedSpeeds).containsExactly(adjustedSpeed1, adjustedSpeed2).inOrder();
+    assertThat(reportedRebufferRisks.get(1)).isEqualTo(1f);
+  }
+
+  private PredictiveLivePlaybackSpeedControl createSpeedControl() {
+    return new PredictiveLivePlaybackSpeedControl.Builder().setClock(clock).build();
+  }
+
+  /**
+   * Simulates media arriving every second, with a speed update every half second, and returns the
+   * last adjusted speed.
+   */
+  private float simulateArrivals(
+      PredictiveLivePlaybackSpeedControl speedControl,
+      long liveOffsetUs,
+      long bufferedDurationBeforeArrivalUs,
+      long bufferedDurationAfterArrivalUs,
+      int arrivalCount) {
+    float adjustedSpeed = 1f;
+    for (int i = 0; i < arrivalCount; i++) {
+      speedControl.getAdjustedPlaybackSpeed(liveOffsetUs, bufferedDurationBeforeArrivalUs);
+      clock.advanceTime(500);
+      adjustedSpeed =
+          speedControl.getAdjustedPlaybackSpeed(liveOffsetUs, bufferedDurationAfterArrivalUs);
+      clock.advanceTime(500);
+    }
+    return adjustedSpeed;
+  }
+}
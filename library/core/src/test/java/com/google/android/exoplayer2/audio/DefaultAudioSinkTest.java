@@ -290,6 +290,38 @@ public final class DefaultAudioSinkTest {
         .isEqualTo(SINK_FORMAT_SUPPORTED_DIRECTLY);
   }
 
+  @Config(minSdk = 21)
+  @Test
+  public void handlesBuffer_withFloatOutputAndPlaybackSpeed_appliesPlaybackSpeed()
+      throws Exception {
+    defaultAudioSink =
+        new DefaultAudioSink.Builder()
+            .setEnableFloatOutput(true)
+            .setOffloadMode(DefaultAudioSink.OFFLOAD_MODE_DISABLED)
+            .build();
+    defaultAudioSink.setPlaybackParameters(new PlaybackParameters(/* speed= */ 1.5f));
+    Format floatFormat =
+        STEREO_44_1_FORMAT
+            .buildUpon()
+            .setSampleMimeType(MimeTypes.AUDIO_RAW)
+            .setPcmEncoding(C.ENCODING_PCM_FLOAT)
+            .build();
+    defaultAudioSink.configure(
+        floatFormat, /* specifiedBufferSize= */ 0, /* outputChannels= */ null);
+
+    assertThat(
+            defaultAudioSink.handleBuffer(
+                ByteBuffer.allocateDirect(SAMPLE_RATE_44_1 * CHANNEL_COUNT_STEREO * 4)
+                    .order(ByteOrder.nativeOrder()),
+                /* presentationTimeUs= */ 0,
+                /* encodedAccessUnitCount= */ 1))
+        .isTrue();
+
+    // The speed is applied by the float Sonic rather than being reset to the default.
+    assertThat(defaultAudioSink.getPlaybackParameters())
+        .isEqualTo(new PlaybackParameters(/* speed= */ 1.5f));
+  }
+
   @Test
   public void supportsFloatPcm() {
     Format floatFormat =
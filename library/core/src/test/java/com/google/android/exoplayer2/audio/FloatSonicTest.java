@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link FloatSonic}. */
+@RunWith(AndroidJUnit4.class)
+public final class FloatSonicTest {
+
+  private static final int SAMPLE_RATE = 48_000;
+  private static final int CHANNEL_COUNT = 8;
+  private static final int FRAMES_PER_BUFFER = 1024;
+
+  @Test
+  public void withoutChange_outputsInputUnmodified() {
+    FloatSonic sonic =
+        new FloatSonic(
+            SAMPLE_RATE,
+            CHANNEL_COUNT,
+            /* speed= */ 1f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    float[] input = createInput(/* frameCount= */ SAMPLE_RATE);
+
+    float[] output = process(sonic, input, CHANNEL_COUNT);
+
+    assertThat(output).isEqualTo(input);
+  }
+
+  @Test
+  public void speedUp_withEightChannels_outputsExpectedFrameCount() {
+    FloatSonic sonic =
+        new FloatSonic(
+            SAMPLE_RATE,
+            CHANNEL_COUNT,
+            /* speed= */ 2f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    float[] input = createInput(/* frameCount= */ 2 * SAMPLE_RATE);
+
+    float[] output = process(sonic, input, CHANNEL_COUNT);
+
+    assertThat(output.length % CHANNEL_COUNT).isEqualTo(0);
+    assertThat((double) output.length / CHANNEL_COUNT).isWithin(SAMPLE_RATE / 100).of(SAMPLE_RATE);
+  }
+
+  @Test
+  public void slowDown_outputsExpectedFrameCount() {
+    FloatSonic sonic =
+        new FloatSonic(
+            SAMPLE_RATE,
+            /* channelCount= */ 2,
+            /* speed= */ 0.5f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    float[] input = createInput(/* frameCount= */ SAMPLE_RATE / 2, /* channelCount= */ 2);
+
+    float[] output = process(sonic, input, /* channelCount= */ 2);
+
+    assertThat((double) output.length / 2).isWithin(SAMPLE_RATE / 100).of(SAMPLE_RATE);
+  }
+
+  @Test
+  public void resample_outputsExpectedFrameCount() {
+    FloatSonic sonic =
+        new FloatSonic(
+            /* inputSampleRateHz= */ 44_100,
+            CHANNEL_COUNT,
+            /* speed= */ 1f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    float[] input = createInput(/* frameCount= */ 44_100);
+
+    float[] output = process(sonic, input, CHANNEL_COUNT);
+
+    assertThat((double) output.length / CHANNEL_COUNT).isWithin(SAMPLE_RATE / 100).of(SAMPLE_RATE);
+  }
+
+  @Test
+  public void speedUp_preservesPrecisionOfSmallValues() {
+    FloatSonic sonic =
+        new FloatSonic(
+            SAMPLE_RATE,
+            CHANNEL_COUNT,
+            /* speed= */ 2f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    // A value that is much smaller than the least significant bit of 16-bit audio.
+    float value = 1e-6f;
+    float[] input = new float[SAMPLE_RATE * CHANNEL_COUNT];
+    Arrays.fill(input, value);
+
+    float[] output = process(sonic, input, CHANNEL_COUNT);
+
+    // Skip the end of the output, which is mixed with the silence used to drain the processor.
+    for (int i = 0; i < output.length / 2; i++) {
+      assertThat(output[i]).isWithin(1e-12f).of(value);
+    }
+  }
+
+  @Test
+  public void flush_discardsPendingInputAndOutput() {
+    FloatSonic sonic =
+        new FloatSonic(
+            SAMPLE_RATE,
+            CHANNEL_COUNT,
+            /* speed= */ 2f,
+            /* pitch= */ 1f,
+            /* outputSampleRateHz= */ SAMPLE_RATE);
+    sonic.queueInput(FloatBuffer.wrap(createInput(/* frameCount= */ 5_000)));
+    assertThat(sonic.getOutputSize() + sonic.getPendingInputBytes()).isGreaterThan(0);
+
+    sonic.flush();
+
+    assertThat(sonic.getOutputSize()).isEqualTo(0);
+    assertThat(sonic.getPendingInputBytes()).isEqualTo(0);
+  }
+
+  private static float[] createInput(int frameCount) {
+    return createInput(frameCount, CHANNEL_COUNT);
+  }
+
+  /** Returns interleaved input with a tone at a different frequency in each channel. */
+  private static float[] createInput(int frameCount, int channelCount) {
+    float[] input = new float[frameCount * channelCount];
+    for (int i = 0; i < frameCount; i++) {
+      for (int j = 0; j < channelCount; j++) {
+        double frequencyHz = 110 * (j + 1);
+        input[i * channelCount + j] =
+            (float) (0.5 * Math.sin(2 * Math.PI * frequencyHz * i / SAMPLE_RATE));
+      }
+    }
+    return input;
+  }
+
+  /** Queues the input in buffers, then queues the end of stream, and returns all output. */
+  private static float[] process(FloatSonic sonic, float[] input, int channelCount) {
+    FloatBuffer output = FloatBuffer.allocate(4 * input.length + SAMPLE_RATE * channelCount);
+    FloatBuffer inputBuffer = FloatBuffer.wrap(input);
+    while (inputBuffer.hasRemaining()) {
+      int limit = Math.min(inputBuffer.position() + FRAMES_PER_BUFFER * channelCount, input.length);
+      FloatBuffer buffer = inputBuffer.duplicate();
+      buffer.limit(limit);
+      sonic.queueInput(buffer);
+      inputBuffer.position(buffer.position());
+      sonic.getOutput(output);
+    }
+    sonic.queueEndOfStream();
+    sonic.getOutput(output);
+    float[] result = new float[output.position()];
+    output.flip();
+    output.get(result);
+    return result;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FusedPcmAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class FusedPcmAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48_000;
+  private static final int INPUT_FRAME_COUNT = 4096;
+  private static final int TRIM_START_FRAMES = 100;
+  private static final int TRIM_END_FRAMES = 300;
+  private static final int[] CHANNEL_MAP = new int[] {2, 0, 1, 5, 3};
+
+  @Test
+  public void withoutConversionMappingOrTrimming_isNotActive() throws Exception {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setChannelMap(new int[] {0, 1});
+
+    processor.configure(new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT));
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_withInvalidChannelMap_throws() {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setChannelMap(new int[] {0, 2});
+
+    assertThrows(
+        UnhandledAudioFormatException.class,
+        () ->
+            processor.configure(
+                new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT)));
+  }
+
+  @Test
+  public void output_matchesSeparateProcessors() throws Exception {
+    int[] encodings =
+        new int[] {
+          C.ENCODING_PCM_8BIT,
+          C.ENCODING_PCM_16BIT,
+          C.ENCODING_PCM_16BIT_BIG_ENDIAN,
+          C.ENCODING_PCM_24BIT,
+          C.ENCODING_PCM_32BIT,
+          C.ENCODING_PCM_FLOAT
+        };
+    for (int encoding : encodings) {
+      for (@Nullable int[] channelMap : new int[][] {null, CHANNEL_MAP}) {
+        for (int trimFrames : new int[] {0, TRIM_START_FRAMES}) {
+          AudioFormat inputFormat = new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, encoding);
+          byte[] input = createInput(inputFormat);
+
+          FusedPcmAudioProcessor fusedProcessor = new FusedPcmAudioProcessor();
+          fusedProcessor.setChannelMap(channelMap);
+          fusedProcessor.setTrimFrameCount(trimFrames, /* trimEndFrames= */ 3 * trimFrames);
+          ResamplingAudioProcessor resamplingProcessor = new ResamplingAudioProcessor();
+          ChannelMappingAudioProcessor channelMappingProcessor = new ChannelMappingAudioProcessor();
+          channelMappingProcessor.setChannelMap(channelMap);
+          TrimmingAudioProcessor trimmingProcessor = new TrimmingAudioProcessor();
+          trimmingProcessor.setTrimFrameCount(trimFrames, /* trimEndFrames= */ 3 * trimFrames);
+
+          byte[] fusedOutput = process(inputFormat, input, fusedProcessor);
+          byte[] expectedOutput =
+              process(
+                  inputFormat,
+                  input,
+                  resamplingProcessor,
+                  channelMappingProcessor,
+                  trimmingProcessor);
+
+          assertThat(fusedOutput).isEqualTo(expectedOutput);
+          assertThat(fusedProcessor.getTrimmedFrameCount())
+              .isEqualTo(trimmingProcessor.getTrimmedFrameCount());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void trimsStartAndEndFrames() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setTrimFrameCount(TRIM_START_FRAMES, TRIM_END_FRAMES);
+    byte[] input = createInput(inputFormat);
+
+    byte[] output = process(inputFormat, input, processor);
+
+    int bytesPerFrame = inputFormat.bytesPerFrame;
+    assertThat(output.length)
+        .isEqualTo((INPUT_FRAME_COUNT - TRIM_START_FRAMES - TRIM_END_FRAMES) * bytesPerFrame);
+    assertThat(output[0]).isEqualTo(input[TRIM_START_FRAMES * bytesPerFrame]);
+    assertThat(output[output.length - 1])
+        .isEqualTo(input[input.length - TRIM_END_FRAMES * bytesPerFrame - 1]);
+    assertThat(processor.getTrimmedFrameCount()).isEqualTo(TRIM_START_FRAMES + TRIM_END_FRAMES);
+  }
+
+  private static byte[] createInput(AudioFormat format) {
+    byte[] data = new byte[INPUT_FRAME_COUNT * format.bytesPerFrame];
+    Random random = new Random(/* seed= */ format.encoding);
+    if (format.encoding == C.ENCODING_PCM_FLOAT) {
+      ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+      while (buffer.hasRemaining()) {
+        // Include values outside the nominal range, which are clamped.
+        buffer.putFloat(random.nextFloat() * 2.2f - 1.1f);
+      }
+    } else {
+      random.nextBytes(data);
+    }
+    return data;
+  }
+
+  /**
+   * Configures and flushes the processors, then queues the input through them in buffers of varying
+   * sizes. Simulates a gapless transition to another track by configuring them again before
+   * draining them to the end of stream, and returns their output.
+   */
+  private static byte[] process(AudioFormat inputFormat, byte[] input, AudioProcessor... processors)
+      throws UnhandledAudioFormatException {
+    configure(inputFormat, processors);
+    int activeCount = 0;
+    AudioProcessor[] activeProcessors = new AudioProcessor[processors.length];
+    for (AudioProcessor processor : processors) {
+      processor.flush();
+      if (processor.isActive()) {
+        activeProcessors[activeCount++] = processor;
+      }
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Random random = new Random(/* seed= */ 0);
+    int position = 0;
+    while (position < input.length) {
+      int frameCount = 1 + random.nextInt(1024);
+      int size = Math.min(frameCount * inputFormat.bytesPerFrame, input.length - position);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+      buffer.put(input, position, size).flip();
+      position += size;
+      feed(activeProcessors, /* fromIndex= */ 0, activeCount, buffer, output);
+    }
+    configure(inputFormat, processors);
+    for (int i = 0; i < activeCount; i++) {
+      activeProcessors[i].queueEndOfStream();
+      feed(activeProcessors, i + 1, activeCount, activeProcessors[i].getOutput(), output);
+    }
+    return output.toByteArray();
+  }
+
+  private static void configure(AudioFormat inputFormat, AudioProcessor[] processors)
+      throws UnhandledAudioFormatException {
+    AudioFormat format = inputFormat;
+    for (AudioProcessor processor : processors) {
+      AudioFormat outputFormat = processor.configure(format);
+      if (processor.isActive()) {
+        format = outputFormat;
+      }
+    }
+  }
+
+  /**
+   * Passes {@code buffer} through the processors from {@code fromIndex} (inclusive) to {@code
+   * toIndex} (exclusive), and writes the result to {@code output}.
+   */
+  private static void feed(
+      AudioProcessor[] processors,
+      int fromIndex,
+      int toIndex,
+      ByteBuffer buffer,
+      ByteArrayOutputStream output) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      processors[i].queueInput(buffer);
+      buffer = processors[i].getOutput();
+    }
+    while (buffer.hasRemaining()) {
+      output.write(buffer.get());
+    }
+  }
+}
@@ -22,6 +22,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
 import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,6 +41,9 @@ public final class SonicAudioProcessorTest {
   private static final AudioFormat AUDIO_FORMAT_48000_HZ =
       new AudioFormat(
           /* sampleRate= */ 48000, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_16BIT);
+  private static final AudioFormat AUDIO_FORMAT_48000_HZ_FLOAT =
+      new AudioFormat(
+          /* sampleRate= */ 48000, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_FLOAT);
 
   private SonicAudioProcessor sonicAudioProcessor;
 
@@ -91,6 +96,72 @@ public final class SonicAudioProcessorTest {
     assertThat(sonicAudioProcessor.isActive()).isFalse();
   }
 
+  @Test
+  public void configureWithFloatInput_floatPcmNotEnabled_throws() {
+    try {
+      sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+      fail();
+    } catch (UnhandledAudioFormatException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void speedChangeWithFloatInput_outputsFloatWithFullPrecision() throws Exception {
+    sonicAudioProcessor = new SonicAudioProcessor(/* floatPcmEnabled= */ true);
+    // A value that is much smaller than the least significant bit of 16-bit audio.
+    float value = 1e-6f;
+    sonicAudioProcessor.setSpeed(2f);
+    AudioFormat outputAudioFormat = sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+    sonicAudioProcessor.flush();
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(/* capacity= */ 48000 * 2 * 4).order(ByteOrder.nativeOrder());
+    while (inputBuffer.hasRemaining()) {
+      inputBuffer.putFloat(value);
+    }
+    inputBuffer.flip();
+
+    sonicAudioProcessor.queueInput(inputBuffer);
+    ByteBuffer outputBuffer = sonicAudioProcessor.getOutput();
+
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(inputBuffer.hasRemaining()).isFalse();
+    assertThat(outputBuffer.remaining()).isGreaterThan(0);
+    while (outputBuffer.hasRemaining()) {
+      assertThat(outputBuffer.getFloat()).isWithin(1e-12f).of(value);
+    }
+  }
+
+  @Test
+  public void speedChangeWithFloatInput_outputsHalfTheSamplesAtDoubleSpeed() throws Exception {
+    sonicAudioProcessor = new SonicAudioProcessor(/* floatPcmEnabled= */ true);
+    sonicAudioProcessor.setSpeed(2f);
+    AudioFormat outputAudioFormat = sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+    sonicAudioProcessor.flush();
+    int inputFrameCount = 48000;
+    int bytesPerFrame = 2 * 4;
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(inputFrameCount * bytesPerFrame).order(ByteOrder.nativeOrder());
+    for (int i = 0; inputBuffer.hasRemaining(); i++) {
+      // A 440 Hz sine wave, so that Sonic has a pitch period to find.
+      inputBuffer.putFloat((float) Math.sin(2 * Math.PI * 440 * (i / 2) / 48000) / 2);
+    }
+    inputBuffer.flip();
+
+    sonicAudioProcessor.queueInput(inputBuffer);
+    int outputBytes = sonicAudioProcessor.getOutput().remaining();
+    sonicAudioProcessor.queueEndOfStream();
+    outputBytes += sonicAudioProcessor.getOutput().remaining();
+
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(outputAudioFormat.sampleRate).isEqualTo(48000);
+    assertThat(outputAudioFormat.channelCount).isEqualTo(2);
+    assertThat(sonicAudioProcessor.isEnded()).isTrue();
+    assertThat(outputBytes % bytesPerFrame).isEqualTo(0);
+    // Sonic removes whole pitch periods, so the output length is only approximately halved.
+    assertThat(outputBytes / bytesPerFrame).isWithin(480).of(inputFrameCount / 2);
+  }
+
   @Test
   public void doesNotSupportNon16BitInput() throws Exception {
     try {
@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.analytics.PlayerId;
 import com.google.android.exoplayer2.drm.DrmSessionManager.DrmSessionReference;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.AppManagedProvider;
+import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.testutil.FakeExoMediaDrm;
 import com.google.android.exoplayer2.testutil.TestUtil;
@@ -347,6 +348,174 @@ public class DefaultDrmSessionManagerTest {
     drmSessionManager.release();
   }
 
+  @Test(timeout = 10_000)
+  public void maxKeepaliveSessionCountExceeded_leastRecentlyUsedSessionReleased()
+      throws Exception {
+    ImmutableList<DrmInitData.SchemeData> secondSchemeDatas =
+        ImmutableList.of(DRM_SCHEME_DATAS.get(0).copyWithData(TestUtil.createByteArray(4, 5, 6)));
+    FakeExoMediaDrm.LicenseServer licenseServer =
+        FakeExoMediaDrm.LicenseServer.allowingSchemeDatas(DRM_SCHEME_DATAS, secondSchemeDatas);
+    Format secondFormatWithDrmInitData =
+        new Format.Builder().setDrmInitData(new DrmInitData(secondSchemeDatas)).build();
+    DrmSessionManager drmSessionManager =
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(DRM_SCHEME_UUID, uuid -> new FakeExoMediaDrm())
+            .setSessionKeepaliveMs(10_000)
+            .setMaxKeepaliveSessionCount(1)
+            .setMultiSession(true)
+            .build(/* mediaDrmCallback= */ licenseServer);
+
+    drmSessionManager.prepare();
+    drmSessionManager.setPlayer(/* playbackLooper= */ Looper.myLooper(), PlayerId.UNSET);
+    DrmSession firstDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null, FORMAT_WITH_DRM_INIT_DATA));
+    waitForOpenedWithKeys(firstDrmSession);
+    firstDrmSession.release(/* eventDispatcher= */ null);
+    DrmSession secondDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null, secondFormatWithDrmInitData));
+    waitForOpenedWithKeys(secondDrmSession);
+
+    // firstDrmSession is the only session being kept alive.
+    assertThat(firstDrmSession.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+
+    secondDrmSession.release(/* eventDispatcher= */ null);
+
+    // Keeping secondDrmSession alive exceeds the limit, so firstDrmSession is released.
+    assertThat(firstDrmSession.getState()).isEqualTo(DrmSession.STATE_RELEASED);
+    assertThat(secondDrmSession.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+  }
+
+  @Test(timeout = 10_000)
+  public void maxPreacquiredSessionCountExceeded_firstPreacquiredReferenceReleased()
+      throws Exception {
+    ImmutableList<DrmInitData.SchemeData> secondSchemeDatas =
+        ImmutableList.of(DRM_SCHEME_DATAS.get(0).copyWithData(TestUtil.createByteArray(4, 5, 6)));
+    FakeExoMediaDrm.LicenseServer licenseServer =
+        FakeExoMediaDrm.LicenseServer.allowingSchemeDatas(DRM_SCHEME_DATAS, secondSchemeDatas);
+    Format secondFormatWithDrmInitData =
+        new Format.Builder().setDrmInitData(new DrmInitData(secondSchemeDatas)).build();
+    DrmSessionManager drmSessionManager =
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(DRM_SCHEME_UUID, uuid -> new FakeExoMediaDrm())
+            // Disable keepalive
+            .setSessionKeepaliveMs(C.TIME_UNSET)
+            .setMaxPreacquiredSessionCount(1)
+            .setMultiSession(true)
+            .build(/* mediaDrmCallback= */ licenseServer);
+
+    drmSessionManager.prepare();
+    drmSessionManager.setPlayer(/* playbackLooper= */ Looper.myLooper(), PlayerId.UNSET);
+    DrmSession firstDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null, FORMAT_WITH_DRM_INIT_DATA));
+    DrmSessionReference firstDrmSessionReference =
+        drmSessionManager.preacquireSession(/* eventDispatcher= */ null, FORMAT_WITH_DRM_INIT_DATA);
+    waitForOpenedWithKeys(firstDrmSession);
+    firstDrmSession.release(/* eventDispatcher= */ null);
+
+    // firstDrmSession is held open by firstDrmSessionReference.
+    assertThat(firstDrmSession.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+
+    DrmSessionReference secondDrmSessionReference =
+        drmSessionManager.preacquireSession(
+            /* eventDispatcher= */ null, secondFormatWithDrmInitData);
+    // Allow the pre-acquisition to be handled on the main/playback thread.
+    ShadowLooper.idleMainLooper();
+
+    // The second pre-acquisition exceeds the limit, so firstDrmSessionReference is released.
+    assertThat(firstDrmSession.getState()).isEqualTo(DrmSession.STATE_RELEASED);
+
+    // Releasing the reference again is a no-op.
+    firstDrmSessionReference.release();
+    secondDrmSessionReference.release();
+    drmSessionManager.release();
+  }
+
+  @Test(timeout = 10_000)
+  public void shareSessionsByKeyIds_sessionReusedForDifferentSchemeDataWithSameKeyIds()
+      throws Exception {
+    UUID keyId = new UUID(1, 2);
+    ImmutableList<DrmInitData.SchemeData> firstSchemeDatas =
+        ImmutableList.of(createSchemeDataWithKeyIds(/* data= */ new byte[] {1}, keyId));
+    ImmutableList<DrmInitData.SchemeData> secondSchemeDatas =
+        ImmutableList.of(createSchemeDataWithKeyIds(/* data= */ new byte[] {2}, keyId));
+    // Only allow the first scheme data, so that a license request for the second fails.
+    FakeExoMediaDrm.LicenseServer licenseServer =
+        FakeExoMediaDrm.LicenseServer.allowingSchemeDatas(firstSchemeDatas);
+    DrmSessionManager drmSessionManager =
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(DRM_SCHEME_UUID, uuid -> new FakeExoMediaDrm())
+            .setMultiSession(true)
+            .setShareSessionsByKeyIds(true)
+            .build(/* mediaDrmCallback= */ licenseServer);
+
+    drmSessionManager.prepare();
+    drmSessionManager.setPlayer(/* playbackLooper= */ Looper.myLooper(), PlayerId.UNSET);
+    DrmSession firstDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null,
+                new Format.Builder().setDrmInitData(new DrmInitData(firstSchemeDatas)).build()));
+    waitForOpenedWithKeys(firstDrmSession);
+    DrmSession secondDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null,
+                new Format.Builder().setDrmInitData(new DrmInitData(secondSchemeDatas)).build()));
+
+    assertThat(secondDrmSession).isSameInstanceAs(firstDrmSession);
+    assertThat(secondDrmSession.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+    assertThat(licenseServer.getReceivedSchemeDatas()).containsExactly(firstSchemeDatas);
+
+    firstDrmSession.release(/* eventDispatcher= */ null);
+    secondDrmSession.release(/* eventDispatcher= */ null);
+    drmSessionManager.release();
+  }
+
+  @Test(timeout = 10_000)
+  public void shareSessionsByKeyIds_newSessionForDifferentKeyIds() throws Exception {
+    ImmutableList<DrmInitData.SchemeData> firstSchemeDatas =
+        ImmutableList.of(createSchemeDataWithKeyIds(/* data= */ new byte[] {1}, new UUID(1, 2)));
+    ImmutableList<DrmInitData.SchemeData> secondSchemeDatas =
+        ImmutableList.of(
+            createSchemeDataWithKeyIds(/* data= */ new byte[] {1}, new UUID(1, 2), new UUID(3, 4)));
+    FakeExoMediaDrm.LicenseServer licenseServer =
+        FakeExoMediaDrm.LicenseServer.allowingSchemeDatas(firstSchemeDatas, secondSchemeDatas);
+    DrmSessionManager drmSessionManager =
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(DRM_SCHEME_UUID, uuid -> new FakeExoMediaDrm())
+            .setMultiSession(true)
+            .setShareSessionsByKeyIds(true)
+            .build(/* mediaDrmCallback= */ licenseServer);
+
+    drmSessionManager.prepare();
+    drmSessionManager.setPlayer(/* playbackLooper= */ Looper.myLooper(), PlayerId.UNSET);
+    DrmSession firstDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null,
+                new Format.Builder().setDrmInitData(new DrmInitData(firstSchemeDatas)).build()));
+    waitForOpenedWithKeys(firstDrmSession);
+    // The second content requires a key that the first session wasn't opened for.
+    DrmSession secondDrmSession =
+        checkNotNull(
+            drmSessionManager.acquireSession(
+                /* eventDispatcher= */ null,
+                new Format.Builder().setDrmInitData(new DrmInitData(secondSchemeDatas)).build()));
+
+    assertThat(secondDrmSession).isNotSameInstanceAs(firstDrmSession);
+    waitForOpenedWithKeys(secondDrmSession);
+
+    firstDrmSession.release(/* eventDispatcher= */ null);
+    secondDrmSession.release(/* eventDispatcher= */ null);
+    drmSessionManager.release();
+  }
+
   @Test(timeout = 10_000)
   public void sessionReacquired_keepaliveTimeOutCancelled() throws Exception {
     FakeExoMediaDrm.LicenseServer licenseServer =
@@ -806,6 +975,13 @@ public class DefaultDrmSessionManagerTest {
     drmSession.release(/* eventDispatcher= */ null);
   }
 
+  private static DrmInitData.SchemeData createSchemeDataWithKeyIds(byte[] data, UUID... keyIds) {
+    return new DrmInitData.SchemeData(
+        DRM_SCHEME_UUID,
+        MimeTypes.VIDEO_MP4,
+        PsshAtomUtil.buildPsshAtom(DRM_SCHEME_UUID, keyIds, data));
+  }
+
   private static void waitForOpenedWithKeys(DrmSession drmSession) {
     while (drmSession.getState() != DrmSession.STATE_OPENED_WITH_KEYS) {
       // Check the error first, so we get a meaningful failure if there's been an error.
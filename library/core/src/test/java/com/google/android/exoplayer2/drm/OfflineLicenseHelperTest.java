@@ -19,15 +19,25 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import android.util.Pair;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager.MissingSchemeDataException;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
+import com.google.android.exoplayer2.drm.DrmSession.DrmSessionException;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper.LicenseDownloadListener;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper.LicenseDownloadResult;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -156,6 +166,133 @@ public class OfflineLicenseHelperTest {
     assertThat(licenseDurationRemainingSec.second).isEqualTo(playbackDuration);
   }
 
+  @Test
+  public void downloadLicenses_withMultiSession_returnsKeySetIdsInOrder() throws Exception {
+    setDefaultStubKeySetId();
+    OfflineLicenseHelper multiSessionHelper = createMultiSessionHelper();
+    RecordingListener listener = new RecordingListener();
+    ImmutableList<Format> formats =
+        ImmutableList.of(
+            newFormatWithDrmInitData(new byte[] {1}),
+            newFormatWithDrmInitData(new byte[] {2}),
+            newFormatWithDrmInitData(new byte[] {3}),
+            newFormatWithDrmInitData(new byte[] {4}),
+            newFormatWithDrmInitData(new byte[] {5}));
+
+    ImmutableList<LicenseDownloadResult> results =
+        multiSessionHelper.downloadLicenses(formats, /* maxParallelRequests= */ 2, listener);
+    multiSessionHelper.release();
+
+    assertThat(results).hasSize(5);
+    for (int i = 0; i < results.size(); i++) {
+      assertThat(results.get(i).format).isSameInstanceAs(formats.get(i));
+      assertThat(results.get(i).error).isNull();
+      assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(i).keySetId);
+    }
+    assertThat(listener.downloadedIndices).containsExactly(0, 1, 2, 3, 4);
+    assertThat(listener.errorIndices).isEmpty();
+  }
+
+  @Test
+  public void downloadLicenses_withMissingSchemeData_reportsErrorForFormat() throws Exception {
+    setDefaultStubKeySetId();
+    OfflineLicenseHelper multiSessionHelper = createMultiSessionHelper();
+    RecordingListener listener = new RecordingListener();
+    Format formatWithoutWidevineData =
+        new Format.Builder()
+            .setDrmInitData(
+                new DrmInitData(new SchemeData(C.PLAYREADY_UUID, "mimeType", new byte[] {1})))
+            .build();
+
+    ImmutableList<LicenseDownloadResult> results =
+        multiSessionHelper.downloadLicenses(
+            ImmutableList.of(newFormatWithDrmInitData(), formatWithoutWidevineData),
+            /* maxParallelRequests= */ 2,
+            listener);
+    multiSessionHelper.release();
+
+    assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(0).keySetId);
+    assertThat(results.get(1).keySetId).isNull();
+    assertThat(results.get(1).error).hasCauseThat().isInstanceOf(MissingSchemeDataException.class);
+    assertThat(listener.downloadedIndices).containsExactly(0);
+    assertThat(listener.errorIndices).containsExactly(1);
+  }
+
+  @Test
+  public void downloadLicenses_withoutMultiSession_downloadsAllLicenses() throws Exception {
+    setDefaultStubKeySetId();
+
+    ImmutableList<LicenseDownloadResult> results =
+        offlineLicenseHelper.downloadLicenses(
+            ImmutableList.of(
+                newFormatWithDrmInitData(new byte[] {1}), newFormatWithDrmInitData(new byte[] {2})),
+            /* maxParallelRequests= */ 2,
+            /* listener= */ null);
+
+    assertThat(results).hasSize(2);
+    assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(0).keySetId);
+    assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(1).keySetId);
+  }
+
+  @Test
+  public void downloadLicenses_withoutKeySetId_reportsErrors() throws Exception {
+    ImmutableList<LicenseDownloadResult> results =
+        offlineLicenseHelper.downloadLicenses(
+            ImmutableList.of(newFormatWithDrmInitData()),
+            /* maxParallelRequests= */ 1,
+            /* listener= */ null);
+
+    assertThat(results.get(0).keySetId).isNull();
+    assertThat(results.get(0).error).isNotNull();
+  }
+
+  @Test
+  public void downloadLicenses_whenAcquiringSessionThrows_reportsErrorForFormat()
+      throws Exception {
+    setDefaultStubKeySetId();
+    Format failingFormat = newFormatWithDrmInitData(new byte[] {2});
+    DefaultDrmSessionManager drmSessionManager =
+        spy(
+            new DefaultDrmSessionManager.Builder()
+                .setUuidAndExoMediaDrmProvider(
+                    C.WIDEVINE_UUID, new ExoMediaDrm.AppManagedProvider(mediaDrm))
+                .setMultiSession(true)
+                .build(mediaDrmCallback));
+    doThrow(new IllegalStateException())
+        .when(drmSessionManager)
+        .acquireSession(any(), same(failingFormat));
+    OfflineLicenseHelper helper =
+        new OfflineLicenseHelper(drmSessionManager, new DrmSessionEventListener.EventDispatcher());
+    RecordingListener listener = new RecordingListener();
+
+    ImmutableList<LicenseDownloadResult> results =
+        helper.downloadLicenses(
+            ImmutableList.of(
+                newFormatWithDrmInitData(new byte[] {1}),
+                failingFormat,
+                newFormatWithDrmInitData(new byte[] {3})),
+            /* maxParallelRequests= */ 2,
+            listener);
+    helper.release();
+
+    assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(0).keySetId);
+    assertThat(results.get(1).keySetId).isNull();
+    assertThat(results.get(1).error).hasCauseThat().isInstanceOf(IllegalStateException.class);
+    assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, results.get(2).keySetId);
+    assertThat(listener.downloadedIndices).containsExactly(0, 2);
+    assertThat(listener.errorIndices).containsExactly(1);
+  }
+
+  private OfflineLicenseHelper createMultiSessionHelper() {
+    return new OfflineLicenseHelper(
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(
+                C.WIDEVINE_UUID, new ExoMediaDrm.AppManagedProvider(mediaDrm))
+            .setMultiSession(true)
+            .build(mediaDrmCallback),
+        new DrmSessionEventListener.EventDispatcher());
+  }
+
   private void setDefaultStubKeySetId()
       throws android.media.NotProvisionedException, android.media.DeniedByServerException {
     setStubKeySetId(new byte[] {2, 5, 8});
@@ -183,10 +320,33 @@ public class OfflineLicenseHelperTest {
   }
 
   private static Format newFormatWithDrmInitData() {
+    return newFormatWithDrmInitData(new byte[] {1, 4, 7, 0, 3, 6});
+  }
+
+  private static Format newFormatWithDrmInitData(byte[] data) {
     return new Format.Builder()
-        .setDrmInitData(
-            new DrmInitData(
-                new SchemeData(C.WIDEVINE_UUID, "mimeType", new byte[] {1, 4, 7, 0, 3, 6})))
+        .setDrmInitData(new DrmInitData(new SchemeData(C.WIDEVINE_UUID, "mimeType", data)))
         .build();
   }
+
+  private static final class RecordingListener implements LicenseDownloadListener {
+
+    public final List<Integer> downloadedIndices;
+    public final List<Integer> errorIndices;
+
+    public RecordingListener() {
+      downloadedIndices = new ArrayList<>();
+      errorIndices = new ArrayList<>();
+    }
+
+    @Override
+    public void onLicenseDownloaded(int index, byte[] keySetId) {
+      downloadedIndices.add(index);
+    }
+
+    @Override
+    public void onLicenseDownloadError(int index, DrmSessionException error) {
+      errorIndices.add(index);
+    }
+  }
 }
@@ -94,6 +94,37 @@ public class AsynchronousMediaCodecBufferEnqueuerTest {
     assertThat(outputData).isEqualTo(inputData);
   }
 
+  @Test
+  public void queueInputBuffer_multipleBuffers_queuesAllBuffersWithOneMessage() {
+    enqueuer.start();
+    int inputBufferIndex1 = codec.dequeueInputBuffer(0);
+    int inputBufferIndex2 = codec.dequeueInputBuffer(0);
+    assertThat(inputBufferIndex1).isAtLeast(0);
+    assertThat(inputBufferIndex2).isAtLeast(0);
+
+    enqueuer.queueInputBuffer(
+        inputBufferIndex1,
+        /* offset= */ 0,
+        /* size= */ 0,
+        /* presentationTimeUs= */ 1000,
+        /* flags= */ 0);
+    enqueuer.queueInputBuffer(
+        inputBufferIndex2,
+        /* offset= */ 0,
+        /* size= */ 0,
+        /* presentationTimeUs= */ 2000,
+        /* flags= */ 0);
+    shadowOf(handlerThread.getLooper()).runOneTask();
+
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0))
+        .isEqualTo(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0)).isEqualTo(inputBufferIndex1);
+    assertThat(bufferInfo.presentationTimeUs).isEqualTo(1000);
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0)).isEqualTo(inputBufferIndex2);
+    assertThat(bufferInfo.presentationTimeUs).isEqualTo(2000);
+  }
+
   @Test
   public void queueInputBuffer_withPendingCryptoExceptionSet_throwsCryptoException() {
     enqueuer.setPendingRuntimeException(
@@ -182,6 +213,26 @@ public class AsynchronousMediaCodecBufferEnqueuerTest {
     assertThrows(IllegalStateException.class, () -> enqueuer.flush());
   }
 
+  @Test
+  public void flush_withPendingInputBuffer_discardsInputBuffer() {
+    enqueuer.start();
+    int inputBufferIndex = codec.dequeueInputBuffer(0);
+    assertThat(inputBufferIndex).isAtLeast(0);
+    enqueuer.queueInputBuffer(
+        inputBufferIndex,
+        /* offset= */ 0,
+        /* size= */ 0,
+        /* presentationTimeUs= */ 0,
+        /* flags= */ 0);
+
+    enqueuer.flush();
+    shadowOf(handlerThread.getLooper()).idle();
+
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0)).isLessThan(0);
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0)).isLessThan(0);
+  }
+
   @Test
   public void flush_multipleTimes_works() {
     enqueuer.start();
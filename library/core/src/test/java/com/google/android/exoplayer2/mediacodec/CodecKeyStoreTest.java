@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CodecKeyStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class CodecKeyStoreTest {
+
+  private static final String FINGERPRINT = "brand/product/device:13/ABC/123:user/release-keys";
+
+  private static final CodecKey AVC_KEY =
+      new CodecKey(MimeTypes.VIDEO_H264, /* secure= */ false, /* tunneling= */ false);
+  private static final CodecKey SECURE_HEVC_KEY =
+      new CodecKey(MimeTypes.VIDEO_H265, /* secure= */ true, /* tunneling= */ false);
+  private static final CodecKey TUNNELING_AAC_KEY =
+      new CodecKey(MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ true);
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Util.createTempFile(ApplicationProvider.getApplicationContext(), "CodecKeyStoreTest");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void load_withoutFile_returnsEmptyList() {
+    CodecKeyStore codecKeyStore = new CodecKeyStore(file, FINGERPRINT);
+
+    assertThat(codecKeyStore.load()).isEmpty();
+  }
+
+  @Test
+  public void load_afterStore_returnsStoredKeysInOrder() {
+    CodecKeyStore codecKeyStore = new CodecKeyStore(file, FINGERPRINT);
+    codecKeyStore.add(SECURE_HEVC_KEY);
+    codecKeyStore.add(AVC_KEY);
+    codecKeyStore.add(TUNNELING_AAC_KEY);
+    codecKeyStore.store();
+
+    assertThat(new CodecKeyStore(file, FINGERPRINT).load())
+        .containsExactly(SECURE_HEVC_KEY, AVC_KEY, TUNNELING_AAC_KEY)
+        .inOrder();
+  }
+
+  @Test
+  public void load_withDifferentFingerprint_returnsEmptyList() {
+    CodecKeyStore codecKeyStore = new CodecKeyStore(file, FINGERPRINT);
+    codecKeyStore.add(AVC_KEY);
+    codecKeyStore.store();
+
+    assertThat(new CodecKeyStore(file, FINGERPRINT + "-updated").load()).isEmpty();
+  }
+
+  @Test
+  public void load_withCorruptFile_returnsEmptyList() throws Exception {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(new byte[] {0, 0, 0, 1, 0});
+    }
+
+    assertThat(new CodecKeyStore(file, FINGERPRINT).load()).isEmpty();
+  }
+
+  @Test
+  public void add_returnsWhetherKeyIsNew() {
+    CodecKeyStore codecKeyStore = new CodecKeyStore(file, FINGERPRINT);
+    codecKeyStore.add(AVC_KEY);
+    codecKeyStore.store();
+    CodecKeyStore reloadedCodecKeyStore = new CodecKeyStore(file, FINGERPRINT);
+    reloadedCodecKeyStore.load();
+
+    assertThat(reloadedCodecKeyStore.add(AVC_KEY)).isFalse();
+    assertThat(reloadedCodecKeyStore.add(SECURE_HEVC_KEY)).isTrue();
+  }
+}
@@ -668,6 +668,110 @@ public final class AdaptiveTrackSelectionTest {
         .inOrder();
   }
 
+  @Test
+  public void initial_updateSelectedTrack_withChunkSizeLookahead_usesActualChunkBitrates() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    // The next chunks of format3 average 2667 bps instead of the nominal 2000 bps.
+    long[][] chunkLengths = {{500, 1000, 500}, {250, 250, 250}, {125, 125, 125}};
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+            trackGroup, /* chunkSizeLookaheadCount= */ 3, chunkLengths);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_withChunkSizeLookahead_ignoresChunksBeyondLookahead() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    long[][] chunkLengths = {{500, 1000, 500}, {250, 250, 250}, {125, 125, 125}};
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+            trackGroup, /* chunkSizeLookaheadCount= */ 1, chunkLengths);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_withoutChunkSizeLookahead_usesFormatBitrates() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    long[][] chunkLengths = {{500, 1000, 500}, {250, 250, 250}, {125, 125, 125}};
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+            trackGroup, /* chunkSizeLookaheadCount= */ 0, chunkLengths);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+  }
+
+  @Test
+  public void updateSelectedTrack_withChunkSizeLookaheadAndLargeUpcomingChunks_switchesDown() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+            trackGroup,
+            /* chunkSizeLookaheadCount= */ 3,
+            /* chunkLengths= */ new long[][] {{500, 500, 500}, {250, 250, 250}, {125, 125, 125}});
+    // A complex scene follows, making the next chunks of format3 much larger.
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 10_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(
+            new long[][] {{1500, 1500, 1500}, {250, 250, 250}, {125, 125, 125}},
+            TEST_CHUNK_DURATION_US));
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withChunkSizeLookaheadAndOneOversizedChunk_switchesDown() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+            trackGroup,
+            /* chunkSizeLookaheadCount= */ 3,
+            /* chunkLengths= */ new long[][] {{250, 250, 250}, {250, 250, 250}, {125, 125, 125}});
+    // The next chunks of format3 average exactly the available 2000 bps, but the second chunk
+    // takes 4 seconds to load and drains 2 seconds of the 10 second buffer.
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 10_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(
+            new long[][] {{250, 1000, 250}, {250, 250, 250}, {125, 125, 125}},
+            TEST_CHUNK_DURATION_US));
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
   private AdaptiveTrackSelection prepareAdaptiveTrackSelection(TrackGroup trackGroup) {
     return prepareAdaptiveTrackSelectionWithMinDurationForQualityIncreaseMs(
         trackGroup, AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS);
@@ -810,6 +914,34 @@ public final class AdaptiveTrackSelectionTest {
             fakeClock));
   }
 
+  private AdaptiveTrackSelection prepareAdaptiveTrackSelectionWithChunkSizeLookaheadCount(
+      TrackGroup trackGroup, int chunkSizeLookaheadCount, long[][] chunkLengths) {
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        new AdaptiveTrackSelection(
+            trackGroup,
+            selectedAllTracksInGroup(trackGroup),
+            TrackSelection.TYPE_UNSET,
+            mockBandwidthMeter,
+            AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+            AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+            AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+            AdaptiveTrackSelection.DEFAULT_MAX_WIDTH_TO_DISCARD,
+            AdaptiveTrackSelection.DEFAULT_MAX_HEIGHT_TO_DISCARD,
+            /* bandwidthFraction= */ 1.0f,
+            AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+            chunkSizeLookaheadCount,
+            /* adaptationCheckpoints= */ ImmutableList.of(),
+            fakeClock);
+    adaptiveTrackSelection.enable();
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(chunkLengths, TEST_CHUNK_DURATION_US));
+    return adaptiveTrackSelection;
+  }
+
   private AdaptiveTrackSelection prepareTrackSelection(
       AdaptiveTrackSelection adaptiveTrackSelection) {
     adaptiveTrackSelection.enable();
@@ -847,6 +979,40 @@ public final class AdaptiveTrackSelectionTest {
     return iterators;
   }
 
+  /**
+   * Creates iterators over chunks with the given lengths, indexed by selection index and chunk
+   * index.
+   */
+  private static MediaChunkIterator[] createMediaChunkIterators(
+      long[][] chunkLengths, long chunkDurationUs) {
+    MediaChunkIterator[] iterators = new MediaChunkIterator[chunkLengths.length];
+    for (int i = 0; i < chunkLengths.length; i++) {
+      long[] trackChunkLengths = chunkLengths[i];
+      iterators[i] =
+          new BaseMediaChunkIterator(
+              /* fromIndex= */ 0, /* toIndex= */ trackChunkLengths.length - 1) {
+            @Override
+            public DataSpec getDataSpec() {
+              return new DataSpec.Builder()
+                  .setUri("https://test.example")
+                  .setLength(trackChunkLengths[(int) getCurrentIndex()])
+                  .build();
+            }
+
+            @Override
+            public long getChunkStartTimeUs() {
+              return 123_456_789 + getCurrentIndex() * chunkDurationUs;
+            }
+
+            @Override
+            public long getChunkEndTimeUs() {
+              return getChunkStartTimeUs() + chunkDurationUs;
+            }
+          };
+    }
+    return iterators;
+  }
+
   private int[] selectedAllTracksInGroup(TrackGroup trackGroup) {
     int[] listIndices = new int[trackGroup.length];
     for (int i = 0; i < trackGroup.length; i++) {
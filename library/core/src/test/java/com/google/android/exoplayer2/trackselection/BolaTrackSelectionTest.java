@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.BaseMediaChunkIterator;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.NetworkTrace;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link BolaTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class BolaTrackSelectionTest {
+
+  private static final long TEST_CHUNK_DURATION_US = 2_000_000;
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(0);
+    when(mockBandwidthMeter.getTimeToFirstByteEstimateUs()).thenReturn(C.TIME_UNSET);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_selectsHighestBitrateWithinBandwidth() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection(createTrackSelection(trackGroup));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_withChunkSizes_selectsByChunkBitrate() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    // The next chunk of format3 is twice as large as its average bitrate suggests.
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    BolaTrackSelection trackSelection =
+        prepareTrackSelection(
+            createTrackSelection(trackGroup), /* chunkLengths...= */ 1000L, 250L, 125L);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void updateSelectedTrack_belowMinBuffer_selectsHighestBitrateWithinBandwidth() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L);
+    BolaTrackSelection trackSelection = prepareTrackSelection(createTrackSelection(trackGroup));
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 5_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(trackSelection));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_atMinBuffer_selectsLowestBitrate() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection(createTrackSelection(trackGroup));
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 10_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(trackSelection));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_atBufferTarget_selectsHighestBitrate() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L);
+    BolaTrackSelection trackSelection = prepareTrackSelection(createTrackSelection(trackGroup));
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 30_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(trackSelection));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_switchingUpBeyondBandwidth_isLimitedToBandwidth() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L);
+    BolaTrackSelection trackSelection = prepareTrackSelection(createTrackSelection(trackGroup));
+    // The buffer alone would justify format3, but the bandwidth only supports format2.
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 30_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(trackSelection));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void simulation_withAmpleBandwidth_reachesHighQualityWithoutRebuffering()
+      throws Exception {
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(
+                ApplicationProvider.getApplicationContext(),
+                NetworkTrace.constant(/* bitrate= */ 10_000_000),
+                videoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240),
+                videoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480),
+                videoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720))
+            .build();
+
+    AbrSimulator.Result bolaResult = simulator.run(new BolaTrackSelection.Factory());
+    AbrSimulator.Result adaptiveResult = simulator.run(new AdaptiveTrackSelection.Factory());
+
+    assertThat(bolaResult.rebufferCount).isEqualTo(0);
+    assertThat(bolaResult.averageBitrate).isGreaterThan(1_000_000);
+    assertThat(adaptiveResult.rebufferCount).isEqualTo(0);
+    assertThat(adaptiveResult.averageBitrate).isGreaterThan(1_000_000);
+  }
+
+  private BolaTrackSelection createTrackSelection(TrackGroup trackGroup) {
+    return new BolaTrackSelection(
+        trackGroup,
+        selectedAllTracksInGroup(trackGroup),
+        TrackSelection.TYPE_UNSET,
+        mockBandwidthMeter,
+        BolaTrackSelection.DEFAULT_MIN_BUFFER_MS,
+        BolaTrackSelection.DEFAULT_BUFFER_TARGET_MS,
+        /* bandwidthFraction= */ 1.0f,
+        fakeClock);
+  }
+
+  private BolaTrackSelection prepareTrackSelection(
+      BolaTrackSelection trackSelection, long... chunkLengths) {
+    trackSelection.enable();
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(trackSelection, chunkLengths));
+    return trackSelection;
+  }
+
+  /**
+   * Creates one iterator per track of the selection, in selection order. The chunk
+   * lengths are unknown if no {@code chunkLengths} are passed.
+   */
+  private static MediaChunkIterator[] createMediaChunkIterators(
+      ExoTrackSelection trackSelection, long... chunkLengths) {
+    MediaChunkIterator[] iterators = new MediaChunkIterator[trackSelection.length()];
+    for (int i = 0; i < iterators.length; i++) {
+      long chunkLength = chunkLengths.length == 0 ? C.LENGTH_UNSET : chunkLengths[i];
+      iterators[i] =
+          new BaseMediaChunkIterator(/* fromIndex= */ 0, /* toIndex= */ 0) {
+            @Override
+            public DataSpec getDataSpec() {
+              return new DataSpec.Builder()
+                  .setUri("https://test.example")
+                  .setLength(chunkLength)
+                  .build();
+            }
+
+            @Override
+            public long getChunkStartTimeUs() {
+              return 123_456_789;
+            }
+
+            @Override
+            public long getChunkEndTimeUs() {
+              return 123_456_789 + TEST_CHUNK_DURATION_US;
+            }
+          };
+    }
+    return iterators;
+  }
+
+  private static int[] selectedAllTracksInGroup(TrackGroup trackGroup) {
+    int[] listIndices = new int[trackGroup.length];
+    for (int i = 0; i < trackGroup.length; i++) {
+      listIndices[i] = i;
+    }
+    return listIndices;
+  }
+
+  private static Format videoFormat(int bitrate, int width, int height) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(width)
+        .setHeight(height)
+        .build();
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link NetworkPathBandwidthMeter}. */
+@RunWith(AndroidJUnit4.class)
+public final class NetworkPathBandwidthMeterTest {
+
+  private static final long INITIAL_BITRATE_ESTIMATE = 123_456;
+
+  private FakeClock clock;
+  private DataSource dataSource;
+
+  @Before
+  public void setUp() {
+    NetworkTypeObserver.resetForTests();
+    clock = new FakeClock(/* initialTimeMs= */ 1_000_000);
+    dataSource = new FakeDataSource();
+  }
+
+  @Test
+  public void getBitrateEstimate_withoutTransfers_returnsInitialEstimate() {
+    NetworkPathBandwidthMeter bandwidthMeter = createBandwidthMeterBuilder().build();
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterOneSecondOfTransfer_returnsMeasuredThroughput() {
+    NetworkPathBandwidthMeter bandwidthMeter = createBandwidthMeterBuilder().build();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://a.test.com/segment"));
+
+    // 10 KB every 10 ms is 8 Mbps.
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    transferBytes(bandwidthMeter, dataSpec, /* durationMs= */ 500, /* bytesPer10Ms= */ 10_000);
+    long estimateBeforeEnoughSamples = bandwidthMeter.getBitrateEstimate();
+    transferBytes(bandwidthMeter, dataSpec, /* durationMs= */ 500, /* bytesPer10Ms= */ 10_000);
+
+    assertThat(estimateBeforeEnoughSamples).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(8_000_000);
+  }
+
+  @Test
+  public void getTimeToFirstByteEstimateUs_afterTransfers_returnsMedianTimeToFirstByte() {
+    NetworkPathBandwidthMeter bandwidthMeter = createBandwidthMeterBuilder().build();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://a.test.com/segment"));
+
+    for (long timeToFirstByteMs : new long[] {50, 100, 300}) {
+      bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      clock.advanceTime(timeToFirstByteMs);
+      bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(100_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_withMultipleHosts_returnsEstimateOfMostRecentHost() {
+    NetworkPathBandwidthMeter bandwidthMeter = createBandwidthMeterBuilder().build();
+    DataSpec fastDataSpec = new DataSpec(Uri.parse("https://fast.test.com/segment"));
+    DataSpec slowDataSpec = new DataSpec(Uri.parse("https://slow.test.com/segment"));
+
+    simulateTransfer(
+        bandwidthMeter, fastDataSpec, /* durationMs= */ 2000, /* bytesPer10Ms= */ 10_000);
+    long fastHostEstimate = bandwidthMeter.getBitrateEstimate();
+    simulateTransfer(
+        bandwidthMeter, slowDataSpec, /* durationMs= */ 2000, /* bytesPer10Ms= */ 1_000);
+    long slowHostEstimate = bandwidthMeter.getBitrateEstimate();
+    bandwidthMeter.onTransferInitializing(dataSource, fastDataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, fastDataSpec, /* isNetwork= */ true);
+
+    assertThat(fastHostEstimate).isEqualTo(8_000_000);
+    assertThat(slowHostEstimate).isEqualTo(800_000);
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(fastHostEstimate);
+  }
+
+  @Test
+  public void getBitrateEstimate_withPersistedEstimate_returnsEstimateOfPreviousSession() {
+    BandwidthEstimateStore estimateStore =
+        new DefaultBandwidthEstimateStore(TestUtil.getInMemoryDatabaseProvider());
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://a.test.com/segment"));
+    NetworkPathBandwidthMeter previousBandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(Runnable::run)
+            .build();
+    for (int i = 0; i < 2; i++) {
+      previousBandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      clock.advanceTime(200);
+      previousBandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      transferBytes(
+          previousBandwidthMeter, dataSpec, /* durationMs= */ 1000, /* bytesPer10Ms= */ 5_000);
+      previousBandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+
+    NetworkPathBandwidthMeter bandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(Runnable::run)
+            .build();
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(200_000);
+  }
+
+  @Test
+  public void onTransferEnd_withEstimateStore_writesEstimatesOnExecutorOnce() {
+    BandwidthEstimateStore estimateStore =
+        new DefaultBandwidthEstimateStore(TestUtil.getInMemoryDatabaseProvider());
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://a.test.com/segment"));
+    List<Runnable> pendingTasks = new ArrayList<>();
+    NetworkPathBandwidthMeter previousBandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(pendingTasks::add)
+            .build();
+    for (int i = 0; i < 2; i++) {
+      simulateTransfer(
+          previousBandwidthMeter, dataSpec, /* durationMs= */ 1000, /* bytesPer10Ms= */ 5_000);
+    }
+
+    // One load of the persisted estimates, and a single write for both transfers.
+    assertThat(pendingTasks).hasSize(2);
+    for (Runnable task : pendingTasks) {
+      task.run();
+    }
+    NetworkPathBandwidthMeter bandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(Runnable::run)
+            .build();
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_withExpiredPersistedEstimate_returnsInitialEstimate() {
+    BandwidthEstimateStore estimateStore =
+        new DefaultBandwidthEstimateStore(TestUtil.getInMemoryDatabaseProvider());
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://a.test.com/segment"));
+    NetworkPathBandwidthMeter previousBandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(Runnable::run)
+            .build();
+    simulateTransfer(
+        previousBandwidthMeter, dataSpec, /* durationMs= */ 2000, /* bytesPer10Ms= */ 5_000);
+    clock.advanceTime(NetworkPathBandwidthMeter.DEFAULT_MAX_PERSISTED_ESTIMATE_AGE_MS + 1);
+
+    NetworkPathBandwidthMeter bandwidthMeter =
+        createBandwidthMeterBuilder()
+            .setEstimateStore(estimateStore)
+            .setEstimateStoreExecutor(Runnable::run)
+            .build();
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+  }
+
+  private NetworkPathBandwidthMeter.Builder createBandwidthMeterBuilder() {
+    return new NetworkPathBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+        .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+        .setClock(clock);
+  }
+
+  private void simulateTransfer(
+      NetworkPathBandwidthMeter bandwidthMeter,
+      DataSpec dataSpec,
+      int durationMs,
+      int bytesPer10Ms) {
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    transferBytes(bandwidthMeter, dataSpec, durationMs, bytesPer10Ms);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+  }
+
+  private void transferBytes(
+      NetworkPathBandwidthMeter bandwidthMeter,
+      DataSpec dataSpec,
+      int durationMs,
+      int bytesPer10Ms) {
+    for (int i = 0; i < durationMs / 10; i++) {
+      clock.advanceTime(10);
+      bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, bytesPer10Ms);
+    }
+  }
+}
@@ -209,6 +209,58 @@ public class DefaultHttpDataSourceTest {
     assertThat(request2.getBodySize()).isEqualTo(postBody.length);
   }
 
+  @Test
+  public void close_withConnectionReuseEnabled_reusesConnectionForNextRequest() throws Exception {
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[100])));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[100])));
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+    DefaultHttpDataSource dataSource =
+        new DefaultHttpDataSource.Factory().setConnectionReuseEnabled(true).createDataSource();
+
+    // Leave part of the first response unread, which is drained when the data source is closed.
+    dataSource.open(dataSpec);
+    dataSource.read(new byte[10], /* offset= */ 0, /* length= */ 10);
+    dataSource.close();
+    dataSource.open(dataSpec);
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    RecordedRequest request1 = mockWebServer.takeRequest(10, SECONDS);
+    RecordedRequest request2 = mockWebServer.takeRequest(10, SECONDS);
+    assertThat(request1.getSequenceNumber()).isEqualTo(0);
+    // A non-zero sequence number means that the request was made on the existing connection.
+    assertThat(request2.getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void close_withConnectionReuseEnabledAndUnknownLength_disconnectsUnreadResponse()
+      throws Exception {
+    MockWebServer mockWebServer = new MockWebServer();
+    // A chunked response has no Content-Length, so the remaining length is unknown on close.
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setChunkedBody(new Buffer().write(new byte[100]), /* maxChunkSize= */ 10));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[100])));
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+    DefaultHttpDataSource dataSource =
+        new DefaultHttpDataSource.Factory().setConnectionReuseEnabled(true).createDataSource();
+
+    dataSource.open(dataSpec);
+    dataSource.read(new byte[10], /* offset= */ 0, /* length= */ 10);
+    dataSource.close();
+    dataSource.open(dataSpec);
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    mockWebServer.takeRequest(10, SECONDS);
+    RecordedRequest request2 = mockWebServer.takeRequest(10, SECONDS);
+    // The unread response of unknown length isn't drained, so the request uses a new connection.
+    assertThat(request2.getSequenceNumber()).isEqualTo(0);
+  }
+
   @Test
   public void factory_setRequestPropertyAfterCreation_setsCorrectHeaders() throws Exception {
     MockWebServer mockWebServer = new MockWebServer();
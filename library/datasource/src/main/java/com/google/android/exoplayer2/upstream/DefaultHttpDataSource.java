@@ -74,6 +74,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     private int readTimeoutMs;
     private boolean allowCrossProtocolRedirects;
     private boolean keepPostFor302Redirects;
+    private boolean connectionReuseEnabled;
 
     /** Creates an instance. */
     public Factory() {
@@ -190,6 +191,31 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
       return this;
     }
 
+    /**
+     * Sets whether connections should be returned to the platform's connection pool when a data
+     * source is closed, so that subsequent requests to the same host can reuse them rather than
+     * paying for a new TCP and TLS handshake.
+     *
+     * <p>If enabled, a data source that's closed with only a small, known amount of the response
+     * left to read drains the remaining data rather than disconnecting, and doesn't disconnect a
+     * connection whose response has been fully read. A response of unknown length is only left open
+     * if it has been read to the end, since draining it could block until the read timeout. The
+     * size and idle timeout of the pool are controlled by the platform's {@code
+     * http.maxConnections} and {@code http.keepAliveDuration} system properties. For explicit
+     * control over pooling, use the OkHttp or Cronet extension instead.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param connectionReuseEnabled Whether connections may be reused after a data source is
+     *     closed.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setConnectionReuseEnabled(boolean connectionReuseEnabled) {
+      this.connectionReuseEnabled = connectionReuseEnabled;
+      return this;
+    }
+
     @Override
     public DefaultHttpDataSource createDataSource() {
       DefaultHttpDataSource dataSource =
@@ -200,7 +226,8 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
               allowCrossProtocolRedirects,
               defaultRequestProperties,
               contentTypePredicate,
-              keepPostFor302Redirects);
+              keepPostFor302Redirects,
+              connectionReuseEnabled);
       if (transferListener != null) {
         dataSource.addTransferListener(transferListener);
       }
@@ -226,15 +253,18 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
   @Nullable private final RequestProperties defaultRequestProperties;
   private final RequestProperties requestProperties;
   private final boolean keepPostFor302Redirects;
+  private final boolean connectionReuseEnabled;
 
   @Nullable private Predicate<String> contentTypePredicate;
   @Nullable private DataSpec dataSpec;
   @Nullable private HttpURLConnection connection;
   @Nullable private InputStream inputStream;
+  @Nullable private byte[] drainBuffer;
   private boolean opened;
   private int responseCode;
   private long bytesToRead;
   private long bytesRead;
+  private boolean endOfInputReached;
 
   /**
    * @deprecated Use {@link DefaultHttpDataSource.Factory} instead.
@@ -286,7 +316,8 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
         allowCrossProtocolRedirects,
         defaultRequestProperties,
         /* contentTypePredicate= */ null,
-        /* keepPostFor302Redirects= */ false);
+        /* keepPostFor302Redirects= */ false,
+        /* connectionReuseEnabled= */ false);
   }
 
   private DefaultHttpDataSource(
@@ -296,7 +327,8 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
       boolean allowCrossProtocolRedirects,
       @Nullable RequestProperties defaultRequestProperties,
       @Nullable Predicate<String> contentTypePredicate,
-      boolean keepPostFor302Redirects) {
+      boolean keepPostFor302Redirects,
+      boolean connectionReuseEnabled) {
     super(/* isNetwork= */ true);
     this.userAgent = userAgent;
     this.connectTimeoutMillis = connectTimeoutMillis;
@@ -306,6 +338,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     this.contentTypePredicate = contentTypePredicate;
     this.requestProperties = new RequestProperties();
     this.keepPostFor302Redirects = keepPostFor302Redirects;
+    this.connectionReuseEnabled = connectionReuseEnabled;
   }
 
   /**
@@ -368,6 +401,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     this.dataSpec = dataSpec;
     bytesRead = 0;
     bytesToRead = 0;
+    endOfInputReached = false;
     transferInitializing(dataSpec);
 
     String responseMessage;
@@ -493,12 +527,18 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
 
   @Override
   public void close() throws HttpDataSourceException {
+    boolean connectionReusable = false;
     try {
       @Nullable InputStream inputStream = this.inputStream;
       if (inputStream != null) {
         long bytesRemaining =
             bytesToRead == C.LENGTH_UNSET ? C.LENGTH_UNSET : bytesToRead - bytesRead;
-        maybeTerminateInputStream(connection, bytesRemaining);
+        if (connectionReuseEnabled) {
+          connectionReusable = maybeDrainInputStream(inputStream, bytesRemaining);
+        }
+        if (!connectionReusable) {
+          maybeTerminateInputStream(connection, bytesRemaining);
+        }
         try {
           inputStream.close();
         } catch (IOException e) {
@@ -511,7 +551,12 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
       }
     } finally {
       inputStream = null;
-      closeConnectionQuietly();
+      if (connectionReusable) {
+        // Leave the connection open, so that the platform can return it to its connection pool.
+        connection = null;
+      } else {
+        closeConnectionQuietly();
+      }
       if (opened) {
         opened = false;
         transferEnded();
@@ -776,6 +821,7 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
 
     int read = castNonNull(inputStream).read(buffer, offset, readLength);
     if (read == -1) {
+      endOfInputReached = true;
       return C.RESULT_END_OF_INPUT;
     }
 
@@ -830,6 +876,43 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
     }
   }
 
+  /**
+   * Reads and discards the rest of the response, provided that its length is known and no longer
+   * than {@link #MAX_BYTES_TO_DRAIN}, so that the connection can be reused once the input stream is
+   * closed. A response of unknown length is never drained, since doing so could block until the
+   * read timeout if the response is long or slow.
+   *
+   * @param inputStream The input stream of the response.
+   * @param bytesRemaining The number of bytes remaining to be read from the input stream if its
+   *     length is known. {@link C#LENGTH_UNSET} otherwise.
+   * @return Whether the end of the response was reached.
+   */
+  private boolean maybeDrainInputStream(InputStream inputStream, long bytesRemaining) {
+    if (bytesRemaining == C.LENGTH_UNSET) {
+      return endOfInputReached;
+    } else if (bytesRemaining > MAX_BYTES_TO_DRAIN) {
+      return false;
+    }
+    @Nullable byte[] drainBuffer = this.drainBuffer;
+    if (drainBuffer == null) {
+      drainBuffer = new byte[(int) MAX_BYTES_TO_DRAIN];
+      this.drainBuffer = drainBuffer;
+    }
+    try {
+      long bytesDrained = 0;
+      while (bytesDrained <= MAX_BYTES_TO_DRAIN) {
+        int read = inputStream.read(drainBuffer, 0, drainBuffer.length);
+        if (read == -1) {
+          return true;
+        }
+        bytesDrained += read;
+      }
+    } catch (IOException e) {
+      // The connection can't be reused.
+    }
+    return false;
+  }
+
   /** Closes the current connection quietly, if there is one. */
   private void closeConnectionQuietly() {
     if (connection != null) {
@@ -179,7 +179,7 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
-  private static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
+  /* package */ static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
     try {
       return new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
     } catch (FileNotFoundException e) {
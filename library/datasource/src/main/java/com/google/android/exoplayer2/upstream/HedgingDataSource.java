@@ -0,0 +1,678 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DataSource} that loads data from one of several equivalent origins, such as CDNs that
+ * serve the same content, and hedges slow requests by also making them to a second origin.
+ *
+ * <p>The origins are identified by base URIs. A GET or HEAD request whose URI starts with one of
+ * the base URIs is first made to the origin that's expected to serve it fastest, based on the time
+ * to first byte and throughput it achieved for previous requests. If that origin doesn't respond
+ * within a hedge delay, which is a percentile of its recent times to first byte, then the same
+ * request is also made to the next best origin, and data is read from whichever origin responds
+ * first. Whenever all of the requests made so far have failed, the request is made to the next
+ * best origin immediately, until every origin has been tried. The losing request is closed as soon
+ * as its response arrives, without any of its data being read. Only the winning request is reported
+ * to the {@link TransferListener TransferListeners}.
+ *
+ * <p>Other requests are forwarded to a single upstream {@link DataSource} unchanged.
+ *
+ * <p>{@link #getUri()} returns the URI of the origin that the data is read from, which may differ
+ * from the URI of the {@link DataSpec} that was opened. Since the origins serve the same paths,
+ * relative URIs resolved against it are equivalent.
+ *
+ * <p>Requests are opened on an {@link Executor}, so that the caller can stop waiting for a slow
+ * origin. Data sources created by the same {@link Factory} share their origin measurements.
+ */
+public final class HedgingDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link HedgingDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final ImmutableList<String> originBaseUris;
+    private final ImmutableList<OriginStats> originStats;
+
+    private float hedgeDelayPercentile;
+    private long initialHedgeDelayMs;
+    private boolean racingEnabled;
+    @Nullable private Executor openExecutor;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream data sources that load
+     *     data from the origins.
+     * @param originBaseUris The base URIs of the origins, in order of preference for when no
+     *     measurements are available. A request whose URI starts with one of the base URIs can be
+     *     made to any of the origins by replacing that prefix.
+     */
+    public Factory(DataSource.Factory upstreamFactory, List<Uri> originBaseUris) {
+      checkArgument(!originBaseUris.isEmpty());
+      this.upstreamFactory = upstreamFactory;
+      ImmutableList.Builder<String> originBaseUriStrings = ImmutableList.builder();
+      ImmutableList.Builder<OriginStats> originStats = ImmutableList.builder();
+      for (int i = 0; i < originBaseUris.size(); i++) {
+        originBaseUriStrings.add(originBaseUris.get(i).toString());
+        originStats.add(new OriginStats());
+      }
+      this.originBaseUris = originBaseUriStrings.build();
+      this.originStats = originStats.build();
+      hedgeDelayPercentile = DEFAULT_HEDGE_DELAY_PERCENTILE;
+      initialHedgeDelayMs = DEFAULT_INITIAL_HEDGE_DELAY_MS;
+    }
+
+    /**
+     * Sets the percentile of an origin's recent times to first byte after which a request to it
+     * is hedged.
+     *
+     * <p>The default value is {@link #DEFAULT_HEDGE_DELAY_PERCENTILE}.
+     *
+     * @param hedgeDelayPercentile The percentile, between 0 and 1.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setHedgeDelayPercentile(float hedgeDelayPercentile) {
+      checkArgument(hedgeDelayPercentile >= 0 && hedgeDelayPercentile <= 1);
+      this.hedgeDelayPercentile = hedgeDelayPercentile;
+      return this;
+    }
+
+    /**
+     * Sets the time after which a request to an origin is hedged, for origins that don't have any
+     * time to first byte measurements yet.
+     *
+     * <p>The default value is {@link #DEFAULT_INITIAL_HEDGE_DELAY_MS}.
+     *
+     * @param initialHedgeDelayMs The hedge delay in milliseconds.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setInitialHedgeDelayMs(long initialHedgeDelayMs) {
+      checkArgument(initialHedgeDelayMs >= 0);
+      this.initialHedgeDelayMs = initialHedgeDelayMs;
+      return this;
+    }
+
+    /**
+     * Sets whether every request should be made to two origins at once, rather than only hedging
+     * requests that are slower than the hedge delay. Racing minimizes the time to first byte at
+     * the cost of doubling the number of requests.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param racingEnabled Whether every request is made to two origins at once.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setRacingEnabled(boolean racingEnabled) {
+      this.racingEnabled = racingEnabled;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which requests are opened. Opening a request blocks the thread
+     * it's running on, so the executor should be able to run at least two tasks per data source at
+     * once.
+     *
+     * <p>The default value is a shared executor that runs up to {@link
+     * #MAX_SHARED_OPEN_THREAD_COUNT} requests at once, queueing any further requests, and stops its
+     * threads when idle.
+     *
+     * @param openExecutor The {@link Executor} on which requests are opened.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setOpenExecutor(Executor openExecutor) {
+      this.openExecutor = openExecutor;
+      return this;
+    }
+
+    @Override
+    public HedgingDataSource createDataSource() {
+      return new HedgingDataSource(
+          upstreamFactory,
+          originBaseUris,
+          originStats,
+          hedgeDelayPercentile,
+          initialHedgeDelayMs,
+          racingEnabled,
+          openExecutor != null ? openExecutor : getSharedOpenExecutor());
+    }
+  }
+
+  /** The default percentile of the time to first byte after which requests are hedged. */
+  public static final float DEFAULT_HEDGE_DELAY_PERCENTILE = 0.95f;
+  /** The default hedge delay for origins without measurements, in milliseconds. */
+  public static final long DEFAULT_INITIAL_HEDGE_DELAY_MS = 1000;
+
+  /** The time to first byte recorded for a request that failed, in milliseconds. */
+  private static final long FAILURE_TIME_TO_FIRST_BYTE_MS = 10_000;
+  /** The maximum number of requests opened at once on the shared open executor. */
+  public static final int MAX_SHARED_OPEN_THREAD_COUNT = 8;
+
+  /** The time for which idle threads of the {@link #getSharedOpenExecutor()} are kept alive. */
+  private static final long SHARED_OPEN_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private static Executor sharedOpenExecutor;
+
+  private final DataSource.Factory upstreamFactory;
+  private final ImmutableList<String> originBaseUris;
+  private final ImmutableList<OriginStats> originStats;
+  private final float hedgeDelayPercentile;
+  private final long initialHedgeDelayMs;
+  private final boolean racingEnabled;
+  private final Executor openExecutor;
+  private final Clock clock;
+  private final List<TransferListener> transferListeners;
+
+  @Nullable private DataSource upstreamDataSource;
+  private int originIndex;
+  private long openTimeMs;
+  private long bytesRead;
+
+  private HedgingDataSource(
+      DataSource.Factory upstreamFactory,
+      ImmutableList<String> originBaseUris,
+      ImmutableList<OriginStats> originStats,
+      float hedgeDelayPercentile,
+      long initialHedgeDelayMs,
+      boolean racingEnabled,
+      Executor openExecutor) {
+    this.upstreamFactory = upstreamFactory;
+    this.originBaseUris = originBaseUris;
+    this.originStats = originStats;
+    this.hedgeDelayPercentile = hedgeDelayPercentile;
+    this.initialHedgeDelayMs = initialHedgeDelayMs;
+    this.racingEnabled = racingEnabled;
+    this.openExecutor = openExecutor;
+    clock = Clock.DEFAULT;
+    transferListeners = new ArrayList<>();
+    originIndex = C.INDEX_UNSET;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    transferListeners.add(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    int requestOriginIndex = getOriginIndex(dataSpec);
+    if (requestOriginIndex == C.INDEX_UNSET || originBaseUris.size() == 1) {
+      upstreamDataSource = createUpstreamDataSource();
+      return upstreamDataSource.open(dataSpec);
+    }
+
+    int[] rankedOriginIndices = rankOrigins(dataSpec.length);
+    String path =
+        dataSpec.uri.toString().substring(originBaseUris.get(requestOriginIndex).length());
+    Race race = new Race();
+    Attempt winner;
+    synchronized (race) {
+      int nextRank = 0;
+      boolean hedged = false;
+      long hedgeTimeMs = C.TIME_UNSET;
+      try {
+        while (race.winner == null) {
+          boolean hasNextOrigin = nextRank < rankedOriginIndices.length;
+          if (race.allFailed()) {
+            if (!hasNextOrigin) {
+              race.finished = true;
+              throw checkNotNull(race.attempts.get(0).error);
+            }
+            // Fail over to the next origin without waiting for the hedge delay.
+            int originIndex = rankedOriginIndices[nextRank++];
+            race.start(originIndex, path, dataSpec);
+            long hedgeDelayMs = racingEnabled ? 0 : getHedgeDelayMs(originIndex);
+            hedgeTimeMs = clock.elapsedRealtime() + hedgeDelayMs;
+          } else if (!hedged && hasNextOrigin && clock.elapsedRealtime() >= hedgeTimeMs) {
+            // Each request is hedged at most once, so that at most two origins are pending.
+            hedged = true;
+            race.start(rankedOriginIndices[nextRank++], path, dataSpec);
+          } else {
+            race.wait(
+                !hedged && hasNextOrigin ? max(1, hedgeTimeMs - clock.elapsedRealtime()) : 0);
+          }
+        }
+      } catch (InterruptedException e) {
+        race.finished = true;
+        @Nullable Attempt interruptedWinner = race.winner;
+        if (interruptedWinner != null) {
+          DataSourceUtil.closeQuietly(interruptedWinner.dataSource);
+        }
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      race.finished = true;
+      winner = checkNotNull(race.winner);
+    }
+    upstreamDataSource = winner.dataSource;
+    originIndex = winner.originIndex;
+    openTimeMs = clock.elapsedRealtime();
+    bytesRead = 0;
+    return winner.length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int bytesRead = checkNotNull(upstreamDataSource).read(buffer, offset, length);
+    if (bytesRead > 0) {
+      this.bytesRead += bytesRead;
+    }
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return upstreamDataSource == null ? null : upstreamDataSource.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstreamDataSource == null
+        ? Collections.emptyMap()
+        : upstreamDataSource.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    @Nullable DataSource upstreamDataSource = this.upstreamDataSource;
+    if (upstreamDataSource == null) {
+      return;
+    }
+    if (originIndex != C.INDEX_UNSET) {
+      originStats
+          .get(originIndex)
+          .addThroughputSample(bytesRead, clock.elapsedRealtime() - openTimeMs);
+    }
+    this.upstreamDataSource = null;
+    originIndex = C.INDEX_UNSET;
+    upstreamDataSource.close();
+  }
+
+  private static synchronized Executor getSharedOpenExecutor() {
+    if (sharedOpenExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ MAX_SHARED_OPEN_THREAD_COUNT,
+              /* maximumPoolSize= */ MAX_SHARED_OPEN_THREAD_COUNT,
+              SHARED_OPEN_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "ExoPlayer:HedgingDataSource"));
+      executor.allowCoreThreadTimeOut(true);
+      sharedOpenExecutor = executor;
+    }
+    return sharedOpenExecutor;
+  }
+
+  private DataSource createUpstreamDataSource() {
+    DataSource dataSource = upstreamFactory.createDataSource();
+    for (int i = 0; i < transferListeners.size(); i++) {
+      dataSource.addTransferListener(transferListeners.get(i));
+    }
+    return dataSource;
+  }
+
+  /**
+   * Returns the index of the origin whose base URI the {@link DataSpec} starts with, or {@link
+   * C#INDEX_UNSET} if the request shouldn't be hedged.
+   */
+  private int getOriginIndex(DataSpec dataSpec) {
+    if (dataSpec.httpMethod != DataSpec.HTTP_METHOD_GET
+        && dataSpec.httpMethod != DataSpec.HTTP_METHOD_HEAD) {
+      // Requests with side effects mustn't be duplicated.
+      return C.INDEX_UNSET;
+    }
+    String uri = dataSpec.uri.toString();
+    for (int i = 0; i < originBaseUris.size(); i++) {
+      if (uri.startsWith(originBaseUris.get(i))) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /** Returns the origin indices ordered by increasing estimated load time. */
+  private int[] rankOrigins(long length) {
+    Integer[] originIndices = new Integer[originBaseUris.size()];
+    long[] estimatedLoadTimesMs = new long[originBaseUris.size()];
+    for (int i = 0; i < originIndices.length; i++) {
+      originIndices[i] = i;
+      estimatedLoadTimesMs[i] = originStats.get(i).getEstimatedLoadTimeMs(length);
+    }
+    // The sort is stable, so origins with equal estimates stay in order of preference.
+    Arrays.sort(
+        originIndices, (a, b) -> Long.compare(estimatedLoadTimesMs[a], estimatedLoadTimesMs[b]));
+    int[] rankedOriginIndices = new int[originIndices.length];
+    for (int i = 0; i < originIndices.length; i++) {
+      rankedOriginIndices[i] = originIndices[i];
+    }
+    return rankedOriginIndices;
+  }
+
+  private long getHedgeDelayMs(int originIndex) {
+    long timeToFirstBytePercentileMs =
+        originStats.get(originIndex).getTimeToFirstBytePercentileMs(hedgeDelayPercentile);
+    return timeToFirstBytePercentileMs == C.TIME_UNSET
+        ? initialHedgeDelayMs
+        : timeToFirstBytePercentileMs;
+  }
+
+  /** The attempts to open a single {@link DataSpec} on one or more origins. */
+  private final class Race {
+
+    @GuardedBy("this")
+    private final List<Attempt> attempts;
+
+    @GuardedBy("this")
+    @Nullable
+    private Attempt winner;
+
+    /** Whether the caller has stopped waiting, after which any opened attempt is closed. */
+    @GuardedBy("this")
+    private boolean finished;
+
+    public Race() {
+      attempts = new ArrayList<>();
+    }
+
+    @GuardedBy("this")
+    public void start(int originIndex, String path, DataSpec dataSpec) {
+      DataSpec originDataSpec =
+          dataSpec.withUri(Uri.parse(originBaseUris.get(originIndex) + path));
+      AttemptTransferListener transferListener = new AttemptTransferListener();
+      DataSource dataSource = upstreamFactory.createDataSource();
+      dataSource.addTransferListener(transferListener);
+      Attempt attempt = new Attempt(originIndex, originDataSpec, dataSource, transferListener);
+      attempts.add(attempt);
+      openExecutor.execute(() -> run(attempt));
+    }
+
+    @GuardedBy("this")
+    public boolean allFailed() {
+      for (int i = 0; i < attempts.size(); i++) {
+        if (attempts.get(i).error == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void run(Attempt attempt) {
+      synchronized (this) {
+        if (finished) {
+          // The attempt was queued on the executor until after the race was decided.
+          return;
+        }
+      }
+      long startTimeMs = clock.elapsedRealtime();
+      @Nullable IOException error = null;
+      long length = C.LENGTH_UNSET;
+      try {
+        length = attempt.dataSource.open(attempt.dataSpec);
+      } catch (IOException e) {
+        error = e;
+      }
+      long timeToFirstByteMs = clock.elapsedRealtime() - startTimeMs;
+      originStats
+          .get(attempt.originIndex)
+          .addTimeToFirstByteSample(
+              error == null
+                  ? timeToFirstByteMs
+                  : max(timeToFirstByteMs, FAILURE_TIME_TO_FIRST_BYTE_MS));
+      boolean won = false;
+      synchronized (this) {
+        if (error != null) {
+          attempt.error = error;
+        } else if (winner == null && !finished) {
+          attempt.length = length;
+          winner = attempt;
+          won = true;
+          // Report the attempt before the caller can start reading from it.
+          attempt.transferListener.onWon();
+        }
+        notifyAll();
+      }
+      if (!won) {
+        DataSourceUtil.closeQuietly(attempt.dataSource);
+      }
+    }
+  }
+
+  /** An attempt to open a {@link DataSpec} on a single origin. */
+  private static final class Attempt {
+
+    public final int originIndex;
+    public final DataSpec dataSpec;
+    public final DataSource dataSource;
+    public final AttemptTransferListener transferListener;
+
+    public long length;
+    @Nullable public IOException error;
+
+    public Attempt(
+        int originIndex,
+        DataSpec dataSpec,
+        DataSource dataSource,
+        AttemptTransferListener transferListener) {
+      this.originIndex = originIndex;
+      this.dataSpec = dataSpec;
+      this.dataSource = dataSource;
+      this.transferListener = transferListener;
+    }
+  }
+
+  /**
+   * A {@link TransferListener} for the data source of an {@link Attempt}, which holds back the
+   * events reported while the attempt is opening, and forwards them to the {@link
+   * #transferListeners} only if the attempt wins the race.
+   */
+  private final class AttemptTransferListener implements TransferListener {
+
+    @GuardedBy("this")
+    private boolean won;
+
+    @GuardedBy("this")
+    @Nullable
+    private DataSource pendingSource;
+
+    @GuardedBy("this")
+    @Nullable
+    private DataSpec initializingDataSpec;
+
+    @GuardedBy("this")
+    @Nullable
+    private DataSpec startedDataSpec;
+
+    @GuardedBy("this")
+    private boolean isNetwork;
+
+    /** Forwards the events held back so far, and any further events. */
+    public synchronized void onWon() {
+      won = true;
+      @Nullable DataSource source = pendingSource;
+      if (source == null) {
+        return;
+      }
+      if (initializingDataSpec != null) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners.get(i).onTransferInitializing(source, initializingDataSpec, isNetwork);
+        }
+      }
+      if (startedDataSpec != null) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners.get(i).onTransferStart(source, startedDataSpec, isNetwork);
+        }
+      }
+      pendingSource = null;
+      initializingDataSpec = null;
+      startedDataSpec = null;
+    }
+
+    @Override
+    public synchronized void onTransferInitializing(
+        DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (won) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners.get(i).onTransferInitializing(source, dataSpec, isNetwork);
+        }
+      } else {
+        pendingSource = source;
+        initializingDataSpec = dataSpec;
+        this.isNetwork = isNetwork;
+      }
+    }
+
+    @Override
+    public synchronized void onTransferStart(
+        DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (won) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners.get(i).onTransferStart(source, dataSpec, isNetwork);
+        }
+      } else {
+        pendingSource = source;
+        startedDataSpec = dataSpec;
+        this.isNetwork = isNetwork;
+      }
+    }
+
+    @Override
+    public synchronized void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      if (won) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners
+              .get(i)
+              .onBytesTransferred(source, dataSpec, isNetwork, bytesTransferred);
+        }
+      }
+    }
+
+    @Override
+    public synchronized void onTransferEnd(
+        DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (won) {
+        for (int i = 0; i < transferListeners.size(); i++) {
+          transferListeners.get(i).onTransferEnd(source, dataSpec, isNetwork);
+        }
+      }
+      // A losing attempt's events are dropped, including the end of its transfer.
+    }
+  }
+
+  /** Time to first byte and throughput measurements of an origin. */
+  private static final class OriginStats {
+
+    private static final int MAX_TIME_TO_FIRST_BYTE_SAMPLES = 20;
+    private static final long MIN_BYTES_FOR_THROUGHPUT_SAMPLE = 16 * 1024;
+    private static final double THROUGHPUT_SMOOTHING_FACTOR = 0.3;
+
+    @GuardedBy("this")
+    private final long[] timeToFirstByteSamplesMs;
+
+    @GuardedBy("this")
+    private int timeToFirstByteSampleCount;
+
+    @GuardedBy("this")
+    private int nextTimeToFirstByteSampleIndex;
+
+    /** The smoothed throughput in bytes per second, or 0 if unknown. */
+    @GuardedBy("this")
+    private double throughputBytesPerSecond;
+
+    public OriginStats() {
+      timeToFirstByteSamplesMs = new long[MAX_TIME_TO_FIRST_BYTE_SAMPLES];
+    }
+
+    public synchronized void addTimeToFirstByteSample(long timeToFirstByteMs) {
+      timeToFirstByteSamplesMs[nextTimeToFirstByteSampleIndex] = timeToFirstByteMs;
+      nextTimeToFirstByteSampleIndex =
+          (nextTimeToFirstByteSampleIndex + 1) % MAX_TIME_TO_FIRST_BYTE_SAMPLES;
+      if (timeToFirstByteSampleCount < MAX_TIME_TO_FIRST_BYTE_SAMPLES) {
+        timeToFirstByteSampleCount++;
+      }
+    }
+
+    public synchronized void addThroughputSample(long bytes, long durationMs) {
+      if (bytes < MIN_BYTES_FOR_THROUGHPUT_SAMPLE || durationMs <= 0) {
+        return;
+      }
+      double sample = bytes * 1000.0 / durationMs;
+      throughputBytesPerSecond =
+          throughputBytesPerSecond == 0
+              ? sample
+              : THROUGHPUT_SMOOTHING_FACTOR * sample
+                  + (1 - THROUGHPUT_SMOOTHING_FACTOR) * throughputBytesPerSecond;
+    }
+
+    /**
+     * Returns the given percentile of the recent times to first byte, or {@link C#TIME_UNSET} if
+     * there are no measurements.
+     */
+    public synchronized long getTimeToFirstBytePercentileMs(float percentile) {
+      if (timeToFirstByteSampleCount == 0) {
+        return C.TIME_UNSET;
+      }
+      long[] sortedSamplesMs = Arrays.copyOf(timeToFirstByteSamplesMs, timeToFirstByteSampleCount);
+      Arrays.sort(sortedSamplesMs);
+      int index = (int) Math.ceil(percentile * timeToFirstByteSampleCount) - 1;
+      return sortedSamplesMs[max(0, index)];
+    }
+
+    /**
+     * Returns the estimated time to load {@code length} bytes from the origin. Origins without
+     * measurements have an estimate of zero, so that they're tried and measured.
+     */
+    public synchronized long getEstimatedLoadTimeMs(long length) {
+      long medianTimeToFirstByteMs = getTimeToFirstBytePercentileMs(/* percentile= */ 0.5f);
+      long estimatedLoadTimeMs =
+          medianTimeToFirstByteMs == C.TIME_UNSET ? 0 : medianTimeToFirstByteMs;
+      if (length != C.LENGTH_UNSET && throughputBytesPerSecond > 0) {
+        estimatedLoadTimeMs += (long) (length * 1000 / throughputBytesPerSecond);
+      }
+      return estimatedLoadTimeMs;
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stores manifests, such as HLS playlists and DASH MPDs, in gzip compressed form together with the
+ * validators of the HTTP responses they were loaded from, so that they can be revalidated with
+ * conditional requests. Used by {@link ManifestCacheDataSource}.
+ *
+ * <p>Manifests are held in memory, evicting the least recently used manifest when the compressed
+ * size of all manifests exceeds a maximum, and can optionally be persisted to a directory so that
+ * they survive the process. Instances are thread-safe, and may be shared by multiple players.
+ */
+public final class ManifestCache {
+
+  /** A cached manifest. */
+  public static final class Entry {
+
+    /** The key of the manifest, typically its URI. */
+    public final String key;
+    /**
+     * The URI from which the manifest was loaded, after following any redirects. URIs in the
+     * manifest should be resolved against this URI.
+     */
+    public final Uri uri;
+    /** The value of the ETag response header, or null if the response didn't have one. */
+    @Nullable public final String etag;
+    /** The value of the Last-Modified response header, or null if the response didn't have one. */
+    @Nullable public final String lastModified;
+
+    private final byte[] compressedData;
+
+    private Entry(
+        String key,
+        Uri uri,
+        @Nullable String etag,
+        @Nullable String lastModified,
+        byte[] compressedData) {
+      this.key = key;
+      this.uri = uri;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.compressedData = compressedData;
+    }
+
+    /**
+     * Returns the uncompressed manifest.
+     *
+     * @throws IOException If the stored data is corrupt.
+     */
+    public byte[] getData() throws IOException {
+      try (InputStream inputStream =
+          new GZIPInputStream(new ByteArrayInputStream(compressedData))) {
+        return Util.toByteArray(inputStream);
+      }
+    }
+  }
+
+  /** The default maximum compressed size of all cached manifests, in bytes. */
+  public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+  private static final String TAG = "ManifestCache";
+  private static final String FILE_EXTENSION = ".manifest";
+  private static final int VERSION = 2;
+
+  @Nullable private final File directory;
+  private final long maxBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Entry> entries;
+
+  @GuardedBy("this")
+  private long totalBytes;
+
+  @GuardedBy("this")
+  private boolean loaded;
+
+  /** Creates an in-memory instance that holds up to {@link #DEFAULT_MAX_BYTES}. */
+  public ManifestCache() {
+    this(/* directory= */ null, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param directory A directory to which manifests are persisted, or null to only hold manifests
+   *     in memory. The directory should be dedicated to this cache.
+   * @param maxBytes The maximum compressed size of all cached manifests, in bytes.
+   */
+  public ManifestCache(@Nullable File directory, long maxBytes) {
+    checkArgument(maxBytes > 0);
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    entries =
+        new LinkedHashMap<>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+  }
+
+  /** Returns the maximum compressed size of all cached manifests, in bytes. */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Returns the manifest stored for {@code key}, or null if there isn't one. */
+  @Nullable
+  public synchronized Entry get(String key) {
+    maybeLoad();
+    return entries.get(key);
+  }
+
+  /**
+   * Stores a manifest, replacing any manifest previously stored for the same key.
+   *
+   * @param key The key of the manifest, typically its URI.
+   * @param uri The URI from which the manifest was loaded, after following any redirects.
+   * @param etag The value of the ETag response header, or null if the response didn't have one.
+   * @param lastModified The value of the Last-Modified response header, or null if the response
+   *     didn't have one.
+   * @param data The uncompressed manifest.
+   */
+  public synchronized void put(
+      String key, Uri uri, @Nullable String etag, @Nullable String lastModified, byte[] data) {
+    maybeLoad();
+    Entry entry = new Entry(key, uri, etag, lastModified, Util.gzip(data));
+    if (entry.compressedData.length > maxBytes) {
+      remove(key);
+      return;
+    }
+    addEntry(entry);
+    if (directory != null) {
+      try {
+        writeFile(getFile(directory, key), entry);
+      } catch (IOException e) {
+        // The manifest is still held in memory.
+        Log.w(TAG, "Failed to persist manifest", e);
+      }
+    }
+  }
+
+  /** Removes the manifest stored for {@code key}, if there is one. */
+  public synchronized void remove(String key) {
+    maybeLoad();
+    @Nullable Entry entry = entries.remove(key);
+    if (entry != null) {
+      totalBytes -= entry.compressedData.length;
+      deleteFile(entry);
+    }
+  }
+
+  @GuardedBy("this")
+  private void addEntry(Entry entry) {
+    @Nullable Entry previousEntry = entries.put(entry.key, entry);
+    if (previousEntry != null) {
+      totalBytes -= previousEntry.compressedData.length;
+    }
+    totalBytes += entry.compressedData.length;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Entry eldestEntry = iterator.next();
+      if (eldestEntry == entry) {
+        continue;
+      }
+      iterator.remove();
+      totalBytes -= eldestEntry.compressedData.length;
+      deleteFile(eldestEntry);
+    }
+  }
+
+  @GuardedBy("this")
+  private void maybeLoad() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (directory == null) {
+      return;
+    }
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.w(TAG, "Failed to create directory: " + directory);
+      return;
+    }
+    @Nullable File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (!file.getName().endsWith(FILE_EXTENSION)) {
+        continue;
+      }
+      @Nullable Entry entry = readFile(file);
+      if (entry != null) {
+        addEntry(entry);
+      } else {
+        new AtomicFile(file).delete();
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void deleteFile(Entry entry) {
+    if (directory != null) {
+      new AtomicFile(getFile(directory, entry.key)).delete();
+    }
+  }
+
+  @Nullable
+  private static Entry readFile(File file) {
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new AtomicFile(file).openRead()))) {
+      if (input.readInt() != VERSION) {
+        return null;
+      }
+      String key = input.readUTF();
+      Uri uri = Uri.parse(input.readUTF());
+      @Nullable String etag = input.readBoolean() ? input.readUTF() : null;
+      @Nullable String lastModified = input.readBoolean() ? input.readUTF() : null;
+      int compressedLength = input.readInt();
+      if (compressedLength < 0 || compressedLength > file.length()) {
+        return null;
+      }
+      byte[] compressedData = new byte[compressedLength];
+      input.readFully(compressedData);
+      return new Entry(key, uri, etag, lastModified, compressedData);
+    } catch (IOException e) {
+      Log.w(TAG, "Discarding persisted manifest", e);
+      return null;
+    }
+  }
+
+  private static void writeFile(File file, Entry entry) throws IOException {
+    AtomicFile atomicFile = new AtomicFile(file);
+    DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+    try {
+      output.writeInt(VERSION);
+      output.writeUTF(entry.key);
+      output.writeUTF(entry.uri.toString());
+      writeNullableString(output, entry.etag);
+      writeNullableString(output, entry.lastModified);
+      output.writeInt(entry.compressedData.length);
+      output.write(entry.compressedData);
+      atomicFile.endWrite(output);
+    } catch (IOException e) {
+      Util.closeQuietly(output);
+      atomicFile.delete();
+      throw e;
+    }
+  }
+
+  private static void writeNullableString(DataOutputStream output, @Nullable String value)
+      throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  private static File getFile(File directory, String key) {
+    // Keys are stored in the file, so colliding names only cause one of the manifests to be lost.
+    return new File(directory, Integer.toHexString(key.hashCode()) + FILE_EXTENSION);
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} that revalidates manifests held in a {@link ManifestCache} with conditional
+ * HTTP requests, and serves the cached manifest if the server responds with 304 (Not Modified).
+ *
+ * <p>A request is only revalidated if it's a GET request for a whole resource. The response is
+ * stored in the cache if it has an ETag or Last-Modified header. Data served from the cache is not
+ * reported to the transfer listeners of the upstream {@link DataSource}.
+ *
+ * <p>Instances should only be used to load manifests. For HLS, use an {@code HlsDataSourceFactory}
+ * that returns instances for {@link C#DATA_TYPE_MANIFEST}. For DASH and SmoothStreaming, pass a
+ * {@link Factory} as the manifest data source factory.
+ *
+ * <p>Manifests are cached under {@link DataSpec#key} if set, or otherwise under their URI with any
+ * HLS delivery directive query parameters (those whose names start with {@code _HLS_}, such as
+ * {@code _HLS_msn} and {@code _HLS_part}) removed, so that the blocking reloads of a low-latency
+ * HLS playlist replace a single cached manifest rather than each adding a new one. Other query
+ * parameters are part of the key, so URIs that only differ by such parameters are cached
+ * separately.
+ */
+public final class ManifestCacheDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link ManifestCacheDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final ManifestCache manifestCache;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory A {@link DataSource.Factory} that provides upstream {@link DataSource
+     *     DataSources} for {@link ManifestCacheDataSource} instances created by the factory.
+     * @param manifestCache The {@link ManifestCache} shared by all {@link ManifestCacheDataSource}
+     *     instances created by the factory.
+     */
+    public Factory(DataSource.Factory upstreamFactory, ManifestCache manifestCache) {
+      this.upstreamFactory = upstreamFactory;
+      this.manifestCache = manifestCache;
+    }
+
+    @Override
+    public ManifestCacheDataSource createDataSource() {
+      return new ManifestCacheDataSource(upstreamFactory.createDataSource(), manifestCache);
+    }
+  }
+
+  private static final int HTTP_NOT_MODIFIED = 304;
+  private static final String HLS_DELIVERY_DIRECTIVE_PREFIX = "_HLS_";
+
+  private final DataSource upstream;
+  private final ManifestCache manifestCache;
+
+  @Nullable private String cacheKey;
+  @Nullable private Uri responseUri;
+  @Nullable private String etag;
+  @Nullable private String lastModified;
+  @Nullable private ByteArrayOutputStream responseData;
+  @Nullable private byte[] cachedData;
+  @Nullable private Uri cachedUri;
+  private int cachedDataReadPosition;
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param manifestCache The {@link ManifestCache} in which manifests are stored.
+   */
+  public ManifestCacheDataSource(DataSource upstream, ManifestCache manifestCache) {
+    this.upstream = checkNotNull(upstream);
+    this.manifestCache = checkNotNull(manifestCache);
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    if (!isCacheable(dataSpec)) {
+      return upstream.open(dataSpec);
+    }
+    String key = getCacheKey(dataSpec);
+    @Nullable ManifestCache.Entry entry = manifestCache.get(key);
+    DataSpec upstreamDataSpec = dataSpec;
+    if (entry != null) {
+      Map<String, String> conditionalHeaders = new HashMap<>();
+      if (entry.etag != null) {
+        conditionalHeaders.put(HttpHeaders.IF_NONE_MATCH, entry.etag);
+      }
+      if (entry.lastModified != null) {
+        conditionalHeaders.put(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+      }
+      upstreamDataSpec = dataSpec.withAdditionalHeaders(conditionalHeaders);
+    }
+
+    long bytesToRead;
+    try {
+      bytesToRead = upstream.open(upstreamDataSpec);
+    } catch (HttpDataSource.InvalidResponseCodeException e) {
+      if (entry == null || e.responseCode != HTTP_NOT_MODIFIED) {
+        throw e;
+      }
+      upstream.close();
+      byte[] data;
+      try {
+        data = entry.getData();
+      } catch (IOException corruptDataException) {
+        manifestCache.remove(key);
+        throw corruptDataException;
+      }
+      cachedData = data;
+      cachedUri = entry.uri;
+      cachedDataReadPosition = 0;
+      return data.length;
+    }
+
+    Map<String, List<String>> responseHeaders = upstream.getResponseHeaders();
+    etag = getHeaderValue(responseHeaders, HttpHeaders.ETAG);
+    lastModified = getHeaderValue(responseHeaders, HttpHeaders.LAST_MODIFIED);
+    if (etag != null || lastModified != null) {
+      cacheKey = key;
+      @Nullable Uri upstreamUri = upstream.getUri();
+      responseUri = upstreamUri != null ? upstreamUri : dataSpec.uri;
+      responseData = new ByteArrayOutputStream();
+    }
+    return bytesToRead;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    @Nullable byte[] cachedData = this.cachedData;
+    if (cachedData != null) {
+      if (length == 0) {
+        return 0;
+      }
+      int bytesRemaining = cachedData.length - cachedDataReadPosition;
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = min(length, bytesRemaining);
+      System.arraycopy(cachedData, cachedDataReadPosition, buffer, offset, bytesToRead);
+      cachedDataReadPosition += bytesToRead;
+      return bytesToRead;
+    }
+
+    int bytesRead = upstream.read(buffer, offset, length);
+    @Nullable ByteArrayOutputStream responseData = this.responseData;
+    if (responseData == null) {
+      return bytesRead;
+    }
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      manifestCache.put(
+          checkNotNull(cacheKey),
+          checkNotNull(responseUri),
+          etag,
+          lastModified,
+          responseData.toByteArray());
+      this.responseData = null;
+    } else {
+      responseData.write(buffer, offset, bytesRead);
+      if (responseData.size() > manifestCache.getMaxBytes()) {
+        // The compressed manifest is unlikely to fit in the cache, so stop buffering it.
+        this.responseData = null;
+      }
+    }
+    return bytesRead;
+  }
+
+  @Nullable
+  @Override
+  public Uri getUri() {
+    return cachedData != null ? cachedUri : upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return cachedData != null ? ImmutableMap.of() : upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    cacheKey = null;
+    responseUri = null;
+    etag = null;
+    lastModified = null;
+    responseData = null;
+    if (cachedData != null) {
+      cachedData = null;
+      cachedUri = null;
+    } else {
+      upstream.close();
+    }
+  }
+
+  private static boolean isCacheable(DataSpec dataSpec) {
+    return dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+        && dataSpec.position == 0
+        && dataSpec.length == C.LENGTH_UNSET;
+  }
+
+  private static String getCacheKey(DataSpec dataSpec) {
+    if (dataSpec.key != null) {
+      return dataSpec.key;
+    }
+    Uri uri = dataSpec.uri;
+    if (uri.isOpaque() || uri.getQuery() == null) {
+      return uri.toString();
+    }
+    boolean hasDeliveryDirective = false;
+    Uri.Builder keyBuilder = uri.buildUpon().clearQuery();
+    for (String name : uri.getQueryParameterNames()) {
+      if (name.startsWith(HLS_DELIVERY_DIRECTIVE_PREFIX)) {
+        hasDeliveryDirective = true;
+        continue;
+      }
+      for (String value : uri.getQueryParameters(name)) {
+        keyBuilder.appendQueryParameter(name, value);
+      }
+    }
+    return hasDeliveryDirective ? keyBuilder.build().toString() : uri.toString();
+  }
+
+  @Nullable
+  private static String getHeaderValue(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+}
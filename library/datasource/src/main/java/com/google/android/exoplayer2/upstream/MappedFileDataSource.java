@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link DataSource} for reading local files through memory-mapped windows.
+ *
+ * <p>Compared to {@link FileDataSource}, which makes a system call for each read, this data source
+ * maps consecutive windows of the file into memory and copies data directly from the mapped
+ * region, so that reading a window requires a single system call. This reduces the CPU cost of
+ * reading large local files, such as downloaded media. It can also be used for reading cached data,
+ * by setting a {@link Factory} as the cache read data source factory of a {@code
+ * CacheDataSource.Factory}.
+ *
+ * <p>Each window occupies virtual address space, but not physical memory, for as long as it's
+ * mapped. Mapped windows are released when they're garbage collected rather than when the data
+ * source is closed, so a process may briefly have several windows mapped per data source. With the
+ * {@link #DEFAULT_WINDOW_SIZE default window size} this is a few tens of megabytes per data source,
+ * which is negligible for 64-bit processes but can matter for 32-bit processes that use many data
+ * sources at once, in which case a smaller window size should be set.
+ */
+public final class MappedFileDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link MappedFileDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    @Nullable private TransferListener listener;
+    private int windowSize;
+
+    /** Creates an instance. */
+    public Factory() {
+      windowSize = DEFAULT_WINDOW_SIZE;
+    }
+
+    /**
+     * Sets a {@link TransferListener} for {@link MappedFileDataSource} instances created by this
+     * factory.
+     *
+     * @param listener The {@link TransferListener}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setListener(@Nullable TransferListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size of each mapped window of the file.
+     *
+     * <p>The default value is {@link #DEFAULT_WINDOW_SIZE}.
+     *
+     * @param windowSize The window size in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setWindowSize(int windowSize) {
+      checkArgument(windowSize > 0);
+      this.windowSize = windowSize;
+      return this;
+    }
+
+    @Override
+    public MappedFileDataSource createDataSource() {
+      MappedFileDataSource dataSource = new MappedFileDataSource(windowSize);
+      if (listener != null) {
+        dataSource.addTransferListener(listener);
+      }
+      return dataSource;
+    }
+  }
+
+  /** The default maximum size of each mapped window of the file, in bytes. */
+  public static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+  private final int windowSize;
+
+  @Nullable private RandomAccessFile file;
+  @Nullable private MappedByteBuffer window;
+  @Nullable private Uri uri;
+  private long position;
+  private long bytesRemaining;
+  private boolean opened;
+
+  /** Creates an instance that uses windows of {@link #DEFAULT_WINDOW_SIZE}. */
+  public MappedFileDataSource() {
+    this(DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param windowSize The maximum size of each mapped window of the file, in bytes.
+   */
+  public MappedFileDataSource(int windowSize) {
+    super(/* isNetwork= */ false);
+    checkArgument(windowSize > 0);
+    this.windowSize = windowSize;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws FileDataSourceException {
+    Uri uri = dataSpec.uri;
+    this.uri = uri;
+    transferInitializing(dataSpec);
+    this.file = FileDataSource.openLocalFile(uri);
+    position = dataSpec.position;
+    long fileLength;
+    try {
+      fileLength = file.length();
+    } catch (IOException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+    }
+    bytesRemaining =
+        dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position : dataSpec.length;
+    if (dataSpec.position > fileLength || bytesRemaining < 0) {
+      throw new FileDataSourceException(
+          /* message= */ null,
+          /* cause= */ null,
+          PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws FileDataSourceException {
+    if (length == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (this.window == null || !this.window.hasRemaining()) {
+      // Drop the exhausted window before mapping the next one, so that it can be unmapped as soon
+      // as it's garbage collected.
+      this.window = null;
+      this.window = mapNextWindow();
+    }
+    @Nullable MappedByteBuffer window = this.window;
+    if (window == null) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead = (int) min(min(bytesRemaining, length), window.remaining());
+    window.get(buffer, offset, bytesRead);
+    position += bytesRead;
+    bytesRemaining -= bytesRead;
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws FileDataSourceException {
+    uri = null;
+    window = null;
+    try {
+      if (file != null) {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+    } finally {
+      file = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  /**
+   * Maps the window of the file starting at the current read position, or returns null if the
+   * current read position is at or beyond the end of the file.
+   */
+  @Nullable
+  private MappedByteBuffer mapNextWindow() throws FileDataSourceException {
+    try {
+      FileChannel channel = castNonNull(file).getChannel();
+      long mapSize = min(min(windowSize, bytesRemaining), channel.size() - position);
+      if (mapSize <= 0) {
+        return null;
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, mapSize);
+    } catch (IOException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+    }
+  }
+}
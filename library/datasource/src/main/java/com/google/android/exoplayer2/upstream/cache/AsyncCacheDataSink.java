@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+import static java.lang.Math.min;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DataSink} that writes data into a cache on a background thread, so that the thread
+ * writing to the sink isn't slowed down by storage latency.
+ *
+ * <p>Data is copied into a fixed size ring buffer, from which it's written to an underlying cache
+ * data sink, typically a {@link CacheDataSink}, by a task running on a write {@link Executor}. If
+ * the ring buffer is full, then depending on the {@link OverflowPolicy} {@link #write(byte[], int,
+ * int)} either blocks until there's space, or stops caching data for the rest of the current
+ * {@link DataSpec}. In the latter case the data that's already been written remains in the cache.
+ * The ring buffer is allocated on the first write, so sinks that are never written to don't hold
+ * one.
+ *
+ * <p>{@link #close()} closes the underlying sink on the write executor too, and blocks until all
+ * buffered data has been written and committed to the cache, since the caller typically releases
+ * its lock on the corresponding hole in the cache once the sink is closed.
+ */
+public final class AsyncCacheDataSink implements DataSink {
+
+  /** {@link DataSink.Factory} for {@link AsyncCacheDataSink} instances. */
+  public static final class Factory implements DataSink.Factory {
+
+    private final DataSink.Factory cacheDataSinkFactory;
+
+    private int ringBufferSize;
+    private @OverflowPolicy int overflowPolicy;
+    @Nullable private Executor writeExecutor;
+
+    /**
+     * Creates an instance.
+     *
+     * @param cacheDataSinkFactory A {@link DataSink.Factory} for the sinks into which data is
+     *     written on the write executor, typically a {@link CacheDataSink.Factory}.
+     */
+    public Factory(DataSink.Factory cacheDataSinkFactory) {
+      this.cacheDataSinkFactory = cacheDataSinkFactory;
+      ringBufferSize = DEFAULT_RING_BUFFER_SIZE;
+      overflowPolicy = OVERFLOW_POLICY_BLOCK;
+    }
+
+    /**
+     * Sets the size of the ring buffer in which data is held until it's written.
+     *
+     * <p>The default value is {@link #DEFAULT_RING_BUFFER_SIZE}.
+     *
+     * @param ringBufferSize The ring buffer size in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setRingBufferSize(int ringBufferSize) {
+      checkArgument(ringBufferSize > 0);
+      this.ringBufferSize = ringBufferSize;
+      return this;
+    }
+
+    /**
+     * Sets what happens when data is written to a sink whose ring buffer is full.
+     *
+     * <p>The default value is {@link #OVERFLOW_POLICY_BLOCK}.
+     *
+     * @param overflowPolicy The {@link OverflowPolicy}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setOverflowPolicy(@OverflowPolicy int overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which data is written.
+     *
+     * <p>The default value is the {@link #getSharedWriteExecutor() shared write executor}.
+     *
+     * @param writeExecutor The {@link Executor} on which data is written.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setWriteExecutor(Executor writeExecutor) {
+      this.writeExecutor = writeExecutor;
+      return this;
+    }
+
+    @Override
+    public DataSink createDataSink() {
+      return new AsyncCacheDataSink(
+          cacheDataSinkFactory.createDataSink(),
+          ringBufferSize,
+          overflowPolicy,
+          writeExecutor != null ? writeExecutor : getSharedWriteExecutor());
+    }
+  }
+
+  /**
+   * What happens when data is written to a sink whose ring buffer is full. One of {@link
+   * #OVERFLOW_POLICY_BLOCK} or {@link #OVERFLOW_POLICY_DROP}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @Target(TYPE_USE)
+  @IntDef({OVERFLOW_POLICY_BLOCK, OVERFLOW_POLICY_DROP})
+  public @interface OverflowPolicy {}
+  /** Block until enough data has been written to make space in the ring buffer. */
+  public static final int OVERFLOW_POLICY_BLOCK = 0;
+  /**
+   * Stop caching data for the rest of the current {@link DataSpec}. Data that was written before
+   * the overflow is still cached.
+   */
+  public static final int OVERFLOW_POLICY_DROP = 1;
+
+  /** Default ring buffer size in bytes. */
+  public static final int DEFAULT_RING_BUFFER_SIZE = 256 * 1024;
+
+  /** The time for which the idle thread of the {@link #getSharedWriteExecutor()} is kept alive. */
+  private static final long SHARED_WRITE_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private static Executor sharedWriteExecutor;
+
+  private final DataSink cacheDataSink;
+  private final int ringBufferSize;
+  private final @OverflowPolicy int overflowPolicy;
+  private final Executor writeExecutor;
+  private final Runnable writeTask;
+  private final Object lock;
+
+  @GuardedBy("lock")
+  @Nullable
+  private byte[] ringBuffer;
+
+  @GuardedBy("lock")
+  @Nullable
+  private DataSpec pendingDataSpec;
+
+  @GuardedBy("lock")
+  private int readPosition;
+
+  @GuardedBy("lock")
+  private int size;
+
+  @GuardedBy("lock")
+  private boolean writeTaskScheduled;
+
+  @GuardedBy("lock")
+  private boolean dropping;
+
+  @GuardedBy("lock")
+  private boolean closePending;
+
+  @GuardedBy("lock")
+  @Nullable
+  private IOException writeException;
+
+  private boolean opened;
+
+  /**
+   * Returns a shared {@link Executor} on which {@link AsyncCacheDataSink} instances can write their
+   * data. The executor uses a single thread, which is stopped when idle.
+   */
+  public static synchronized Executor getSharedWriteExecutor() {
+    if (sharedWriteExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              SHARED_WRITE_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "ExoPlayer:AsyncCacheDataSink"));
+      executor.allowCoreThreadTimeOut(true);
+      sharedWriteExecutor = executor;
+    }
+    return sharedWriteExecutor;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDataSink The {@link DataSink} into which data is written on the write executor,
+   *     typically a {@link CacheDataSink}.
+   * @param ringBufferSize The size of the ring buffer in which data is held until it's written, in
+   *     bytes. The ring buffer is allocated on the first write.
+   * @param overflowPolicy What happens when data is written when the ring buffer is full.
+   * @param writeExecutor The {@link Executor} on which data is written.
+   */
+  public AsyncCacheDataSink(
+      DataSink cacheDataSink,
+      int ringBufferSize,
+      @OverflowPolicy int overflowPolicy,
+      Executor writeExecutor) {
+    checkArgument(ringBufferSize > 0);
+    this.cacheDataSink = checkNotNull(cacheDataSink);
+    this.overflowPolicy = overflowPolicy;
+    this.writeExecutor = checkNotNull(writeExecutor);
+    this.ringBufferSize = ringBufferSize;
+    writeTask = this::runWriteTask;
+    lock = new Object();
+  }
+
+  @Override
+  public void open(DataSpec dataSpec) throws IOException {
+    checkState(!opened);
+    synchronized (lock) {
+      pendingDataSpec = dataSpec;
+      maybeScheduleWriteTask();
+    }
+    opened = true;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    synchronized (lock) {
+      maybeThrowWriteException();
+      if (length == 0 || dropping) {
+        return;
+      }
+      @Nullable byte[] ringBuffer = this.ringBuffer;
+      if (ringBuffer == null) {
+        ringBuffer = new byte[ringBufferSize];
+        this.ringBuffer = ringBuffer;
+      }
+      int bytesCopied = 0;
+      while (bytesCopied < length && !dropping) {
+        if (size == ringBufferSize) {
+          if (overflowPolicy == OVERFLOW_POLICY_DROP) {
+            dropping = true;
+            break;
+          }
+          maybeScheduleWriteTask();
+          if (size == ringBufferSize) {
+            try {
+              lock.wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new InterruptedIOException();
+            }
+          }
+          maybeThrowWriteException();
+          continue;
+        }
+        int writePosition = (readPosition + size) % ringBufferSize;
+        int contiguousSpace = min(ringBufferSize - size, ringBufferSize - writePosition);
+        int bytesToCopy = min(length - bytesCopied, contiguousSpace);
+        System.arraycopy(buffer, offset + bytesCopied, ringBuffer, writePosition, bytesToCopy);
+        size += bytesToCopy;
+        bytesCopied += bytesToCopy;
+      }
+      maybeScheduleWriteTask();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!opened) {
+      return;
+    }
+    opened = false;
+    @Nullable IOException exception;
+    synchronized (lock) {
+      closePending = true;
+      maybeScheduleWriteTask();
+      // Wait uninterruptibly, since the caller may release its lock on the cache once this method
+      // returns, after which the pending data can no longer be committed.
+      boolean wasInterrupted = false;
+      while (writeTaskScheduled) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+      exception = writeException;
+      writeException = null;
+      pendingDataSpec = null;
+      readPosition = 0;
+      size = 0;
+      dropping = false;
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void maybeThrowWriteException() throws IOException {
+    if (writeException != null) {
+      throw writeException;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void maybeScheduleWriteTask() {
+    if (!writeTaskScheduled && (pendingDataSpec != null || size > 0 || closePending)) {
+      writeTaskScheduled = true;
+      writeExecutor.execute(writeTask);
+    }
+  }
+
+  private void runWriteTask() {
+    while (true) {
+      @Nullable DataSpec dataSpecToOpen;
+      @Nullable byte[] ringBuffer;
+      boolean closing = false;
+      int chunkPosition;
+      int chunkLength;
+      synchronized (lock) {
+        dataSpecToOpen = pendingDataSpec;
+        pendingDataSpec = null;
+        if (dataSpecToOpen == null && size == 0) {
+          if (!closePending) {
+            writeTaskScheduled = false;
+            lock.notifyAll();
+            return;
+          }
+          // All buffered data has been written, so the sink can be closed.
+          closePending = false;
+          closing = true;
+        }
+        ringBuffer = this.ringBuffer;
+        chunkPosition = readPosition;
+        chunkLength = min(size, ringBufferSize - readPosition);
+      }
+      if (closing) {
+        try {
+          cacheDataSink.close();
+        } catch (IOException e) {
+          synchronized (lock) {
+            // An earlier write error takes precedence.
+            if (writeException == null) {
+              writeException = e;
+            }
+          }
+        }
+        continue;
+      }
+      try {
+        if (dataSpecToOpen != null) {
+          cacheDataSink.open(dataSpecToOpen);
+        } else {
+          // The ring buffer has been allocated, since there's buffered data.
+          cacheDataSink.write(checkNotNull(ringBuffer), chunkPosition, chunkLength);
+        }
+      } catch (IOException e) {
+        synchronized (lock) {
+          writeException = e;
+          // Discard the remaining data, which can no longer be written contiguously.
+          readPosition = 0;
+          size = 0;
+          dropping = true;
+          lock.notifyAll();
+        }
+        continue;
+      }
+      if (dataSpecToOpen == null) {
+        synchronized (lock) {
+          readPosition = (readPosition + chunkLength) % ringBufferSize;
+          size -= chunkLength;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -167,6 +167,11 @@ public interface Cache {
    * calling {@link #commitFile(File, long)}. When the caller has finished writing, it must release
    * the lock by calling {@link #releaseHoleSpan}.
    *
+   * <p>If {@link #isReadWhileWriteEnabled()} is true and {@code position} is within data that's
+   * being written into a locked hole, then instead of blocking until the file is committed, this
+   * method may return a cached {@link CacheSpan} covering the data written so far, as reported by
+   * {@link #updateFileLength(File, long)}.
+   *
    * <p>This method may be slow and shouldn't normally be called on the main thread.
    *
    * @param key The cache key of the resource.
@@ -231,6 +236,27 @@ public interface Cache {
   @WorkerThread
   void commitFile(File file, long length) throws CacheException;
 
+  /**
+   * Returns whether data written into files obtained from {@link #startFile(String, long, long)}
+   * can be read by other callers of {@link #startReadWrite(String, long, long)} before the files
+   * are committed. The default implementation returns false.
+   */
+  default boolean isReadWhileWriteEnabled() {
+    return false;
+  }
+
+  /**
+   * Reports that the first {@code length} bytes of a file obtained from {@link #startFile(String,
+   * long, long)} have been written and flushed, and so can be read from the file. Must only be
+   * called when holding a corresponding hole {@link CacheSpan} obtained from {@link
+   * #startReadWrite(String, long, long)}, and is only useful if {@link #isReadWhileWriteEnabled()}
+   * is true. The default implementation does nothing.
+   *
+   * @param file A cache file that's being written.
+   * @param length The number of bytes that have been written to the file.
+   */
+  default void updateFileLength(File file, long length) {}
+
   /**
    * Releases a {@link CacheSpan} obtained from {@link #startReadWrite(String, long, long)} which
    * corresponded to a hole in the cache.
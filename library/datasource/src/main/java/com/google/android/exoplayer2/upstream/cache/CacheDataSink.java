@@ -135,7 +135,9 @@ public final class CacheDataSink implements DataSink {
   @Nullable private File file;
   @Nullable private OutputStream outputStream;
   private long outputStreamBytesWritten;
+  private long outputStreamBytesReported;
   private long dataSpecBytesWritten;
+  private boolean readWhileWriteEnabled;
   private @MonotonicNonNull ReusableBufferedOutputStream bufferedOutputStream;
 
   /**
@@ -190,6 +192,7 @@ public final class CacheDataSink implements DataSink {
     this.dataSpecFragmentSize =
         dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_CACHE_FRAGMENTATION) ? fragmentSize : Long.MAX_VALUE;
     dataSpecBytesWritten = 0;
+    readWhileWriteEnabled = cache.isReadWhileWriteEnabled();
     try {
       openNextOutputStream(dataSpec);
     } catch (IOException e) {
@@ -216,6 +219,10 @@ public final class CacheDataSink implements DataSink {
         bytesWritten += bytesToWrite;
         outputStreamBytesWritten += bytesToWrite;
         dataSpecBytesWritten += bytesToWrite;
+        if (readWhileWriteEnabled
+            && outputStreamBytesWritten - outputStreamBytesReported >= getReportInterval()) {
+          reportCurrentFileLength();
+        }
       }
     } catch (IOException e) {
       throw new CacheDataSinkException(e);
@@ -255,6 +262,25 @@ public final class CacheDataSink implements DataSink {
       outputStream = underlyingFileOutputStream;
     }
     outputStreamBytesWritten = 0;
+    outputStreamBytesReported = 0;
+  }
+
+  /**
+   * Flushes the current output stream and reports the number of bytes written to the cache, so
+   * that the data can be read before the file is committed.
+   */
+  private void reportCurrentFileLength() throws IOException {
+    castNonNull(outputStream).flush();
+    cache.updateFileLength(castNonNull(file), outputStreamBytesWritten);
+    outputStreamBytesReported = outputStreamBytesWritten;
+  }
+
+  /**
+   * Returns the minimum number of bytes written between reports of the current file length. Data
+   * is reported each time the buffer fills, so that reporting doesn't cause additional writes.
+   */
+  private int getReportInterval() {
+    return bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
   }
 
   private void closeCurrentOutputStream() throws IOException {
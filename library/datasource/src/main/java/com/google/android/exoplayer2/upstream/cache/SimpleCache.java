@@ -30,6 +30,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
@@ -68,10 +69,12 @@ public final class SimpleCache implements Cache {
   private final HashMap<String, ArrayList<Listener>> listeners;
   private final Random random;
   private final boolean touchCacheSpans;
+  private final HashMap<File, WritingFile> writingFiles;
 
   private long uid;
   private long totalSpace;
   private boolean released;
+  private boolean readWhileWriteEnabled;
   private @MonotonicNonNull CacheException initializationException;
 
   /**
@@ -256,6 +259,7 @@ public final class SimpleCache implements Cache {
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    writingFiles = new HashMap<>();
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -284,6 +288,35 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Sets whether data that's being written into the cache can be read before it's committed. The
+   * default value is {@code false}.
+   *
+   * <p>If enabled, a {@link CacheSpan} returned by {@link #startReadWrite(String, long, long)} or
+   * {@link #startReadWriteNonBlocking(String, long, long)} may correspond to a file that's still
+   * being written into a locked hole. Such a span covers only the data that the writer has reported
+   * through {@link #updateFileLength(File, long)}, and so a reader that reaches the end of the span
+   * should call {@link #startReadWrite(String, long, long)} again to obtain the next span. This
+   * allows readers of the same resource to share a single upstream request, rather than blocking
+   * until the writer has committed the file, or requesting the same data again.
+   *
+   * <p>Writers must periodically flush and report the length of files that they're writing, as
+   * {@link CacheDataSink} does, for readers to make progress before the file is committed.
+   *
+   * @param readWhileWriteEnabled Whether data that's being written can be read.
+   */
+  public synchronized void setReadWhileWriteEnabled(boolean readWhileWriteEnabled) {
+    this.readWhileWriteEnabled = readWhileWriteEnabled;
+    if (!readWhileWriteEnabled) {
+      writingFiles.clear();
+    }
+  }
+
+  @Override
+  public synchronized boolean isReadWhileWriteEnabled() {
+    return readWhileWriteEnabled;
+  }
+
   @Override
   public synchronized long getUid() {
     return uid;
@@ -371,6 +404,8 @@ public final class SimpleCache implements Cache {
         // 1. A span is added for the requested key that covers the requested position, in which
         //    case a read can be started.
         // 2. The lock for the requested key is released, in which case a write can be started.
+        // 3. If read while write is enabled, data covering the requested position is written into
+        //    the locked hole, in which case a read of the written data can be started.
         wait();
       }
     }
@@ -396,6 +431,14 @@ public final class SimpleCache implements Cache {
       return span;
     }
 
+    if (readWhileWriteEnabled) {
+      // Read case, for data that's being written but isn't committed yet.
+      @Nullable CacheSpan writingSpan = getWritingSpan(key, position);
+      if (writingSpan != null) {
+        return writingSpan;
+      }
+    }
+
     // Lock not available.
     return null;
   }
@@ -421,13 +464,28 @@ public final class SimpleCache implements Cache {
       createCacheDirectories(cacheSubDir);
     }
     long lastTouchTimestamp = System.currentTimeMillis();
-    return SimpleCacheSpan.getCacheFile(
-        cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
+    File file =
+        SimpleCacheSpan.getCacheFile(cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
+    if (readWhileWriteEnabled) {
+      writingFiles.put(file, new WritingFile(key, position, lastTouchTimestamp));
+    }
+    return file;
+  }
+
+  @Override
+  public synchronized void updateFileLength(File file, long length) {
+    Assertions.checkState(!released);
+    @Nullable WritingFile writingFile = writingFiles.get(file);
+    if (writingFile != null && length > writingFile.length) {
+      writingFile.length = length;
+      notifyAll();
+    }
   }
 
   @Override
   public synchronized void commitFile(File file, long length) throws CacheException {
     Assertions.checkState(!released);
+    writingFiles.remove(file);
     if (!file.exists()) {
       return;
     }
@@ -469,6 +527,7 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
     cachedContent.unlockRange(holeSpan.position);
+    removeWritingFiles(holeSpan);
     contentIndex.maybeRemove(cachedContent.key);
     notifyAll();
   }
@@ -845,6 +904,45 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Returns a cached {@link CacheSpan} for the written part of a file that's being written and
+   * contains {@code position}, or null if there is no such file.
+   */
+  @Nullable
+  private CacheSpan getWritingSpan(String key, long position) {
+    for (Map.Entry<File, WritingFile> entry : writingFiles.entrySet()) {
+      WritingFile writingFile = entry.getValue();
+      if (writingFile.key.equals(key)
+          && writingFile.position <= position
+          && position < writingFile.position + writingFile.length) {
+        return new CacheSpan(
+            key,
+            writingFile.position,
+            writingFile.length,
+            writingFile.lastTouchTimestamp,
+            entry.getKey());
+      }
+    }
+    return null;
+  }
+
+  /** Stops tracking files that were being written into the given hole span. */
+  private void removeWritingFiles(CacheSpan holeSpan) {
+    if (writingFiles.isEmpty()) {
+      return;
+    }
+    Iterator<WritingFile> iterator = writingFiles.values().iterator();
+    while (iterator.hasNext()) {
+      WritingFile writingFile = iterator.next();
+      if (writingFile.key.equals(holeSpan.key)
+          && writingFile.position >= holeSpan.position
+          && (holeSpan.isOpenEnded()
+              || writingFile.position < holeSpan.position + holeSpan.length)) {
+        iterator.remove();
+      }
+    }
+  }
+
   private static synchronized boolean lockFolder(File cacheDir) {
     return lockedCacheDirs.add(cacheDir.getAbsoluteFile());
   }
@@ -852,4 +950,21 @@ public final class SimpleCache implements Cache {
   private static synchronized void unlockFolder(File cacheDir) {
     lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
   }
+
+  /** A file that's being written into a locked hole. */
+  private static final class WritingFile {
+
+    public final String key;
+    public final long position;
+    public final long lastTouchTimestamp;
+
+    /** The number of bytes that have been written to the file and can be read. */
+    public long length;
+
+    public WritingFile(String key, long position, long lastTouchTimestamp) {
+      this.key = key;
+      this.position = position;
+      this.lastTouchTimestamp = lastTouchTimestamp;
+    }
+  }
 }
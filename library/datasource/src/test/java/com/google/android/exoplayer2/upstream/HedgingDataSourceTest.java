@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HedgingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class HedgingDataSourceTest {
+
+  private static final ImmutableList<Uri> ORIGINS =
+      ImmutableList.of(Uri.parse("https://origin1.test/media/"), Uri.parse("https://cdn2.test/"));
+  private static final Uri ORIGIN_1_URI = Uri.parse("https://origin1.test/media/segment.ts");
+  private static final Uri ORIGIN_2_URI = Uri.parse("https://cdn2.test/segment.ts");
+  private static final byte[] ORIGIN_1_DATA =
+      TestUtil.buildTestData(/* length= */ 20, /* seed= */ 1);
+  private static final byte[] ORIGIN_2_DATA =
+      TestUtil.buildTestData(/* length= */ 20, /* seed= */ 2);
+
+  @Test
+  public void open_withRacingEnabled_readsFromFirstOriginToRespond() throws Exception {
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(
+            new FakeDataSet()
+                .setData(ORIGIN_1_URI, ORIGIN_1_DATA)
+                .setData(ORIGIN_2_URI, ORIGIN_2_DATA));
+    upstreamFactory.blockOpening(ORIGIN_1_URI);
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS)
+            .setRacingEnabled(true)
+            .createDataSource();
+
+    dataSource.open(new DataSpec(ORIGIN_1_URI));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    Uri uri = dataSource.getUri();
+    dataSource.close();
+    upstreamFactory.unblockOpening();
+
+    assertThat(data).isEqualTo(ORIGIN_2_DATA);
+    assertThat(uri).isEqualTo(ORIGIN_2_URI);
+    // The losing request is closed once it's opened.
+    assertThat(upstreamFactory.blockedDataSourceClosed.block(/* timeoutMs= */ 10_000)).isTrue();
+  }
+
+  @Test
+  public void open_withRacingEnabled_onlyReportsWinningRequestToTransferListeners()
+      throws Exception {
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(
+            new FakeDataSet()
+                .setData(ORIGIN_1_URI, ORIGIN_1_DATA)
+                .setData(ORIGIN_2_URI, ORIGIN_2_DATA));
+    upstreamFactory.blockOpening(ORIGIN_1_URI);
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS)
+            .setRacingEnabled(true)
+            .createDataSource();
+    List<Uri> initializingUris = Collections.synchronizedList(new ArrayList<>());
+    List<Uri> startedUris = Collections.synchronizedList(new ArrayList<>());
+    List<Uri> endedUris = Collections.synchronizedList(new ArrayList<>());
+    dataSource.addTransferListener(
+        new TransferListener() {
+          @Override
+          public void onTransferInitializing(
+              DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            initializingUris.add(dataSpec.uri);
+          }
+
+          @Override
+          public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            startedUris.add(dataSpec.uri);
+          }
+
+          @Override
+          public void onBytesTransferred(
+              DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {}
+
+          @Override
+          public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            endedUris.add(dataSpec.uri);
+          }
+        });
+
+    dataSource.open(new DataSpec(ORIGIN_1_URI));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+    upstreamFactory.unblockOpening();
+    assertThat(upstreamFactory.blockedDataSourceClosed.block(/* timeoutMs= */ 10_000)).isTrue();
+
+    assertThat(initializingUris).containsExactly(ORIGIN_2_URI);
+    assertThat(startedUris).containsExactly(ORIGIN_2_URI);
+    assertThat(endedUris).containsExactly(ORIGIN_2_URI);
+  }
+
+  @Test
+  public void open_firstOriginFails_readsFromNextOrigin() throws Exception {
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(new FakeDataSet().setData(ORIGIN_2_URI, ORIGIN_2_DATA));
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS)
+            .setOpenExecutor(Runnable::run)
+            .createDataSource();
+
+    dataSource.open(new DataSpec(ORIGIN_1_URI));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(ORIGIN_2_DATA);
+    assertThat(upstreamFactory.openedUris).containsExactly(ORIGIN_1_URI, ORIGIN_2_URI).inOrder();
+  }
+
+  @Test
+  public void open_afterOriginFailed_prefersOtherOrigin() throws Exception {
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(new FakeDataSet().setData(ORIGIN_2_URI, ORIGIN_2_DATA));
+    HedgingDataSource.Factory factory =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS).setOpenExecutor(Runnable::run);
+    DataSource dataSource = factory.createDataSource();
+    dataSource.open(new DataSpec(ORIGIN_1_URI));
+    dataSource.close();
+    upstreamFactory.openedUris.clear();
+
+    // Measurements are shared between data sources created by the same factory.
+    DataSource newDataSource = factory.createDataSource();
+    newDataSource.open(new DataSpec(ORIGIN_1_URI));
+    byte[] data = DataSourceUtil.readToEnd(newDataSource);
+    newDataSource.close();
+
+    assertThat(data).isEqualTo(ORIGIN_2_DATA);
+    assertThat(upstreamFactory.openedUris).containsExactly(ORIGIN_2_URI);
+  }
+
+  @Test
+  public void open_bothOriginsFail_throwsFirstOriginError() {
+    RecordingDataSourceFactory upstreamFactory = new RecordingDataSourceFactory(new FakeDataSet());
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS)
+            .setOpenExecutor(Runnable::run)
+            .createDataSource();
+
+    IOException error =
+        assertThrows(IOException.class, () -> dataSource.open(new DataSpec(ORIGIN_1_URI)));
+
+    assertThat(error).hasMessageThat().contains(ORIGIN_1_URI.toString());
+    assertThat(upstreamFactory.openedUris).containsExactly(ORIGIN_1_URI, ORIGIN_2_URI).inOrder();
+  }
+
+  @Test
+  public void open_firstTwoOriginsFail_readsFromThirdOrigin() throws Exception {
+    Uri origin3Uri = Uri.parse("https://cdn3.test/segment.ts");
+    byte[] origin3Data = TestUtil.buildTestData(/* length= */ 20, /* seed= */ 3);
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(new FakeDataSet().setData(origin3Uri, origin3Data));
+    ImmutableList<Uri> origins =
+        ImmutableList.<Uri>builder().addAll(ORIGINS).add(Uri.parse("https://cdn3.test/")).build();
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, origins)
+            .setOpenExecutor(Runnable::run)
+            .createDataSource();
+
+    dataSource.open(new DataSpec(ORIGIN_1_URI));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(origin3Data);
+    assertThat(upstreamFactory.openedUris)
+        .containsExactly(ORIGIN_1_URI, ORIGIN_2_URI, origin3Uri)
+        .inOrder();
+  }
+
+  @Test
+  public void open_uriWithoutOrigin_opensUnchangedUri() throws Exception {
+    Uri otherUri = Uri.parse("https://other.test/segment.ts");
+    RecordingDataSourceFactory upstreamFactory =
+        new RecordingDataSourceFactory(new FakeDataSet().setData(otherUri, ORIGIN_1_DATA));
+    HedgingDataSource dataSource =
+        new HedgingDataSource.Factory(upstreamFactory, ORIGINS).createDataSource();
+
+    dataSource.open(new DataSpec(otherUri));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(ORIGIN_1_DATA);
+    assertThat(upstreamFactory.openedUris).containsExactly(otherUri);
+  }
+
+  /**
+   * A {@link DataSource.Factory} for data sources that record the URIs they open, and that can
+   * block opening a URI.
+   */
+  private static final class RecordingDataSourceFactory implements DataSource.Factory {
+
+    public final List<Uri> openedUris;
+    public final ConditionVariable blockedDataSourceClosed;
+
+    private final FakeDataSource.Factory fakeDataSourceFactory;
+    private final ConditionVariable openingUnblocked;
+    @Nullable private volatile Uri blockedUri;
+
+    public RecordingDataSourceFactory(FakeDataSet fakeDataSet) {
+      fakeDataSourceFactory = new FakeDataSource.Factory().setFakeDataSet(fakeDataSet);
+      openedUris = new ArrayList<>();
+      blockedDataSourceClosed = new ConditionVariable();
+      openingUnblocked = new ConditionVariable();
+    }
+
+    public void blockOpening(Uri uri) {
+      blockedUri = uri;
+    }
+
+    public void unblockOpening() {
+      openingUnblocked.open();
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      DataSource fakeDataSource = fakeDataSourceFactory.createDataSource();
+      return new DataSource() {
+
+        private boolean blocked;
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+          fakeDataSource.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          synchronized (openedUris) {
+            openedUris.add(dataSpec.uri);
+          }
+          if (dataSpec.uri.equals(blockedUri)) {
+            blocked = true;
+            openingUnblocked.blockUninterruptible();
+          }
+          return fakeDataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          return fakeDataSource.read(buffer, offset, length);
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+          return fakeDataSource.getUri();
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+          return fakeDataSource.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+          fakeDataSource.close();
+          if (blocked) {
+            blockedDataSourceClosed.open();
+          }
+        }
+      };
+    }
+  }
+}
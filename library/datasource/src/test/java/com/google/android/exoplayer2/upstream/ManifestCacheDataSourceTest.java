@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ManifestCacheDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestCacheDataSourceTest {
+
+  private static final Uri URI = Uri.parse("https://example.test/playlist.m3u8");
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 100);
+
+  @Test
+  public void open_notModified_readsCachedManifest() throws Exception {
+    FakeHttpDataSource upstream = new FakeHttpDataSource(DATA, /* etag= */ "\"1\"");
+    ManifestCache manifestCache = new ManifestCache();
+    ManifestCacheDataSource dataSource = new ManifestCacheDataSource(upstream, manifestCache);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    long length = dataSource.open(new DataSpec(URI));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    Uri uri = dataSource.getUri();
+    dataSource.close();
+
+    assertThat(length).isEqualTo(DATA.length);
+    assertThat(data).isEqualTo(DATA);
+    assertThat(uri).isEqualTo(URI);
+    assertThat(upstream.bytesServed).isEqualTo(DATA.length);
+    assertThat(upstream.requestHeaders.get(1)).containsEntry(HttpHeaders.IF_NONE_MATCH, "\"1\"");
+  }
+
+  @Test
+  public void open_notModifiedAfterRedirect_returnsRedirectedUri() throws Exception {
+    Uri redirectedUri = Uri.parse("https://cdn.example.test/live/playlist.m3u8");
+    FakeHttpDataSource upstream = new FakeHttpDataSource(DATA, /* etag= */ "\"1\"");
+    upstream.setRedirectUri(redirectedUri);
+    ManifestCache manifestCache = new ManifestCache();
+    ManifestCacheDataSource dataSource = new ManifestCacheDataSource(upstream, manifestCache);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readToEnd(dataSource);
+    Uri uri = dataSource.getUri();
+    dataSource.close();
+
+    // Relative URIs in the manifest must be resolved against the URI it was loaded from.
+    assertThat(uri).isEqualTo(redirectedUri);
+  }
+
+  @Test
+  public void open_withHlsDeliveryDirectives_revalidatesSingleCachedManifest() throws Exception {
+    FakeHttpDataSource upstream = new FakeHttpDataSource(DATA, /* etag= */ "\"1\"");
+    ManifestCache manifestCache = new ManifestCache();
+    ManifestCacheDataSource dataSource = new ManifestCacheDataSource(upstream, manifestCache);
+    dataSource.open(new DataSpec(URI.buildUpon().appendQueryParameter("_HLS_msn", "1").build()));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    dataSource.open(new DataSpec(URI.buildUpon().appendQueryParameter("_HLS_msn", "2").build()));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(DATA);
+    assertThat(upstream.requestHeaders.get(1)).containsEntry(HttpHeaders.IF_NONE_MATCH, "\"1\"");
+    assertThat(manifestCache.get(URI.toString())).isNotNull();
+  }
+
+  @Test
+  public void open_modified_readsAndCachesNewManifest() throws Exception {
+    FakeHttpDataSource upstream = new FakeHttpDataSource(DATA, /* etag= */ "\"1\"");
+    ManifestCache manifestCache = new ManifestCache();
+    ManifestCacheDataSource dataSource = new ManifestCacheDataSource(upstream, manifestCache);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+    byte[] newData = TestUtil.buildTestData(/* length= */ 50, /* seed= */ 1);
+    upstream.setResource(newData, /* etag= */ "\"2\"");
+
+    dataSource.open(new DataSpec(URI));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(newData);
+    ManifestCache.Entry entry = manifestCache.get(URI.toString());
+    assertThat(entry.etag).isEqualTo("\"2\"");
+    assertThat(entry.getData()).isEqualTo(newData);
+  }
+
+  @Test
+  public void open_partialRequest_isNotRevalidated() throws Exception {
+    FakeHttpDataSource upstream = new FakeHttpDataSource(DATA, /* etag= */ "\"1\"");
+    ManifestCache manifestCache = new ManifestCache();
+    ManifestCacheDataSource dataSource = new ManifestCacheDataSource(upstream, manifestCache);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    dataSource.open(new DataSpec(URI, /* position= */ 10, /* length= */ 20));
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(DATA, 10, 30));
+    assertThat(upstream.requestHeaders.get(1)).doesNotContainKey(HttpHeaders.IF_NONE_MATCH);
+  }
+
+  /**
+   * A fake HTTP {@link DataSource} that serves a single resource with an ETag, and that responds to
+   * a matching If-None-Match header with 304 (Not Modified).
+   */
+  private static final class FakeHttpDataSource implements DataSource {
+
+    public final List<Map<String, String>> requestHeaders;
+    public int bytesServed;
+
+    private byte[] data;
+    private String etag;
+    @Nullable private Uri redirectUri;
+    @Nullable private DataSpec dataSpec;
+    private int readPosition;
+    private int readLimit;
+
+    public FakeHttpDataSource(byte[] data, String etag) {
+      this.data = data;
+      this.etag = etag;
+      requestHeaders = new ArrayList<>();
+    }
+
+    public void setResource(byte[] data, String etag) {
+      this.data = data;
+      this.etag = etag;
+    }
+
+    public void setRedirectUri(Uri redirectUri) {
+      this.redirectUri = redirectUri;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {}
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      requestHeaders.add(dataSpec.httpRequestHeaders);
+      if (etag.equals(dataSpec.httpRequestHeaders.get(HttpHeaders.IF_NONE_MATCH))) {
+        throw new HttpDataSource.InvalidResponseCodeException(
+            /* responseCode= */ 304,
+            /* responseMessage= */ null,
+            /* cause= */ null,
+            ImmutableMap.of(),
+            dataSpec,
+            /* responseBody= */ new byte[0]);
+      }
+      this.dataSpec = dataSpec;
+      readPosition = (int) dataSpec.position;
+      readLimit =
+          dataSpec.length == C.LENGTH_UNSET
+              ? data.length
+              : (int) (dataSpec.position + dataSpec.length);
+      return readLimit - readPosition;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (readPosition == readLimit) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = min(length, readLimit - readPosition);
+      System.arraycopy(data, readPosition, buffer, offset, bytesRead);
+      readPosition += bytesRead;
+      bytesServed += bytesRead;
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      if (dataSpec == null) {
+        return null;
+      }
+      return redirectUri != null ? redirectUri : dataSpec.uri;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return dataSpec != null ? ImmutableMap.of("etag", ImmutableList.of(etag)) : ImmutableMap.of();
+    }
+
+    @Override
+    public void close() {
+      dataSpec = null;
+    }
+  }
+}
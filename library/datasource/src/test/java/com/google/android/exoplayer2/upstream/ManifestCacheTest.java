@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ManifestCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestCacheTest {
+
+  private static final String KEY_1 = "https://example.test/1.m3u8";
+  private static final String KEY_2 = "https://example.test/2.m3u8";
+  private static final String KEY_3 = "https://example.test/3.m3u8";
+
+  private File tempFolder;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void put_returnsUncompressedDataAndValidators() throws Exception {
+    ManifestCache manifestCache = new ManifestCache();
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+
+    manifestCache.put(KEY_1, Uri.parse(KEY_1), "\"etag\"", "Wed, 21 Oct 2015 07:28:00 GMT", data);
+    ManifestCache.Entry entry = manifestCache.get(KEY_1);
+
+    assertThat(entry.uri).isEqualTo(Uri.parse(KEY_1));
+    assertThat(entry.etag).isEqualTo("\"etag\"");
+    assertThat(entry.lastModified).isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+    assertThat(entry.getData()).isEqualTo(data);
+  }
+
+  @Test
+  public void put_exceedingMaxBytes_evictsLeastRecentlyUsedManifest() {
+    // Random data doesn't compress, so each manifest takes more than a third of the cache.
+    byte[] data = TestUtil.buildTestData(/* length= */ 400);
+    ManifestCache manifestCache = new ManifestCache(/* directory= */ null, /* maxBytes= */ 1000);
+
+    manifestCache.put(KEY_1, Uri.parse(KEY_1), "1", /* lastModified= */ null, data);
+    manifestCache.put(KEY_2, Uri.parse(KEY_2), "2", /* lastModified= */ null, data);
+    // Accessing the first manifest makes the second manifest the least recently used.
+    manifestCache.get(KEY_1);
+    manifestCache.put(KEY_3, Uri.parse(KEY_3), "3", /* lastModified= */ null, data);
+
+    assertThat(manifestCache.get(KEY_1)).isNotNull();
+    assertThat(manifestCache.get(KEY_2)).isNull();
+    assertThat(manifestCache.get(KEY_3)).isNotNull();
+  }
+
+  @Test
+  public void get_withDirectory_returnsManifestsPutInPreviousInstance() throws Exception {
+    byte[] data1 = TestUtil.buildTestData(/* length= */ 100, /* seed= */ 1);
+    byte[] data2 = TestUtil.buildTestData(/* length= */ 100, /* seed= */ 2);
+    ManifestCache manifestCache = new ManifestCache(tempFolder, ManifestCache.DEFAULT_MAX_BYTES);
+    manifestCache.put(KEY_1, Uri.parse(KEY_1), "1", /* lastModified= */ null, data1);
+    manifestCache.put(
+        KEY_2, Uri.parse(KEY_2), /* etag= */ null, "Wed, 21 Oct 2015 07:28:00 GMT", data2);
+    manifestCache.put(KEY_3, Uri.parse(KEY_3), "3", /* lastModified= */ null, data2);
+    manifestCache.remove(KEY_3);
+
+    ManifestCache newManifestCache =
+        new ManifestCache(tempFolder, ManifestCache.DEFAULT_MAX_BYTES);
+
+    ManifestCache.Entry entry1 = newManifestCache.get(KEY_1);
+    ManifestCache.Entry entry2 = newManifestCache.get(KEY_2);
+    assertThat(entry1.uri).isEqualTo(Uri.parse(KEY_1));
+    assertThat(entry1.etag).isEqualTo("1");
+    assertThat(entry1.getData()).isEqualTo(data1);
+    assertThat(entry2.etag).isNull();
+    assertThat(entry2.lastModified).isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+    assertThat(entry2.getData()).isEqualTo(data2);
+    assertThat(newManifestCache.get(KEY_3)).isNull();
+  }
+}
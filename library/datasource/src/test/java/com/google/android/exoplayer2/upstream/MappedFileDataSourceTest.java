@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MappedFileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MappedFileDataSourceTest {
+
+  private static final byte[] DATA = TestUtil.buildTestData(20);
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Uri uri;
+
+  @Before
+  public void writeFile() throws Exception {
+    File file = tempFolder.newFile();
+    Files.write(Paths.get(file.getAbsolutePath()), DATA);
+    uri = Uri.fromFile(file);
+  }
+
+  @Test
+  public void open_withPositionBeyondEndAndLengthSet_throwsPositionOutOfRangeException()
+      throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource(/* windowSize= */ 7);
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(uri).setPosition(DATA.length + 1).setLength(10).build();
+
+    try {
+      IOException exception = assertThrows(IOException.class, () -> dataSource.open(dataSpec));
+      assertThat(DataSourceException.isCausedByPositionOutOfRange(exception)).isTrue();
+    } finally {
+      dataSource.close();
+    }
+  }
+}
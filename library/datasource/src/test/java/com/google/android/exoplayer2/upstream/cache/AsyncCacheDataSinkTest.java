@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSourceUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AsyncCacheDataSink}. */
+@RunWith(AndroidJUnit4.class)
+public final class AsyncCacheDataSinkTest {
+
+  private static final String KEY = "key";
+  private static final DataSpec DATA_SPEC =
+      new DataSpec.Builder().setUri(Uri.parse("https://test.test")).setKey(KEY).build();
+
+  private File tempFolder;
+  private SimpleCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(
+            tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void write_withBlockingPolicy_cachesAllData() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    DataSink dataSink =
+        new AsyncCacheDataSink(
+            createCacheDataSink(),
+            /* ringBufferSize= */ 16,
+            AsyncCacheDataSink.OVERFLOW_POLICY_BLOCK,
+            executor);
+
+    writeInChunks(dataSink, data, /* chunkSize= */ 7);
+    executor.shutdown();
+
+    assertThat(cache.getCachedBytes(KEY, /* position= */ 0, C.LENGTH_UNSET)).isEqualTo(1000);
+    assertCachedData(data);
+  }
+
+  @Test
+  public void write_withDropPolicy_cachesDataWrittenBeforeOverflow() throws Exception {
+    byte[] data = TestUtil.buildTestData(30);
+    PendingTaskExecutor executor = new PendingTaskExecutor();
+    DataSink dataSink =
+        new AsyncCacheDataSink(
+            createCacheDataSink(),
+            /* ringBufferSize= */ 10,
+            AsyncCacheDataSink.OVERFLOW_POLICY_DROP,
+            executor);
+    CacheSpan holeSpan = cache.startReadWrite(KEY, /* position= */ 0, C.LENGTH_UNSET);
+
+    dataSink.open(DATA_SPEC);
+    dataSink.write(data, /* offset= */ 0, /* length= */ 6);
+    // Overflows the ring buffer, which can't be drained until the pending task runs.
+    dataSink.write(data, /* offset= */ 6, /* length= */ 6);
+    dataSink.write(data, /* offset= */ 12, /* length= */ 18);
+    executor.runPendingTasks();
+    dataSink.close();
+    cache.releaseHoleSpan(holeSpan);
+
+    assertThat(cache.getCachedBytes(KEY, /* position= */ 0, C.LENGTH_UNSET)).isEqualTo(10);
+    assertCachedData(Arrays.copyOf(data, 10));
+  }
+
+  @Test
+  public void write_reusedAfterClose_cachesEachDataSpec() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    DataSink dataSink =
+        new AsyncCacheDataSink(
+            createCacheDataSink(),
+            /* ringBufferSize= */ 32,
+            AsyncCacheDataSink.OVERFLOW_POLICY_BLOCK,
+            Runnable::run);
+    DataSpec firstDataSpec = DATA_SPEC.buildUpon().setLength(50).build();
+    DataSpec secondDataSpec = DATA_SPEC.buildUpon().setPosition(50).setLength(50).build();
+
+    CacheSpan holeSpan = cache.startReadWrite(KEY, /* position= */ 0, /* length= */ 50);
+    dataSink.open(firstDataSpec);
+    dataSink.write(data, /* offset= */ 0, /* length= */ 50);
+    dataSink.close();
+    cache.releaseHoleSpan(holeSpan);
+    holeSpan = cache.startReadWrite(KEY, /* position= */ 50, /* length= */ 50);
+    dataSink.open(secondDataSpec);
+    dataSink.write(data, /* offset= */ 50, /* length= */ 50);
+    dataSink.close();
+    cache.releaseHoleSpan(holeSpan);
+
+    assertThat(cache.getCachedBytes(KEY, /* position= */ 0, C.LENGTH_UNSET)).isEqualTo(100);
+    assertCachedData(data);
+  }
+
+  @Test
+  public void write_afterWriteError_throwsError() throws Exception {
+    IOException writeError = new IOException();
+    DataSink failingDataSink =
+        new DataSink() {
+          @Override
+          public void open(DataSpec dataSpec) {}
+
+          @Override
+          public void write(byte[] buffer, int offset, int length) throws IOException {
+            throw writeError;
+          }
+
+          @Override
+          public void close() {}
+        };
+    DataSink dataSink =
+        new AsyncCacheDataSink(
+            failingDataSink,
+            /* ringBufferSize= */ 10,
+            AsyncCacheDataSink.OVERFLOW_POLICY_BLOCK,
+            Runnable::run);
+    byte[] data = TestUtil.buildTestData(10);
+
+    dataSink.open(DATA_SPEC);
+    dataSink.write(data, /* offset= */ 0, /* length= */ 10);
+
+    IOException error =
+        assertThrows(
+            IOException.class, () -> dataSink.write(data, /* offset= */ 0, /* length= */ 10));
+    assertThat(error).isSameInstanceAs(writeError);
+    error = assertThrows(IOException.class, dataSink::close);
+    assertThat(error).isSameInstanceAs(writeError);
+  }
+
+  @Test
+  public void close_closesCacheDataSinkOnWriteExecutor() throws Exception {
+    AtomicReference<Thread> closingThread = new AtomicReference<>();
+    DataSink cacheDataSink =
+        new DataSink() {
+          @Override
+          public void open(DataSpec dataSpec) {}
+
+          @Override
+          public void write(byte[] buffer, int offset, int length) {}
+
+          @Override
+          public void close() {
+            closingThread.set(Thread.currentThread());
+          }
+        };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    DataSink dataSink =
+        new AsyncCacheDataSink(
+            cacheDataSink,
+            /* ringBufferSize= */ 10,
+            AsyncCacheDataSink.OVERFLOW_POLICY_BLOCK,
+            executor);
+
+    dataSink.open(DATA_SPEC);
+    dataSink.write(TestUtil.buildTestData(10), /* offset= */ 0, /* length= */ 10);
+    dataSink.close();
+    executor.shutdown();
+
+    assertThat(closingThread.get()).isNotNull();
+    assertThat(closingThread.get()).isNotSameInstanceAs(Thread.currentThread());
+  }
+
+  private CacheDataSink createCacheDataSink() {
+    return new CacheDataSink(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE, /* bufferSize= */ 4);
+  }
+
+  private void writeInChunks(DataSink dataSink, byte[] data, int chunkSize) throws Exception {
+    CacheSpan holeSpan = cache.startReadWrite(KEY, /* position= */ 0, C.LENGTH_UNSET);
+    dataSink.open(DATA_SPEC);
+    for (int offset = 0; offset < data.length; offset += chunkSize) {
+      dataSink.write(data, offset, Math.min(chunkSize, data.length - offset));
+    }
+    dataSink.close();
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private void assertCachedData(byte[] expectedData) throws IOException {
+    CacheDataSource cacheDataSource =
+        new CacheDataSource(cache, /* upstreamDataSource= */ null, /* flags= */ 0);
+    byte[] cachedData;
+    try {
+      cacheDataSource.open(DATA_SPEC.buildUpon().setLength(expectedData.length).build());
+      cachedData = DataSourceUtil.readToEnd(cacheDataSource);
+    } finally {
+      cacheDataSource.close();
+    }
+    assertThat(cachedData).isEqualTo(expectedData);
+  }
+
+  /**
+   * An {@link Executor} that holds back tasks until {@link #runPendingTasks()} is called, and runs
+   * any later tasks immediately.
+   */
+  private static final class PendingTaskExecutor implements Executor {
+
+    private final List<Runnable> pendingTasks;
+    private boolean runTasksImmediately;
+
+    public PendingTaskExecutor() {
+      pendingTasks = new ArrayList<>();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      if (runTasksImmediately) {
+        command.run();
+      } else {
+        pendingTasks.add(command);
+      }
+    }
+
+    /** Runs the pending tasks on the calling thread. */
+    public void runPendingTasks() {
+      runTasksImmediately = true;
+      List<Runnable> tasks = new ArrayList<>(pendingTasks);
+      pendingTasks.clear();
+      for (Runnable task : tasks) {
+        task.run();
+      }
+    }
+  }
+}
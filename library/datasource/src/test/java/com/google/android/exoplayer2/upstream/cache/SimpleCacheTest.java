@@ -34,6 +34,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -438,6 +439,102 @@ public class SimpleCacheTest {
     simpleCache.releaseHoleSpan(holeSpan1);
   }
 
+  @Test
+  public void readWhileWrite_returnsSpanForReportedDataBeforeCommit() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    simpleCache.setReadWhileWriteEnabled(true);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    File file = simpleCache.startFile(KEY_1, 0, 15);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(generateData(KEY_1, 0, 15));
+    }
+
+    // Nothing has been reported, so the range is still locked.
+    assertThat(simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET)).isNull();
+
+    simpleCache.updateFileLength(file, 10);
+    CacheSpan readSpan = simpleCache.startReadWriteNonBlocking(KEY_1, 5, LENGTH_UNSET);
+    assertThat(readSpan.isCached).isTrue();
+    assertThat(readSpan.file).isEqualTo(file);
+    assertThat(readSpan.position).isEqualTo(0);
+    assertThat(readSpan.length).isEqualTo(10);
+    // Data beyond the reported length is still locked.
+    assertThat(simpleCache.startReadWriteNonBlocking(KEY_1, 10, LENGTH_UNSET)).isNull();
+
+    simpleCache.commitFile(file, 15);
+    CacheSpan committedSpan = simpleCache.startReadWriteNonBlocking(KEY_1, 10, LENGTH_UNSET);
+    assertThat(committedSpan.length).isEqualTo(15);
+    assertCachedDataReadCorrect(committedSpan);
+
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
+  @Test
+  public void readWhileWrite_disabled_doesNotReturnSpanBeforeCommit() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    File file = simpleCache.startFile(KEY_1, 0, 15);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(generateData(KEY_1, 0, 15));
+    }
+
+    simpleCache.updateFileLength(file, 10);
+
+    assertThat(simpleCache.isReadWhileWriteEnabled()).isFalse();
+    assertThat(simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET)).isNull();
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
+  @Test
+  public void readWhileWrite_holeSpanReleasedWithoutCommit_returnsHoleSpan() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    simpleCache.setReadWhileWriteEnabled(true);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    File file = simpleCache.startFile(KEY_1, 0, 15);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(generateData(KEY_1, 0, 15));
+    }
+    simpleCache.updateFileLength(file, 10);
+
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    CacheSpan newHoleSpan = simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET);
+    assertThat(newHoleSpan.isCached).isFalse();
+    assertThat(newHoleSpan.position).isEqualTo(0);
+    simpleCache.releaseHoleSpan(newHoleSpan);
+  }
+
+  @Test
+  public void readWhileWrite_blockingRead_isUnblockedByReportedData() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    simpleCache.setReadWhileWriteEnabled(true);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    File file = simpleCache.startFile(KEY_1, 0, 15);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(generateData(KEY_1, 0, 15));
+    }
+    AtomicReference<CacheSpan> readSpan = new AtomicReference<>();
+    Thread readThread =
+        new Thread(
+            () -> {
+              try {
+                readSpan.set(simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET));
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    readThread.start();
+
+    simpleCache.updateFileLength(file, 15);
+    readThread.join();
+
+    assertThat(readSpan.get().isCached).isTrue();
+    assertThat(readSpan.get().length).isEqualTo(15);
+    assertCachedDataReadCorrect(readSpan.get());
+    simpleCache.commitFile(file, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
   @Test
   public void applyContentMetadataMutations_setsContentLength() throws Exception {
     SimpleCache simpleCache = getSimpleCache();
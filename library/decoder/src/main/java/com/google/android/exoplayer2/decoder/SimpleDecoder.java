@@ -20,39 +20,108 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Base class for {@link Decoder}s that use their own decode thread and decode each input buffer
- * immediately into a corresponding output buffer.
+ * Base class for {@link Decoder}s that decode each input buffer immediately into a corresponding
+ * output buffer.
+ *
+ * <p>Subclasses can {@link #setMaxDecodeBatchSize enable batch decoding}, in which case several
+ * queued input buffers are passed to {@link #decodeBatch} at once. This can reduce the per-buffer
+ * overhead of decoders that cross into native code, for example when decoding many small audio
+ * packets.
+ *
+ * <p>By default each decoder uses its own decode thread. Alternatively a decoder can run its
+ * decoding as tasks on an {@link Executor}, such as the {@link #getSharedDecodeExecutor() shared
+ * decode executor}, so that decoders that are idle most of the time don't each need a thread. In
+ * this case at most one task runs for each decoder at a time, so input buffers are still decoded
+ * in order, and tasks are only scheduled when there's both a queued input buffer and an available
+ * output buffer.
  */
 @SuppressWarnings("UngroupedOverloads")
 public abstract class SimpleDecoder<
         I extends DecoderInputBuffer, O extends DecoderOutputBuffer, E extends DecoderException>
     implements Decoder<I, O, E> {
 
-  private final Thread decodeThread;
+  /** The maximum number of threads used by the {@link #getSharedDecodeExecutor()}. */
+  private static final int MAX_SHARED_DECODE_THREAD_COUNT = 4;
+  /** The time for which idle threads of the {@link #getSharedDecodeExecutor()} are kept alive. */
+  private static final long SHARED_DECODE_THREAD_KEEP_ALIVE_MS = 10_000;
+  /**
+   * The maximum number of buffers decoded by a task before it's rescheduled, so that busy decoders
+   * can't starve other decoders that share an executor.
+   */
+  private static final int MAX_DECODES_PER_TASK = 8;
+
+  @Nullable private static Executor sharedDecodeExecutor;
+
+  @Nullable private final Thread decodeThread;
+  @Nullable private final Executor decodeExecutor;
+  private final Runnable decodeTask;
 
   private final Object lock;
   private final ArrayDeque<I> queuedInputBuffers;
   private final ArrayDeque<O> queuedOutputBuffers;
   private final I[] availableInputBuffers;
   private final O[] availableOutputBuffers;
+  private final ArrayList<I> batchInputBuffers;
+  private final ArrayList<O> batchOutputBuffers;
 
   private int availableInputBufferCount;
   private int availableOutputBufferCount;
+  private int maxDecodeBatchSize;
   @Nullable private I dequeuedInputBuffer;
 
   @Nullable private E exception;
   private boolean flushed;
   private boolean released;
+  private boolean decodeTaskScheduled;
   private int skippedOutputBufferCount;
 
+  /**
+   * Returns a shared {@link Executor} on which {@link SimpleDecoder} instances can run their
+   * decoding. The executor uses a bounded number of threads, which are stopped when idle.
+   */
+  public static synchronized Executor getSharedDecodeExecutor() {
+    if (sharedDecodeExecutor == null) {
+      int processorCount = Runtime.getRuntime().availableProcessors();
+      int threadCount = Math.max(1, Math.min(MAX_SHARED_DECODE_THREAD_COUNT, processorCount));
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              threadCount,
+              threadCount,
+              SHARED_DECODE_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "ExoPlayer:SharedDecoder"));
+      executor.allowCoreThreadTimeOut(true);
+      sharedDecodeExecutor = executor;
+    }
+    return sharedDecodeExecutor;
+  }
+
   /**
    * @param inputBuffers An array of nulls that will be used to store references to input buffers.
    * @param outputBuffers An array of nulls that will be used to store references to output buffers.
    */
-  @SuppressWarnings("nullness:method.invocation")
   protected SimpleDecoder(I[] inputBuffers, O[] outputBuffers) {
+    this(inputBuffers, outputBuffers, /* decodeExecutor= */ null);
+  }
+
+  /**
+   * @param inputBuffers An array of nulls that will be used to store references to input buffers.
+   * @param outputBuffers An array of nulls that will be used to store references to output buffers.
+   * @param decodeExecutor The {@link Executor} on which to run decoding, or null to use a decode
+   *     thread that's owned by this decoder. If an executor is used, {@link #release()} blocks
+   *     until any running decode task has finished, so must not be called from the executor.
+   */
+  @SuppressWarnings("nullness:method.invocation")
+  protected SimpleDecoder(I[] inputBuffers, O[] outputBuffers, @Nullable Executor decodeExecutor) {
     lock = new Object();
     queuedInputBuffers = new ArrayDeque<>();
     queuedOutputBuffers = new ArrayDeque<>();
@@ -66,14 +135,23 @@ public abstract class SimpleDecoder<
     for (int i = 0; i < availableOutputBufferCount; i++) {
       availableOutputBuffers[i] = createOutputBuffer();
     }
-    decodeThread =
-        new Thread("ExoPlayer:SimpleDecoder") {
-          @Override
-          public void run() {
-            SimpleDecoder.this.run();
-          }
-        };
-    decodeThread.start();
+    batchInputBuffers = new ArrayList<>();
+    batchOutputBuffers = new ArrayList<>();
+    maxDecodeBatchSize = 1;
+    this.decodeExecutor = decodeExecutor;
+    decodeTask = this::runDecodeTask;
+    if (decodeExecutor == null) {
+      decodeThread =
+          new Thread("ExoPlayer:SimpleDecoder") {
+            @Override
+            public void run() {
+              SimpleDecoder.this.run();
+            }
+          };
+      decodeThread.start();
+    } else {
+      decodeThread = null;
+    }
   }
 
   /**
@@ -91,6 +169,24 @@ public abstract class SimpleDecoder<
     }
   }
 
+  /**
+   * Sets the maximum number of input buffers that are passed to {@link #decodeBatch} at once. If
+   * set to 1, which is the default, {@link #decode(DecoderInputBuffer, DecoderOutputBuffer,
+   * boolean)} is called for each input buffer instead.
+   *
+   * <p>This method should only be called before the decoder is used (i.e. before the first call to
+   * {@link #dequeueInputBuffer()}.
+   *
+   * @param maxDecodeBatchSize The maximum number of input buffers in each batch.
+   */
+  protected final void setMaxDecodeBatchSize(int maxDecodeBatchSize) {
+    Assertions.checkArgument(maxDecodeBatchSize > 0);
+    synchronized (lock) {
+      Assertions.checkState(availableInputBufferCount == availableInputBuffers.length);
+      this.maxDecodeBatchSize = maxDecodeBatchSize;
+    }
+  }
+
   @Override
   @Nullable
   public final I dequeueInputBuffer() throws E {
@@ -165,11 +261,20 @@ public abstract class SimpleDecoder<
     synchronized (lock) {
       released = true;
       lock.notify();
+      try {
+        while (decodeTaskScheduled) {
+          lock.wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
-    try {
-      decodeThread.join();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    if (decodeThread != null) {
+      try {
+        decodeThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
@@ -186,14 +291,19 @@ public abstract class SimpleDecoder<
   }
 
   /**
-   * Notifies the decode loop if there exists a queued input buffer and an available output buffer
-   * to decode into.
+   * Notifies the decode loop, or schedules a decode task if one isn't already scheduled, if there
+   * exists a queued input buffer and an available output buffer to decode into.
    *
    * <p>Should only be called whilst synchronized on the lock object.
    */
   private void maybeNotifyDecodeLoop() {
     if (canDecodeBuffer()) {
-      lock.notify();
+      if (decodeExecutor == null) {
+        lock.notify();
+      } else if (!decodeTaskScheduled && !released) {
+        decodeTaskScheduled = true;
+        decodeExecutor.execute(decodeTask);
+      }
     }
   }
 
@@ -208,37 +318,76 @@ public abstract class SimpleDecoder<
     }
   }
 
+  private void runDecodeTask() {
+    try {
+      for (int i = 0; i < MAX_DECODES_PER_TASK && decode(); i++) {
+        // Do nothing.
+      }
+    } catch (InterruptedException e) {
+      // Not expected, since decode() doesn't wait when using an executor.
+      throw new IllegalStateException(e);
+    } finally {
+      synchronized (lock) {
+        decodeTaskScheduled = false;
+        if (released) {
+          lock.notifyAll();
+        } else if (exception == null) {
+          // Reschedule if the task stopped before running out of buffers to decode.
+          maybeNotifyDecodeLoop();
+        }
+      }
+    }
+  }
+
   private boolean decode() throws InterruptedException {
-    I inputBuffer;
-    O outputBuffer;
+    boolean batchDecode;
     boolean resetDecoder;
 
-    // Wait until we have an input buffer to decode, and an output buffer to decode into.
+    // Wait until we have an input buffer to decode, and an output buffer to decode into. Decode
+    // tasks are only scheduled when this is the case, so don't need to wait.
     synchronized (lock) {
-      while (!released && !canDecodeBuffer()) {
-        lock.wait();
+      if (decodeExecutor == null) {
+        while (!released && !canDecodeBuffer()) {
+          lock.wait();
+        }
       }
-      if (released) {
+      if (released || !canDecodeBuffer()) {
         return false;
       }
-      inputBuffer = queuedInputBuffers.removeFirst();
-      outputBuffer = availableOutputBuffers[--availableOutputBufferCount];
+      // Take as many buffers as are available, up to the batch size. End of stream buffers are
+      // never batched with other buffers.
+      do {
+        batchInputBuffers.add(queuedInputBuffers.removeFirst());
+        batchOutputBuffers.add(availableOutputBuffers[--availableOutputBufferCount]);
+      } while (batchInputBuffers.size() < maxDecodeBatchSize
+          && canDecodeBuffer()
+          && !batchInputBuffers.get(0).isEndOfStream()
+          && !queuedInputBuffers.getFirst().isEndOfStream());
+      batchDecode = maxDecodeBatchSize > 1;
       resetDecoder = flushed;
       flushed = false;
     }
 
-    if (inputBuffer.isEndOfStream()) {
-      outputBuffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
+    I firstInputBuffer = batchInputBuffers.get(0);
+    if (firstInputBuffer.isEndOfStream()) {
+      batchOutputBuffers.get(0).addFlag(C.BUFFER_FLAG_END_OF_STREAM);
     } else {
-      if (inputBuffer.isDecodeOnly()) {
-        outputBuffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
-      }
-      if (inputBuffer.isFirstSample()) {
-        outputBuffer.addFlag(C.BUFFER_FLAG_FIRST_SAMPLE);
+      for (int i = 0; i < batchInputBuffers.size(); i++) {
+        I inputBuffer = batchInputBuffers.get(i);
+        O outputBuffer = batchOutputBuffers.get(i);
+        if (inputBuffer.isDecodeOnly()) {
+          outputBuffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+        }
+        if (inputBuffer.isFirstSample()) {
+          outputBuffer.addFlag(C.BUFFER_FLAG_FIRST_SAMPLE);
+        }
       }
       @Nullable E exception;
       try {
-        exception = decode(inputBuffer, outputBuffer, resetDecoder);
+        exception =
+            batchDecode
+                ? decodeBatch(batchInputBuffers, batchOutputBuffers, resetDecoder)
+                : decode(firstInputBuffer, batchOutputBuffers.get(0), resetDecoder);
       } catch (RuntimeException e) {
         // This can occur if a sample is malformed in a way that the decoder is not robust against.
         // We don't want the process to die in this case, but we do want to propagate the error.
@@ -253,24 +402,31 @@ public abstract class SimpleDecoder<
         synchronized (lock) {
           this.exception = exception;
         }
+        batchInputBuffers.clear();
+        batchOutputBuffers.clear();
         return false;
       }
     }
 
     synchronized (lock) {
-      if (flushed) {
-        outputBuffer.release();
-      } else if (outputBuffer.isDecodeOnly()) {
-        skippedOutputBufferCount++;
-        outputBuffer.release();
-      } else {
-        outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
-        skippedOutputBufferCount = 0;
-        queuedOutputBuffers.addLast(outputBuffer);
+      for (int i = 0; i < batchOutputBuffers.size(); i++) {
+        O outputBuffer = batchOutputBuffers.get(i);
+        if (flushed) {
+          outputBuffer.release();
+        } else if (outputBuffer.isDecodeOnly()) {
+          skippedOutputBufferCount++;
+          outputBuffer.release();
+        } else {
+          outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
+          skippedOutputBufferCount = 0;
+          queuedOutputBuffers.addLast(outputBuffer);
+        }
+        // Make the input buffer available again.
+        releaseInputBufferInternal(batchInputBuffers.get(i));
       }
-      // Make the input buffer available again.
-      releaseInputBufferInternal(inputBuffer);
     }
+    batchInputBuffers.clear();
+    batchOutputBuffers.clear();
 
     return true;
   }
@@ -317,4 +473,31 @@ public abstract class SimpleDecoder<
    */
   @Nullable
   protected abstract E decode(I inputBuffer, O outputBuffer, boolean reset);
+
+  /**
+   * Decodes a batch of consecutive input buffers, storing the decoded output for each input buffer
+   * in the output buffer at the same index. Only called if {@link #setMaxDecodeBatchSize} has been
+   * used to set a batch size greater than 1. Batches never contain end of stream buffers.
+   *
+   * <p>The default implementation calls {@link #decode(DecoderInputBuffer, DecoderOutputBuffer,
+   * boolean)} for each input buffer. Decoders that cross into native code can override this method
+   * to decode the whole batch in a single call.
+   *
+   * @param inputBuffers The buffers to decode, in decode order.
+   * @param outputBuffers The output buffers to store decoded data, with the same size as {@code
+   *     inputBuffers}. The flag {@link C#BUFFER_FLAG_DECODE_ONLY} is handled for each buffer as
+   *     described in {@link #decode(DecoderInputBuffer, DecoderOutputBuffer, boolean)}.
+   * @param reset Whether the decoder must be reset before decoding the first input buffer.
+   * @return A decoder exception if an error occurred, or null if decoding was successful.
+   */
+  @Nullable
+  protected E decodeBatch(List<I> inputBuffers, List<O> outputBuffers, boolean reset) {
+    for (int i = 0; i < inputBuffers.size(); i++) {
+      @Nullable E exception = decode(inputBuffers.get(i), outputBuffers.get(i), reset && i == 0);
+      if (exception != null) {
+        return exception;
+      }
+    }
+    return null;
+  }
 }
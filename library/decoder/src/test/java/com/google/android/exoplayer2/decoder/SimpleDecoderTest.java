@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SimpleDecoder}. */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleDecoderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final int BUFFER_COUNT = 50;
+
+  @Test
+  public void decode_withDecodeThread_outputsBuffersInOrder() throws Exception {
+    TestDecoder decoder = new TestDecoder(/* decodeExecutor= */ null);
+
+    List<Long> outputTimesUs = decodeBuffers(decoder, BUFFER_COUNT);
+    decoder.release();
+
+    assertThat(outputTimesUs).containsExactlyElementsIn(createTimesUs(BUFFER_COUNT)).inOrder();
+  }
+
+  @Test
+  public void decode_withSharedExecutor_outputsBuffersInOrder() throws Exception {
+    TestDecoder decoder = new TestDecoder(SimpleDecoder.getSharedDecodeExecutor());
+
+    List<Long> outputTimesUs = decodeBuffers(decoder, BUFFER_COUNT);
+    decoder.release();
+
+    assertThat(outputTimesUs).containsExactlyElementsIn(createTimesUs(BUFFER_COUNT)).inOrder();
+  }
+
+  @Test
+  public void decode_withExecutorSharedByDecoders_outputsBuffersOfEachDecoderInOrder()
+      throws Exception {
+    Executor executor = SimpleDecoder.getSharedDecodeExecutor();
+    TestDecoder decoder1 = new TestDecoder(executor);
+    TestDecoder decoder2 = new TestDecoder(executor);
+    List<Long> outputTimesUs2 = new ArrayList<>();
+    Thread thread = new Thread(() -> outputTimesUs2.addAll(decodeBuffersUnchecked(decoder2)));
+    thread.start();
+
+    List<Long> outputTimesUs1 = decodeBuffers(decoder1, BUFFER_COUNT);
+    thread.join();
+    decoder1.release();
+    decoder2.release();
+
+    assertThat(outputTimesUs1).containsExactlyElementsIn(createTimesUs(BUFFER_COUNT)).inOrder();
+    assertThat(outputTimesUs2).containsExactlyElementsIn(createTimesUs(BUFFER_COUNT)).inOrder();
+  }
+
+  @Test
+  public void decode_withExecutor_onlySchedulesTaskWhenOutputBufferIsAvailable() throws Exception {
+    PendingTaskExecutor executor = new PendingTaskExecutor();
+    TestDecoder decoder = new TestDecoder(executor);
+    queueInputBuffer(decoder, /* timeUs= */ 0);
+    assertThat(executor.runPendingTasks()).isEqualTo(1);
+    SimpleDecoderOutputBuffer outputBuffer = dequeueOutputBuffer(decoder);
+
+    queueInputBuffer(decoder, /* timeUs= */ 1);
+    // The decoder only has one output buffer, which hasn't been released yet.
+    int pendingTaskCountWithoutOutputBuffer = executor.runPendingTasks();
+    outputBuffer.release();
+    int pendingTaskCountWithOutputBuffer = executor.runPendingTasks();
+    outputBuffer = dequeueOutputBuffer(decoder);
+    decoder.release();
+
+    assertThat(pendingTaskCountWithoutOutputBuffer).isEqualTo(0);
+    assertThat(pendingTaskCountWithOutputBuffer).isEqualTo(1);
+    assertThat(outputBuffer.timeUs).isEqualTo(1);
+  }
+
+  @Test
+  public void release_withExecutor_waitsForRunningDecodeTask() throws Exception {
+    CountDownLatch decodeStartedLatch = new CountDownLatch(1);
+    AtomicInteger finishedDecodeCount = new AtomicInteger();
+    TestDecoder decoder =
+        new TestDecoder(SimpleDecoder.getSharedDecodeExecutor()) {
+          @Override
+          protected DecoderException decode(
+              DecoderInputBuffer inputBuffer,
+              SimpleDecoderOutputBuffer outputBuffer,
+              boolean reset) {
+            decodeStartedLatch.countDown();
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            finishedDecodeCount.incrementAndGet();
+            return super.decode(inputBuffer, outputBuffer, reset);
+          }
+        };
+    queueInputBuffer(decoder, /* timeUs= */ 0);
+    assertThat(decodeStartedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    decoder.release();
+
+    assertThat(finishedDecodeCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void decode_withMaxBatchSize_decodesAvailableBuffersInBatches() throws Exception {
+    PendingTaskExecutor executor = new PendingTaskExecutor();
+    TestDecoder decoder =
+        new TestDecoder(
+            /* numInputBuffers= */ 4,
+            /* numOutputBuffers= */ 4,
+            /* maxDecodeBatchSize= */ 2,
+            executor);
+    queueInputBuffer(decoder, /* timeUs= */ 0);
+    queueInputBuffer(decoder, /* timeUs= */ 1);
+    queueInputBuffer(decoder, /* timeUs= */ 2);
+
+    executor.runPendingTasks();
+    List<Long> outputTimesUs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      outputTimesUs.add(dequeueOutputBuffer(decoder).timeUs);
+    }
+    decoder.release();
+
+    assertThat(decoder.batchSizes).containsExactly(2, 1).inOrder();
+    assertThat(outputTimesUs).containsExactly(0L, 1L, 2L).inOrder();
+  }
+
+  @Test
+  public void decode_withMaxBatchSize_doesNotBatchEndOfStreamBuffer() throws Exception {
+    PendingTaskExecutor executor = new PendingTaskExecutor();
+    TestDecoder decoder =
+        new TestDecoder(
+            /* numInputBuffers= */ 4,
+            /* numOutputBuffers= */ 4,
+            /* maxDecodeBatchSize= */ 4,
+            executor);
+    queueInputBuffer(decoder, /* timeUs= */ 0);
+    queueInputBuffer(decoder, /* timeUs= */ 1);
+    DecoderInputBuffer endOfStreamBuffer = decoder.dequeueInputBuffer();
+    endOfStreamBuffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+    decoder.queueInputBuffer(endOfStreamBuffer);
+
+    executor.runPendingTasks();
+    SimpleDecoderOutputBuffer outputBuffer1 = dequeueOutputBuffer(decoder);
+    SimpleDecoderOutputBuffer outputBuffer2 = dequeueOutputBuffer(decoder);
+    SimpleDecoderOutputBuffer outputBuffer3 = dequeueOutputBuffer(decoder);
+    decoder.release();
+
+    assertThat(decoder.batchSizes).containsExactly(2);
+    assertThat(outputBuffer1.isEndOfStream()).isFalse();
+    assertThat(outputBuffer2.isEndOfStream()).isFalse();
+    assertThat(outputBuffer3.isEndOfStream()).isTrue();
+  }
+
+  private static List<Long> decodeBuffersUnchecked(TestDecoder decoder) {
+    try {
+      return decodeBuffers(decoder, BUFFER_COUNT);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Queues buffers with timestamps 0 to {@code count - 1}, and returns the output timestamps. */
+  private static List<Long> decodeBuffers(TestDecoder decoder, int count) throws Exception {
+    List<Long> outputTimesUs = new ArrayList<>();
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    int queuedCount = 0;
+    while (outputTimesUs.size() < count) {
+      if (System.currentTimeMillis() > deadlineMs) {
+        throw new TimeoutException();
+      }
+      if (queuedCount < count) {
+        @Nullable DecoderInputBuffer inputBuffer = decoder.dequeueInputBuffer();
+        if (inputBuffer != null) {
+          inputBuffer.timeUs = queuedCount++;
+          decoder.queueInputBuffer(inputBuffer);
+        }
+      }
+      @Nullable SimpleDecoderOutputBuffer outputBuffer = decoder.dequeueOutputBuffer();
+      if (outputBuffer != null) {
+        outputTimesUs.add(outputBuffer.timeUs);
+        outputBuffer.release();
+      } else {
+        Thread.yield();
+      }
+    }
+    return outputTimesUs;
+  }
+
+  private static void queueInputBuffer(TestDecoder decoder, long timeUs) throws Exception {
+    DecoderInputBuffer inputBuffer = decoder.dequeueInputBuffer();
+    assertThat(inputBuffer).isNotNull();
+    inputBuffer.timeUs = timeUs;
+    decoder.queueInputBuffer(inputBuffer);
+  }
+
+  private static SimpleDecoderOutputBuffer dequeueOutputBuffer(TestDecoder decoder)
+      throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    @Nullable SimpleDecoderOutputBuffer outputBuffer;
+    while ((outputBuffer = decoder.dequeueOutputBuffer()) == null) {
+      if (System.currentTimeMillis() > deadlineMs) {
+        throw new TimeoutException();
+      }
+      Thread.yield();
+    }
+    return outputBuffer;
+  }
+
+  private static List<Long> createTimesUs(int count) {
+    List<Long> timesUs = new ArrayList<>();
+    for (long i = 0; i < count; i++) {
+      timesUs.add(i);
+    }
+    return timesUs;
+  }
+
+  /** Decoder that copies the timestamp of each input buffer to the output buffer. */
+  private static class TestDecoder
+      extends SimpleDecoder<DecoderInputBuffer, SimpleDecoderOutputBuffer, DecoderException> {
+
+    public final List<Integer> batchSizes;
+
+    public TestDecoder(@Nullable Executor decodeExecutor) {
+      this(
+          /* numInputBuffers= */ 2,
+          /* numOutputBuffers= */ 1,
+          /* maxDecodeBatchSize= */ 1,
+          decodeExecutor);
+    }
+
+    public TestDecoder(
+        int numInputBuffers,
+        int numOutputBuffers,
+        int maxDecodeBatchSize,
+        @Nullable Executor decodeExecutor) {
+      super(
+          new DecoderInputBuffer[numInputBuffers],
+          new SimpleDecoderOutputBuffer[numOutputBuffers],
+          decodeExecutor);
+      setMaxDecodeBatchSize(maxDecodeBatchSize);
+      batchSizes = new ArrayList<>();
+    }
+
+    @Override
+    public String getName() {
+      return "TestDecoder";
+    }
+
+    @Override
+    protected DecoderInputBuffer createInputBuffer() {
+      return new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    }
+
+    @Override
+    protected SimpleDecoderOutputBuffer createOutputBuffer() {
+      return new SimpleDecoderOutputBuffer(this::releaseOutputBuffer);
+    }
+
+    @Override
+    protected DecoderException createUnexpectedDecodeException(Throwable error) {
+      return new DecoderException(error);
+    }
+
+    @Nullable
+    @Override
+    protected DecoderException decode(
+        DecoderInputBuffer inputBuffer, SimpleDecoderOutputBuffer outputBuffer, boolean reset) {
+      outputBuffer.timeUs = inputBuffer.timeUs;
+      return null;
+    }
+
+    @Nullable
+    @Override
+    protected DecoderException decodeBatch(
+        List<DecoderInputBuffer> inputBuffers,
+        List<SimpleDecoderOutputBuffer> outputBuffers,
+        boolean reset) {
+      batchSizes.add(inputBuffers.size());
+      return super.decodeBatch(inputBuffers, outputBuffers, reset);
+    }
+  }
+
+  /** Executor that holds tasks until {@link #runPendingTasks()} is called. */
+  private static final class PendingTaskExecutor implements Executor {
+
+    private final List<Runnable> pendingTasks;
+
+    public PendingTaskExecutor() {
+      pendingTasks = new ArrayList<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      pendingTasks.add(command);
+    }
+
+    /** Runs the pending tasks on the calling thread, and returns how many there were. */
+    public int runPendingTasks() {
+      List<Runnable> tasks;
+      synchronized (this) {
+        tasks = new ArrayList<>(pendingTasks);
+        pendingTasks.clear();
+      }
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return tasks.size();
+    }
+  }
+}
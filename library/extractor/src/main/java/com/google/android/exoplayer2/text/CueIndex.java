@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.LongArray;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A {@link Subtitle} that indexes cues by the time intervals during which they are displayed.
+ *
+ * <p>The timeline is divided into segments at each start and end time of a cue. The cues to display
+ * during each segment are resolved once, when the index is built, so that {@link #getCues(long)}
+ * is a binary search over the segment boundaries and doesn't allocate.
+ */
+public final class CueIndex implements Subtitle {
+
+  /** Resolves the cues to display during a segment of a {@link CueIndex}. */
+  public interface SegmentResolver {
+
+    /**
+     * Returns the cues to display during a segment.
+     *
+     * @param activeCueIndices The indices of the cues that are active during the segment, in the
+     *     order in which the cues were {@link Builder#add(Cue, long, long) added}. Only the first
+     *     {@code activeCueCount} entries are valid. The array must not be retained.
+     * @param activeCueCount The number of cues that are active during the segment. Always greater
+     *     than zero.
+     * @return The cues to display during the segment.
+     */
+    List<Cue> resolveCues(int[] activeCueIndices, int activeCueCount);
+  }
+
+  /** Builder for {@link CueIndex} instances. */
+  public static final class Builder {
+
+    private final List<Cue> cues;
+    private final LongArray startTimesUs;
+    private final LongArray endTimesUs;
+
+    /** Creates an instance. */
+    public Builder() {
+      cues = new ArrayList<>();
+      startTimesUs = new LongArray();
+      endTimesUs = new LongArray();
+    }
+
+    /**
+     * Adds a cue that's displayed from {@code startTimeUs} (inclusive) until {@code endTimeUs}
+     * (exclusive).
+     *
+     * <p>Both times are added as event times of the index, even if the cue is never displayed
+     * because {@code endTimeUs} isn't greater than {@code startTimeUs}.
+     *
+     * @param cue The cue.
+     * @param startTimeUs The start time of the cue, in microseconds.
+     * @param endTimeUs The end time of the cue, in microseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder add(Cue cue, long startTimeUs, long endTimeUs) {
+      cues.add(cue);
+      startTimesUs.add(startTimeUs);
+      endTimesUs.add(endTimeUs);
+      return this;
+    }
+
+    /**
+     * Builds the index, displaying the active cues of each segment in the order in which they were
+     * added.
+     */
+    public CueIndex build() {
+      return build(
+          (activeCueIndices, activeCueCount) -> {
+            Cue[] activeCues = new Cue[activeCueCount];
+            for (int i = 0; i < activeCueCount; i++) {
+              activeCues[i] = cues.get(activeCueIndices[i]);
+            }
+            return Arrays.asList(activeCues);
+          });
+    }
+
+    /**
+     * Builds the index, using a {@link SegmentResolver} to resolve the cues displayed during each
+     * segment.
+     *
+     * @param segmentResolver The {@link SegmentResolver}. Called once for each segment during which
+     *     at least one cue is active, before this method returns.
+     */
+    public CueIndex build(SegmentResolver segmentResolver) {
+      int cueCount = cues.size();
+      long[] eventTimesUs = new long[2 * cueCount];
+      for (int i = 0; i < cueCount; i++) {
+        eventTimesUs[2 * i] = startTimesUs.get(i);
+        eventTimesUs[2 * i + 1] = endTimesUs.get(i);
+      }
+      eventTimesUs = sortAndRemoveDuplicates(eventTimesUs);
+      int segmentCount = eventTimesUs.length;
+
+      // The segment of event time i spans from event time i (inclusive) to i + 1 (exclusive).
+      int[] startSegments = new int[cueCount];
+      int[] endSegments = new int[cueCount];
+      for (int i = 0; i < cueCount; i++) {
+        startSegments[i] = Arrays.binarySearch(eventTimesUs, startTimesUs.get(i));
+        endSegments[i] = Arrays.binarySearch(eventTimesUs, endTimesUs.get(i));
+      }
+      int[] cuesByStartSegment = sortBySegment(startSegments, segmentCount);
+      int[] cuesByEndSegment = sortBySegment(endSegments, segmentCount);
+
+      ImmutableList.Builder<ImmutableList<Cue>> segmentCues = ImmutableList.builder();
+      TreeSet<Integer> activeCues = new TreeSet<>();
+      int[] activeCueIndices = new int[cueCount];
+      int startPosition = 0;
+      int endPosition = 0;
+      for (int segment = 0; segment < segmentCount; segment++) {
+        while (endPosition < cueCount && endSegments[cuesByEndSegment[endPosition]] == segment) {
+          activeCues.remove(cuesByEndSegment[endPosition++]);
+        }
+        while (startPosition < cueCount
+            && startSegments[cuesByStartSegment[startPosition]] == segment) {
+          int cueIndex = cuesByStartSegment[startPosition++];
+          if (endSegments[cueIndex] > segment) {
+            activeCues.add(cueIndex);
+          }
+        }
+        if (activeCues.isEmpty()) {
+          segmentCues.add(ImmutableList.of());
+          continue;
+        }
+        int activeCueCount = 0;
+        for (int cueIndex : activeCues) {
+          activeCueIndices[activeCueCount++] = cueIndex;
+        }
+        segmentCues.add(
+            ImmutableList.copyOf(segmentResolver.resolveCues(activeCueIndices, activeCueCount)));
+      }
+      return new CueIndex(eventTimesUs, segmentCues.build());
+    }
+
+    private static long[] sortAndRemoveDuplicates(long[] values) {
+      Arrays.sort(values);
+      int uniqueCount = 0;
+      for (int i = 0; i < values.length; i++) {
+        if (i == 0 || values[i] != values[uniqueCount - 1]) {
+          values[uniqueCount++] = values[i];
+        }
+      }
+      return Arrays.copyOf(values, uniqueCount);
+    }
+
+    /** Returns the cue indices, stably sorted by their segment using a counting sort. */
+    private static int[] sortBySegment(int[] segments, int segmentCount) {
+      int[] positions = new int[segmentCount + 1];
+      for (int segment : segments) {
+        positions[segment + 1]++;
+      }
+      for (int i = 1; i <= segmentCount; i++) {
+        positions[i] += positions[i - 1];
+      }
+      int[] sortedCueIndices = new int[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        sortedCueIndices[positions[segments[i]]++] = i;
+      }
+      return sortedCueIndices;
+    }
+  }
+
+  private final long[] eventTimesUs;
+  private final ImmutableList<ImmutableList<Cue>> segmentCues;
+
+  private CueIndex(long[] eventTimesUs, ImmutableList<ImmutableList<Cue>> segmentCues) {
+    this.eventTimesUs = eventTimesUs;
+    this.segmentCues = segmentCues;
+  }
+
+  @Override
+  public int getNextEventTimeIndex(long timeUs) {
+    int index = Util.binarySearchCeil(eventTimesUs, timeUs, false, false);
+    return index < eventTimesUs.length ? index : C.INDEX_UNSET;
+  }
+
+  @Override
+  public int getEventTimeCount() {
+    return eventTimesUs.length;
+  }
+
+  @Override
+  public long getEventTime(int index) {
+    Assertions.checkArgument(index >= 0);
+    Assertions.checkArgument(index < eventTimesUs.length);
+    return eventTimesUs[index];
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned list is immutable.
+   */
+  @Override
+  public List<Cue> getCues(long timeUs) {
+    int segment =
+        Util.binarySearchFloor(
+            eventTimesUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false);
+    return segment == -1 ? ImmutableList.of() : segmentCues.get(segment);
+  }
+}
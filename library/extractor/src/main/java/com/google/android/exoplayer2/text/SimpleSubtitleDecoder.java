@@ -21,7 +21,10 @@ import com.google.android.exoplayer2.decoder.SimpleDecoder;
 import com.google.android.exoplayer2.util.Assertions;
 import java.nio.ByteBuffer;
 
-/** Base class for subtitle parsers that use their own decode thread. */
+/**
+ * Base class for subtitle parsers that decode on the {@link SimpleDecoder#getSharedDecodeExecutor()
+ * shared decode executor}.
+ */
 public abstract class SimpleSubtitleDecoder
     extends SimpleDecoder<SubtitleInputBuffer, SubtitleOutputBuffer, SubtitleDecoderException>
     implements SubtitleDecoder {
@@ -33,7 +36,10 @@ public abstract class SimpleSubtitleDecoder
    */
   @SuppressWarnings("nullness:method.invocation")
   protected SimpleSubtitleDecoder(String name) {
-    super(new SubtitleInputBuffer[2], new SubtitleOutputBuffer[2]);
+    super(
+        new SubtitleInputBuffer[2],
+        new SubtitleOutputBuffer[2],
+        SimpleDecoder.getSharedDecodeExecutor());
     this.name = name;
     setInitialInputBufferSize(1024);
   }
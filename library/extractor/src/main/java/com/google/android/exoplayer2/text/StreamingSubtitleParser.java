@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.List;
+
+/**
+ * Parses subtitle data incrementally, as it's read, and outputs the cues to display in order of
+ * time.
+ *
+ * <p>Unlike a {@link SubtitleDecoder}, which decodes a whole subtitle file into a {@link
+ * Subtitle}, a streaming parser only keeps the cues that may still affect the output, so that cues
+ * can be output before the end of the file has been read and without holding the whole file in
+ * memory.
+ */
+public interface StreamingSubtitleParser {
+
+  /** Receives the cues output by a {@link StreamingSubtitleParser}. */
+  interface Output {
+
+    /**
+     * Called with the cues to display from {@code timeUs} until the time of the next call.
+     *
+     * <p>Calls are made in strictly increasing order of {@code timeUs}.
+     *
+     * @param timeUs The time from which the cues are displayed, in microseconds.
+     * @param cues The cues to display, possibly empty.
+     */
+    void onCues(long timeUs, List<Cue> cues);
+  }
+
+  /**
+   * Parses the available data.
+   *
+   * <p>Complete units of the data, such as WebVTT blocks, are consumed by advancing the position of
+   * {@code data}. Incomplete data at the end is left unconsumed, and must be passed again followed
+   * by more data in the next call.
+   *
+   * @param data The data to parse, from its position to its limit.
+   * @param endOfInput Whether {@code data} runs to the end of the input. If true, all remaining
+   *     data is consumed and all remaining cues are output.
+   * @param output The {@link Output} receiving the parsed cues.
+   * @throws SubtitleDecoderException If the data is malformed.
+   */
+  void parse(ParsableByteArray data, boolean endOfInput, Output output)
+      throws SubtitleDecoderException;
+
+  /** Resets the parser, so that it's ready to parse an input from the start. */
+  void reset();
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.text;
 
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Assertions.checkStateNotNull;
 import static java.lang.annotation.ElementType.TYPE_USE;
@@ -74,9 +75,11 @@ public class SubtitleExtractor implements Extractor {
 
   private static final int DEFAULT_BUFFER_SIZE = 1024;
 
-  private final SubtitleDecoder subtitleDecoder;
+  @Nullable private final SubtitleDecoder subtitleDecoder;
+  @Nullable private final StreamingSubtitleParser streamingParser;
   private final CueEncoder cueEncoder;
   private final ParsableByteArray subtitleData;
+  private final ParsableByteArray subtitleSample;
   private final Format format;
   private final List<Long> timestamps;
   private final List<ParsableByteArray> samples;
@@ -86,6 +89,8 @@ public class SubtitleExtractor implements Extractor {
   private int bytesRead;
   private @State int state;
   private long seekTimeUs;
+  @Nullable private List<Cue> heldCues;
+  private long heldCuesTimeUs;
 
   /**
    * @param subtitleDecoder The decoder used for decoding the subtitle data. The extractor will
@@ -93,9 +98,37 @@ public class SubtitleExtractor implements Extractor {
    * @param format Format that describes subtitle data.
    */
   public SubtitleExtractor(SubtitleDecoder subtitleDecoder, Format format) {
+    this(subtitleDecoder, /* streamingParser= */ null, format);
+  }
+
+  /**
+   * Creates an instance that parses the subtitle data incrementally, as it's read from the input.
+   *
+   * <p>Samples are output as soon as the cues they contain have been parsed, and aren't kept in
+   * memory by the extractor, so memory use doesn't grow with the size of the input. A seek restarts
+   * parsing from the start of the input.
+   *
+   * <p>The extractor doesn't know the playback position, so it doesn't limit how far ahead of it
+   * cues are parsed. Output samples are held by the player's sample queue from the load position
+   * back to the playback position, and how far loading runs ahead is controlled by the player's
+   * {@code LoadControl}, as for other progressively loaded media.
+   *
+   * @param streamingParser The {@link StreamingSubtitleParser} used for parsing the subtitle data.
+   * @param format Format that describes subtitle data.
+   */
+  public SubtitleExtractor(StreamingSubtitleParser streamingParser, Format format) {
+    this(/* subtitleDecoder= */ null, streamingParser, format);
+  }
+
+  private SubtitleExtractor(
+      @Nullable SubtitleDecoder subtitleDecoder,
+      @Nullable StreamingSubtitleParser streamingParser,
+      Format format) {
     this.subtitleDecoder = subtitleDecoder;
+    this.streamingParser = streamingParser;
     cueEncoder = new CueEncoder();
     subtitleData = new ParsableByteArray();
+    subtitleSample = new ParsableByteArray();
     this.format =
         format
             .buildUpon()
@@ -106,6 +139,7 @@ public class SubtitleExtractor implements Extractor {
     samples = new ArrayList<>();
     state = STATE_CREATED;
     seekTimeUs = C.TIME_UNSET;
+    heldCuesTimeUs = C.TIME_UNSET;
   }
 
   @Override
@@ -134,6 +168,9 @@ public class SubtitleExtractor implements Extractor {
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
     checkState(state != STATE_CREATED && state != STATE_RELEASED);
+    if (streamingParser != null) {
+      return readStreaming(input, streamingParser);
+    }
     if (state == STATE_INITIALIZED) {
       subtitleData.reset(
           input.getLength() != C.LENGTH_UNSET
@@ -171,7 +208,8 @@ public class SubtitleExtractor implements Extractor {
       state = STATE_INITIALIZED;
     }
     if (state == STATE_FINISHED) {
-      state = STATE_SEEKING;
+      // Samples aren't kept in memory when streaming, so the input is parsed again.
+      state = streamingParser != null ? STATE_INITIALIZED : STATE_SEEKING;
     }
   }
 
@@ -181,10 +219,87 @@ public class SubtitleExtractor implements Extractor {
     if (state == STATE_RELEASED) {
       return;
     }
-    subtitleDecoder.release();
+    if (subtitleDecoder != null) {
+      subtitleDecoder.release();
+    }
     state = STATE_RELEASED;
   }
 
+  private int readStreaming(ExtractorInput input, StreamingSubtitleParser streamingParser)
+      throws IOException {
+    if (state == STATE_INITIALIZED) {
+      streamingParser.reset();
+      subtitleData.ensureCapacity(DEFAULT_BUFFER_SIZE);
+      subtitleData.reset(/* limit= */ 0);
+      bytesRead = 0;
+      heldCues = null;
+      heldCuesTimeUs = C.TIME_UNSET;
+      state = STATE_EXTRACTING;
+    }
+    if (state == STATE_EXTRACTING) {
+      // Discard the parsed data, keeping the incomplete data at the end of the buffer.
+      int bytesLeft = subtitleData.bytesLeft();
+      if (subtitleData.getPosition() > 0) {
+        byte[] data = subtitleData.getData();
+        System.arraycopy(data, subtitleData.getPosition(), data, /* destPos= */ 0, bytesLeft);
+        subtitleData.reset(bytesLeft);
+      }
+      if (subtitleData.capacity() == bytesLeft) {
+        subtitleData.ensureCapacity(bytesLeft + DEFAULT_BUFFER_SIZE);
+      }
+      int readResult =
+          input.read(subtitleData.getData(), bytesLeft, subtitleData.capacity() - bytesLeft);
+      if (readResult != C.RESULT_END_OF_INPUT) {
+        bytesRead += readResult;
+        subtitleData.setLimit(bytesLeft + readResult);
+      }
+      long inputLength = input.getLength();
+      boolean inputFinished =
+          (inputLength != C.LENGTH_UNSET && bytesRead == inputLength)
+              || readResult == C.RESULT_END_OF_INPUT;
+      try {
+        streamingParser.parse(subtitleData, inputFinished, this::onStreamingCues);
+      } catch (SubtitleDecoderException e) {
+        throw ParserException.createForMalformedContainer("StreamingSubtitleParser failed.", e);
+      }
+      if (inputFinished) {
+        if (heldCues != null) {
+          writeSample(heldCuesTimeUs, heldCues);
+          heldCues = null;
+        }
+        state = STATE_FINISHED;
+      }
+    }
+    return state == STATE_FINISHED ? RESULT_END_OF_INPUT : RESULT_CONTINUE;
+  }
+
+  private void onStreamingCues(long timeUs, List<Cue> cues) {
+    if (seekTimeUs != C.TIME_UNSET && timeUs <= seekTimeUs) {
+      // Only the last sample at or before the seek position needs to be output.
+      heldCues = cues;
+      heldCuesTimeUs = timeUs;
+      return;
+    }
+    if (heldCues != null) {
+      writeSample(heldCuesTimeUs, heldCues);
+      heldCues = null;
+    }
+    writeSample(timeUs, cues);
+  }
+
+  private void writeSample(long timeUs, List<Cue> cues) {
+    checkStateNotNull(trackOutput);
+    byte[] cuesSample = cueEncoder.encode(cues);
+    subtitleSample.reset(cuesSample);
+    trackOutput.sampleData(subtitleSample, cuesSample.length);
+    trackOutput.sampleMetadata(
+        timeUs,
+        /* flags= */ C.BUFFER_FLAG_KEY_FRAME,
+        /* size= */ cuesSample.length,
+        /* offset= */ 0,
+        /* cryptoData= */ null);
+  }
+
   /** Returns whether the input has been fully skipped. */
   private boolean skipInput(ExtractorInput input) throws IOException {
     return input.skip(
@@ -211,6 +326,7 @@ public class SubtitleExtractor implements Extractor {
 
   /** Decodes the subtitle data and stores the samples in the memory of the extractor. */
   private void decode() throws IOException {
+    SubtitleDecoder subtitleDecoder = checkNotNull(this.subtitleDecoder);
     try {
       @Nullable SubtitleInputBuffer inputBuffer = subtitleDecoder.dequeueInputBuffer();
       while (inputBuffer == null) {
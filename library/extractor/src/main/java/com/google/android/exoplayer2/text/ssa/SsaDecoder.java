@@ -29,6 +29,7 @@ import android.text.style.UnderlineSpan;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueIndex;
 import com.google.android.exoplayer2.text.SimpleSubtitleDecoder;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Assertions;
@@ -36,7 +37,6 @@ import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.base.Ascii;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -109,15 +109,14 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
 
   @Override
   protected Subtitle decode(byte[] data, int length, boolean reset) {
-    List<List<Cue>> cues = new ArrayList<>();
-    List<Long> cueTimesUs = new ArrayList<>();
+    CueIndex.Builder cueIndexBuilder = new CueIndex.Builder();
 
     ParsableByteArray parsableData = new ParsableByteArray(data, length);
     if (!haveInitializationData) {
       parseHeader(parsableData);
     }
-    parseEventBody(parsableData, cues, cueTimesUs);
-    return new SsaSubtitle(cues, cueTimesUs);
+    parseEventBody(parsableData, cueIndexBuilder);
+    return cueIndexBuilder.build();
   }
 
   /**
@@ -212,10 +211,9 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
    * Parses the event body of the subtitle.
    *
    * @param data A {@link ParsableByteArray} from which the body should be read.
-   * @param cues A list to which parsed cues will be added.
-   * @param cueTimesUs A sorted list to which parsed cue timestamps will be added.
+   * @param cueIndexBuilder A {@link CueIndex.Builder} to which parsed cues will be added.
    */
-  private void parseEventBody(ParsableByteArray data, List<List<Cue>> cues, List<Long> cueTimesUs) {
+  private void parseEventBody(ParsableByteArray data, CueIndex.Builder cueIndexBuilder) {
     @Nullable
     SsaDialogueFormat format = haveInitializationData ? dialogueFormatFromInitializationData : null;
     @Nullable String currentLine;
@@ -227,7 +225,7 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
           Log.w(TAG, "Skipping dialogue line before complete format: " + currentLine);
           continue;
         }
-        parseDialogueLine(currentLine, format, cues, cueTimesUs);
+        parseDialogueLine(currentLine, format, cueIndexBuilder);
       }
     }
   }
@@ -237,11 +235,10 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
    *
    * @param dialogueLine The dialogue values (i.e. everything after {@code Dialogue:}).
    * @param format The dialogue format to use when parsing {@code dialogueLine}.
-   * @param cues A list to which parsed cues will be added.
-   * @param cueTimesUs A sorted list to which parsed cue timestamps will be added.
+   * @param cueIndexBuilder A {@link CueIndex.Builder} to which parsed cues will be added.
    */
   private void parseDialogueLine(
-      String dialogueLine, SsaDialogueFormat format, List<List<Cue>> cues, List<Long> cueTimesUs) {
+      String dialogueLine, SsaDialogueFormat format, CueIndex.Builder cueIndexBuilder) {
     Assertions.checkArgument(dialogueLine.startsWith(DIALOGUE_LINE_PREFIX));
     String[] lineValues =
         dialogueLine.substring(DIALOGUE_LINE_PREFIX.length()).split(",", format.length);
@@ -276,12 +273,7 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
             .replace("\\h", "\u00A0");
     Cue cue = createCue(text, style, styleOverrides, screenWidth, screenHeight);
 
-    int startTimeIndex = addCuePlacerholderByTime(startTimeUs, cueTimesUs, cues);
-    int endTimeIndex = addCuePlacerholderByTime(endTimeUs, cueTimesUs, cues);
-    // Iterate on cues from startTimeIndex until endTimeIndex, adding the current cue.
-    for (int i = startTimeIndex; i < endTimeIndex; i++) {
-      cues.get(i).add(cue);
-    }
+    cueIndexBuilder.add(cue, startTimeUs, endTimeUs);
   }
 
   /**
@@ -472,31 +464,4 @@ public final class SsaDecoder extends SimpleSubtitleDecoder {
         return Cue.DIMEN_UNSET;
     }
   }
-
-  /**
-   * Searches for {@code timeUs} in {@code sortedCueTimesUs}, inserting it if it's not found, and
-   * returns the index.
-   *
-   * <p>If it's inserted, we also insert a matching entry to {@code cues}.
-   */
-  private static int addCuePlacerholderByTime(
-      long timeUs, List<Long> sortedCueTimesUs, List<List<Cue>> cues) {
-    int insertionIndex = 0;
-    for (int i = sortedCueTimesUs.size() - 1; i >= 0; i--) {
-      if (sortedCueTimesUs.get(i) == timeUs) {
-        return i;
-      }
-
-      if (sortedCueTimesUs.get(i) < timeUs) {
-        insertionIndex = i + 1;
-        break;
-      }
-    }
-    sortedCueTimesUs.add(insertionIndex, timeUs);
-    // Copy over cues from left, or use an empty list if we're inserting at the beginning.
-    cues.add(
-        insertionIndex,
-        insertionIndex == 0 ? new ArrayList<>() : new ArrayList<>(cues.get(insertionIndex - 1)));
-    return insertionIndex;
-  }
 }
@@ -15,16 +15,26 @@
  */
 package com.google.android.exoplayer2.text.ttml;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 
-/** A representation of a TTML subtitle. */
+/**
+ * A representation of a TTML subtitle.
+ *
+ * <p>The cues don't change between consecutive event times. The cues resolved from the node tree
+ * are therefore cached for each interval between event times, so that the tree is only traversed
+ * the first time an interval is displayed.
+ */
 /* package */ final class TtmlSubtitle implements Subtitle {
 
   private final TtmlNode root;
@@ -32,6 +42,8 @@ import java.util.Map;
   private final Map<String, TtmlStyle> globalStyles;
   private final Map<String, TtmlRegion> regionMap;
   private final Map<String, String> imageMap;
+  // The cues displayed before the first event time, and from each event time until the next.
+  private final List<@NullableType ImmutableList<Cue>> cachedCues;
 
   public TtmlSubtitle(
       TtmlNode root,
@@ -44,6 +56,7 @@ import java.util.Map;
     this.globalStyles =
         globalStyles != null ? Collections.unmodifiableMap(globalStyles) : Collections.emptyMap();
     this.eventTimesUs = root.getEventTimesUs();
+    cachedCues = new ArrayList<>(Collections.nCopies(eventTimesUs.length + 1, null));
   }
 
   @Override
@@ -69,7 +82,16 @@ import java.util.Map;
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    return root.getCues(timeUs, globalStyles, regionMap, imageMap);
+    int intervalIndex =
+        Util.binarySearchFloor(
+                eventTimesUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false)
+            + 1;
+    @Nullable ImmutableList<Cue> cues = cachedCues.get(intervalIndex);
+    if (cues == null) {
+      cues = ImmutableList.copyOf(root.getCues(timeUs, globalStyles, regionMap, imageMap));
+      cachedCues.set(intervalIndex, cues);
+    }
+    return cues;
   }
 
   @VisibleForTesting
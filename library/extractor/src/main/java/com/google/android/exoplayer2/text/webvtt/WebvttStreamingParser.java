@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text.webvtt;
+
+import android.text.TextUtils;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.text.StreamingSubtitleParser;
+import com.google.android.exoplayer2.text.SubtitleDecoderException;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A {@link StreamingSubtitleParser} for WebVTT.
+ *
+ * <p>The input is parsed one block at a time, as soon as the blank line ending the block has been
+ * read. As WebVTT cues are ordered by start time, the cues to display at every time before the
+ * start of the most recently parsed cue are final, and are output immediately. Only the cues that
+ * are still displayed at that point are kept in memory.
+ *
+ * @see <a href="http://dev.w3.org/html5/webvtt">WebVTT specification</a>
+ */
+public final class WebvttStreamingParser implements StreamingSubtitleParser {
+
+  private static final String TAG = "WebvttStreamingParser";
+
+  private static final String COMMENT_START = "NOTE";
+  private static final String STYLE_START = "STYLE";
+
+  private final ParsableByteArray blockData;
+  private final WebvttCssParser cssParser;
+  private final List<WebvttCssStyle> definedStyles;
+  // The cues that may still be displayed at a time that hasn't been output, in file order.
+  private final List<WebvttCueInfo> pendingCueInfos;
+  private final TreeSet<Long> pendingEventTimesUs;
+  // Reused by outputCues, which is called for every event time.
+  private final List<WebvttCueInfo> activeCueInfos;
+
+  private boolean headerParsed;
+  private long lastOutputTimeUs;
+
+  /** Creates an instance. */
+  public WebvttStreamingParser() {
+    blockData = new ParsableByteArray();
+    cssParser = new WebvttCssParser();
+    definedStyles = new ArrayList<>();
+    pendingCueInfos = new ArrayList<>();
+    pendingEventTimesUs = new TreeSet<>();
+    activeCueInfos = new ArrayList<>();
+    lastOutputTimeUs = C.TIME_UNSET;
+  }
+
+  @Override
+  public void parse(ParsableByteArray data, boolean endOfInput, Output output)
+      throws SubtitleDecoderException {
+    while (data.bytesLeft() > 0) {
+      int blockEnd = findBlockEnd(data.getData(), data.getPosition(), data.limit(), endOfInput);
+      if (blockEnd == C.INDEX_UNSET) {
+        break;
+      }
+      blockData.reset(data.getData(), blockEnd);
+      blockData.setPosition(data.getPosition());
+      data.setPosition(blockEnd);
+      parseBlock(output);
+    }
+    if (endOfInput) {
+      while (!pendingEventTimesUs.isEmpty()) {
+        outputCues(pendingEventTimesUs.pollFirst(), output);
+      }
+    }
+  }
+
+  @Override
+  public void reset() {
+    definedStyles.clear();
+    pendingCueInfos.clear();
+    pendingEventTimesUs.clear();
+    headerParsed = false;
+    lastOutputTimeUs = C.TIME_UNSET;
+  }
+
+  private void parseBlock(Output output) throws SubtitleDecoderException {
+    if (!headerParsed) {
+      // Validate the first line of the header, and skip the remainder.
+      try {
+        WebvttParserUtil.validateWebvttHeaderLine(blockData);
+      } catch (ParserException e) {
+        throw new SubtitleDecoderException(e);
+      }
+      headerParsed = true;
+      return;
+    }
+    int blockStart = blockData.getPosition();
+    @Nullable String firstLine = blockData.readLine();
+    if (TextUtils.isEmpty(firstLine)) {
+      // Blank line between blocks.
+      return;
+    }
+    if (STYLE_START.equals(firstLine)) {
+      if (lastOutputTimeUs != C.TIME_UNSET || !pendingCueInfos.isEmpty()) {
+        throw new SubtitleDecoderException("A style block was found after the first cue.");
+      }
+      definedStyles.addAll(cssParser.parseBlock(blockData));
+    } else if (!firstLine.startsWith(COMMENT_START)) {
+      blockData.setPosition(blockStart);
+      @Nullable WebvttCueInfo cueInfo = WebvttCueParser.parseCue(blockData, definedStyles);
+      if (cueInfo != null) {
+        onCueParsed(cueInfo, output);
+      }
+    }
+  }
+
+  private void onCueParsed(WebvttCueInfo cueInfo, Output output) {
+    if (lastOutputTimeUs != C.TIME_UNSET && cueInfo.startTimeUs <= lastOutputTimeUs) {
+      Log.w(TAG, "Cue starts before previously output cues, displaying it late.");
+    }
+    pendingCueInfos.add(cueInfo);
+    addPendingEventTime(cueInfo.startTimeUs);
+    addPendingEventTime(cueInfo.endTimeUs);
+    // Later cues start at or after this cue, so the cues displayed before its start are final.
+    outputEventTimesBefore(cueInfo.startTimeUs, output);
+  }
+
+  private void addPendingEventTime(long timeUs) {
+    if (lastOutputTimeUs == C.TIME_UNSET || timeUs > lastOutputTimeUs) {
+      pendingEventTimesUs.add(timeUs);
+    }
+  }
+
+  private void outputEventTimesBefore(long timeUs, Output output) {
+    while (!pendingEventTimesUs.isEmpty() && pendingEventTimesUs.first() < timeUs) {
+      outputCues(pendingEventTimesUs.pollFirst(), output);
+    }
+  }
+
+  private void outputCues(long timeUs, Output output) {
+    activeCueInfos.clear();
+    Iterator<WebvttCueInfo> iterator = pendingCueInfos.iterator();
+    while (iterator.hasNext()) {
+      WebvttCueInfo cueInfo = iterator.next();
+      if (cueInfo.endTimeUs <= timeUs) {
+        // The cue isn't displayed at this or any later time.
+        iterator.remove();
+      } else if (cueInfo.startTimeUs <= timeUs) {
+        activeCueInfos.add(cueInfo);
+      }
+    }
+    // The resolved list is a new instance, so the output may keep it after the call.
+    output.onCues(timeUs, WebvttSubtitle.resolveCues(activeCueInfos));
+    activeCueInfos.clear();
+    lastOutputTimeUs = timeUs;
+  }
+
+  /**
+   * Returns the position after the blank line ending the block starting at {@code position}, or
+   * {@link C#INDEX_UNSET} if the data doesn't contain the complete block yet.
+   */
+  private static int findBlockEnd(byte[] data, int position, int limit, boolean endOfInput) {
+    int lineStart = position;
+    while (lineStart < limit) {
+      int lineEnd = lineStart;
+      while (lineEnd < limit && data[lineEnd] != '\n' && data[lineEnd] != '\r') {
+        lineEnd++;
+      }
+      if (lineEnd == limit) {
+        break;
+      }
+      int terminatorLength = 1;
+      if (data[lineEnd] == '\r') {
+        if (lineEnd + 1 == limit && !endOfInput) {
+          // The line feed of a "\r\n" terminator may not have been read yet.
+          return C.INDEX_UNSET;
+        }
+        if (lineEnd + 1 < limit && data[lineEnd + 1] == '\n') {
+          terminatorLength = 2;
+        }
+      }
+      if (lineEnd == lineStart) {
+        return lineEnd + terminatorLength;
+      }
+      lineStart = lineEnd + terminatorLength;
+    }
+    return endOfInput ? limit : C.INDEX_UNSET;
+  }
+}
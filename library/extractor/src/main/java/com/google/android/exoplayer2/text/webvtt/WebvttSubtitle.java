@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.text.webvtt;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueIndex;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -28,22 +29,30 @@ import java.util.List;
 /** A representation of a WebVTT subtitle. */
 /* package */ final class WebvttSubtitle implements Subtitle {
 
-  private final List<WebvttCueInfo> cueInfos;
-  private final long[] cueTimesUs;
   private final long[] sortedCueTimesUs;
+  private final CueIndex cueIndex;
 
   /** Constructs a new WebvttSubtitle from a list of {@link WebvttCueInfo}s. */
   public WebvttSubtitle(List<WebvttCueInfo> cueInfos) {
-    this.cueInfos = Collections.unmodifiableList(new ArrayList<>(cueInfos));
-    cueTimesUs = new long[2 * cueInfos.size()];
-    for (int cueIndex = 0; cueIndex < cueInfos.size(); cueIndex++) {
-      WebvttCueInfo cueInfo = cueInfos.get(cueIndex);
-      int arrayIndex = cueIndex * 2;
-      cueTimesUs[arrayIndex] = cueInfo.startTimeUs;
-      cueTimesUs[arrayIndex + 1] = cueInfo.endTimeUs;
+    sortedCueTimesUs = new long[2 * cueInfos.size()];
+    CueIndex.Builder cueIndexBuilder = new CueIndex.Builder();
+    for (int i = 0; i < cueInfos.size(); i++) {
+      WebvttCueInfo cueInfo = cueInfos.get(i);
+      int arrayIndex = i * 2;
+      sortedCueTimesUs[arrayIndex] = cueInfo.startTimeUs;
+      sortedCueTimesUs[arrayIndex + 1] = cueInfo.endTimeUs;
+      cueIndexBuilder.add(cueInfo.cue, cueInfo.startTimeUs, cueInfo.endTimeUs);
     }
-    sortedCueTimesUs = Arrays.copyOf(cueTimesUs, cueTimesUs.length);
     Arrays.sort(sortedCueTimesUs);
+    cueIndex =
+        cueIndexBuilder.build(
+            (activeCueIndices, activeCueCount) -> {
+              List<WebvttCueInfo> activeCueInfos = new ArrayList<>(activeCueCount);
+              for (int i = 0; i < activeCueCount; i++) {
+                activeCueInfos.add(cueInfos.get(activeCueIndices[i]));
+              }
+              return resolveCues(activeCueInfos);
+            });
   }
 
   @Override
@@ -66,16 +75,25 @@ import java.util.List;
 
   @Override
   public List<Cue> getCues(long timeUs) {
+    return cueIndex.getCues(timeUs);
+  }
+
+  /**
+   * Returns the cues to display for the given active cues, assigning line numbers to cues without
+   * a line.
+   *
+   * @param activeCueInfos The {@link WebvttCueInfo WebvttCueInfos} of the active cues, in the
+   *     order in which they appear in the file.
+   */
+  /* package */ static List<Cue> resolveCues(List<WebvttCueInfo> activeCueInfos) {
     List<Cue> currentCues = new ArrayList<>();
     List<WebvttCueInfo> cuesWithUnsetLine = new ArrayList<>();
-    for (int i = 0; i < cueInfos.size(); i++) {
-      if ((cueTimesUs[i * 2] <= timeUs) && (timeUs < cueTimesUs[i * 2 + 1])) {
-        WebvttCueInfo cueInfo = cueInfos.get(i);
-        if (cueInfo.cue.line == Cue.DIMEN_UNSET) {
-          cuesWithUnsetLine.add(cueInfo);
-        } else {
-          currentCues.add(cueInfo.cue);
-        }
+    for (int i = 0; i < activeCueInfos.size(); i++) {
+      WebvttCueInfo cueInfo = activeCueInfos.get(i);
+      if (cueInfo.cue.line == Cue.DIMEN_UNSET) {
+        cuesWithUnsetLine.add(cueInfo);
+      } else {
+        currentCues.add(cueInfo.cue);
       }
     }
     // Steps 4 - 10 of https://www.w3.org/TR/webvtt1/#cue-computed-line
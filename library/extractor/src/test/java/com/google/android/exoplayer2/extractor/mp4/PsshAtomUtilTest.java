@@ -50,4 +50,32 @@ public final class PsshAtomUtilTest {
     parsablePsshAtom.readBytes(psshSchemeData, 0, schemeData.length);
     assertThat(psshSchemeData).isEqualTo(schemeData);
   }
+
+  @Test
+  public void parseKeyIds_versionOneAtom_returnsKeyIds() {
+    UUID[] keyIds = new UUID[] {new UUID(1, 2), new UUID(3, 4)};
+    byte[] psshAtom =
+        PsshAtomUtil.buildPsshAtom(C.WIDEVINE_UUID, keyIds, /* data= */ new byte[] {0, 1, 2});
+
+    assertThat(PsshAtomUtil.parseKeyIds(psshAtom)).asList().containsExactly(keyIds[0], keyIds[1]);
+    assertThat(PsshAtomUtil.parseSchemeSpecificData(psshAtom, C.WIDEVINE_UUID))
+        .isEqualTo(new byte[] {0, 1, 2});
+  }
+
+  @Test
+  public void parseKeyIds_versionZeroAtom_returnsNull() {
+    byte[] psshAtom = PsshAtomUtil.buildPsshAtom(C.WIDEVINE_UUID, new byte[] {0, 1, 2});
+
+    assertThat(PsshAtomUtil.parseKeyIds(psshAtom)).isNull();
+  }
+
+  @Test
+  public void parseKeyIds_keyIdCountTooLarge_returnsNull() {
+    byte[] psshAtom =
+        PsshAtomUtil.buildPsshAtom(C.WIDEVINE_UUID, new UUID[] {new UUID(1, 2)}, /* data= */ null);
+    // Overwrite the key id count.
+    psshAtom[Atom.FULL_HEADER_SIZE + 16 + 3] = 2;
+
+    assertThat(PsshAtomUtil.parseKeyIds(psshAtom)).isNull();
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link CueIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class CueIndexTest {
+
+  private static final Cue FIRST_CUE = new Cue.Builder().setText("first").build();
+  private static final Cue SECOND_CUE = new Cue.Builder().setText("second").build();
+  private static final Cue THIRD_CUE = new Cue.Builder().setText("third").build();
+
+  @Test
+  public void emptyIndex_hasNoEventsOrCues() {
+    CueIndex cueIndex = new CueIndex.Builder().build();
+
+    assertThat(cueIndex.getEventTimeCount()).isEqualTo(0);
+    assertThat(cueIndex.getNextEventTimeIndex(/* timeUs= */ 0)).isEqualTo(C.INDEX_UNSET);
+    assertThat(cueIndex.getCues(/* timeUs= */ 0)).isEmpty();
+  }
+
+  @Test
+  public void getCues_withSeparateCues_returnsCueOfInterval() {
+    CueIndex cueIndex =
+        new CueIndex.Builder()
+            .add(FIRST_CUE, /* startTimeUs= */ 1_000_000, /* endTimeUs= */ 2_000_000)
+            .add(SECOND_CUE, /* startTimeUs= */ 3_000_000, /* endTimeUs= */ 4_000_000)
+            .build();
+
+    assertThat(cueIndex.getCues(/* timeUs= */ 500_000)).isEmpty();
+    assertThat(cueIndex.getCues(/* timeUs= */ 1_000_000)).containsExactly(FIRST_CUE);
+    assertThat(cueIndex.getCues(/* timeUs= */ 1_999_999)).containsExactly(FIRST_CUE);
+    assertThat(cueIndex.getCues(/* timeUs= */ 2_000_000)).isEmpty();
+    assertThat(cueIndex.getCues(/* timeUs= */ 3_500_000)).containsExactly(SECOND_CUE);
+    assertThat(cueIndex.getCues(/* timeUs= */ 4_000_000)).isEmpty();
+    assertThat(cueIndex.getCues(/* timeUs= */ Long.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void getCues_withOverlappingCues_returnsCuesInOrderOfAddition() {
+    CueIndex cueIndex =
+        new CueIndex.Builder()
+            .add(FIRST_CUE, /* startTimeUs= */ 2_000_000, /* endTimeUs= */ 4_000_000)
+            .add(SECOND_CUE, /* startTimeUs= */ 1_000_000, /* endTimeUs= */ 3_000_000)
+            .add(THIRD_CUE, /* startTimeUs= */ 0, /* endTimeUs= */ 5_000_000)
+            .build();
+
+    assertThat(cueIndex.getCues(/* timeUs= */ 500_000)).containsExactly(THIRD_CUE);
+    assertThat(cueIndex.getCues(/* timeUs= */ 1_500_000))
+        .containsExactly(SECOND_CUE, THIRD_CUE)
+        .inOrder();
+    assertThat(cueIndex.getCues(/* timeUs= */ 2_500_000))
+        .containsExactly(FIRST_CUE, SECOND_CUE, THIRD_CUE)
+        .inOrder();
+    assertThat(cueIndex.getCues(/* timeUs= */ 3_500_000))
+        .containsExactly(FIRST_CUE, THIRD_CUE)
+        .inOrder();
+    assertThat(cueIndex.getCues(/* timeUs= */ 4_500_000)).containsExactly(THIRD_CUE);
+  }
+
+  @Test
+  public void getEventTime_withSharedAndEmptyIntervals_returnsDistinctSortedTimes() {
+    CueIndex cueIndex =
+        new CueIndex.Builder()
+            .add(FIRST_CUE, /* startTimeUs= */ 1_000_000, /* endTimeUs= */ 2_000_000)
+            .add(SECOND_CUE, /* startTimeUs= */ 2_000_000, /* endTimeUs= */ 3_000_000)
+            .add(THIRD_CUE, /* startTimeUs= */ 5_000_000, /* endTimeUs= */ 4_000_000)
+            .build();
+
+    assertThat(cueIndex.getEventTimeCount()).isEqualTo(5);
+    assertThat(cueIndex.getEventTime(0)).isEqualTo(1_000_000);
+    assertThat(cueIndex.getEventTime(1)).isEqualTo(2_000_000);
+    assertThat(cueIndex.getEventTime(2)).isEqualTo(3_000_000);
+    assertThat(cueIndex.getEventTime(3)).isEqualTo(4_000_000);
+    assertThat(cueIndex.getEventTime(4)).isEqualTo(5_000_000);
+    assertThat(cueIndex.getNextEventTimeIndex(/* timeUs= */ 2_000_000)).isEqualTo(2);
+    assertThat(cueIndex.getNextEventTimeIndex(/* timeUs= */ 5_000_000)).isEqualTo(C.INDEX_UNSET);
+    // A cue whose end time is before its start time is never displayed.
+    assertThat(cueIndex.getCues(/* timeUs= */ 4_500_000)).isEmpty();
+  }
+
+  @Test
+  public void getCues_withinSameInterval_returnsSameInstance() {
+    CueIndex cueIndex =
+        new CueIndex.Builder()
+            .add(FIRST_CUE, /* startTimeUs= */ 1_000_000, /* endTimeUs= */ 2_000_000)
+            .build();
+
+    assertThat(cueIndex.getCues(/* timeUs= */ 1_800_000))
+        .isSameInstanceAs(cueIndex.getCues(/* timeUs= */ 1_200_000));
+  }
+
+  @Test
+  public void build_withSegmentResolver_resolvesEachNonEmptySegmentOnce() {
+    List<List<Integer>> resolvedSegments = new ArrayList<>();
+    CueIndex cueIndex =
+        new CueIndex.Builder()
+            .add(FIRST_CUE, /* startTimeUs= */ 1_000_000, /* endTimeUs= */ 3_000_000)
+            .add(SECOND_CUE, /* startTimeUs= */ 2_000_000, /* endTimeUs= */ 4_000_000)
+            .add(THIRD_CUE, /* startTimeUs= */ 6_000_000, /* endTimeUs= */ 7_000_000)
+            .build(
+                (activeCueIndices, activeCueCount) -> {
+                  List<Integer> segment = new ArrayList<>();
+                  for (int i = 0; i < activeCueCount; i++) {
+                    segment.add(activeCueIndices[i]);
+                  }
+                  resolvedSegments.add(segment);
+                  return ImmutableList.of(new Cue.Builder().setText("cues " + segment).build());
+                });
+
+    assertThat(resolvedSegments)
+        .containsExactly(
+            ImmutableList.of(0), ImmutableList.of(0, 1), ImmutableList.of(1), ImmutableList.of(2))
+        .inOrder();
+    assertThat(cueIndex.getCues(/* timeUs= */ 2_500_000).get(0).text.toString())
+        .isEqualTo("cues [0, 1]");
+    assertThat(cueIndex.getCues(/* timeUs= */ 5_000_000)).isEmpty();
+  }
+}
@@ -25,6 +25,7 @@ import com.google.android.exoplayer2.testutil.FakeExtractorInput;
 import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
 import com.google.android.exoplayer2.testutil.FakeTrackOutput;
 import com.google.android.exoplayer2.text.webvtt.WebvttDecoder;
+import com.google.android.exoplayer2.text.webvtt.WebvttStreamingParser;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.util.List;
@@ -184,6 +185,113 @@ public class SubtitleExtractorTest {
     assertThat(cues3).isEmpty();
   }
 
+  @Test
+  public void extractor_withStreamingParser_outputsCues() throws Exception {
+    CueDecoder decoder = new CueDecoder();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(Util.getUtf8Bytes(TEST_DATA))
+            .setSimulatePartialReads(true)
+            .build();
+    SubtitleExtractor extractor =
+        new SubtitleExtractor(
+            new WebvttStreamingParser(),
+            new Format.Builder().setSampleMimeType(MimeTypes.TEXT_VTT).build());
+    extractor.init(output);
+
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    assertThat(trackOutput.lastFormat.sampleMimeType).isEqualTo(MimeTypes.TEXT_EXOPLAYER_CUES);
+    assertThat(trackOutput.lastFormat.codecs).isEqualTo(MimeTypes.TEXT_VTT);
+    assertThat(trackOutput.getSampleCount()).isEqualTo(6);
+    // Check sample timestamps.
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(0L);
+    assertThat(trackOutput.getSampleTimeUs(1)).isEqualTo(1_234_000L);
+    assertThat(trackOutput.getSampleTimeUs(2)).isEqualTo(2_345_000L);
+    assertThat(trackOutput.getSampleTimeUs(3)).isEqualTo(2_600_000L);
+    assertThat(trackOutput.getSampleTimeUs(4)).isEqualTo(3_456_000L);
+    assertThat(trackOutput.getSampleTimeUs(5)).isEqualTo(4_567_000L);
+    // Check sample content.
+    List<Cue> cues0 = decoder.decode(trackOutput.getSampleData(0));
+    assertThat(cues0).hasSize(1);
+    assertThat(cues0.get(0).text.toString()).isEqualTo("This is the first subtitle.");
+    List<Cue> cues1 = decoder.decode(trackOutput.getSampleData(1));
+    assertThat(cues1).isEmpty();
+    List<Cue> cues2 = decoder.decode(trackOutput.getSampleData(2));
+    assertThat(cues2).hasSize(1);
+    assertThat(cues2.get(0).text.toString()).isEqualTo("This is the second subtitle.");
+    List<Cue> cues3 = decoder.decode(trackOutput.getSampleData(3));
+    assertThat(cues3).hasSize(2);
+    assertThat(cues3.get(0).text.toString()).isEqualTo("This is the second subtitle.");
+    assertThat(cues3.get(1).text.toString()).isEqualTo("This is the third subtitle.");
+    List<Cue> cues4 = decoder.decode(trackOutput.getSampleData(4));
+    assertThat(cues4).hasSize(1);
+    assertThat(cues4.get(0).text.toString()).isEqualTo("This is the third subtitle.");
+    List<Cue> cues5 = decoder.decode(trackOutput.getSampleData(5));
+    assertThat(cues5).isEmpty();
+  }
+
+  @Test
+  public void extractor_withStreamingParser_outputsSamplesBeforeEndOfInput() throws Exception {
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(Util.getUtf8Bytes(TEST_DATA))
+            .setSimulatePartialReads(true)
+            .build();
+    SubtitleExtractor extractor =
+        new SubtitleExtractor(
+            new WebvttStreamingParser(),
+            new Format.Builder().setSampleMimeType(MimeTypes.TEXT_VTT).build());
+    extractor.init(output);
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+
+    while (trackOutput.getSampleCount() == 0) {
+      assertThat(extractor.read(input, null)).isEqualTo(Extractor.RESULT_CONTINUE);
+    }
+
+    assertThat(input.getPosition()).isLessThan(TEST_DATA.length());
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(0L);
+  }
+
+  @Test
+  public void extractor_withStreamingParser_seekAfterExtracting_outputsCues() throws Exception {
+    CueDecoder decoder = new CueDecoder();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(Util.getUtf8Bytes(TEST_DATA))
+            .setSimulatePartialReads(true)
+            .build();
+    SubtitleExtractor extractor =
+        new SubtitleExtractor(
+            new WebvttStreamingParser(),
+            new Format.Builder().setSampleMimeType(MimeTypes.TEXT_VTT).build());
+    extractor.init(output);
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+    extractor.seek((int) output.seekMap.getSeekPoints(2_445_000L).first.position, 2_445_000L);
+    input.setPosition((int) output.seekMap.getSeekPoints(2_445_000L).first.position);
+    trackOutput.clear();
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+
+    assertThat(trackOutput.getSampleCount()).isEqualTo(4);
+    // Check sample timestamps.
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(2_345_000L);
+    assertThat(trackOutput.getSampleTimeUs(1)).isEqualTo(2_600_000L);
+    assertThat(trackOutput.getSampleTimeUs(2)).isEqualTo(3_456_000L);
+    assertThat(trackOutput.getSampleTimeUs(3)).isEqualTo(4_567_000L);
+    // Check sample content.
+    List<Cue> cues0 = decoder.decode(trackOutput.getSampleData(0));
+    assertThat(cues0).hasSize(1);
+    assertThat(cues0.get(0).text.toString()).isEqualTo("This is the second subtitle.");
+    List<Cue> cues3 = decoder.decode(trackOutput.getSampleData(3));
+    assertThat(cues3).isEmpty();
+  }
+
   @Test
   public void read_withoutInit_fails() {
     FakeExtractorInput input = new FakeExtractorInput.Builder().setData(new byte[0]).build();
@@ -91,6 +91,18 @@ public final class TtmlDecoderTest {
         .withColor(ColorParser.parseTtmlColor("yellow"));
   }
 
+  @Test
+  public void getCues_withinSameInterval_returnsCachedCues()
+      throws IOException, SubtitleDecoderException {
+    TtmlSubtitle subtitle = getSubtitle(INLINE_ATTRIBUTES_TTML_FILE);
+    long eventTimeUs = subtitle.getEventTime(0);
+
+    List<Cue> cues = subtitle.getCues(eventTimeUs);
+
+    assertThat(cues).hasSize(1);
+    assertThat(subtitle.getCues(eventTimeUs + 1)).isSameInstanceAs(cues);
+  }
+
   @Test
   public void inheritInlineAttributes() throws IOException, SubtitleDecoderException {
     TtmlSubtitle subtitle = getSubtitle(INLINE_ATTRIBUTES_TTML_FILE);
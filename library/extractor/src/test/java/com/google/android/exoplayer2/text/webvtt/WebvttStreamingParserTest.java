@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text.webvtt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.StreamingSubtitleParser;
+import com.google.android.exoplayer2.text.Subtitle;
+import com.google.android.exoplayer2.text.SubtitleDecoderException;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link WebvttStreamingParser}. */
+@RunWith(AndroidJUnit4.class)
+public final class WebvttStreamingParserTest {
+
+  private static final ImmutableList<String> FILES =
+      ImmutableList.of(
+          "media/webvtt/typical",
+          "media/webvtt/typical_with_comments",
+          "media/webvtt/with_overlapping_timestamps",
+          "media/webvtt/with_css_styles",
+          "media/webvtt/with_bom",
+          "media/webvtt/with_positioning");
+
+  private static final String TEST_DATA =
+      "WEBVTT\n"
+          + "\n"
+          + "00:00.000 --> 00:01.234\n"
+          + "This is the first subtitle.\n"
+          + "\n"
+          + "00:02.345 --> 00:03.456\n"
+          + "This is the second subtitle.\n"
+          + "\n"
+          + "00:02.600 --> 00:04.567\n"
+          + "This is the third subtitle.\n";
+
+  @Test
+  public void parse_outputsSameCuesAsDecoder() throws Exception {
+    for (String file : FILES) {
+      byte[] bytes = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), file);
+      Subtitle subtitle = new WebvttDecoder().decode(bytes, bytes.length, /* reset= */ false);
+      List<Long> expectedTimesUs = new ArrayList<>();
+      List<List<String>> expectedCueTexts = new ArrayList<>();
+      for (int i = 0; i < subtitle.getEventTimeCount(); i++) {
+        long timeUs = subtitle.getEventTime(i);
+        if (!expectedTimesUs.contains(timeUs)) {
+          expectedTimesUs.add(timeUs);
+          expectedCueTexts.add(getTexts(subtitle.getCues(timeUs)));
+        }
+      }
+
+      for (int chunkSize : new int[] {1, 7, bytes.length}) {
+        RecordingOutput output = new RecordingOutput();
+        parseInChunks(new WebvttStreamingParser(), bytes, chunkSize, output);
+
+        assertThat(output.timesUs).containsExactlyElementsIn(expectedTimesUs).inOrder();
+        assertThat(output.cueTexts).containsExactlyElementsIn(expectedCueTexts).inOrder();
+      }
+    }
+  }
+
+  @Test
+  public void parse_withIncompleteData_outputsCuesThatAreFinal() throws Exception {
+    byte[] bytes = Util.getUtf8Bytes(TEST_DATA);
+    // Split the data in the middle of the timing line of the third cue.
+    int splitPosition = TEST_DATA.indexOf("00:04.567");
+    ParsableByteArray data = new ParsableByteArray(bytes.length);
+    data.setLimit(0);
+    WebvttStreamingParser parser = new WebvttStreamingParser();
+    RecordingOutput output = new RecordingOutput();
+
+    append(data, bytes, /* offset= */ 0, splitPosition);
+    parser.parse(data, /* endOfInput= */ false, output);
+
+    assertThat(output.timesUs).containsExactly(0L, 1_234_000L).inOrder();
+    assertThat(output.cueTexts)
+        .containsExactly(ImmutableList.of("This is the first subtitle."), ImmutableList.of())
+        .inOrder();
+    assertThat(data.getPosition()).isEqualTo(TEST_DATA.indexOf("00:02.600"));
+
+    append(data, bytes, splitPosition, bytes.length - splitPosition);
+    parser.parse(data, /* endOfInput= */ true, output);
+
+    assertThat(output.timesUs)
+        .containsExactly(0L, 1_234_000L, 2_345_000L, 2_600_000L, 3_456_000L, 4_567_000L)
+        .inOrder();
+    assertThat(output.cueTexts.get(3))
+        .containsExactly("This is the second subtitle.", "This is the third subtitle.")
+        .inOrder();
+    assertThat(data.bytesLeft()).isEqualTo(0);
+  }
+
+  @Test
+  public void parse_withCarriageReturnsSplitAcrossCalls_outputsCues() throws Exception {
+    byte[] bytes = Util.getUtf8Bytes(TEST_DATA.replace("\n", "\r\n"));
+    RecordingOutput output = new RecordingOutput();
+
+    parseInChunks(new WebvttStreamingParser(), bytes, /* chunkSize= */ 1, output);
+
+    assertThat(output.timesUs)
+        .containsExactly(0L, 1_234_000L, 2_345_000L, 2_600_000L, 3_456_000L, 4_567_000L)
+        .inOrder();
+    assertThat(output.cueTexts.get(0)).containsExactly("This is the first subtitle.");
+  }
+
+  @Test
+  public void parse_afterReset_outputsCuesAgain() throws Exception {
+    byte[] bytes = Util.getUtf8Bytes(TEST_DATA);
+    WebvttStreamingParser parser = new WebvttStreamingParser();
+    parseInChunks(parser, bytes, /* chunkSize= */ 5, new RecordingOutput());
+    RecordingOutput output = new RecordingOutput();
+
+    parser.reset();
+    parseInChunks(parser, bytes, /* chunkSize= */ 5, output);
+
+    assertThat(output.timesUs).hasSize(6);
+    assertThat(output.timesUs.get(0)).isEqualTo(0L);
+  }
+
+  @Test
+  public void parse_withInvalidHeader_throws() {
+    byte[] bytes = Util.getUtf8Bytes("NOT WEBVTT\n\n00:00.000 --> 00:01.000\nText\n");
+
+    assertThrows(
+        SubtitleDecoderException.class,
+        () ->
+            parseInChunks(
+                new WebvttStreamingParser(), bytes, bytes.length, new RecordingOutput()));
+  }
+
+  @Test
+  public void parse_withStyleBlockAfterCue_throws() {
+    byte[] bytes =
+        Util.getUtf8Bytes(
+            "WEBVTT\n\n00:00.000 --> 00:01.000\nText\n\nSTYLE\n::cue {color: red}\n\n");
+
+    assertThrows(
+        SubtitleDecoderException.class,
+        () ->
+            parseInChunks(
+                new WebvttStreamingParser(), bytes, /* chunkSize= */ 3, new RecordingOutput()));
+  }
+
+  private static void parseInChunks(
+      WebvttStreamingParser parser,
+      byte[] bytes,
+      int chunkSize,
+      StreamingSubtitleParser.Output output)
+      throws SubtitleDecoderException {
+    ParsableByteArray data = new ParsableByteArray(bytes.length);
+    data.setLimit(0);
+    int bytesAppended = 0;
+    while (bytesAppended < bytes.length) {
+      int length = Math.min(chunkSize, bytes.length - bytesAppended);
+      append(data, bytes, bytesAppended, length);
+      bytesAppended += length;
+      parser.parse(data, /* endOfInput= */ bytesAppended == bytes.length, output);
+    }
+  }
+
+  private static void append(ParsableByteArray data, byte[] bytes, int offset, int length) {
+    System.arraycopy(bytes, offset, data.getData(), data.limit(), length);
+    data.setLimit(data.limit() + length);
+  }
+
+  private static List<String> getTexts(List<Cue> cues) {
+    List<String> texts = new ArrayList<>();
+    for (Cue cue : cues) {
+      texts.add(String.valueOf(cue.text));
+    }
+    return texts;
+  }
+
+  private static final class RecordingOutput implements StreamingSubtitleParser.Output {
+
+    private final List<Long> timesUs;
+    private final List<List<String>> cueTexts;
+
+    private RecordingOutput() {
+      timesUs = new ArrayList<>();
+      cueTexts = new ArrayList<>();
+    }
+
+    @Override
+    public void onCues(long timeUs, List<Cue> cues) {
+      timesUs.add(timeUs);
+      cueTexts.add(getTexts(cues));
+    }
+  }
+}
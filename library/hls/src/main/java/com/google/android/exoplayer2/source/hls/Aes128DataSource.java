@@ -15,25 +15,27 @@
  */
 package com.google.android.exoplayer2.source.hls;
 
+import static java.lang.Math.min;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DataSourceInputStream;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
+import java.io.EOFException;
 import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.AlgorithmParameterSpec;
 import java.util.List;
 import java.util.Map;
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -41,27 +43,74 @@ import javax.crypto.spec.SecretKeySpec;
  * A {@link DataSource} that decrypts data read from an upstream source, encrypted with AES-128 with
  * a 128-bit key and PKCS7 padding.
  *
- * <p>Note that this {@link DataSource} does not support being opened from arbitrary offsets. It is
- * designed specifically for reading whole files as defined in an HLS media playlist. For this
- * reason the implementation is private to the HLS package.
+ * <p>Encrypted data is read into an internal buffer, and whole cipher blocks are decrypted from it
+ * directly into the buffers passed to {@link #read(byte[], int, int)}. Partial blocks are kept in
+ * the internal buffer rather than in the {@link Cipher}, so the output of each {@link
+ * Cipher#update} call doesn't depend on how the cipher provider buffers input. The padding of the
+ * final block is removed by this class.
+ *
+ * <p>Note that this {@link DataSource} is designed specifically for reading whole files as defined
+ * in an HLS media playlist. If it's created with a segment start position, it can be opened part
+ * way through a file, in which case decryption starts from the cipher block that contains the
+ * requested position rather than from the start of the file. For this reason the implementation is
+ * private to the HLS package.
  */
 /* package */ class Aes128DataSource implements DataSource {
 
+  private static final int AES_BLOCK_SIZE = 16;
+  private static final int SCRATCH_BUFFER_SIZE = 4 * 1024;
+  private static final int ENCRYPTED_BUFFER_SIZE = 16 * 1024;
+
   private final DataSource upstream;
   private final byte[] encryptionKey;
   private final byte[] encryptionIv;
+  private final long segmentStartPosition;
+
+  /**
+   * The last decrypted block, which isn't output until the next block has been decrypted because
+   * it may contain padding.
+   */
+  private byte[] heldBackBlock;
 
-  @Nullable private CipherInputStream cipherInputStream;
+  private byte[] heldBackBlockSwap;
+  @Nullable private byte[] encryptedBuffer;
+  @Nullable private byte[] scratchBuffer;
+  @Nullable private Cipher cipher;
+  private int heldBackLength;
+  private int encryptedLength;
+  private int scratchBufferPosition;
+  private int scratchBufferLimit;
+  private boolean upstreamEnded;
 
   /**
+   * Creates an instance that assumes the position of each {@link DataSpec} passed to {@link
+   * #open(DataSpec)} is the start of the encrypted file.
+   *
    * @param upstream The upstream {@link DataSource}.
    * @param encryptionKey The encryption key.
    * @param encryptionIv The encryption initialization vector.
    */
   public Aes128DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
+    this(upstream, encryptionKey, encryptionIv, /* segmentStartPosition= */ C.POSITION_UNSET);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param encryptionKey The encryption key.
+   * @param encryptionIv The encryption initialization vector.
+   * @param segmentStartPosition The position in the upstream resource at which the encrypted file
+   *     starts, for opening the source with a {@link DataSpec} that starts part way through the
+   *     file, or {@link C#POSITION_UNSET} if the position of each {@link DataSpec} passed to {@link
+   *     #open(DataSpec)} is the start of the file.
+   */
+  public Aes128DataSource(
+      DataSource upstream, byte[] encryptionKey, byte[] encryptionIv, long segmentStartPosition) {
     this.upstream = upstream;
     this.encryptionKey = encryptionKey;
     this.encryptionIv = encryptionIv;
+    this.segmentStartPosition = segmentStartPosition;
+    heldBackBlock = new byte[AES_BLOCK_SIZE];
+    heldBackBlockSwap = new byte[AES_BLOCK_SIZE];
   }
 
   @Override
@@ -78,31 +127,83 @@ import javax.crypto.spec.SecretKeySpec;
     } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
       throw new RuntimeException(e);
     }
+    this.cipher = cipher;
+    heldBackLength = 0;
+    encryptedLength = 0;
+    scratchBufferPosition = 0;
+    scratchBufferLimit = 0;
+    upstreamEnded = false;
 
-    Key cipherKey = new SecretKeySpec(encryptionKey, "AES");
-    AlgorithmParameterSpec cipherIV = new IvParameterSpec(encryptionIv);
+    // Decryption of a CBC block only depends on the previous encrypted block, so data part way
+    // through the file can be decrypted by starting from the block that contains it, using the
+    // previous encrypted block as the initialization vector.
+    long offsetInSegment =
+        segmentStartPosition == C.POSITION_UNSET ? 0 : dataSpec.position - segmentStartPosition;
+    Assertions.checkArgument(offsetInSegment >= 0);
+    long blockOffset = offsetInSegment - offsetInSegment % AES_BLOCK_SIZE;
+    long upstreamOffset = blockOffset == 0 ? 0 : blockOffset - AES_BLOCK_SIZE;
+    long upstreamPosition = dataSpec.position - offsetInSegment + upstreamOffset;
+    DataSpec upstreamDataSpec =
+        dataSpec
+            .buildUpon()
+            .setPosition(upstreamPosition)
+            .setLength(
+                dataSpec.length == C.LENGTH_UNSET
+                    ? C.LENGTH_UNSET
+                    : dataSpec.position + dataSpec.length - upstreamPosition)
+            .build();
 
+    upstream.open(upstreamDataSpec);
+    byte[] iv = encryptionIv;
+    if (blockOffset != 0) {
+      iv = new byte[AES_BLOCK_SIZE];
+      readUpstreamFully(iv);
+    }
+    Key cipherKey = new SecretKeySpec(encryptionKey, "AES");
     try {
-      cipher.init(Cipher.DECRYPT_MODE, cipherKey, cipherIV);
+      cipher.init(Cipher.DECRYPT_MODE, cipherKey, new IvParameterSpec(iv));
     } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
       throw new RuntimeException(e);
     }
-
-    DataSourceInputStream inputStream = new DataSourceInputStream(upstream, dataSpec);
-    cipherInputStream = new CipherInputStream(inputStream, cipher);
-    inputStream.open();
+    skipFully((int) (offsetInSegment - blockOffset));
 
     return C.LENGTH_UNSET;
   }
 
   @Override
   public final int read(byte[] buffer, int offset, int length) throws IOException {
-    Assertions.checkNotNull(cipherInputStream);
-    int bytesRead = cipherInputStream.read(buffer, offset, length);
-    if (bytesRead < 0) {
-      return C.RESULT_END_OF_INPUT;
+    if (length == 0) {
+      return 0;
+    }
+    while (true) {
+      if (scratchBufferPosition < scratchBufferLimit) {
+        int bytesToCopy = min(length, scratchBufferLimit - scratchBufferPosition);
+        byte[] scratchBuffer = Assertions.checkNotNull(this.scratchBuffer);
+        System.arraycopy(scratchBuffer, scratchBufferPosition, buffer, offset, bytesToCopy);
+        scratchBufferPosition += bytesToCopy;
+        return bytesToCopy;
+      } else if (upstreamEnded) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      if (length - heldBackLength >= AES_BLOCK_SIZE) {
+        // Decrypt directly into the caller's buffer.
+        int bytesDecrypted = readAndDecrypt(buffer, offset, length);
+        if (bytesDecrypted > 0) {
+          return bytesDecrypted;
+        }
+      } else {
+        // The caller's buffer is too small to hold the held back block and a block of new data, so
+        // decrypt into the scratch buffer.
+        if (scratchBuffer == null) {
+          scratchBuffer = new byte[SCRATCH_BUFFER_SIZE];
+        }
+        int bytesDecrypted = readAndDecrypt(scratchBuffer, 0, scratchBuffer.length);
+        if (bytesDecrypted != C.RESULT_END_OF_INPUT) {
+          scratchBufferPosition = 0;
+          scratchBufferLimit = bytesDecrypted;
+        }
+      }
     }
-    return bytesRead;
   }
 
   @Override
@@ -118,13 +219,120 @@ import javax.crypto.spec.SecretKeySpec;
 
   @Override
   public void close() throws IOException {
-    if (cipherInputStream != null) {
-      cipherInputStream = null;
+    if (cipher != null) {
+      cipher = null;
       upstream.close();
     }
   }
 
   protected Cipher getCipherInstance() throws NoSuchPaddingException, NoSuchAlgorithmException {
-    return Cipher.getInstance("AES/CBC/PKCS7Padding");
+    return Cipher.getInstance("AES/CBC/NoPadding");
+  }
+
+  /**
+   * Reads encrypted data from upstream and decrypts the whole cipher blocks that are available into
+   * {@code target}.
+   *
+   * <p>The decrypted data is output after the held back block, and the last decrypted block is held
+   * back in its place. When the upstream source ends, the held back block's padding is removed and
+   * the remaining data is written to the scratch buffer.
+   *
+   * @param target The array into which data is decrypted.
+   * @param offset The offset in {@code target} at which to start writing.
+   * @param length The maximum number of bytes to write, which must be at least the held back length
+   *     plus the AES block size.
+   * @return The number of bytes of decrypted data written at {@code offset}, or {@link
+   *     C#RESULT_END_OF_INPUT} if the upstream source has ended.
+   */
+  private int readAndDecrypt(byte[] target, int offset, int length) throws IOException {
+    Cipher cipher = Assertions.checkNotNull(this.cipher);
+    if (encryptedBuffer == null) {
+      encryptedBuffer = new byte[ENCRYPTED_BUFFER_SIZE];
+    }
+    byte[] encryptedBuffer = this.encryptedBuffer;
+    // Only read as much as can be decrypted into the space after the held back block.
+    int bytesToRead = min(encryptedBuffer.length, length - heldBackLength) - encryptedLength;
+    int bytesRead = upstream.read(encryptedBuffer, encryptedLength, bytesToRead);
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      onUpstreamEnded();
+      return C.RESULT_END_OF_INPUT;
+    }
+    int availableLength = encryptedLength + bytesRead;
+    int alignedLength = availableLength - availableLength % AES_BLOCK_SIZE;
+    if (alignedLength == 0) {
+      encryptedLength = availableLength;
+      return 0;
+    }
+    int dataOffset = offset + heldBackLength;
+    int bytesDecrypted;
+    try {
+      bytesDecrypted = cipher.update(encryptedBuffer, 0, alignedLength, target, dataOffset);
+    } catch (ShortBufferException e) {
+      // Never happens, since at most length - heldBackLength bytes are decrypted.
+      throw new IllegalStateException(e);
+    }
+    // Whole blocks are decrypted without padding, so nothing is buffered in the cipher.
+    Assertions.checkState(bytesDecrypted == alignedLength);
+    encryptedLength = availableLength - alignedLength;
+    System.arraycopy(encryptedBuffer, alignedLength, encryptedBuffer, 0, encryptedLength);
+    int outputLength = heldBackLength + bytesDecrypted - AES_BLOCK_SIZE;
+    System.arraycopy(
+        target, dataOffset + bytesDecrypted - AES_BLOCK_SIZE, heldBackBlockSwap, 0, AES_BLOCK_SIZE);
+    System.arraycopy(heldBackBlock, 0, target, offset, heldBackLength);
+    byte[] swap = heldBackBlock;
+    heldBackBlock = heldBackBlockSwap;
+    heldBackBlockSwap = swap;
+    heldBackLength = AES_BLOCK_SIZE;
+    return outputLength;
+  }
+
+  private void onUpstreamEnded() throws ParserException {
+    upstreamEnded = true;
+    if (encryptedLength != 0) {
+      throw ParserException.createForMalformedContainer(
+          "Encrypted data isn't a multiple of the AES block size", /* cause= */ null);
+    }
+    if (heldBackLength == 0) {
+      return;
+    }
+    int paddingLength = heldBackBlock[AES_BLOCK_SIZE - 1] & 0xFF;
+    if (paddingLength == 0 || paddingLength > AES_BLOCK_SIZE) {
+      throw ParserException.createForMalformedContainer("Invalid PKCS7 padding", /* cause= */ null);
+    }
+    for (int i = AES_BLOCK_SIZE - paddingLength; i < AES_BLOCK_SIZE - 1; i++) {
+      if ((heldBackBlock[i] & 0xFF) != paddingLength) {
+        throw ParserException.createForMalformedContainer(
+            "Invalid PKCS7 padding", /* cause= */ null);
+      }
+    }
+    if (scratchBuffer == null) {
+      scratchBuffer = new byte[SCRATCH_BUFFER_SIZE];
+    }
+    System.arraycopy(heldBackBlock, 0, scratchBuffer, 0, AES_BLOCK_SIZE - paddingLength);
+    scratchBufferPosition = 0;
+    scratchBufferLimit = AES_BLOCK_SIZE - paddingLength;
+    heldBackLength = 0;
+  }
+
+  private void readUpstreamFully(byte[] target) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead < target.length) {
+      int result = upstream.read(target, bytesRead, target.length - bytesRead);
+      if (result == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      bytesRead += result;
+    }
+  }
+
+  private void skipFully(int length) throws IOException {
+    byte[] skipBuffer = new byte[AES_BLOCK_SIZE];
+    while (length > 0) {
+      int bytesSkipped = read(skipBuffer, 0, min(length, skipBuffer.length));
+      if (bytesSkipped == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      length -= bytesSkipped;
+    }
   }
 }
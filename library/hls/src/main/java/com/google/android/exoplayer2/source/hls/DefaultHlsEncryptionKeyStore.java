@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Default {@link HlsEncryptionKeyStore} implementation.
+ *
+ * <p>Keys are held in memory up to a maximum count, evicting the least recently used key when the
+ * count is exceeded, and optionally expire after a fixed time to live. The keys can also be
+ * persisted to a file, encrypted with an application provided secret key, so that they survive the
+ * process and can be used for offline playback. Prefetched keys are loaded on a background {@link
+ * Executor}.
+ *
+ * <p>The persisted keys are read, and changes are written, on the same {@link Executor}, so that
+ * file access and decryption don't block the calling thread. Until the persisted keys have been
+ * read, only keys that were put since the store was created are returned. Changes made in quick
+ * succession are written to the file once.
+ */
+public final class DefaultHlsEncryptionKeyStore implements HlsEncryptionKeyStore {
+
+  /** Builder for {@link DefaultHlsEncryptionKeyStore} instances. */
+  public static final class Builder {
+
+    private int maxKeyCount;
+    private long keyTtlMs;
+    @Nullable private File storageFile;
+    @Nullable private byte[] storageSecretKey;
+    @Nullable private Executor prefetchExecutor;
+    private Clock clock;
+
+    /** Creates an instance. */
+    public Builder() {
+      maxKeyCount = DEFAULT_MAX_KEY_COUNT;
+      keyTtlMs = C.TIME_UNSET;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the maximum number of keys held by the store. When a key is added to a full store, the
+     * least recently used key is evicted.
+     *
+     * <p>The default value is {@link #DEFAULT_MAX_KEY_COUNT}.
+     *
+     * @param maxKeyCount The maximum number of keys.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxKeyCount(int maxKeyCount) {
+      checkArgument(maxKeyCount > 0);
+      this.maxKeyCount = maxKeyCount;
+      return this;
+    }
+
+    /**
+     * Sets the time after which a key is removed from the store, measured from when it was added.
+     *
+     * <p>The default value is {@link C#TIME_UNSET}.
+     *
+     * @param keyTtlMs The time to live of a key in milliseconds, or {@link C#TIME_UNSET} if keys
+     *     don't expire.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setKeyTtlMs(long keyTtlMs) {
+      checkArgument(keyTtlMs > 0 || keyTtlMs == C.TIME_UNSET);
+      this.keyTtlMs = keyTtlMs;
+      return this;
+    }
+
+    /**
+     * Sets the file to which keys are persisted. The file is encrypted using AES-CBC with {@code
+     * secretKey}. If the file can't be read or decrypted, for example because the secret key has
+     * changed, then it's discarded.
+     *
+     * <p>By default keys aren't persisted.
+     *
+     * @param storageFile The file to which keys are persisted.
+     * @param secretKey A 16 byte AES key with which the file is encrypted.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setPersistentStorage(File storageFile, byte[] secretKey) {
+      checkArgument(secretKey.length == 16);
+      this.storageFile = storageFile;
+      this.storageSecretKey = secretKey;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which prefetched keys are loaded, and on which the persistent
+     * storage is read and written.
+     *
+     * <p>The default value is a shared executor that uses a single thread, which is stopped when
+     * idle.
+     *
+     * @param prefetchExecutor The {@link Executor} on which prefetched keys are loaded and the
+     *     persistent storage is accessed.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setPrefetchExecutor(Executor prefetchExecutor) {
+      this.prefetchExecutor = prefetchExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to expire keys. Should only be set for testing purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    @VisibleForTesting
+    /* package */ Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds a {@link DefaultHlsEncryptionKeyStore}. */
+    public DefaultHlsEncryptionKeyStore build() {
+      return new DefaultHlsEncryptionKeyStore(this);
+    }
+  }
+
+  /** The default maximum number of keys held by the store. */
+  public static final int DEFAULT_MAX_KEY_COUNT = 32;
+
+  private static final String TAG = "HlsKeyStore";
+  private static final int VERSION = 1;
+  private static final int MAX_KEY_LENGTH = 1024;
+  private static final long SHARED_PREFETCH_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private static Executor sharedPrefetchExecutor;
+
+  private final int maxKeyCount;
+  private final long keyTtlMs;
+  @Nullable private final AtomicFile atomicFile;
+  @Nullable private final SecretKeySpec secretKeySpec;
+  private final Executor prefetchExecutor;
+  private final Clock clock;
+  private final Object storageLock;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Uri, Entry> entries;
+
+  @GuardedBy("this")
+  private final HashSet<Uri> prefetchingKeyUris;
+
+  @GuardedBy("this")
+  private boolean loadScheduled;
+
+  @GuardedBy("this")
+  private boolean loaded;
+
+  @GuardedBy("this")
+  private boolean storeScheduled;
+
+  private DefaultHlsEncryptionKeyStore(Builder builder) {
+    maxKeyCount = builder.maxKeyCount;
+    keyTtlMs = builder.keyTtlMs;
+    atomicFile = builder.storageFile != null ? new AtomicFile(builder.storageFile) : null;
+    secretKeySpec =
+        builder.storageSecretKey != null
+            ? new SecretKeySpec(builder.storageSecretKey, "AES")
+            : null;
+    prefetchExecutor =
+        builder.prefetchExecutor != null ? builder.prefetchExecutor : getSharedPrefetchExecutor();
+    clock = builder.clock;
+    entries =
+        new LinkedHashMap<Uri, Entry>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Uri, Entry> eldest) {
+            return size() > maxKeyCount;
+          }
+        };
+    prefetchingKeyUris = new HashSet<>();
+    storageLock = new Object();
+    loadScheduled = atomicFile == null;
+    loaded = atomicFile == null;
+  }
+
+  @Override
+  @Nullable
+  public byte[] get(Uri keyUri) {
+    maybeScheduleLoad();
+    synchronized (this) {
+      return getInternal(keyUri);
+    }
+  }
+
+  @Override
+  public void put(Uri keyUri, byte[] key) {
+    maybeScheduleLoad();
+    synchronized (this) {
+      long expiryTimeMs =
+          keyTtlMs == C.TIME_UNSET ? C.TIME_UNSET : clock.currentTimeMillis() + keyTtlMs;
+      entries.put(checkNotNull(keyUri), new Entry(checkNotNull(key), expiryTimeMs));
+      if (atomicFile == null || storeScheduled) {
+        return;
+      }
+      storeScheduled = true;
+      if (!loaded) {
+        // The keys are stored once the persisted keys have been loaded.
+        return;
+      }
+    }
+    prefetchExecutor.execute(this::storeKeys);
+  }
+
+  @Override
+  public void prefetch(Uri keyUri, DataSource.Factory dataSourceFactory) {
+    maybeScheduleLoad();
+    synchronized (this) {
+      if (getInternal(keyUri) != null || !prefetchingKeyUris.add(keyUri)) {
+        return;
+      }
+    }
+    prefetchExecutor.execute(() -> loadKey(keyUri, dataSourceFactory));
+  }
+
+  /** Removes all keys from the store, and deletes the persisted keys if persistence is enabled. */
+  public void clear() {
+    synchronized (this) {
+      entries.clear();
+      // Discard the persisted keys, even if they're still being loaded.
+      loadScheduled = true;
+      loaded = true;
+      storeScheduled = false;
+    }
+    if (atomicFile != null) {
+      prefetchExecutor.execute(this::deleteKeys);
+    }
+  }
+
+  private void loadKey(Uri keyUri, DataSource.Factory dataSourceFactory) {
+    DataSource dataSource = dataSourceFactory.createDataSource();
+    try {
+      dataSource.open(
+          new DataSpec.Builder().setUri(keyUri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build());
+      put(keyUri, DataSourceUtil.readToEnd(dataSource));
+    } catch (IOException e) {
+      // The key will be loaded again when it's needed.
+      Log.w(TAG, "Failed to prefetch key", e);
+    } finally {
+      DataSourceUtil.closeQuietly(dataSource);
+      synchronized (this) {
+        prefetchingKeyUris.remove(keyUri);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private byte[] getInternal(Uri keyUri) {
+    @Nullable Entry entry = entries.get(keyUri);
+    if (entry == null) {
+      return null;
+    } else if (isExpired(entry)) {
+      entries.remove(keyUri);
+      return null;
+    }
+    return entry.key;
+  }
+
+  private boolean isExpired(Entry entry) {
+    return entry.expiryTimeMs != C.TIME_UNSET && clock.currentTimeMillis() >= entry.expiryTimeMs;
+  }
+
+  private void maybeScheduleLoad() {
+    synchronized (this) {
+      if (loadScheduled) {
+        return;
+      }
+      loadScheduled = true;
+    }
+    prefetchExecutor.execute(this::loadKeys);
+  }
+
+  private void loadKeys() {
+    AtomicFile atomicFile = checkNotNull(this.atomicFile);
+    LinkedHashMap<Uri, Entry> persistedEntries = new LinkedHashMap<>();
+    synchronized (storageLock) {
+      if (atomicFile.exists()) {
+        try {
+          readFile(atomicFile, persistedEntries);
+        } catch (IOException | GeneralSecurityException e) {
+          Log.w(TAG, "Discarding persisted keys", e);
+          persistedEntries.clear();
+          atomicFile.delete();
+        }
+      }
+    }
+    boolean store;
+    synchronized (this) {
+      if (loaded) {
+        // The store was cleared while loading.
+        return;
+      }
+      loaded = true;
+      // Keys that were put while loading are more recent than the persisted keys.
+      LinkedHashMap<Uri, Entry> newEntries = new LinkedHashMap<>(entries);
+      entries.clear();
+      entries.putAll(persistedEntries);
+      entries.putAll(newEntries);
+      store = storeScheduled;
+    }
+    if (store) {
+      storeKeys();
+    }
+  }
+
+  private void storeKeys() {
+    AtomicFile atomicFile = checkNotNull(this.atomicFile);
+    synchronized (storageLock) {
+      LinkedHashMap<Uri, Entry> entriesToStore;
+      synchronized (this) {
+        if (!storeScheduled) {
+          // The store was cleared.
+          return;
+        }
+        storeScheduled = false;
+        entriesToStore = new LinkedHashMap<>(entries);
+      }
+      try {
+        writeFile(atomicFile, entriesToStore);
+      } catch (IOException | GeneralSecurityException e) {
+        // The keys are still held in memory.
+        Log.w(TAG, "Failed to persist keys", e);
+      }
+    }
+  }
+
+  private void deleteKeys() {
+    synchronized (storageLock) {
+      checkNotNull(atomicFile).delete();
+    }
+  }
+
+  private void readFile(AtomicFile atomicFile, Map<Uri, Entry> entries)
+      throws IOException, GeneralSecurityException {
+    @Nullable DataInputStream input = null;
+    try {
+      InputStream inputStream = new BufferedInputStream(atomicFile.openRead());
+      input = new DataInputStream(inputStream);
+      int version = input.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version: " + version);
+      }
+      byte[] initializationVector = new byte[16];
+      input.readFully(initializationVector);
+      Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      cipher.init(
+          Cipher.DECRYPT_MODE,
+          castNonNull(secretKeySpec),
+          new IvParameterSpec(initializationVector));
+      input = new DataInputStream(new CipherInputStream(inputStream, cipher));
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        Uri keyUri = Uri.parse(input.readUTF());
+        long expiryTimeMs = input.readLong();
+        int keyLength = input.readInt();
+        if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+          throw new IOException("Invalid key length: " + keyLength);
+        }
+        byte[] key = new byte[keyLength];
+        input.readFully(key);
+        Entry entry = new Entry(key, expiryTimeMs);
+        if (!isExpired(entry)) {
+          entries.put(keyUri, entry);
+        }
+      }
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void writeFile(AtomicFile atomicFile, Map<Uri, Entry> entries)
+      throws IOException, GeneralSecurityException {
+    @Nullable DataOutputStream output = null;
+    try {
+      OutputStream outputStream = new BufferedOutputStream(atomicFile.startWrite());
+      output = new DataOutputStream(outputStream);
+      output.writeInt(VERSION);
+      byte[] initializationVector = new byte[16];
+      new SecureRandom().nextBytes(initializationVector);
+      output.write(initializationVector);
+      Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      cipher.init(
+          Cipher.ENCRYPT_MODE,
+          castNonNull(secretKeySpec),
+          new IvParameterSpec(initializationVector));
+      output.flush();
+      output = new DataOutputStream(new CipherOutputStream(outputStream, cipher));
+      output.writeInt(entries.size());
+      for (Map.Entry<Uri, Entry> entry : entries.entrySet()) {
+        output.writeUTF(entry.getKey().toString());
+        output.writeLong(entry.getValue().expiryTimeMs);
+        output.writeInt(entry.getValue().key.length);
+        output.write(entry.getValue().key);
+      }
+      atomicFile.endWrite(output);
+      // Avoid calling close twice, since CipherOutputStream.close isn't idempotent on all API
+      // levels.
+      output = null;
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  private static synchronized Executor getSharedPrefetchExecutor() {
+    if (sharedPrefetchExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              SHARED_PREFETCH_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "ExoPlayer:HlsKeyPrefetch"));
+      executor.allowCoreThreadTimeOut(true);
+      sharedPrefetchExecutor = executor;
+    }
+    return sharedPrefetchExecutor;
+  }
+
+  private static final class Entry {
+
+    public final byte[] key;
+    public final long expiryTimeMs;
+
+    public Entry(byte[] key, long expiryTimeMs) {
+      this.key = key;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+}
@@ -120,6 +120,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private static final int KEY_CACHE_SIZE = 4;
 
   private final HlsExtractorFactory extractorFactory;
+  private final HlsDataSourceFactory dataSourceFactory;
   private final DataSource mediaDataSource;
   private final DataSource encryptionDataSource;
   private final TimestampAdjusterProvider timestampAdjusterProvider;
@@ -129,6 +130,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final TrackGroup trackGroup;
   @Nullable private final List<Format> muxedCaptionFormats;
   private final FullSegmentEncryptionKeyCache keyCache;
+  @Nullable private final HlsEncryptionKeyStore encryptionKeyStore;
   private final PlayerId playerId;
 
   private boolean isTimestampMaster;
@@ -160,6 +162,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     provider.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the multivariant playlist.
+   * @param encryptionKeyStore An {@link HlsEncryptionKeyStore} in which loaded encryption keys are
+   *     stored, and from which they're obtained before being loaded. May be null if keys should
+   *     only be held by this chunk source.
+   * @param playerId The {@link PlayerId} of the player using this chunk source.
    */
   public HlsChunkSource(
       HlsExtractorFactory extractorFactory,
@@ -170,13 +176,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       @Nullable TransferListener mediaTransferListener,
       TimestampAdjusterProvider timestampAdjusterProvider,
       @Nullable List<Format> muxedCaptionFormats,
+      @Nullable HlsEncryptionKeyStore encryptionKeyStore,
       PlayerId playerId) {
     this.extractorFactory = extractorFactory;
+    this.dataSourceFactory = dataSourceFactory;
     this.playlistTracker = playlistTracker;
     this.playlistUrls = playlistUrls;
     this.playlistFormats = playlistFormats;
     this.timestampAdjusterProvider = timestampAdjusterProvider;
     this.muxedCaptionFormats = muxedCaptionFormats;
+    this.encryptionKeyStore = encryptionKeyStore;
     this.playerId = playerId;
     keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
     scratchSpace = Util.EMPTY_BYTE_ARRAY;
@@ -493,6 +502,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return;
     }
 
+    maybePrefetchNextSegmentKey(playlist, segmentBaseHolder);
     out.chunk =
         HlsMediaChunk.createInstance(
             extractorFactory,
@@ -559,7 +569,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     if (chunk instanceof EncryptionKeyChunk) {
       EncryptionKeyChunk encryptionKeyChunk = (EncryptionKeyChunk) chunk;
       scratchSpace = encryptionKeyChunk.getDataHolder();
-      keyCache.put(encryptionKeyChunk.dataSpec.uri, checkNotNull(encryptionKeyChunk.getResult()));
+      Uri keyUri = encryptionKeyChunk.dataSpec.uri;
+      byte[] encryptionKey = checkNotNull(encryptionKeyChunk.getResult());
+      keyCache.put(keyUri, encryptionKey);
+      if (encryptionKeyStore != null) {
+        encryptionKeyStore.put(keyUri, encryptionKey);
+      }
     }
   }
 
@@ -831,6 +846,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       keyCache.put(keyUri, encryptionKey);
       return null;
     }
+    encryptionKey = encryptionKeyStore != null ? encryptionKeyStore.get(keyUri) : null;
+    if (encryptionKey != null) {
+      // Hold the key locally, so that it remains available for loading the segment even if it's
+      // subsequently evicted from the shared store.
+      keyCache.put(keyUri, encryptionKey);
+      return null;
+    }
     DataSpec dataSpec =
         new DataSpec.Builder().setUri(keyUri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
     return new EncryptionKeyChunk(
@@ -842,6 +864,27 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         scratchSpace);
   }
 
+  /**
+   * Requests that the store prefetches the encryption key of the segment following {@code
+   * segmentBaseHolder}, so that it's available by the time that segment is loaded.
+   */
+  private void maybePrefetchNextSegmentKey(
+      HlsMediaPlaylist playlist, SegmentBaseHolder segmentBaseHolder) {
+    if (encryptionKeyStore == null) {
+      return;
+    }
+    int nextSegmentIndex = (int) (segmentBaseHolder.mediaSequence + 1 - playlist.mediaSequence);
+    if (nextSegmentIndex >= playlist.segments.size()) {
+      return;
+    }
+    @Nullable
+    Uri keyUri = getFullEncryptionKeyUri(playlist, playlist.segments.get(nextSegmentIndex));
+    if (keyUri != null && !keyCache.containsUri(keyUri)) {
+      encryptionKeyStore.prefetch(
+          keyUri, () -> dataSourceFactory.createDataSource(C.DATA_TYPE_DRM));
+    }
+  }
+
   @Nullable
   private static Uri getFullEncryptionKeyUri(
       HlsMediaPlaylist playlist, @Nullable HlsMediaPlaylist.SegmentBase segmentBase) {
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+/**
+ * Stores the keys of fully encrypted (AES-128) HLS segments, so that they don't have to be
+ * requested again by each {@link HlsMediaSource}.
+ *
+ * <p>A single instance may be shared by media sources that belong to different players, so
+ * implementations must be thread-safe.
+ */
+public interface HlsEncryptionKeyStore {
+
+  /**
+   * Returns the key loaded from {@code keyUri}, or null if the store doesn't hold it.
+   *
+   * @param keyUri The {@link Uri} of the key.
+   * @return The key, or null if the store doesn't hold it.
+   */
+  @Nullable
+  byte[] get(Uri keyUri);
+
+  /**
+   * Adds a key to the store.
+   *
+   * @param keyUri The {@link Uri} from which the key was loaded.
+   * @param key The key.
+   */
+  void put(Uri keyUri, byte[] key);
+
+  /**
+   * Requests that the key at {@code keyUri} is loaded in the background and added to the store, so
+   * that it's available once the segment that needs it is loaded. Called for the key of the
+   * segment that follows the one being loaded.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @param keyUri The {@link Uri} of the key.
+   * @param dataSourceFactory A {@link DataSource.Factory} for the {@link DataSource} from which the
+   *     key should be loaded.
+   */
+  default void prefetch(Uri keyUri, DataSource.Factory dataSourceFactory) {}
+}
@@ -109,7 +109,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         mediaSegmentEncrypted
             ? getEncryptionIvArray(Assertions.checkNotNull(mediaSegment.encryptionIV))
             : null;
-    DataSource mediaDataSource = buildDataSource(dataSource, mediaSegmentKey, mediaSegmentIv);
+    DataSource mediaDataSource =
+        buildDataSource(dataSource, mediaSegmentKey, mediaSegmentIv, dataSpec.position);
 
     // Init segment.
     HlsMediaPlaylist.Segment initSegment = mediaSegment.initializationSegment;
@@ -126,7 +127,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       Uri initSegmentUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, initSegment.url);
       initDataSpec =
           new DataSpec(initSegmentUri, initSegment.byteRangeOffset, initSegment.byteRangeLength);
-      initDataSource = buildDataSource(dataSource, initSegmentKey, initSegmentIv);
+      initDataSource =
+          buildDataSource(dataSource, initSegmentKey, initSegmentIv, initDataSpec.position);
     }
 
     long segmentStartTimeInPeriodUs = startOfPlaylistInPeriodUs + mediaSegment.relativeStartTimeUs;
@@ -165,10 +167,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         mediaDataSource,
         dataSpec,
         format,
-        mediaSegmentEncrypted,
         initDataSource,
         initDataSpec,
-        initSegmentEncrypted,
         playlistUrl,
         muxedCaptionFormats,
         trackSelectionReason,
@@ -257,8 +257,6 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   @Nullable private final DrmInitData drmInitData;
   private final Id3Decoder id3Decoder;
   private final ParsableByteArray scratchId3Data;
-  private final boolean mediaSegmentEncrypted;
-  private final boolean initSegmentEncrypted;
   private final PlayerId playerId;
 
   private @MonotonicNonNull HlsMediaChunkExtractor extractor;
@@ -278,10 +276,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       DataSource mediaDataSource,
       DataSpec dataSpec,
       Format format,
-      boolean mediaSegmentEncrypted,
       @Nullable DataSource initDataSource,
       @Nullable DataSpec initDataSpec,
-      boolean initSegmentEncrypted,
       Uri playlistUrl,
       @Nullable List<Format> muxedCaptionFormats,
       @C.SelectionReason int trackSelectionReason,
@@ -310,14 +306,12 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         startTimeUs,
         endTimeUs,
         chunkMediaSequence);
-    this.mediaSegmentEncrypted = mediaSegmentEncrypted;
     this.partIndex = partIndex;
     this.isPublished = isPublished;
     this.discontinuitySequenceNumber = discontinuitySequenceNumber;
     this.initDataSpec = initDataSpec;
     this.initDataSource = initDataSource;
     this.initDataLoadRequired = initDataSpec != null;
-    this.initSegmentEncrypted = initSegmentEncrypted;
     this.playlistUrl = playlistUrl;
     this.isMasterTimestampSource = isMasterTimestampSource;
     this.timestampAdjuster = timestampAdjuster;
@@ -423,19 +417,14 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     // initDataLoadRequired =>  initDataSource != null && initDataSpec != null
     Assertions.checkNotNull(initDataSource);
     Assertions.checkNotNull(initDataSpec);
-    feedDataToExtractor(
-        initDataSource,
-        initDataSpec,
-        initSegmentEncrypted,
-        /* initializeTimestampAdjuster= */ false);
+    feedDataToExtractor(initDataSource, initDataSpec, /* initializeTimestampAdjuster= */ false);
     nextLoadPosition = 0;
     initDataLoadRequired = false;
   }
 
   @RequiresNonNull("output")
   private void loadMedia() throws IOException {
-    feedDataToExtractor(
-        dataSource, dataSpec, mediaSegmentEncrypted, /* initializeTimestampAdjuster= */ true);
+    feedDataToExtractor(dataSource, dataSpec, /* initializeTimestampAdjuster= */ true);
   }
 
   /**
@@ -445,30 +434,15 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    */
   @RequiresNonNull("output")
   private void feedDataToExtractor(
-      DataSource dataSource,
-      DataSpec dataSpec,
-      boolean dataIsEncrypted,
-      boolean initializeTimestampAdjuster)
+      DataSource dataSource, DataSpec dataSpec, boolean initializeTimestampAdjuster)
       throws IOException {
-    // If we previously fed part of this chunk to the extractor, we need to skip it this time. For
-    // encrypted content we need to skip the data by reading it through the source, so as to ensure
-    // correct decryption of the remainder of the chunk. For clear content, we can request the
-    // remainder of the chunk directly.
-    DataSpec loadDataSpec;
-    boolean skipLoadedBytes;
-    if (dataIsEncrypted) {
-      loadDataSpec = dataSpec;
-      skipLoadedBytes = nextLoadPosition != 0;
-    } else {
-      loadDataSpec = dataSpec.subrange(nextLoadPosition);
-      skipLoadedBytes = false;
-    }
+    // If we previously fed part of this chunk to the extractor, we need to skip it this time by
+    // requesting the remainder of the chunk. For encrypted content, the source decrypts the
+    // remainder starting from the cipher block that contains the next load position.
+    DataSpec loadDataSpec = dataSpec.subrange(nextLoadPosition);
     try {
       ExtractorInput input =
           prepareExtraction(dataSource, loadDataSpec, initializeTimestampAdjuster);
-      if (skipLoadedBytes) {
-        input.skipFully(nextLoadPosition);
-      }
       try {
         while (!loadCanceled && extractor.read(input)) {}
       } catch (EOFException e) {
@@ -616,14 +590,18 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * in order to decrypt the loaded data. Else returns the original.
    *
    * <p>{@code fullSegmentEncryptionKey} & {@code encryptionIv} can either both be null, or neither.
+   * {@code segmentStartPosition} is the position of the segment in the resource, which allows the
+   * returned source to be opened part way through the segment.
    */
   private static DataSource buildDataSource(
       DataSource dataSource,
       @Nullable byte[] fullSegmentEncryptionKey,
-      @Nullable byte[] encryptionIv) {
+      @Nullable byte[] encryptionIv,
+      long segmentStartPosition) {
     if (fullSegmentEncryptionKey != null) {
       Assertions.checkNotNull(encryptionIv);
-      return new Aes128DataSource(dataSource, fullSegmentEncryptionKey, encryptionIv);
+      return new Aes128DataSource(
+          dataSource, fullSegmentEncryptionKey, encryptionIv, segmentStartPosition);
     }
     return dataSource;
   }
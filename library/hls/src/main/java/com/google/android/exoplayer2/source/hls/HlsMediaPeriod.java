@@ -78,6 +78,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
   private final boolean allowChunklessPreparation;
   private final @HlsMediaSource.MetadataType int metadataType;
   private final boolean useSessionKeys;
+  @Nullable private final HlsEncryptionKeyStore encryptionKeyStore;
   private final PlayerId playerId;
   private final HlsSampleStreamWrapper.Callback sampleStreamWrapperCallback;
 
@@ -109,6 +110,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param encryptionKeyStore An {@link HlsEncryptionKeyStore} for encryption keys, or null if keys
+   *     should only be held by each chunk source.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -124,6 +127,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
       boolean allowChunklessPreparation,
       @HlsMediaSource.MetadataType int metadataType,
       boolean useSessionKeys,
+      @Nullable HlsEncryptionKeyStore encryptionKeyStore,
       PlayerId playerId) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
@@ -138,6 +142,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.encryptionKeyStore = encryptionKeyStore;
     this.playerId = playerId;
     sampleStreamWrapperCallback = new SampleStreamWrapperCallback();
     compositeSequenceableLoader =
@@ -771,6 +776,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
             mediaTransferListener,
             timestampAdjusterProvider,
             muxedCaptionFormats,
+            encryptionKeyStore,
             playerId);
     return new HlsSampleStreamWrapper(
         uid,
@@ -108,6 +108,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     private @MetadataType int metadataType;
     private boolean useSessionKeys;
+    @Nullable private HlsEncryptionKeyStore encryptionKeyStore;
     private long elapsedRealTimeOffsetMs;
 
     /**
@@ -298,6 +299,23 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link HlsEncryptionKeyStore} in which the keys of fully encrypted segments are
+     * stored. Sharing a store between factories, or between players, avoids loading the same keys
+     * multiple times. The store is also asked to prefetch the key of the next segment while the
+     * current segment is loading.
+     *
+     * <p>By default no store is used, and keys are only held by each media period.
+     *
+     * @param encryptionKeyStore The {@link HlsEncryptionKeyStore}, or null to not use a store.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setEncryptionKeyStore(@Nullable HlsEncryptionKeyStore encryptionKeyStore) {
+      this.encryptionKeyStore = encryptionKeyStore;
+      return this;
+    }
+
     @CanIgnoreReturnValue
     @Override
     public Factory setDrmSessionManagerProvider(
@@ -355,7 +373,8 @@ public final class HlsMediaSource extends BaseMediaSource
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
-          useSessionKeys);
+          useSessionKeys,
+          encryptionKeyStore);
     }
 
     @Override
@@ -373,6 +392,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  @Nullable private final HlsEncryptionKeyStore encryptionKeyStore;
   private final HlsPlaylistTracker playlistTracker;
   private final long elapsedRealTimeOffsetMs;
   private final MediaItem mediaItem;
@@ -391,7 +411,8 @@ public final class HlsMediaSource extends BaseMediaSource
       long elapsedRealTimeOffsetMs,
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      @Nullable HlsEncryptionKeyStore encryptionKeyStore) {
     this.localConfiguration = checkNotNull(mediaItem.localConfiguration);
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
@@ -405,6 +426,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.encryptionKeyStore = encryptionKeyStore;
   }
 
   @Override
@@ -447,6 +469,7 @@ public final class HlsMediaSource extends BaseMediaSource
         allowChunklessPreparation,
         metadataType,
         useSessionKeys,
+        encryptionKeyStore,
         getPlayerId());
   }
 
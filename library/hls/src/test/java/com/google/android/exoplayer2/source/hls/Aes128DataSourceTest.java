@@ -16,17 +16,25 @@
 package com.google.android.exoplayer2.source.hls;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceUtil;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import javax.crypto.Cipher;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -34,10 +42,14 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public class Aes128DataSourceTest {
 
+  private static final String URI = "https://test.test/segment.ts";
+  private static final byte[] KEY = TestUtil.buildTestData(16, /* seed= */ 1);
+  private static final byte[] IV = TestUtil.buildTestData(16, /* seed= */ 2);
+
   @Test
   public void test_OpenCallsUpstreamOpen_CloseCallsUpstreamClose() throws IOException {
     UpstreamDataSource upstream = new UpstreamDataSource();
-    Aes128DataSource testInstance = new TestAes123DataSource(upstream, new byte[16], new byte[16]);
+    Aes128DataSource testInstance = new Aes128DataSource(upstream, new byte[16], new byte[16]);
     assertThat(upstream.opened).isFalse();
 
     Uri uri = Uri.parse("http.abc.com/def");
@@ -57,7 +69,7 @@ public class Aes128DataSourceTest {
             throw new IOException();
           }
         };
-    Aes128DataSource testInstance = new TestAes123DataSource(upstream, new byte[16], new byte[16]);
+    Aes128DataSource testInstance = new Aes128DataSource(upstream, new byte[16], new byte[16]);
     assertThat(upstream.opened).isFalse();
 
     Uri uri = Uri.parse("http.abc.com/def");
@@ -75,23 +87,104 @@ public class Aes128DataSourceTest {
     assertThat(upstream.closedCalled).isTrue();
   }
 
-  private static class TestAes123DataSource extends Aes128DataSource {
+  @Test
+  public void read_withLargeBuffer_returnsDecryptedDataWithoutPadding() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    // Split the encrypted data into reads that aren't aligned to the AES block size.
+    byte[] encryptedData = encrypt(data);
+    fakeDataSet
+        .newDefaultData()
+        .appendReadData(Arrays.copyOfRange(encryptedData, 0, 37))
+        .appendReadData(Arrays.copyOfRange(encryptedData, 37, encryptedData.length));
+    Aes128DataSource dataSource = new Aes128DataSource(new FakeDataSource(fakeDataSet), KEY, IV);
+
+    dataSource.open(new DataSpec(Uri.parse(URI)));
+    byte[] result = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(result).isEqualTo(data);
+  }
 
-    public TestAes123DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
-      super(upstream, encryptionKey, encryptionIv);
+  @Test
+  public void read_withSmallBuffer_returnsDecryptedDataWithoutPadding() throws Exception {
+    byte[] data = TestUtil.buildTestData(64);
+    FakeDataSet fakeDataSet = new FakeDataSet().setData(URI, encrypt(data));
+    Aes128DataSource dataSource = new Aes128DataSource(new FakeDataSource(fakeDataSet), KEY, IV);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[5];
+
+    dataSource.open(new DataSpec(Uri.parse(URI)));
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      output.write(buffer, 0, bytesRead);
     }
+    dataSource.close();
 
-    @Override
-    protected Cipher getCipherInstance() throws NoSuchPaddingException, NoSuchAlgorithmException {
-      try {
-        return super.getCipherInstance();
-      } catch (NoSuchAlgorithmException e) {
-        // Some host machines may not provide an algorithm for "AES/CBC/PKCS7Padding", however on
-        // such machines it's possible to get a functionally identical algorithm by requesting
-        // "AES/CBC/PKCS5Padding".
-        return Cipher.getInstance("AES/CBC/PKCS5Padding");
-      }
+    assertThat(output.toByteArray()).isEqualTo(data);
+  }
+
+  @Test
+  public void open_withSegmentStartPosition_decryptsFromBlockContainingPosition() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    byte[] encryptedData = encrypt(data);
+    // Place the encrypted segment part way through the resource.
+    byte[] resource = new byte[10 + encryptedData.length];
+    System.arraycopy(encryptedData, 0, resource, 10, encryptedData.length);
+    FakeDataSource upstream = new FakeDataSource(new FakeDataSet().setData(URI, resource));
+    Aes128DataSource dataSource =
+        new Aes128DataSource(upstream, KEY, IV, /* segmentStartPosition= */ 10);
+
+    dataSource.open(new DataSpec(Uri.parse(URI), /* position= */ 10 + 37, C.LENGTH_UNSET));
+    byte[] result = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(result).isEqualTo(Arrays.copyOfRange(data, 37, data.length));
+    // The upstream was opened at the block preceding the block that contains the position.
+    assertThat(upstream.getAndClearOpenedDataSpecs()[0].position).isEqualTo(10 + 16);
+  }
+
+  @Test
+  public void read_withManySmallUpstreamReads_returnsDecryptedData() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    byte[] encryptedData = encrypt(data);
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    FakeDataSet.FakeData fakeData = fakeDataSet.newDefaultData();
+    // Upstream reads of 7 bytes leave a different partial block after each read.
+    for (int i = 0; i < encryptedData.length; i += 7) {
+      fakeData.appendReadData(
+          Arrays.copyOfRange(encryptedData, i, Math.min(i + 7, encryptedData.length)));
     }
+    Aes128DataSource dataSource = new Aes128DataSource(new FakeDataSource(fakeDataSet), KEY, IV);
+
+    dataSource.open(new DataSpec(Uri.parse(URI)));
+    byte[] result = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(result).isEqualTo(data);
+  }
+
+  @Test
+  public void read_withInvalidPaddingByte_throwsParserException() throws Exception {
+    // The last byte is a valid padding length, but the preceding padding byte doesn't match it.
+    byte[] paddedData = TestUtil.buildTestData(32);
+    paddedData[31] = 2;
+    paddedData[30] = 3;
+    Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+    FakeDataSet fakeDataSet = new FakeDataSet().setData(URI, cipher.doFinal(paddedData));
+    Aes128DataSource dataSource = new Aes128DataSource(new FakeDataSource(fakeDataSet), KEY, IV);
+
+    dataSource.open(new DataSpec(Uri.parse(URI)));
+
+    assertThrows(ParserException.class, () -> DataSourceUtil.readToEnd(dataSource));
+    dataSource.close();
+  }
+
+  private static byte[] encrypt(byte[] data) throws Exception {
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+    return cipher.doFinal(data);
   }
 
   private static class UpstreamDataSource implements DataSource {
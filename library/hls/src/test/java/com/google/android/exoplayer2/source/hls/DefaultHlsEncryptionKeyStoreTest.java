@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultHlsEncryptionKeyStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultHlsEncryptionKeyStoreTest {
+
+  private static final Uri KEY_URI_1 = Uri.parse("https://key1.test");
+  private static final Uri KEY_URI_2 = Uri.parse("https://key2.test");
+  private static final Uri KEY_URI_3 = Uri.parse("https://key3.test");
+  private static final byte[] KEY_1 = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 1);
+  private static final byte[] KEY_2 = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 2);
+  private static final byte[] KEY_3 = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 3);
+  private static final byte[] SECRET_KEY = TestUtil.buildTestData(/* length= */ 16);
+
+  private File tempFolder;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void put_exceedingMaxKeyCount_evictsLeastRecentlyUsedKey() {
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder().setMaxKeyCount(2).build();
+
+    keyStore.put(KEY_URI_1, KEY_1);
+    keyStore.put(KEY_URI_2, KEY_2);
+    // Accessing the first key makes the second key the least recently used.
+    keyStore.get(KEY_URI_1);
+    keyStore.put(KEY_URI_3, KEY_3);
+
+    assertThat(keyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+    assertThat(keyStore.get(KEY_URI_2)).isNull();
+    assertThat(keyStore.get(KEY_URI_3)).isEqualTo(KEY_3);
+  }
+
+  @Test
+  public void get_afterKeyTtl_returnsNull() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder().setKeyTtlMs(1000).setClock(clock).build();
+
+    keyStore.put(KEY_URI_1, KEY_1);
+    clock.advanceTime(999);
+    assertThat(keyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+    clock.advanceTime(1);
+    assertThat(keyStore.get(KEY_URI_1)).isNull();
+  }
+
+  @Test
+  public void get_withPersistentStorage_returnsKeysPutInPreviousInstance() {
+    File storageFile = new File(tempFolder, "keys");
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+    keyStore.put(KEY_URI_1, KEY_1);
+    keyStore.put(KEY_URI_2, KEY_2);
+
+    DefaultHlsEncryptionKeyStore newKeyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+
+    assertThat(newKeyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+    assertThat(newKeyStore.get(KEY_URI_2)).isEqualTo(KEY_2);
+  }
+
+  @Test
+  public void get_withPersistentStorageAndDifferentSecretKey_returnsNull() {
+    File storageFile = new File(tempFolder, "keys");
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+    keyStore.put(KEY_URI_1, KEY_1);
+
+    DefaultHlsEncryptionKeyStore newKeyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(
+                storageFile, TestUtil.buildTestData(/* length= */ 16, /* seed= */ 4))
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+
+    assertThat(newKeyStore.get(KEY_URI_1)).isNull();
+  }
+
+  @Test
+  public void get_withPersistentStorage_returnsPersistedKeysOnceLoadedOnPrefetchExecutor() {
+    File storageFile = new File(tempFolder, "keys");
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+    keyStore.put(KEY_URI_1, KEY_1);
+    List<Runnable> pendingTasks = new ArrayList<>();
+    DefaultHlsEncryptionKeyStore newKeyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(pendingTasks::add)
+            .build();
+
+    assertThat(newKeyStore.get(KEY_URI_1)).isNull();
+    newKeyStore.put(KEY_URI_2, KEY_2);
+    newKeyStore.put(KEY_URI_3, KEY_3);
+    // Only the load is pending. The keys are written once, after the persisted keys are loaded.
+    assertThat(pendingTasks).hasSize(1);
+    pendingTasks.remove(0).run();
+
+    assertThat(pendingTasks).isEmpty();
+    assertThat(newKeyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+    assertThat(newKeyStore.get(KEY_URI_2)).isEqualTo(KEY_2);
+    DefaultHlsEncryptionKeyStore reloadedKeyStore =
+        new DefaultHlsEncryptionKeyStore.Builder()
+            .setPersistentStorage(storageFile, SECRET_KEY)
+            .setPrefetchExecutor(Runnable::run)
+            .build();
+    assertThat(reloadedKeyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+    assertThat(reloadedKeyStore.get(KEY_URI_2)).isEqualTo(KEY_2);
+    assertThat(reloadedKeyStore.get(KEY_URI_3)).isEqualTo(KEY_3);
+  }
+
+  @Test
+  public void prefetch_loadsKeyOnPrefetchExecutor() {
+    FakeDataSource.Factory dataSourceFactory =
+        new FakeDataSource.Factory().setFakeDataSet(new FakeDataSet().setData(KEY_URI_1, KEY_1));
+    DefaultHlsEncryptionKeyStore keyStore =
+        new DefaultHlsEncryptionKeyStore.Builder().setPrefetchExecutor(Runnable::run).build();
+
+    keyStore.prefetch(KEY_URI_1, dataSourceFactory);
+
+    assertThat(keyStore.get(KEY_URI_1)).isEqualTo(KEY_1);
+  }
+}
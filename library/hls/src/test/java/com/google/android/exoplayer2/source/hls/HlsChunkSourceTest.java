@@ -87,6 +87,7 @@ public class HlsChunkSourceTest {
             /* mediaTransferListener= */ null,
             new TimestampAdjusterProvider(),
             /* muxedCaptionFormats= */ null,
+            /* encryptionKeyStore= */ null,
             PlayerId.UNSET);
 
     when(mockPlaylistTracker.isSnapshotValid(eq(PLAYLIST_URI))).thenReturn(true);
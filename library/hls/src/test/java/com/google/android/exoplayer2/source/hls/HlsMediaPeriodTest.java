@@ -95,6 +95,7 @@ public final class HlsMediaPeriodTest {
               /* allowChunklessPreparation= */ true,
               HlsMediaSource.METADATA_TYPE_ID3,
               /* useSessionKeys= */ false,
+              /* encryptionKeyStore= */ null,
               PlayerId.UNSET);
         };
 
@@ -74,6 +74,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final ExtractorOutput output;
   private final Handler playbackThreadHandler;
   private final RtpDataChannel.Factory rtpDataChannelFactory;
+  private final long jitterBufferDepthMs;
 
   private @MonotonicNonNull RtpExtractor extractor;
 
@@ -91,19 +92,22 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param eventListener The {@link EventListener}.
    * @param output A {@link ExtractorOutput} instance to which the received and extracted data will
    * @param rtpDataChannelFactory A {@link RtpDataChannel.Factory} for {@link RtpDataChannel}.
+   * @param jitterBufferDepthMs How long out of order RTP packets are held back, in milliseconds.
    */
   public RtpDataLoadable(
       int trackId,
       RtspMediaTrack rtspMediaTrack,
       EventListener eventListener,
       ExtractorOutput output,
-      RtpDataChannel.Factory rtpDataChannelFactory) {
+      RtpDataChannel.Factory rtpDataChannelFactory,
+      long jitterBufferDepthMs) {
     this.trackId = trackId;
     this.rtspMediaTrack = rtspMediaTrack;
     this.eventListener = eventListener;
     this.output = output;
     this.playbackThreadHandler = Util.createHandlerForCurrentLooper();
     this.rtpDataChannelFactory = rtpDataChannelFactory;
+    this.jitterBufferDepthMs = jitterBufferDepthMs;
     pendingSeekPositionUs = C.TIME_UNSET;
   }
 
@@ -152,7 +156,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       ExtractorInput extractorInput =
           new DefaultExtractorInput(
               checkNotNull(dataChannel), /* position= */ 0, /* length= */ C.LENGTH_UNSET);
-      extractor = new RtpExtractor(rtspMediaTrack.payloadFormat, trackId);
+      extractor = new RtpExtractor(rtspMediaTrack.payloadFormat, trackId, jitterBufferDepthMs);
       extractor.init(output);
 
       while (!loadCancelled) {
@@ -40,13 +40,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final ParsableByteArray rtpPacketScratchBuffer;
   private final ParsableByteArray rtpPacketDataBuffer;
   private final int trackId;
+  private final long jitterBufferDepthMs;
   private final Object lock;
   private final RtpPacketReorderingQueue reorderingQueue;
+  private final RtpPacketHeader rtpPacketHeader;
 
   private @MonotonicNonNull ExtractorOutput output;
   private boolean firstPacketRead;
   private volatile long firstTimestamp;
   private volatile int firstSequenceNumber;
+  private volatile long inPlacePacketCount;
+  private volatile long allocatedPacketCount;
 
   @GuardedBy("lock")
   private boolean isSeekPending;
@@ -57,8 +61,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   @GuardedBy("lock")
   private long playbackStartTimeUs;
 
-  public RtpExtractor(RtpPayloadFormat payloadFormat, int trackId) {
+  /**
+   * Creates an instance.
+   *
+   * @param payloadFormat The {@link RtpPayloadFormat} of the RTP stream.
+   * @param trackId The track ID of the RTP stream.
+   * @param jitterBufferDepthMs How long out of order RTP packets are held back, in milliseconds.
+   */
+  public RtpExtractor(RtpPayloadFormat payloadFormat, int trackId, long jitterBufferDepthMs) {
     this.trackId = trackId;
+    this.jitterBufferDepthMs = jitterBufferDepthMs;
 
     payloadReader =
         checkNotNull(new DefaultRtpPayloadReaderFactory().createPayloadReader(payloadFormat));
@@ -66,6 +78,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     rtpPacketDataBuffer = new ParsableByteArray();
     lock = new Object();
     reorderingQueue = new RtpPacketReorderingQueue();
+    rtpPacketHeader = new RtpPacketHeader();
     firstTimestamp = C.TIME_UNSET;
     firstSequenceNumber = C.INDEX_UNSET;
     nextRtpTimestamp = C.TIME_UNSET;
@@ -133,45 +146,62 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     rtpPacketScratchBuffer.setPosition(0);
     rtpPacketScratchBuffer.setLimit(bytesRead);
-    @Nullable RtpPacket packet = RtpPacket.parse(rtpPacketScratchBuffer);
-    if (packet == null) {
+    if (!rtpPacketHeader.parse(rtpPacketScratchBuffer)) {
       return RESULT_CONTINUE;
     }
+    int csrcLength = rtpPacketHeader.csrcCount * RtpPacket.CSRC_SIZE;
+    if (rtpPacketScratchBuffer.bytesLeft() < csrcLength) {
+      return RESULT_CONTINUE;
+    }
+    rtpPacketScratchBuffer.skipBytes(csrcLength);
 
     long packetArrivalTimeMs = SystemClock.elapsedRealtime();
     long packetCutoffTimeMs = getCutoffTimeMs(packetArrivalTimeMs);
-    reorderingQueue.offer(packet, packetArrivalTimeMs);
-    @Nullable RtpPacket dequeuedPacket = reorderingQueue.poll(packetCutoffTimeMs);
-    if (dequeuedPacket == null) {
-      // No packet is available for reading.
+    if (reorderingQueue.offerInSequence(rtpPacketHeader.sequenceNumber)) {
+      // The packet doesn't need to be held for reordering, so its payload is consumed from the
+      // scratch buffer. Payload readers expect the payload to start at the beginning of the array.
+      inPlacePacketCount++;
+      byte[] data = rtpPacketScratchBuffer.getData();
+      int payloadLength = rtpPacketScratchBuffer.bytesLeft();
+      System.arraycopy(data, rtpPacketScratchBuffer.getPosition(), data, 0, payloadLength);
+      rtpPacketDataBuffer.reset(data, payloadLength);
+      maybeHandleFirstPacket(rtpPacketHeader.timestamp, rtpPacketHeader.sequenceNumber);
+      synchronized (lock) {
+        if (!maybeHandlePendingSeek()) {
+          payloadReader.consume(
+              rtpPacketDataBuffer,
+              rtpPacketHeader.timestamp,
+              rtpPacketHeader.sequenceNumber,
+              rtpPacketHeader.marker);
+        }
+      }
       return RESULT_CONTINUE;
     }
-    packet = dequeuedPacket;
 
-    if (!firstPacketRead) {
-      // firstTimestamp and firstSequenceNumber are transmitted over RTSP. There is no guarantee
-      // that they arrive before the RTP packets. We use whichever comes first.
-      if (firstTimestamp == C.TIME_UNSET) {
-        firstTimestamp = packet.timestamp;
-      }
-      if (firstSequenceNumber == C.INDEX_UNSET) {
-        firstSequenceNumber = packet.sequenceNumber;
-      }
-      payloadReader.onReceivingFirstPacket(firstTimestamp, firstSequenceNumber);
-      firstPacketRead = true;
+    allocatedPacketCount++;
+    byte[] payloadData = new byte[rtpPacketScratchBuffer.bytesLeft()];
+    rtpPacketScratchBuffer.readBytes(payloadData, /* offset= */ 0, payloadData.length);
+    reorderingQueue.offer(
+        new RtpPacket.Builder()
+            .setPadding(rtpPacketHeader.padding)
+            .setMarker(rtpPacketHeader.marker)
+            .setPayloadType(rtpPacketHeader.payloadType)
+            .setSequenceNumber(rtpPacketHeader.sequenceNumber)
+            .setTimestamp(rtpPacketHeader.timestamp)
+            .setSsrc(rtpPacketHeader.ssrc)
+            .setPayloadData(payloadData)
+            .build(),
+        packetArrivalTimeMs);
+    @Nullable RtpPacket packet = reorderingQueue.poll(packetCutoffTimeMs);
+    if (packet == null) {
+      // No packet is available for reading.
+      return RESULT_CONTINUE;
     }
+    maybeHandleFirstPacket(packet.timestamp, packet.sequenceNumber);
 
     synchronized (lock) {
       // Ignores the incoming packets while seek is pending.
-      if (isSeekPending) {
-        if (nextRtpTimestamp != C.TIME_UNSET && playbackStartTimeUs != C.TIME_UNSET) {
-          reorderingQueue.reset();
-          payloadReader.seek(nextRtpTimestamp, playbackStartTimeUs);
-          isSeekPending = false;
-          nextRtpTimestamp = C.TIME_UNSET;
-          playbackStartTimeUs = C.TIME_UNSET;
-        }
-      } else {
+      if (!maybeHandlePendingSeek()) {
         do {
           // Deplete the reordering queue as much as possible.
           rtpPacketDataBuffer.reset(packet.payloadData);
@@ -184,6 +214,22 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     return RESULT_CONTINUE;
   }
 
+  /**
+   * Returns the number of RTP packets whose payloads were consumed from the buffer they were read
+   * into, because they arrived in order.
+   */
+  public long getInPlacePacketCount() {
+    return inPlacePacketCount;
+  }
+
+  /**
+   * Returns the number of RTP packets for which an {@link RtpPacket} was allocated, because they
+   * had to be held for reordering.
+   */
+  public long getAllocatedPacketCount() {
+    return allocatedPacketCount;
+  }
+
   @Override
   public void seek(long nextRtpTimestamp, long playbackStartTimeUs) {
     synchronized (lock) {
@@ -202,15 +248,47 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     // Do nothing.
   }
 
+  private void maybeHandleFirstPacket(long timestamp, int sequenceNumber) {
+    if (!firstPacketRead) {
+      // firstTimestamp and firstSequenceNumber are transmitted over RTSP. There is no guarantee
+      // that they arrive before the RTP packets. We use whichever comes first.
+      if (firstTimestamp == C.TIME_UNSET) {
+        firstTimestamp = timestamp;
+      }
+      if (firstSequenceNumber == C.INDEX_UNSET) {
+        firstSequenceNumber = sequenceNumber;
+      }
+      payloadReader.onReceivingFirstPacket(firstTimestamp, firstSequenceNumber);
+      firstPacketRead = true;
+    }
+  }
+
+  /**
+   * Returns whether a seek is pending, in which case the incoming packets are ignored. Completes
+   * the seek if its position is known.
+   */
+  @GuardedBy("lock")
+  private boolean maybeHandlePendingSeek() {
+    if (!isSeekPending) {
+      return false;
+    }
+    if (nextRtpTimestamp != C.TIME_UNSET && playbackStartTimeUs != C.TIME_UNSET) {
+      reorderingQueue.reset();
+      payloadReader.seek(nextRtpTimestamp, playbackStartTimeUs);
+      isSeekPending = false;
+      nextRtpTimestamp = C.TIME_UNSET;
+      playbackStartTimeUs = C.TIME_UNSET;
+    }
+    return true;
+  }
+
   /**
    * Returns the cutoff time of waiting for an out-of-order packet.
    *
    * <p>Returns the cutoff time to pass to {@link RtpPacketReorderingQueue#poll(long)} based on the
    * given RtpPacket arrival time.
    */
-  private static long getCutoffTimeMs(long packetArrivalTimeMs) {
-    // TODO(internal b/172331505) 30ms is roughly the time for one video frame. It is not rigorously
-    // chosen and will need fine tuning in the future.
-    return packetArrivalTimeMs - 30;
+  private long getCutoffTimeMs(long packetArrivalTimeMs) {
+    return packetArrivalTimeMs - jitterBufferDepthMs;
   }
 }
@@ -190,33 +190,13 @@ public final class RtpPacket {
    */
   @Nullable
   public static RtpPacket parse(ParsableByteArray packetBuffer) {
-    if (packetBuffer.bytesLeft() < MIN_HEADER_SIZE) {
+    RtpPacketHeader header = new RtpPacketHeader();
+    if (!header.parse(packetBuffer)) {
       return null;
     }
 
-    // Word 0.
-    int firstByte = packetBuffer.readUnsignedByte();
-    byte version = (byte) (firstByte >> 6);
-    boolean padding = ((firstByte >> 5) & 0x1) == 1;
-    byte csrcCount = (byte) (firstByte & 0xF);
-
-    if (version != RTP_VERSION) {
-      return null;
-    }
-
-    int secondByte = packetBuffer.readUnsignedByte();
-    boolean marker = ((secondByte >> 7) & 0x1) == 1;
-    byte payloadType = (byte) (secondByte & 0x7F);
-
-    int sequenceNumber = packetBuffer.readUnsignedShort();
-
-    // Word 1.
-    long timestamp = packetBuffer.readUnsignedInt();
-
-    // Word 2.
-    int ssrc = packetBuffer.readInt();
-
     // CSRC.
+    int csrcCount = header.csrcCount;
     byte[] csrc;
     if (csrcCount > 0) {
       csrc = new byte[csrcCount * CSRC_SIZE];
@@ -233,12 +213,12 @@ public final class RtpPacket {
 
     Builder builder = new Builder();
     return builder
-        .setPadding(padding)
-        .setMarker(marker)
-        .setPayloadType(payloadType)
-        .setSequenceNumber(sequenceNumber)
-        .setTimestamp(timestamp)
-        .setSsrc(ssrc)
+        .setPadding(header.padding)
+        .setMarker(header.marker)
+        .setPayloadType(header.payloadType)
+        .setSequenceNumber(header.sequenceNumber)
+        .setTimestamp(header.timestamp)
+        .setSsrc(header.ssrc)
         .setCsrc(csrc)
         .setPayloadData(payloadData)
         .build();
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.exoplayer2.source.rtsp;
+
+import com.google.android.exoplayer2.util.ParsableByteArray;
+
+/**
+ * The fixed part of an RTP packet header (RFC3550, Section 5.1).
+ *
+ * <p>Instances are mutable, so that a single instance can be used to parse the headers of all
+ * packets in a stream without allocating.
+ */
+/* package */ final class RtpPacketHeader {
+
+  /** The RTP padding bit (Word 0, bit 2). */
+  public boolean padding;
+  /** The RTP CSRC count field (Word 0, bits 4-7). */
+  public int csrcCount;
+  /** The RTP marker bit (Word 0, bit 8). */
+  public boolean marker;
+  /** The RTP payload type field (Word 0, bits 9-15). */
+  public byte payloadType;
+  /** The RTP sequence number field (Word 0, bits 16-31). */
+  public int sequenceNumber;
+  /** The RTP timestamp field (Word 1). */
+  public long timestamp;
+  /** The RTP SSRC field (Word 2). */
+  public int ssrc;
+
+  /**
+   * Parses the fixed part of an RTP packet header, leaving the position of {@code packetBuffer} at
+   * the start of the CSRC fields.
+   *
+   * @param packetBuffer The buffer that contains the RTP packet data.
+   * @return Whether the buffer starts with a valid RTP header. If {@code false} is returned, the
+   *     state of this instance is undefined.
+   */
+  public boolean parse(ParsableByteArray packetBuffer) {
+    if (packetBuffer.bytesLeft() < RtpPacket.MIN_HEADER_SIZE) {
+      return false;
+    }
+
+    // Word 0.
+    int firstByte = packetBuffer.readUnsignedByte();
+    byte version = (byte) (firstByte >> 6);
+    if (version != RtpPacket.RTP_VERSION) {
+      return false;
+    }
+    padding = ((firstByte >> 5) & 0x1) == 1;
+    csrcCount = firstByte & 0xF;
+
+    int secondByte = packetBuffer.readUnsignedByte();
+    marker = ((secondByte >> 7) & 0x1) == 1;
+    payloadType = (byte) (secondByte & 0x7F);
+
+    sequenceNumber = packetBuffer.readUnsignedShort();
+
+    // Word 1.
+    timestamp = packetBuffer.readUnsignedInt();
+
+    // Word 2.
+    ssrc = packetBuffer.readInt();
+    return true;
+  }
+}
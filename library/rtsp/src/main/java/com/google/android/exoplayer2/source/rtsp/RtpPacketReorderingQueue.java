@@ -16,6 +16,7 @@
 
 package com.google.android.exoplayer2.source.rtsp;
 
+import static com.google.android.exoplayer2.util.Assertions.checkStateNotNull;
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -24,22 +25,42 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
-import java.util.TreeSet;
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /**
  * Orders RTP packets by their sequence numbers to correct the possible alternation in packet
  * ordering, introduced by UDP transport.
+ *
+ * <p>Packets are stored in a preallocated ring that is indexed by sequence number, so that offering
+ * and polling packets doesn't allocate, and takes constant time in the common case of packets that
+ * arrive mostly in order.
  */
 /* package */ final class RtpPacketReorderingQueue {
   /** The maximum sequence number discontinuity allowed without resetting the re-ordering buffer. */
   @VisibleForTesting /* package */ static final int MAX_SEQUENCE_LEAP_ALLOWED = 1000;
 
-  /** Queue size threshold for resetting the queue. 5000 packets equate about 7MB in buffer size. */
-  private static final int QUEUE_SIZE_THRESHOLD_FOR_RESET = 5000;
+  /**
+   * The number of sequence numbers, starting from the one after the last dequeued packet, for which
+   * packets can be held. Must be a power of two that divides the sequence number space.
+   */
+  @VisibleForTesting /* package */ static final int CAPACITY = 2048;
+
+  private static final int SEQUENCE_NUMBER_MASK = RtpPacket.MAX_SEQUENCE_NUMBER;
+  private static final int CAPACITY_MASK = CAPACITY - 1;
+
+  // Slots are indexed by sequence number modulo CAPACITY, which also eliminates duplicate packets.
+  @GuardedBy("this")
+  private final @NullableType RtpPacket[] packets;
+
+  @GuardedBy("this")
+  private final long[] receivedTimestampsMs;
 
-  // Use set to eliminate duplicating packets.
   @GuardedBy("this")
-  private final TreeSet<RtpPacketContainer> packetQueue;
+  private int size;
+
+  @GuardedBy("this")
+  private int earliestSequenceNumber;
 
   @GuardedBy("this")
   private int lastReceivedSequenceNumber;
@@ -50,20 +71,22 @@ import java.util.TreeSet;
   @GuardedBy("this")
   private boolean started;
 
+  @GuardedBy("this")
+  private long lostPacketCount;
+
+  @GuardedBy("this")
+  private long latePacketCount;
+
   /** Creates an instance. */
   public RtpPacketReorderingQueue() {
-    packetQueue =
-        new TreeSet<>(
-            (packetContainer1, packetContainer2) ->
-                calculateSequenceNumberShift(
-                    packetContainer1.packet.sequenceNumber,
-                    packetContainer2.packet.sequenceNumber));
-
+    packets = new RtpPacket[CAPACITY];
+    receivedTimestampsMs = new long[CAPACITY];
     reset();
   }
 
+  /** Empties the queue. The {@link #getLostPacketCount() packet counters} are not reset. */
   public synchronized void reset() {
-    packetQueue.clear();
+    clear();
     started = false;
     lastDequeuedSequenceNumber = C.INDEX_UNSET;
     lastReceivedSequenceNumber = C.INDEX_UNSET;
@@ -79,6 +102,9 @@ import java.util.TreeSet;
    * #MAX_SEQUENCE_LEAP_ALLOWED} compared to the last offered packet, the queue is emptied and then
    * the packet is added.
    *
+   * <p>If a packet is {@link #CAPACITY} or more sequence numbers ahead of the last dequeued packet,
+   * the packets at the head of the queue are discarded to make room for it, and counted as lost.
+   *
    * @param packet The packet to add.
    * @param receivedTimestampMs The timestamp in milliseconds, at which the packet was received.
    * @return Returns {@code false} if the packet was dropped because it was outside the expected
@@ -86,17 +112,12 @@ import java.util.TreeSet;
    *     returns {@code true}).
    */
   public synchronized boolean offer(RtpPacket packet, long receivedTimestampMs) {
-    if (packetQueue.size() >= QUEUE_SIZE_THRESHOLD_FOR_RESET) {
-      throw new IllegalStateException(
-          "Queue size limit of " + QUEUE_SIZE_THRESHOLD_FOR_RESET + " reached.");
-    }
-
     int packetSequenceNumber = packet.sequenceNumber;
     if (!started) {
       reset();
       lastDequeuedSequenceNumber = RtpPacket.getPreviousSequenceNumber(packetSequenceNumber);
       started = true;
-      addToQueue(new RtpPacketContainer(packet, receivedTimestampMs));
+      addToQueue(packet, receivedTimestampMs);
       return true;
     }
 
@@ -105,24 +126,57 @@ import java.util.TreeSet;
     int sequenceNumberShift =
         calculateSequenceNumberShift(packetSequenceNumber, expectedSequenceNumber);
     if (abs(sequenceNumberShift) < MAX_SEQUENCE_LEAP_ALLOWED) {
-      if (calculateSequenceNumberShift(packetSequenceNumber, lastDequeuedSequenceNumber) > 0) {
+      if (isAfter(packetSequenceNumber, lastDequeuedSequenceNumber)) {
         // Add the packet in the queue only if a succeeding packet has not been dequeued already.
-        addToQueue(new RtpPacketContainer(packet, receivedTimestampMs));
+        int offset = getDistance(lastDequeuedSequenceNumber, packetSequenceNumber);
+        if (offset > CAPACITY) {
+          discardHead(/* count= */ offset - CAPACITY);
+        }
+        addToQueue(packet, receivedTimestampMs);
         return true;
       }
+      latePacketCount++;
     } else {
       // Discard all previous received packets and start subsequent receiving from here.
       lastDequeuedSequenceNumber = RtpPacket.getPreviousSequenceNumber(packetSequenceNumber);
-      packetQueue.clear();
-      addToQueue(new RtpPacketContainer(packet, receivedTimestampMs));
+      clear();
+      addToQueue(packet, receivedTimestampMs);
       return true;
     }
     return false;
   }
 
+  /**
+   * Dequeues a packet without storing it, if it would be returned by the next call to {@link
+   * #poll} after being {@link #offer offered}.
+   *
+   * <p>This is the case if the queue is empty and the packet is the next packet in sequence, or the
+   * first packet offered. It allows packets that arrive in order to be consumed without being
+   * copied into an {@link RtpPacket}.
+   *
+   * @param sequenceNumber The sequence number of the packet.
+   * @return Whether the packet was dequeued. If {@code false} is returned, the packet should be
+   *     {@link #offer offered} instead.
+   */
+  public synchronized boolean offerInSequence(int sequenceNumber) {
+    if (!started) {
+      reset();
+      started = true;
+    } else if (size > 0
+        || sequenceNumber != RtpPacket.getNextSequenceNumber(lastDequeuedSequenceNumber)) {
+      return false;
+    }
+    lastReceivedSequenceNumber = sequenceNumber;
+    lastDequeuedSequenceNumber = sequenceNumber;
+    return true;
+  }
+
   /**
    * Polls an {@link RtpPacket} from the queue.
    *
+   * <p>Sequence numbers that are skipped because the head of the queue is dequeued before the
+   * packets preceding it arrived are counted as {@link #getLostPacketCount() lost}.
+   *
    * @param cutoffTimestampMs A cutoff timestamp in milliseconds used to determine if the head of
    *     the queue should be dequeued, even if it's not the next packet in sequence.
    * @return Returns a packet if the packet at the queue head is the next packet in sequence; or its
@@ -131,41 +185,118 @@ import java.util.TreeSet;
    */
   @Nullable
   public synchronized RtpPacket poll(long cutoffTimestampMs) {
-    if (packetQueue.isEmpty()) {
+    if (size == 0) {
       return null;
     }
 
-    RtpPacketContainer packetContainer = packetQueue.first();
-    int packetSequenceNumber = packetContainer.packet.sequenceNumber;
+    int index = earliestSequenceNumber & CAPACITY_MASK;
+    RtpPacket packet = checkStateNotNull(packets[index]);
+    int packetSequenceNumber = packet.sequenceNumber;
 
     if (packetSequenceNumber == RtpPacket.getNextSequenceNumber(lastDequeuedSequenceNumber)
-        || cutoffTimestampMs >= packetContainer.receivedTimestampMs) {
-      packetQueue.pollFirst();
+        || cutoffTimestampMs >= receivedTimestampsMs[index]) {
+      lostPacketCount += getDistance(lastDequeuedSequenceNumber, packetSequenceNumber) - 1;
+      packets[index] = null;
+      size--;
       lastDequeuedSequenceNumber = packetSequenceNumber;
-      return packetContainer.packet;
+      if (size > 0) {
+        updateEarliestSequenceNumber();
+      }
+      return packet;
     }
 
     return null;
   }
 
+  /**
+   * Returns the number of sequence numbers whose packets were never dequeued, because they didn't
+   * arrive before a succeeding packet was dequeued or were discarded when the queue was full.
+   */
+  public synchronized long getLostPacketCount() {
+    return lostPacketCount;
+  }
+
+  /** Returns the number of packets that were dropped because a succeeding packet was dequeued. */
+  public synchronized long getLatePacketCount() {
+    return latePacketCount;
+  }
+
   // Internals.
 
-  private synchronized void addToQueue(RtpPacketContainer packet) {
-    lastReceivedSequenceNumber = packet.packet.sequenceNumber;
-    packetQueue.add(packet);
+  @GuardedBy("this")
+  private void addToQueue(RtpPacket packet, long receivedTimestampMs) {
+    int sequenceNumber = packet.sequenceNumber;
+    lastReceivedSequenceNumber = sequenceNumber;
+    int index = sequenceNumber & CAPACITY_MASK;
+    if (packets[index] != null) {
+      // Duplicate packet. Keep the copy that arrived first.
+      return;
+    }
+    packets[index] = packet;
+    receivedTimestampsMs[index] = receivedTimestampMs;
+    if (size == 0
+        || getDistance(lastDequeuedSequenceNumber, sequenceNumber)
+            < getDistance(lastDequeuedSequenceNumber, earliestSequenceNumber)) {
+      earliestSequenceNumber = sequenceNumber;
+    }
+    size++;
+  }
+
+  /** Advances the head of the queue by {@code count} sequence numbers, discarding their packets. */
+  @GuardedBy("this")
+  private void discardHead(int count) {
+    for (int i = 0; i < count; i++) {
+      lastDequeuedSequenceNumber = RtpPacket.getNextSequenceNumber(lastDequeuedSequenceNumber);
+      int index = lastDequeuedSequenceNumber & CAPACITY_MASK;
+      if (packets[index] != null) {
+        packets[index] = null;
+        size--;
+      }
+    }
+    lostPacketCount += count;
+    if (size > 0 && !isAfter(earliestSequenceNumber, lastDequeuedSequenceNumber)) {
+      updateEarliestSequenceNumber();
+    }
   }
 
-  private static final class RtpPacketContainer {
-    public final RtpPacket packet;
-    public final long receivedTimestampMs;
+  /**
+   * Sets {@link #earliestSequenceNumber} to the first packet after the last dequeued packet. Must
+   * only be called if the queue isn't empty.
+   */
+  @GuardedBy("this")
+  private void updateEarliestSequenceNumber() {
+    int sequenceNumber = RtpPacket.getNextSequenceNumber(lastDequeuedSequenceNumber);
+    while (packets[sequenceNumber & CAPACITY_MASK] == null) {
+      sequenceNumber = RtpPacket.getNextSequenceNumber(sequenceNumber);
+    }
+    earliestSequenceNumber = sequenceNumber;
+  }
 
-    /** Creates an instance. */
-    public RtpPacketContainer(RtpPacket packet, long receivedTimestampMs) {
-      this.packet = packet;
-      this.receivedTimestampMs = receivedTimestampMs;
+  @GuardedBy("this")
+  private void clear() {
+    if (size > 0) {
+      Arrays.fill(packets, null);
+      size = 0;
     }
   }
 
+  /**
+   * Returns the number of sequence numbers from {@code fromSequenceNumber} forward to {@code
+   * toSequenceNumber}, accounting for wrapping around.
+   */
+  private static int getDistance(int fromSequenceNumber, int toSequenceNumber) {
+    return (toSequenceNumber - fromSequenceNumber) & SEQUENCE_NUMBER_MASK;
+  }
+
+  /**
+   * Returns whether {@code sequenceNumber} is logically after {@code previousSequenceNumber}, which
+   * is the case if it's less than half the sequence number space ahead of it.
+   */
+  private static boolean isAfter(int sequenceNumber, int previousSequenceNumber) {
+    int distance = getDistance(previousSequenceNumber, sequenceNumber);
+    return distance != 0 && distance <= SEQUENCE_NUMBER_MASK / 2;
+  }
+
   /**
    * Calculates the sequence number shift, accounting for wrapping around.
    *
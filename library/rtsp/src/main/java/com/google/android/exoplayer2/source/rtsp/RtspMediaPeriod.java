@@ -83,6 +83,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final List<RtpLoadInfo> selectedLoadInfos;
   private final Listener listener;
   private final RtpDataChannel.Factory rtpDataChannelFactory;
+  private final long jitterBufferDepthMs;
 
   private @MonotonicNonNull Callback callback;
   private @MonotonicNonNull ImmutableList<TrackGroup> trackGroups;
@@ -110,6 +111,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param userAgent The user agent.
    * @param socketFactory A socket factory for {@link RtspClient}'s connection.
    * @param debugLoggingEnabled Whether to log RTSP messages.
+   * @param jitterBufferDepthMs How long out of order RTP packets are held back, in milliseconds.
    */
   public RtspMediaPeriod(
       Allocator allocator,
@@ -118,10 +120,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Listener listener,
       String userAgent,
       SocketFactory socketFactory,
-      boolean debugLoggingEnabled) {
+      boolean debugLoggingEnabled,
+      long jitterBufferDepthMs) {
     this.allocator = allocator;
     this.rtpDataChannelFactory = rtpDataChannelFactory;
     this.listener = listener;
+    this.jitterBufferDepthMs = jitterBufferDepthMs;
 
     handler = Util.createHandlerForCurrentLooper();
     internalListener = new InternalListener();
@@ -863,7 +867,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
               mediaTrack,
               /* eventListener= */ transportEventListener,
               /* output= */ internalListener,
-              rtpDataChannelFactory);
+              rtpDataChannelFactory,
+              jitterBufferDepthMs);
     }
 
     /**
@@ -52,6 +52,12 @@ public final class RtspMediaSource extends BaseMediaSource {
   /** The default value for {@link Factory#setTimeoutMs}. */
   public static final long DEFAULT_TIMEOUT_MS = 8000;
 
+  /**
+   * The default value for {@link Factory#setJitterBufferDepthMs}. It's roughly the duration of one
+   * video frame.
+   */
+  public static final long DEFAULT_JITTER_BUFFER_DEPTH_MS = 30;
+
   /**
    * Factory for {@link RtspMediaSource}
    *
@@ -66,6 +72,7 @@ public final class RtspMediaSource extends BaseMediaSource {
   public static final class Factory implements MediaSourceFactory {
 
     private long timeoutMs;
+    private long jitterBufferDepthMs;
     private String userAgent;
     private SocketFactory socketFactory;
     private boolean forceUseRtpTcp;
@@ -73,6 +80,7 @@ public final class RtspMediaSource extends BaseMediaSource {
 
     public Factory() {
       timeoutMs = DEFAULT_TIMEOUT_MS;
+      jitterBufferDepthMs = DEFAULT_JITTER_BUFFER_DEPTH_MS;
       userAgent = ExoPlayerLibraryInfo.VERSION_SLASHY;
       socketFactory = SocketFactory.getDefault();
     }
@@ -150,6 +158,24 @@ public final class RtspMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets the jitter buffer depth in milliseconds, the default value is {@link
+     * #DEFAULT_JITTER_BUFFER_DEPTH_MS}.
+     *
+     * <p>The jitter buffer depth is how long an RTP packet that arrives out of order is held back
+     * while waiting for the packets that precede it. A larger depth tolerates more network jitter,
+     * at the cost of increased latency.
+     *
+     * @param jitterBufferDepthMs The jitter buffer depth measured in milliseconds.
+     * @return This Factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setJitterBufferDepthMs(@IntRange(from = 0) long jitterBufferDepthMs) {
+      checkArgument(jitterBufferDepthMs >= 0);
+      this.jitterBufferDepthMs = jitterBufferDepthMs;
+      return this;
+    }
+
     /** Does nothing. {@link RtspMediaSource} does not support DRM. */
     @Override
     public Factory setDrmSessionManagerProvider(DrmSessionManagerProvider drmSessionManager) {
@@ -185,7 +211,8 @@ public final class RtspMediaSource extends BaseMediaSource {
               : new UdpDataSourceRtpDataChannelFactory(timeoutMs),
           userAgent,
           socketFactory,
-          debugLoggingEnabled);
+          debugLoggingEnabled,
+          jitterBufferDepthMs);
     }
   }
 
@@ -210,6 +237,7 @@ public final class RtspMediaSource extends BaseMediaSource {
   private final Uri uri;
   private final SocketFactory socketFactory;
   private final boolean debugLoggingEnabled;
+  private final long jitterBufferDepthMs;
 
   private long timelineDurationUs;
   private boolean timelineIsSeekable;
@@ -222,13 +250,15 @@ public final class RtspMediaSource extends BaseMediaSource {
       RtpDataChannel.Factory rtpDataChannelFactory,
       String userAgent,
       SocketFactory socketFactory,
-      boolean debugLoggingEnabled) {
+      boolean debugLoggingEnabled,
+      long jitterBufferDepthMs) {
     this.mediaItem = mediaItem;
     this.rtpDataChannelFactory = rtpDataChannelFactory;
     this.userAgent = userAgent;
     this.uri = checkNotNull(this.mediaItem.localConfiguration).uri;
     this.socketFactory = socketFactory;
     this.debugLoggingEnabled = debugLoggingEnabled;
+    this.jitterBufferDepthMs = jitterBufferDepthMs;
     this.timelineDurationUs = C.TIME_UNSET;
     this.timelineIsPlaceholder = true;
   }
@@ -277,7 +307,8 @@ public final class RtspMediaSource extends BaseMediaSource {
         },
         userAgent,
         socketFactory,
-        debugLoggingEnabled);
+        debugLoggingEnabled,
+        jitterBufferDepthMs);
   }
 
   @Override
@@ -143,7 +143,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   private void processMultiFramePacket(ParsableByteArray data, int numOfFrames, long sampleTimeUs) {
     // The size of each frame must be obtained by reading AC3 sync frame.
-    scratchBitBuffer.reset(data.getData());
+    scratchBitBuffer.reset(data.getData(), data.limit());
     // Move the read location after the AC3 payload header.
     scratchBitBuffer.skipBytes(AC3_PAYLOAD_HEADER_SIZE);
 
@@ -254,7 +254,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       // The bytes needed is 1 (NALU header) + payload size. The original data array has size 2 (FU
       // indicator/header) + payload size. Thus setting the correct header and set position to 1.
       data.getData()[1] = (byte) nalHeader;
-      fuScratchBuffer.reset(data.getData());
+      fuScratchBuffer.reset(data.getData(), data.limit());
       fuScratchBuffer.setPosition(1);
     } else {
       // Check that this packet is in the sequence of the previous packet.
@@ -270,7 +270,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       }
 
       // Setting position to ignore FU indicator and header.
-      fuScratchBuffer.reset(data.getData());
+      fuScratchBuffer.reset(data.getData(), data.limit());
       fuScratchBuffer.setPosition(FU_PAYLOAD_OFFSET);
     }
 
@@ -87,7 +87,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   @Override
   public void consume(ParsableByteArray data, long timestamp, int sequenceNumber, boolean rtpMarker)
       throws ParserException {
-    if (data.getData().length == 0) {
+    if (data.limit() == 0) {
       throw ParserException.createForMalformedManifest("Empty RTP data packet.", /* cause= */ null);
     }
     // NAL Unit Header.type (RFC7798 Section 1.1.4).
@@ -201,7 +201,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     //   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
     //   |F|   Type    |  LayerId  | TID |
     //   +-------------+-----------------+
-    if (data.getData().length < 3) {
+    if (data.limit() < 3) {
       throw ParserException.createForMalformedManifest("Malformed FU header.", /* cause= */ null);
     }
     int tid = (data.getData()[1] & 0x7);
@@ -221,7 +221,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       // Set data position from byte 1 as byte 0 is ignored.
       data.getData()[1] = (byte) ((nalUnitType << 1) & 0x7F);
       data.getData()[2] = (byte) tid;
-      fuScratchBuffer.reset(data.getData());
+      fuScratchBuffer.reset(data.getData(), data.limit());
       fuScratchBuffer.setPosition(1);
     } else {
       // Check that this packet is in the sequence of the previous packet.
@@ -237,7 +237,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       }
 
       // Setting position to ignore payload and FU header.
-      fuScratchBuffer.reset(data.getData());
+      fuScratchBuffer.reset(data.getData(), data.limit());
       fuScratchBuffer.setPosition(FU_PAYLOAD_OFFSET);
     }
 
@@ -27,7 +27,6 @@ import com.google.android.exoplayer2.source.rtsp.RtpPayloadFormat;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
-import com.google.common.primitives.Bytes;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -41,6 +40,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   /** VOP (Video Object Plane) unit type. */
   private static final int I_VOP = 0;
+  private static final byte[] VOP_START_CODE = new byte[] {0x0, 0x0, 0x1, (byte) 0xB6};
 
   private final RtpPayloadFormat payloadFormat;
   private @MonotonicNonNull TrackOutput trackOutput;
@@ -127,14 +127,18 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * <p>Sets {@link #bufferFlags} according to the VOP Coding type.
    */
   private static @C.BufferFlags int getBufferFlagsFromVop(ParsableByteArray data) {
-    // search for VOP_START_CODE (00 00 01 B6)
+    // search for VOP_START_CODE (00 00 01 B6). The data array may extend beyond the packet, so the
+    // search is limited to the bytes up to the limit.
     byte[] inputData = data.getData();
-    byte[] startCode = new byte[] {0x0, 0x0, 0x1, (byte) 0xB6};
-    int vopStartCodePos = Bytes.indexOf(inputData, startCode);
-    if (vopStartCodePos != -1) {
-      data.setPosition(vopStartCodePos + 4);
-      int vopType = data.peekUnsignedByte() >> 6;
-      return vopType == I_VOP ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    for (int i = 0; i + VOP_START_CODE.length < data.limit(); i++) {
+      if (inputData[i] == VOP_START_CODE[0]
+          && inputData[i + 1] == VOP_START_CODE[1]
+          && inputData[i + 2] == VOP_START_CODE[2]
+          && inputData[i + 3] == VOP_START_CODE[3]) {
+        data.setPosition(i + VOP_START_CODE.length);
+        int vopType = data.peekUnsignedByte() >> 6;
+        return vopType == I_VOP ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      }
     }
     return 0;
   }
@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.source.rtsp.RtpPayloadFormat;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
 import java.util.List;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
@@ -88,7 +89,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      */
     if (!foundOpusIDHeader) {
       validateOpusIdHeader(data);
-      List<byte[]> initializationData = OpusUtil.buildInitializationData(data.getData());
+      List<byte[]> initializationData =
+          OpusUtil.buildInitializationData(Arrays.copyOf(data.getData(), data.limit()));
       Format.Builder formatBuilder = payloadFormat.format.buildUpon();
       formatBuilder.setInitializationData(initializationData);
       trackOutput.format(formatBuilder.build());
@@ -207,6 +207,72 @@ public class RtpPacketReorderingQueueTest {
     assertThat(reorderingQueue.poll(/* cutoffTimestampMs= */ 0)).isEqualTo(packet3);
   }
 
+  @Test
+  public void poll_skippingMissingPackets_countsLostPackets() {
+    RtpPacket packet1 = makePacket(/* sequenceNumber= */ 1);
+    RtpPacket packet4 = makePacket(/* sequenceNumber= */ 4);
+
+    reorderingQueue.offer(packet1, /* receivedTimestampMs= */ 1);
+    reorderingQueue.offer(packet4, /* receivedTimestampMs= */ 2);
+
+    assertThat(reorderingQueue.poll(/* cutoffTimestampMs= */ 0)).isEqualTo(packet1);
+    assertThat(reorderingQueue.poll(/* cutoffTimestampMs= */ 2)).isEqualTo(packet4);
+    assertThat(reorderingQueue.getLostPacketCount()).isEqualTo(2);
+    assertThat(reorderingQueue.getLatePacketCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void offer_afterSucceedingPacketDequeued_countsLatePacket() {
+    reorderingQueue.offer(makePacket(/* sequenceNumber= */ 1), /* receivedTimestampMs= */ 1);
+    reorderingQueue.offer(makePacket(/* sequenceNumber= */ 3), /* receivedTimestampMs= */ 2);
+    reorderingQueue.poll(/* cutoffTimestampMs= */ 2);
+    reorderingQueue.poll(/* cutoffTimestampMs= */ 2);
+
+    boolean added =
+        reorderingQueue.offer(makePacket(/* sequenceNumber= */ 2), /* receivedTimestampMs= */ 3);
+
+    assertThat(added).isFalse();
+    assertThat(reorderingQueue.getLatePacketCount()).isEqualTo(1);
+    assertThat(reorderingQueue.getLostPacketCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void offer_beyondCapacity_discardsHeadOfQueue() {
+    int packetCount = RtpPacketReorderingQueue.CAPACITY + 10;
+    for (int i = 0; i < packetCount; i++) {
+      reorderingQueue.offer(makePacket(/* sequenceNumber= */ i), /* receivedTimestampMs= */ i);
+    }
+
+    assertThat(reorderingQueue.poll(/* cutoffTimestampMs= */ 0).sequenceNumber).isEqualTo(10);
+    assertThat(reorderingQueue.getLostPacketCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void offerInSequence_nextPacketWithEmptyQueue_dequeuesPacket() {
+    assertThat(reorderingQueue.offerInSequence(/* sequenceNumber= */ 1)).isTrue();
+    assertThat(reorderingQueue.offerInSequence(/* sequenceNumber= */ 2)).isTrue();
+
+    assertThat(reorderingQueue.offerInSequence(/* sequenceNumber= */ 4)).isFalse();
+    reorderingQueue.offer(makePacket(/* sequenceNumber= */ 4), /* receivedTimestampMs= */ 1);
+    // Packet 3 can't bypass the queue, since packet 4 is queued.
+    assertThat(reorderingQueue.offerInSequence(/* sequenceNumber= */ 3)).isFalse();
+  }
+
+  @Test
+  public void offer_afterOfferInSequence_rejectsPrecedingPackets() {
+    RtpPacket packet3 = makePacket(/* sequenceNumber= */ 3);
+    reorderingQueue.offerInSequence(/* sequenceNumber= */ 1);
+    reorderingQueue.offerInSequence(/* sequenceNumber= */ 2);
+
+    boolean precedingPacketAdded =
+        reorderingQueue.offer(makePacket(/* sequenceNumber= */ 1), /* receivedTimestampMs= */ 0);
+    boolean nextPacketAdded = reorderingQueue.offer(packet3, /* receivedTimestampMs= */ 0);
+
+    assertThat(precedingPacketAdded).isFalse();
+    assertThat(nextPacketAdded).isTrue();
+    assertThat(reorderingQueue.poll(/* cutoffTimestampMs= */ 0)).isEqualTo(packet3);
+  }
+
   private static RtpPacket makePacket(int sequenceNumber) {
     return new RtpPacket.Builder().setSequenceNumber(sequenceNumber).build();
   }
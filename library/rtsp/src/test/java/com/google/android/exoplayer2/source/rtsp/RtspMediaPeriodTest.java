@@ -86,7 +86,8 @@ public final class RtspMediaPeriodTest {
             /* listener= */ timing -> refreshedSourceDurationMs.set(timing.getDurationMs()),
             /* userAgent= */ "ExoPlayer:RtspPeriodTest",
             /* socketFactory= */ SocketFactory.getDefault(),
-            /* debugLoggingEnabled= */ false);
+            /* debugLoggingEnabled= */ false,
+            RtspMediaSource.DEFAULT_JITTER_BUFFER_DEPTH_MS);
 
     mediaPeriod.prepare(
         new MediaPeriod.Callback() {
@@ -171,7 +172,8 @@ public final class RtspMediaPeriodTest {
             /* listener= */ timing -> refreshedSourceDurationMs.set(timing.getDurationMs()),
             /* userAgent= */ "ExoPlayer:RtspPeriodTest",
             /* socketFactory= */ SocketFactory.getDefault(),
-            /* debugLoggingEnabled= */ false);
+            /* debugLoggingEnabled= */ false,
+            RtspMediaSource.DEFAULT_JITTER_BUFFER_DEPTH_MS);
 
     mediaPeriod.prepare(
         new MediaPeriod.Callback() {
@@ -158,7 +158,8 @@ public final class RtspPlaybackTest {
             rtpDataChannelFactory,
             "ExoPlayer:PlaybackTest",
             SocketFactory.getDefault(),
-            /* debugLoggingEnabled= */ false),
+            /* debugLoggingEnabled= */ false,
+            RtspMediaSource.DEFAULT_JITTER_BUFFER_DEPTH_MS),
         false);
     return player;
   }
@@ -29,7 +29,9 @@ import com.google.android.exoplayer2.source.rtsp.RtpPayloadFormat;
 import com.google.android.exoplayer2.testutil.FakeTrackOutput;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -106,6 +108,26 @@ public final class RtpOpusReaderTest {
     assertThat(trackOutput.getSampleTimeUs(1)).isEqualTo(32000);
   }
 
+  @Test
+  public void consume_packetsInLargerBuffer_readsOnlyPacketData() {
+    // RtpExtractor passes payloads in a reusable buffer that's larger than the payload.
+    ParsableByteArray reusableBuffer = new ParsableByteArray(RtpPacket.MAX_SIZE);
+    Arrays.fill(reusableBuffer.getData(), (byte) 0xFF);
+    opusReader.onReceivingFirstPacket(OPUS_HEADER.timestamp, OPUS_HEADER.sequenceNumber);
+
+    for (RtpPacket packet : ImmutableList.of(OPUS_HEADER, OPUS_TAGS, OPUS_FRAME_1)) {
+      System.arraycopy(
+          packet.payloadData, 0, reusableBuffer.getData(), 0, packet.payloadData.length);
+      reusableBuffer.setPosition(0);
+      reusableBuffer.setLimit(packet.payloadData.length);
+      opusReader.consume(reusableBuffer, packet.timestamp, packet.sequenceNumber, packet.marker);
+    }
+
+    assertThat(trackOutput.lastFormat.initializationData.get(0))
+        .isEqualTo(OPUS_HEADER.payloadData);
+    assertThat(trackOutput.getSampleData(0)).isEqualTo(getBytesFromHexString("010203"));
+  }
+
   @Test
   public void consume_opusHeaderWithInvalidHeader_throwsIllegalArgumentException() {
     opusReader.onReceivingFirstPacket(OPUS_HEADER.timestamp, OPUS_HEADER.sequenceNumber);
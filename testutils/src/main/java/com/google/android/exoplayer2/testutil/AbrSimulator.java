@@ -0,0 +1,642 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Assertions.checkStateNotNull;
+import static java.lang.Math.min;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLivePlaybackSpeedControl;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LivePlaybackSpeedControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeDataSet.FakeData.Segment;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.base.Supplier;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a {@link NetworkTrace} against an {@link ExoTrackSelection}, a {@link LoadControl} and,
+ * for live streams, a {@link LivePlaybackSpeedControl}, to evaluate adaptive streaming algorithms
+ * offline.
+ *
+ * <p>The simulated source is a {@link FakeAdaptiveDataSet} with one chunk stream per format, like a
+ * multi-bitrate DASH or HLS stream. The simulation runs at chunk granularity: chunks are loaded one
+ * after another through a {@link FakeDataSource}, with a {@link FakeClock} advanced according to
+ * the throughput and latency of the trace while data is read. A {@link DefaultBandwidthMeter}
+ * listens to the transfers, and playback consumes the buffer in real time once the {@link
+ * LoadControl} allows it to start. After the last chunk is loaded, the remaining buffer is played
+ * out to the end of the media. Simulations are deterministic and run much faster than real time.
+ *
+ * <p>Byte based thresholds of the {@link LoadControl} are not simulated, because no sample memory
+ * is allocated from its {@link LoadControl#getAllocator() allocator}.
+ */
+public final class AbrSimulator {
+
+  /** The result of a simulation. */
+  public static final class Result {
+
+    /** The number of times playback stalled because the buffer ran out. */
+    public final int rebufferCount;
+    /** The total duration of all stalls, in milliseconds. */
+    public final long rebufferDurationMs;
+    /** The time between the start of the simulation and the start of playback, in milliseconds. */
+    public final long startupTimeMs;
+    /** The number of times the selected format changed between consecutive chunks. */
+    public final int switchCount;
+    /** The average bitrate of the loaded chunks, weighted by chunk duration, in bits per second. */
+    public final long averageBitrate;
+    /** The duration of the simulated media, in milliseconds. */
+    public final long mediaDurationMs;
+    /**
+     * The average live offset during playback, in milliseconds, or {@link C#TIME_UNSET} if the
+     * simulated stream isn't live.
+     */
+    public final long averageLiveOffsetMs;
+
+    /* package */ Result(
+        int rebufferCount,
+        long rebufferDurationMs,
+        long startupTimeMs,
+        int switchCount,
+        long averageBitrate,
+        long mediaDurationMs,
+        long averageLiveOffsetMs) {
+      this.rebufferCount = rebufferCount;
+      this.rebufferDurationMs = rebufferDurationMs;
+      this.startupTimeMs = startupTimeMs;
+      this.switchCount = switchCount;
+      this.averageBitrate = averageBitrate;
+      this.mediaDurationMs = mediaDurationMs;
+      this.averageLiveOffsetMs = averageLiveOffsetMs;
+    }
+
+    /** Returns the fraction of the playback session that was spent rebuffering. */
+    public double getRebufferRatio() {
+      return (double) rebufferDurationMs / (mediaDurationMs + rebufferDurationMs);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Result result = (Result) o;
+      return rebufferCount == result.rebufferCount
+          && rebufferDurationMs == result.rebufferDurationMs
+          && startupTimeMs == result.startupTimeMs
+          && switchCount == result.switchCount
+          && averageBitrate == result.averageBitrate
+          && mediaDurationMs == result.mediaDurationMs
+          && averageLiveOffsetMs == result.averageLiveOffsetMs;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = rebufferCount;
+      result = 31 * result + (int) rebufferDurationMs;
+      result = 31 * result + (int) startupTimeMs;
+      result = 31 * result + switchCount;
+      result = 31 * result + (int) averageBitrate;
+      result = 31 * result + (int) mediaDurationMs;
+      result = 31 * result + (int) averageLiveOffsetMs;
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{"
+          + "rebufferCount="
+          + rebufferCount
+          + ", rebufferDurationMs="
+          + rebufferDurationMs
+          + ", startupTimeMs="
+          + startupTimeMs
+          + ", switchCount="
+          + switchCount
+          + ", averageBitrate="
+          + averageBitrate
+          + ", averageLiveOffsetMs="
+          + averageLiveOffsetMs
+          + "}";
+    }
+  }
+
+  /** Builder for {@link AbrSimulator} instances. */
+  public static final class Builder {
+
+    private final Context context;
+    private final NetworkTrace networkTrace;
+    private final TrackGroup trackGroup;
+
+    private long mediaDurationMs;
+    private long chunkDurationMs;
+    private double bitratePercentStdDev;
+    private long seed;
+    private long initialBitrateEstimate;
+    private Supplier<LoadControl> loadControlSupplier;
+    @Nullable private Supplier<LivePlaybackSpeedControl> livePlaybackSpeedControlSupplier;
+    private long targetLiveOffsetMs;
+
+    /**
+     * Creates a builder.
+     *
+     * @param context A context.
+     * @param networkTrace The {@link NetworkTrace} to replay.
+     * @param formats The formats available for adaptation.
+     */
+    public Builder(Context context, NetworkTrace networkTrace, Format... formats) {
+      this.context = context.getApplicationContext();
+      this.networkTrace = networkTrace;
+      trackGroup = new TrackGroup(formats);
+      mediaDurationMs = 120_000;
+      chunkDurationMs = 4_000;
+      initialBitrateEstimate = 1_000_000;
+      loadControlSupplier = DefaultLoadControl::new;
+      targetLiveOffsetMs = C.TIME_UNSET;
+    }
+
+    /** Sets the duration of the simulated media. The default is 120 seconds. */
+    @CanIgnoreReturnValue
+    public Builder setMediaDurationMs(long mediaDurationMs) {
+      this.mediaDurationMs = mediaDurationMs;
+      return this;
+    }
+
+    /** Sets the duration of each chunk. The default is 4 seconds. */
+    @CanIgnoreReturnValue
+    public Builder setChunkDurationMs(long chunkDurationMs) {
+      this.chunkDurationMs = chunkDurationMs;
+      return this;
+    }
+
+    /**
+     * Sets the standard deviation of the chunk sizes, as a percentage of the format bitrate. The
+     * default is zero, meaning that all chunks of a format have the same size.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBitratePercentStdDev(double bitratePercentStdDev) {
+      this.bitratePercentStdDev = bitratePercentStdDev;
+      return this;
+    }
+
+    /** Sets the seed used to generate chunk sizes. */
+    @CanIgnoreReturnValue
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /** Sets the initial bitrate estimate of the bandwidth meter. The default is 1 Mbps. */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(long initialBitrateEstimate) {
+      this.initialBitrateEstimate = initialBitrateEstimate;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Supplier} of the {@link LoadControl} that decides when to load and when to
+     * start playback. A new instance is requested for each simulation run. The default supplies
+     * {@link DefaultLoadControl} instances.
+     */
+    @CanIgnoreReturnValue
+    public Builder setLoadControlSupplier(Supplier<LoadControl> loadControlSupplier) {
+      this.loadControlSupplier = loadControlSupplier;
+      return this;
+    }
+
+    /**
+     * Makes the simulated stream live, with chunks becoming available in real time. By default the
+     * stream is on demand.
+     *
+     * @param targetLiveOffsetMs The target live offset, in milliseconds. Playback starts at the
+     *     start of the chunk containing this offset from the live edge.
+     * @param livePlaybackSpeedControlSupplier The {@link Supplier} of the {@link
+     *     LivePlaybackSpeedControl} adjusting the playback speed. A new instance is requested for
+     *     each simulation run.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setLive(
+        long targetLiveOffsetMs,
+        Supplier<LivePlaybackSpeedControl> livePlaybackSpeedControlSupplier) {
+      this.targetLiveOffsetMs = targetLiveOffsetMs;
+      this.livePlaybackSpeedControlSupplier = livePlaybackSpeedControlSupplier;
+      return this;
+    }
+
+    /**
+     * Makes the simulated stream live with a {@link DefaultLivePlaybackSpeedControl}.
+     *
+     * @see #setLive(long, Supplier)
+     */
+    @CanIgnoreReturnValue
+    public Builder setLive(long targetLiveOffsetMs) {
+      return setLive(
+          targetLiveOffsetMs, () -> new DefaultLivePlaybackSpeedControl.Builder().build());
+    }
+
+    /** Builds the simulator. */
+    public AbrSimulator build() {
+      checkArgument(chunkDurationMs > 0 && mediaDurationMs >= chunkDurationMs);
+      checkArgument(
+          livePlaybackSpeedControlSupplier == null
+              || (targetLiveOffsetMs > 0 && targetLiveOffsetMs < mediaDurationMs));
+      return new AbrSimulator(this);
+    }
+  }
+
+  private static final int READ_LENGTH = 16 * 1024;
+  /** The interval at which playback progress is updated, matching the player's work interval. */
+  private static final long UPDATE_INTERVAL_US = 10_000;
+
+  private final Context context;
+  private final NetworkTrace networkTrace;
+  private final TrackGroup trackGroup;
+  private final long mediaDurationUs;
+  private final long chunkDurationUs;
+  private final double bitratePercentStdDev;
+  private final long seed;
+  private final long initialBitrateEstimate;
+  private final Supplier<LoadControl> loadControlSupplier;
+  @Nullable private final Supplier<LivePlaybackSpeedControl> livePlaybackSpeedControlSupplier;
+  private final long targetLiveOffsetMs;
+
+  private AbrSimulator(Builder builder) {
+    context = builder.context;
+    networkTrace = builder.networkTrace;
+    trackGroup = builder.trackGroup;
+    mediaDurationUs = Util.msToUs(builder.mediaDurationMs);
+    chunkDurationUs = Util.msToUs(builder.chunkDurationMs);
+    bitratePercentStdDev = builder.bitratePercentStdDev;
+    seed = builder.seed;
+    initialBitrateEstimate = builder.initialBitrateEstimate;
+    loadControlSupplier = builder.loadControlSupplier;
+    livePlaybackSpeedControlSupplier = builder.livePlaybackSpeedControlSupplier;
+    targetLiveOffsetMs = builder.targetLiveOffsetMs;
+  }
+
+  /**
+   * Runs a simulation.
+   *
+   * <p>Each call starts from the same initial state, so that results for different track selection
+   * factories can be compared.
+   *
+   * @param trackSelectionFactory The {@link ExoTrackSelection.Factory} creating the adaptive track
+   *     selection under test.
+   * @return The {@link Result} of the simulation.
+   * @throws IOException If reading the simulated data fails.
+   */
+  public Result run(ExoTrackSelection.Factory trackSelectionFactory) throws IOException {
+    // Start from the current system time, as the Robolectric system clock can't go backwards.
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ SystemClock.elapsedRealtime());
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(context)
+            .setInitialBitrateEstimate(initialBitrateEstimate)
+            .setClock(clock)
+            .build();
+    FakeAdaptiveDataSet dataSet =
+        new FakeAdaptiveDataSet.Factory(chunkDurationUs, bitratePercentStdDev, new Random(seed))
+            .createDataSet(trackGroup, mediaDurationUs);
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    ExoTrackSelection trackSelection =
+        checkNotNull(
+            trackSelectionFactory.createTrackSelections(
+                new ExoTrackSelection.Definition[] {
+                  new ExoTrackSelection.Definition(trackGroup, tracks)
+                },
+                bandwidthMeter,
+                new MediaPeriodId(/* periodUid= */ new Object()),
+                new FakeTimeline())[0]);
+    LoadControl loadControl = loadControlSupplier.get();
+    @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl = null;
+    if (livePlaybackSpeedControlSupplier != null) {
+      livePlaybackSpeedControl = livePlaybackSpeedControlSupplier.get();
+      livePlaybackSpeedControl.setLiveConfiguration(
+          new MediaItem.LiveConfiguration.Builder().setTargetOffsetMs(targetLiveOffsetMs).build());
+    }
+    Simulation simulation =
+        new Simulation(
+            clock, bandwidthMeter, dataSet, trackSelection, loadControl, livePlaybackSpeedControl);
+    loadControl.onPrepared();
+    trackSelection.enable();
+    try {
+      simulation.run();
+    } finally {
+      trackSelection.disable();
+      loadControl.onReleased();
+    }
+    return simulation.getResult();
+  }
+
+  private final class Simulation {
+
+    private final FakeClock clock;
+    private final DefaultBandwidthMeter bandwidthMeter;
+    private final FakeAdaptiveDataSet dataSet;
+    private final ExoTrackSelection trackSelection;
+    private final LoadControl loadControl;
+    @Nullable private final LivePlaybackSpeedControl livePlaybackSpeedControl;
+    private final List<MediaChunk> queue;
+    private final byte[] readBuffer;
+    private final long liveEdgeAtStartUs;
+
+    private long timeUs;
+    private long playbackPositionUs;
+    private long loadPositionUs;
+    private float playbackSpeed;
+    private boolean isPlaying;
+    private boolean hasStartedPlayback;
+    private long startupTimeUs;
+    private int rebufferCount;
+    private long rebufferDurationUs;
+    private int switchCount;
+    private long bitrateDurationProductSum;
+    private long liveOffsetDurationProductSum;
+    private long playingDurationUs;
+
+    Simulation(
+        FakeClock clock,
+        DefaultBandwidthMeter bandwidthMeter,
+        FakeAdaptiveDataSet dataSet,
+        ExoTrackSelection trackSelection,
+        LoadControl loadControl,
+        @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) {
+      this.clock = clock;
+      this.bandwidthMeter = bandwidthMeter;
+      this.dataSet = dataSet;
+      this.trackSelection = trackSelection;
+      this.loadControl = loadControl;
+      this.livePlaybackSpeedControl = livePlaybackSpeedControl;
+      queue = new ArrayList<>();
+      readBuffer = new byte[READ_LENGTH];
+      playbackSpeed = 1f;
+      if (livePlaybackSpeedControl != null) {
+        // The live edge is at the end of the chunk containing the target live offset.
+        long targetLiveOffsetUs = Util.msToUs(targetLiveOffsetMs);
+        long liveEdgeUs = Util.ceilDivide(targetLiveOffsetUs, chunkDurationUs) * chunkDurationUs;
+        liveEdgeAtStartUs = min(liveEdgeUs, mediaDurationUs);
+      } else {
+        liveEdgeAtStartUs = C.TIME_UNSET;
+      }
+    }
+
+    void run() throws IOException {
+      trackSelection.onPlaybackSpeed(playbackSpeed);
+      int chunkIndex = 0;
+      while (chunkIndex < dataSet.getChunkCount()) {
+        long chunkEndTimeUs =
+            dataSet.getStartTime(chunkIndex) + dataSet.getChunkDuration(chunkIndex);
+        if (livePlaybackSpeedControl != null && chunkEndTimeUs > getLiveEdgeUs()) {
+          // Wait for the next chunk to become available.
+          advanceTimeUs(min(chunkEndTimeUs - getLiveEdgeUs(), UPDATE_INTERVAL_US));
+          continue;
+        }
+        if (!loadControl.shouldContinueLoading(
+            playbackPositionUs, getBufferedDurationUs(), playbackSpeed)) {
+          if (!isPlaying) {
+            throw new IllegalStateException("Loading stopped before playback could start");
+          }
+          advanceTimeUs(UPDATE_INTERVAL_US);
+          continue;
+        }
+        loadChunk(chunkIndex);
+        chunkIndex++;
+      }
+      // Play out the remaining buffer, so that the whole playback session is accounted for.
+      while (playbackPositionUs < mediaDurationUs) {
+        advanceTimeUs(UPDATE_INTERVAL_US);
+      }
+    }
+
+    Result getResult() {
+      return new Result(
+          rebufferCount,
+          Util.usToMs(rebufferDurationUs),
+          Util.usToMs(startupTimeUs),
+          switchCount,
+          bitrateDurationProductSum / loadPositionUs,
+          Util.usToMs(loadPositionUs),
+          livePlaybackSpeedControl != null && playingDurationUs > 0
+              ? Util.usToMs(liveOffsetDurationProductSum / playingDurationUs)
+              : C.TIME_UNSET);
+    }
+
+    private void loadChunk(int chunkIndex) throws IOException {
+      discardPlayedChunks();
+      MediaChunkIterator[] chunkIterators = new MediaChunkIterator[trackSelection.length()];
+      for (int i = 0; i < chunkIterators.length; i++) {
+        chunkIterators[i] =
+            new FakeAdaptiveDataSet.Iterator(
+                dataSet, trackSelection.getIndexInTrackGroup(i), chunkIndex);
+      }
+      trackSelection.updateSelectedTrack(
+          playbackPositionUs,
+          getBufferedDurationUs(),
+          /* availableDurationUs= */ livePlaybackSpeedControl != null
+              ? getLiveEdgeUs() - playbackPositionUs
+              : C.TIME_UNSET,
+          queue,
+          chunkIterators);
+      Format selectedFormat = trackSelection.getSelectedFormat();
+      String uri = dataSet.getUri(trackSelection.getSelectedIndexInTrackGroup());
+      Segment segment = checkStateNotNull(dataSet.getData(uri)).getSegments().get(chunkIndex);
+      readData(new DataSpec(Uri.parse(uri), segment.byteOffset, segment.length));
+
+      long startTimeUs = dataSet.getStartTime(chunkIndex);
+      long endTimeUs = startTimeUs + dataSet.getChunkDuration(chunkIndex);
+      if (!queue.isEmpty() && !queue.get(queue.size() - 1).trackFormat.equals(selectedFormat)) {
+        switchCount++;
+      }
+      queue.add(
+          new FakeMediaChunk(
+              selectedFormat, startTimeUs, endTimeUs, trackSelection.getSelectionReason()));
+      bitrateDurationProductSum += (long) selectedFormat.bitrate * (endTimeUs - startTimeUs);
+      loadPositionUs = endTimeUs;
+      maybeStartPlayback();
+    }
+
+    private void readData(DataSpec dataSpec) throws IOException {
+      FakeDataSource dataSource = new FakeDataSource(dataSet, /* isNetwork= */ true);
+      // Registered first, so that the latency passes before the bandwidth meter sees the start of
+      // the transfer.
+      dataSource.addTransferListener(new LatencyTransferListener());
+      TransferListener transferListener = bandwidthMeter.getTransferListener();
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      try {
+        dataSource.open(dataSpec);
+        long bytesRemaining = dataSpec.length;
+        while (bytesRemaining > 0) {
+          int readLength = (int) min(READ_LENGTH, bytesRemaining);
+          // Let the transfer time pass before the bytes are reported to the bandwidth meter.
+          advanceTimeUs(networkTrace.getTransferDurationUs(timeUs, readLength));
+          int bytesRead = dataSource.read(readBuffer, /* offset= */ 0, readLength);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            break;
+          }
+          bytesRemaining -= bytesRead;
+        }
+      } finally {
+        dataSource.close();
+      }
+    }
+
+    private void advanceTimeUs(long durationUs) {
+      while (durationUs > 0) {
+        long stepDurationUs = min(durationUs, UPDATE_INTERVAL_US);
+        durationUs -= stepDurationUs;
+        long previousTimeMs = Util.usToMs(timeUs);
+        timeUs += stepDurationUs;
+        clock.advanceTime(Util.usToMs(timeUs) - previousTimeMs);
+        updatePlayback(stepDurationUs);
+      }
+    }
+
+    private void updatePlayback(long elapsedTimeUs) {
+      if (!isPlaying) {
+        if (hasStartedPlayback) {
+          rebufferDurationUs += elapsedTimeUs;
+        }
+        maybeStartPlayback();
+        return;
+      }
+      long bufferedDurationUs = getBufferedDurationUs();
+      long playedDurationUs = Util.getMediaDurationForPlayoutDuration(elapsedTimeUs, playbackSpeed);
+      long playoutDurationUs = elapsedTimeUs;
+      if (playedDurationUs <= bufferedDurationUs) {
+        playbackPositionUs += playedDurationUs;
+      } else {
+        playbackPositionUs = loadPositionUs;
+        playoutDurationUs =
+            Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+        isPlaying = false;
+        if (loadPositionUs < mediaDurationUs) {
+          rebufferDurationUs += elapsedTimeUs - playoutDurationUs;
+          rebufferCount++;
+          trackSelection.onRebuffer();
+          if (livePlaybackSpeedControl != null) {
+            livePlaybackSpeedControl.notifyRebuffer();
+          }
+        } // Else playback has reached the end of the media.
+      }
+      if (livePlaybackSpeedControl != null) {
+        long liveOffsetUs = getLiveEdgeUs() - playbackPositionUs;
+        liveOffsetDurationProductSum += liveOffsetUs * playoutDurationUs;
+        playingDurationUs += playoutDurationUs;
+        if (isPlaying) {
+          float adjustedPlaybackSpeed =
+              livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+                  liveOffsetUs, getBufferedDurationUs());
+          if (adjustedPlaybackSpeed != playbackSpeed) {
+            playbackSpeed = adjustedPlaybackSpeed;
+            trackSelection.onPlaybackSpeed(playbackSpeed);
+          }
+        }
+      }
+    }
+
+    private void maybeStartPlayback() {
+      if (isPlaying) {
+        return;
+      }
+      long targetLiveOffsetUs =
+          livePlaybackSpeedControl != null
+              ? livePlaybackSpeedControl.getTargetLiveOffsetUs()
+              : C.TIME_UNSET;
+      if (loadPositionUs >= mediaDurationUs
+          || (loadPositionUs > playbackPositionUs
+              && loadControl.shouldStartPlayback(
+                  getBufferedDurationUs(),
+                  playbackSpeed,
+                  /* rebuffering= */ hasStartedPlayback,
+                  targetLiveOffsetUs))) {
+        isPlaying = true;
+        if (!hasStartedPlayback) {
+          hasStartedPlayback = true;
+          startupTimeUs = timeUs;
+        }
+      }
+    }
+
+    private void discardPlayedChunks() {
+      while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+        queue.remove(0);
+      }
+    }
+
+    private long getBufferedDurationUs() {
+      return loadPositionUs - playbackPositionUs;
+    }
+
+    private long getLiveEdgeUs() {
+      return min(liveEdgeAtStartUs + timeUs, mediaDurationUs);
+    }
+
+    /** Simulates the latency of requests before their first byte arrives. */
+    private final class LatencyTransferListener implements TransferListener {
+
+      @Override
+      public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        // Do nothing.
+      }
+
+      @Override
+      public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        advanceTimeUs(networkTrace.getLatencyUs(timeUs));
+      }
+
+      @Override
+      public void onBytesTransferred(
+          DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+        // Do nothing.
+      }
+
+      @Override
+      public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        // Do nothing.
+      }
+    }
+  }
+}
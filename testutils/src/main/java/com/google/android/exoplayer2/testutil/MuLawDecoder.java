@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.decoder.DecoderException;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.decoder.SimpleDecoder;
+import com.google.android.exoplayer2.decoder.SimpleDecoderOutputBuffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A Java-only G.711 &mu;-law decoder that outputs 16-bit PCM.
+ *
+ * <p>The decoder is a reference implementation of {@link SimpleDecoder#decodeBatch}, for testing
+ * and benchmarking batch decoding without native libraries. Each input buffer is decoded
+ * independently, so the decoder can be used with any packet size.
+ */
+public final class MuLawDecoder
+    extends SimpleDecoder<DecoderInputBuffer, SimpleDecoderOutputBuffer, DecoderException> {
+
+  private static final short[] MU_LAW_TO_PCM = createMuLawToPcmTable();
+
+  private int decodeCallCount;
+
+  /**
+   * Creates an instance.
+   *
+   * @param numInputBuffers The number of input buffers.
+   * @param numOutputBuffers The number of output buffers.
+   * @param maxDecodeBatchSize The maximum number of input buffers decoded in each call, or 1 to
+   *     decode input buffers one at a time.
+   * @param decodeExecutor The {@link Executor} on which to run decoding, or null to use a decode
+   *     thread.
+   */
+  public MuLawDecoder(
+      int numInputBuffers,
+      int numOutputBuffers,
+      int maxDecodeBatchSize,
+      @Nullable Executor decodeExecutor) {
+    super(
+        new DecoderInputBuffer[numInputBuffers],
+        new SimpleDecoderOutputBuffer[numOutputBuffers],
+        decodeExecutor);
+    setMaxDecodeBatchSize(maxDecodeBatchSize);
+  }
+
+  /**
+   * Returns the number of calls made to decode input buffers, where a call that decodes a batch of
+   * input buffers counts once.
+   */
+  public synchronized int getDecodeCallCount() {
+    return decodeCallCount;
+  }
+
+  @Override
+  public String getName() {
+    return "MuLawDecoder";
+  }
+
+  @Override
+  protected DecoderInputBuffer createInputBuffer() {
+    return new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @Override
+  protected SimpleDecoderOutputBuffer createOutputBuffer() {
+    return new SimpleDecoderOutputBuffer(this::releaseOutputBuffer);
+  }
+
+  @Override
+  protected DecoderException createUnexpectedDecodeException(Throwable error) {
+    return new DecoderException("Unexpected decode error", error);
+  }
+
+  @Nullable
+  @Override
+  protected DecoderException decode(
+      DecoderInputBuffer inputBuffer, SimpleDecoderOutputBuffer outputBuffer, boolean reset) {
+    incrementDecodeCallCount();
+    decodeBuffer(inputBuffer, outputBuffer);
+    return null;
+  }
+
+  @Nullable
+  @Override
+  protected DecoderException decodeBatch(
+      List<DecoderInputBuffer> inputBuffers,
+      List<SimpleDecoderOutputBuffer> outputBuffers,
+      boolean reset) {
+    incrementDecodeCallCount();
+    for (int i = 0; i < inputBuffers.size(); i++) {
+      decodeBuffer(inputBuffers.get(i), outputBuffers.get(i));
+    }
+    return null;
+  }
+
+  private synchronized void incrementDecodeCallCount() {
+    decodeCallCount++;
+  }
+
+  private static void decodeBuffer(
+      DecoderInputBuffer inputBuffer, SimpleDecoderOutputBuffer outputBuffer) {
+    ByteBuffer inputData = checkNotNull(inputBuffer.data);
+    int inputSize = inputData.limit();
+    ByteBuffer outputData = outputBuffer.init(inputBuffer.timeUs, inputSize * 2);
+    for (int i = 0; i < inputSize; i++) {
+      outputData.putShort(MU_LAW_TO_PCM[inputData.get(i) & 0xFF]);
+    }
+    outputData.flip();
+  }
+
+  private static short[] createMuLawToPcmTable() {
+    short[] table = new short[256];
+    for (int i = 0; i < 256; i++) {
+      int value = ~i & 0xFF;
+      int magnitude = (((value & 0x0F) << 3) + 0x84) << ((value & 0x70) >> 4);
+      table[i] = (short) ((value & 0x80) != 0 ? 0x84 - magnitude : magnitude - 0x84);
+    }
+    return table;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded or synthetic trace of network throughput and latency over time, used to simulate data
+ * transfers.
+ *
+ * <p>The trace is a sequence of periods of constant throughput and latency. It repeats from the
+ * start once the end is reached.
+ */
+public final class NetworkTrace {
+
+  /** Builder for {@link NetworkTrace} instances. */
+  public static final class Builder {
+
+    private final List<Long> periodDurationsUs;
+    private final List<Long> periodBitrates;
+    private final List<Long> periodLatenciesUs;
+
+    /** Creates an instance. */
+    public Builder() {
+      periodDurationsUs = new ArrayList<>();
+      periodBitrates = new ArrayList<>();
+      periodLatenciesUs = new ArrayList<>();
+    }
+
+    /**
+     * Appends a period of constant throughput and zero latency to the trace.
+     *
+     * @param durationMs The duration of the period, in milliseconds.
+     * @param bitrate The throughput during the period, in bits per second. May be zero to simulate
+     *     a network outage.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder addPeriod(long durationMs, long bitrate) {
+      return addPeriod(durationMs, bitrate, /* latencyMs= */ 0);
+    }
+
+    /**
+     * Appends a period of constant throughput and latency to the trace.
+     *
+     * @param durationMs The duration of the period, in milliseconds.
+     * @param bitrate The throughput during the period, in bits per second. May be zero to simulate
+     *     a network outage.
+     * @param latencyMs The time between a request being made and its first byte arriving during
+     *     the period, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder addPeriod(long durationMs, long bitrate, long latencyMs) {
+      checkArgument(durationMs > 0 && bitrate >= 0 && latencyMs >= 0);
+      periodDurationsUs.add(durationMs * 1000);
+      periodBitrates.add(bitrate);
+      periodLatenciesUs.add(latencyMs * 1000);
+      return this;
+    }
+
+    /** Builds the trace. At least one period must have a non-zero throughput. */
+    public NetworkTrace build() {
+      checkState(periodBitrates.size() > 0);
+      long[] durationsUs = new long[periodDurationsUs.size()];
+      long[] bitrates = new long[periodBitrates.size()];
+      long[] latenciesUs = new long[periodLatenciesUs.size()];
+      boolean hasNonZeroBitrate = false;
+      for (int i = 0; i < durationsUs.length; i++) {
+        durationsUs[i] = periodDurationsUs.get(i);
+        bitrates[i] = periodBitrates.get(i);
+        latenciesUs[i] = periodLatenciesUs.get(i);
+        hasNonZeroBitrate |= bitrates[i] > 0;
+      }
+      checkState(hasNonZeroBitrate);
+      return new NetworkTrace(durationsUs, bitrates, latenciesUs);
+    }
+  }
+
+  /**
+   * Parses a trace from CSV data.
+   *
+   * <p>Each line describes one period, in the form {@code durationMs,bitrate[,latencyMs]}, where
+   * the bitrate is in bits per second. Blank lines, comment lines starting with {@code #} and a
+   * header line starting with a letter are ignored.
+   *
+   * @param csv The CSV data.
+   * @return The parsed trace.
+   * @throws IllegalArgumentException If the data is malformed.
+   */
+  public static NetworkTrace parseCsv(String csv) {
+    Builder builder = new Builder();
+    String[] lines = Util.split(csv, "\\r?\\n");
+    boolean isFirstLine = true;
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.charAt(0) == '#') {
+        // Blank or comment line.
+        continue;
+      }
+      boolean isHeader = isFirstLine && Character.isLetter(line.charAt(0));
+      isFirstLine = false;
+      if (isHeader) {
+        continue;
+      }
+      String[] fields = Util.split(line, ",");
+      checkArgument(fields.length == 2 || fields.length == 3, "Malformed line: " + line);
+      try {
+        builder.addPeriod(
+            Long.parseLong(fields[0].trim()),
+            Long.parseLong(fields[1].trim()),
+            fields.length == 3 ? Long.parseLong(fields[2].trim()) : 0);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed line: " + line, e);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a trace with constant throughput.
+   *
+   * @param bitrate The throughput, in bits per second.
+   */
+  public static NetworkTrace constant(long bitrate) {
+    return new Builder().addPeriod(/* durationMs= */ 1000, bitrate).build();
+  }
+
+  private final long[] periodDurationsUs;
+  private final long[] periodBitrates;
+  private final long[] periodLatenciesUs;
+  private final long totalDurationUs;
+
+  private NetworkTrace(long[] periodDurationsUs, long[] periodBitrates, long[] periodLatenciesUs) {
+    this.periodDurationsUs = periodDurationsUs;
+    this.periodBitrates = periodBitrates;
+    this.periodLatenciesUs = periodLatenciesUs;
+    long totalDurationUs = 0;
+    for (long periodDurationUs : periodDurationsUs) {
+      totalDurationUs += periodDurationUs;
+    }
+    this.totalDurationUs = totalDurationUs;
+  }
+
+  /**
+   * Returns the throughput at the given time, in bits per second.
+   *
+   * @param timeUs The time since the start of the trace, in microseconds.
+   */
+  public long getBitrate(long timeUs) {
+    return periodBitrates[getPeriodIndex(timeUs)];
+  }
+
+  /**
+   * Returns the latency at the given time, in microseconds.
+   *
+   * @param timeUs The time since the start of the trace, in microseconds.
+   */
+  public long getLatencyUs(long timeUs) {
+    return periodLatenciesUs[getPeriodIndex(timeUs)];
+  }
+
+  /**
+   * Returns the time it takes to transfer the given number of bytes.
+   *
+   * @param startTimeUs The time since the start of the trace at which the transfer starts, in
+   *     microseconds.
+   * @param byteCount The number of bytes to transfer.
+   * @return The duration of the transfer, in microseconds.
+   */
+  public long getTransferDurationUs(long startTimeUs, long byteCount) {
+    int periodIndex = getPeriodIndex(startTimeUs);
+    long positionUs = getPositionInPeriodUs(startTimeUs, periodIndex);
+    long remainingBits = byteCount * C.BITS_PER_BYTE;
+    long transferDurationUs = 0;
+    while (remainingBits > 0) {
+      long bitrate = periodBitrates[periodIndex];
+      long remainingPeriodDurationUs = periodDurationsUs[periodIndex] - positionUs;
+      long bitsInRemainingPeriod = bitrate * remainingPeriodDurationUs / C.MICROS_PER_SECOND;
+      if (bitrate > 0 && bitsInRemainingPeriod >= remainingBits) {
+        // Round up, so that transfers always take time.
+        transferDurationUs += (remainingBits * C.MICROS_PER_SECOND + bitrate - 1) / bitrate;
+        remainingBits = 0;
+      } else {
+        transferDurationUs += remainingPeriodDurationUs;
+        remainingBits -= bitsInRemainingPeriod;
+        positionUs = 0;
+        periodIndex = (periodIndex + 1) % periodBitrates.length;
+      }
+    }
+    return transferDurationUs;
+  }
+
+  private int getPeriodIndex(long timeUs) {
+    long positionUs = timeUs % totalDurationUs;
+    int periodIndex = 0;
+    while (positionUs >= periodDurationsUs[periodIndex]) {
+      positionUs -= periodDurationsUs[periodIndex];
+      periodIndex++;
+    }
+    return periodIndex;
+  }
+
+  private long getPositionInPeriodUs(long timeUs, int periodIndex) {
+    long positionUs = timeUs % totalDurationUs;
+    for (int i = 0; i < periodIndex; i++) {
+      positionUs -= periodDurationsUs[i];
+    }
+    return positionUs;
+  }
+}
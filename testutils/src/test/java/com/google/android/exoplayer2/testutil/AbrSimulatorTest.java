@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link AbrSimulator}. */
+@RunWith(AndroidJUnit4.class)
+public final class AbrSimulatorTest {
+
+  private static final Format LOW_FORMAT = videoFormat(/* bitrate= */ 800_000);
+  private static final Format HIGH_FORMAT = videoFormat(/* bitrate= */ 1_600_000);
+
+  @Test
+  public void run_withOutageAndScheduledSelection_returnsExactResult() throws Exception {
+    // At 1.6 Mbps, one second of the low format loads in 500 ms and one second of the high format
+    // loads in one second. The outage delays the third chunk, so playback stalls from 2.5 seconds,
+    // when the buffer runs out, until the third chunk is loaded after 3 seconds.
+    NetworkTrace networkTrace =
+        new NetworkTrace.Builder()
+            .addPeriod(/* durationMs= */ 1_500, /* bitrate= */ 1_600_000)
+            .addPeriod(/* durationMs= */ 500, /* bitrate= */ 0)
+            .addPeriod(/* durationMs= */ 10_000, /* bitrate= */ 1_600_000)
+            .build();
+    AbrSimulator simulator =
+        new AbrSimulator.Builder(
+                ApplicationProvider.getApplicationContext(), networkTrace, LOW_FORMAT, HIGH_FORMAT)
+            .setMediaDurationMs(4_000)
+            .setChunkDurationMs(1_000)
+            .setLoadControlSupplier(
+                () ->
+                    new DefaultLoadControl.Builder()
+                        .setBufferDurationsMs(
+                            /* minBufferMs= */ 10_000,
+                            /* maxBufferMs= */ 10_000,
+                            /* bufferForPlaybackMs= */ 1_000,
+                            /* bufferForPlaybackAfterRebufferMs= */ 1_000)
+                        .build())
+            .build();
+
+    AbrSimulator.Result result =
+        simulator.run(
+            (definitions, bandwidthMeter, mediaPeriodId, timeline) ->
+                new ExoTrackSelection[] {
+                  new ScheduledTrackSelection(
+                      definitions[0].group,
+                      definitions[0].tracks,
+                      LOW_FORMAT,
+                      HIGH_FORMAT,
+                      HIGH_FORMAT,
+                      LOW_FORMAT)
+                });
+
+    assertThat(result.startupTimeMs).isEqualTo(500);
+    assertThat(result.rebufferCount).isEqualTo(1);
+    assertThat(result.rebufferDurationMs).isEqualTo(500);
+    assertThat(result.switchCount).isEqualTo(2);
+    assertThat(result.averageBitrate).isEqualTo(1_200_000);
+    assertThat(result.mediaDurationMs).isEqualTo(4_000);
+    assertThat(result.averageLiveOffsetMs).isEqualTo(C.TIME_UNSET);
+  }
+
+  private static Format videoFormat(int bitrate) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .build();
+  }
+
+  /** Selects the format of each loaded chunk from a fixed schedule. */
+  private static final class ScheduledTrackSelection extends BaseTrackSelection {
+
+    private final Format[] schedule;
+
+    private int chunkCount;
+    private int selectedIndex;
+
+    public ScheduledTrackSelection(TrackGroup group, int[] tracks, Format... schedule) {
+      super(group, tracks);
+      this.schedule = schedule;
+    }
+
+    @Override
+    public void updateSelectedTrack(
+        long playbackPositionUs,
+        long bufferedDurationUs,
+        long availableDurationUs,
+        List<? extends MediaChunk> queue,
+        MediaChunkIterator[] mediaChunkIterators) {
+      selectedIndex = indexOf(schedule[chunkCount++]);
+    }
+
+    @Override
+    public int getSelectedIndex() {
+      return selectedIndex;
+    }
+
+    @Override
+    public @C.SelectionReason int getSelectionReason() {
+      return C.SELECTION_REASON_ADAPTIVE;
+    }
+
+    @Override
+    @Nullable
+    public Object getSelectionData() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link NetworkTrace}. */
+@RunWith(AndroidJUnit4.class)
+public final class NetworkTraceTest {
+
+  @Test
+  public void getTransferDurationUs_withConstantTrace_returnsDurationAtBitrate() {
+    NetworkTrace networkTrace = NetworkTrace.constant(/* bitrate= */ 8_000_000);
+
+    assertThat(networkTrace.getTransferDurationUs(/* startTimeUs= */ 0, /* byteCount= */ 1_000))
+        .isEqualTo(1_000);
+    assertThat(
+            networkTrace.getTransferDurationUs(
+                /* startTimeUs= */ 123_456_789, /* byteCount= */ 5_000_000))
+        .isEqualTo(5_000_000);
+  }
+
+  @Test
+  public void getTransferDurationUs_acrossPeriods_usesBitrateOfEachPeriod() {
+    NetworkTrace networkTrace =
+        new NetworkTrace.Builder()
+            .addPeriod(/* durationMs= */ 1_000, /* bitrate= */ 8_000_000)
+            .addPeriod(/* durationMs= */ 1_000, /* bitrate= */ 0)
+            .addPeriod(/* durationMs= */ 1_000, /* bitrate= */ 800_000)
+            .build();
+
+    // 500 KB in the first 500 ms, nothing during the outage and 50 KB in the last 500 ms.
+    assertThat(
+            networkTrace.getTransferDurationUs(
+                /* startTimeUs= */ 500_000, /* byteCount= */ 550_000))
+        .isEqualTo(2_000_000);
+  }
+
+  @Test
+  public void getBitrate_afterEndOfTrace_repeatsTrace() {
+    NetworkTrace networkTrace =
+        new NetworkTrace.Builder()
+            .addPeriod(/* durationMs= */ 1_000, /* bitrate= */ 1_000_000)
+            .addPeriod(/* durationMs= */ 1_000, /* bitrate= */ 2_000_000)
+            .build();
+
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 500_000)).isEqualTo(1_000_000);
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 1_500_000)).isEqualTo(2_000_000);
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 2_500_000)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void parseCsv_withHeaderAndComments_returnsTrace() {
+    NetworkTrace networkTrace =
+        NetworkTrace.parseCsv(
+            "# A comment\n"
+                + "duration_ms,bitrate_bps,latency_ms\n"
+                + "1000,1000000,50\n"
+                + "\n"
+                + "2000,2000000\n");
+
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 500_000)).isEqualTo(1_000_000);
+    assertThat(networkTrace.getLatencyUs(/* timeUs= */ 500_000)).isEqualTo(50_000);
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 2_500_000)).isEqualTo(2_000_000);
+    assertThat(networkTrace.getLatencyUs(/* timeUs= */ 2_500_000)).isEqualTo(0);
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 3_500_000)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void parseCsv_withBlankAndCommentLines_ignoresThem() {
+    NetworkTrace networkTrace =
+        NetworkTrace.parseCsv("  \n\t\n  # A comment, with a comma\n1000,1000000\n   \n");
+
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 500_000)).isEqualTo(1_000_000);
+    assertThat(networkTrace.getBitrate(/* timeUs= */ 1_500_000)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void parseCsv_withBlankFirstField_throwsException() {
+    assertThrows(IllegalArgumentException.class, () -> NetworkTrace.parseCsv(" ,1000000\n"));
+  }
+
+  @Test
+  public void parseCsv_withMalformedLine_throwsException() {
+    assertThrows(
+        IllegalArgumentException.class, () -> NetworkTrace.parseCsv("1000,1000000\n1000,fast\n"));
+  }
+}